@@ -1,138 +1,90 @@
 package org.molgenis.calibratecadd;
 
 import java.io.File;
-import java.io.FileNotFoundException;
-import java.io.PrintWriter;
-import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
-import java.util.Scanner;
 
 import org.molgenis.calibratecadd.support.ClinVarVariant;
+import org.molgenis.calibratecadd.support.SortedVcfWriter;
+import org.molgenis.calibratecadd.support.VariantSummaryReader;
 
 public class Step1_GetClinVarPathogenic
 {
 
 	/**
 	 * Program arguments, example:
-	 * E:\Data\clinvarcadd\variant_summary.txt
-	 * E:\Data\clinvarcadd\clinvar.patho.vcf
+	 * E:\Data\clinvarcadd\variant_summary.txt (or variant_summary.txt.gz)
+	 * E:\Data\clinvarcadd\clinvar.patho.vcf (or clinvar.patho.vcf.gz for bgzipped output with a tabix index)
+	 * 
+	 * The output is sorted on chromosome and position.
+	 * 
+	 * Options:
+	 * --threads N : parse the ClinVar file with N threads (default 1), output is the same for any N
+	 * --sort-buffer N : keep at most N variants in memory while sorting, more are sorted via temporary files (default 1000000)
 	 */
 	public static String CLINVAR_INFO = "CLINVAR";
 	
 	// download @ ftp://ftp.ncbi.nlm.nih.gov/pub/clinvar/tab_delimited/variant_summary.txt.gz
 	public static void main(String[] args) throws Exception
 	{
-		HashMap<String, List<ClinVarVariant>> cvv = Step1_GetClinVarPathogenic.getAsMap(new File(args[0]));
-		PrintWriter pw = new PrintWriter(new File(args[1]));
+		int threads = 1;
+		int sortBuffer = SortedVcfWriter.DEFAULT_MAX_RECORDS_IN_MEMORY;
+		for(int i = 2; i < args.length; i++)
+		{
+			if(args[i].equals("--threads") && i + 1 < args.length)
+			{
+				threads = Integer.parseInt(args[++i]);
+			}
+			else if(args[i].equals("--sort-buffer") && i + 1 < args.length)
+			{
+				sortBuffer = Integer.parseInt(args[++i]);
+			}
+			else
+			{
+				throw new Exception("unknown option: " + args[i]);
+			}
+		}
+		
+		HashMap<String, List<ClinVarVariant>> cvv = Step1_GetClinVarPathogenic.getAsMap(new File(args[0]), threads);
+		SortedVcfWriter vcf = new SortedVcfWriter(new File(args[1]), sortBuffer);
 		
-		pw.println("##fileformat=VCFv4.1");
-		pw.println("##reference=hg19.fasta");
+		vcf.addHeader("##fileformat=VCFv4.1");
+		vcf.addHeader("##reference=hg19.fasta");
 		for(String chr : new String[]{"1", "2", "3", "4", "5", "6", "7", "8", "9", "10", "11", "12", "13", "14", "15", "16", "17", "18", "19", "20", "21", "22", "X", "Y", "MT"})
 		{
-			pw.println("##contig=<ID="+chr+">");
+			vcf.addHeader("##contig=<ID="+chr+">");
 		}
-		pw.println("##INFO=<ID="+CLINVAR_INFO+",Number=1,Type=String,Description=\"ClinVar\">");
-		pw.println("#CHROM	POS	ID	REF	ALT	QUAL	FILTER	INFO");
+		vcf.addHeader("##INFO=<ID="+CLINVAR_INFO+",Number=1,Type=String,Description=\"ClinVar\">");
+		vcf.addHeader("#CHROM	POS	ID	REF	ALT	QUAL	FILTER	INFO");
 		
 		for(String gene : cvv.keySet())
 		{
 			for(ClinVarVariant v : cvv.get(gene))
 			{
-				pw.println(v.chrom + "\t" + v.pos + "\t" + v.id + "\t" + v.ref + "\t" + v.alt + "\t" + "." + "\t" + "." + "\t" + CLINVAR_INFO + "=" + v.clinvarInfoToString());
+				vcf.add(v.chrom + "\t" + v.pos + "\t" + v.id + "\t" + v.ref + "\t" + v.alt + "\t" + "." + "\t" + "." + "\t" + CLINVAR_INFO + "=" + v.clinvarInfoToString());
 			}
 		}
-		pw.flush();
-		pw.close();
+		vcf.close();
 		
 	}
 	
 	
-	public static HashMap<String, List<ClinVarVariant>> getAsMap(File clinvarFile) throws FileNotFoundException
+	public static HashMap<String, List<ClinVarVariant>> getAsMap(File clinvarFile) throws Exception
+	{
+		return getAsMap(clinvarFile, 1);
+	}
+	
+	/**
+	 * Get the GRCh37 'pathogenic' variants per gene from variant_summary.txt or variant_summary.txt.gz
+	 * @param clinvarFile
+	 * @param threads nr of threads parsing the file, the result is the same for any nr
+	 * @return
+	 * @throws Exception
+	 */
+	public static HashMap<String, List<ClinVarVariant>> getAsMap(File clinvarFile, int threads) throws Exception
 	{
 		System.out.println("loading clinvar..");
-		HashMap<String, List<ClinVarVariant>> res = new HashMap<String, List<ClinVarVariant>>();
-
-		Scanner s = new Scanner(clinvarFile);
-
-		String line = null;
-
-		int lost = 0;
-		int totalvariants = 0;
-		
-		while (s.hasNextLine())
-		{
-			line = s.nextLine();
-			String[] lineSplit = line.split("\t", -1);
-
-			// needs to be GRCh37
-			String genomeBuild = lineSplit[12];
-			if (!genomeBuild.equals("GRCh37"))
-			{
-				continue;
-			}
-
-			// needs to contain 'pathogenic'
-			String clinsig = lineSplit[5];
-			if (!clinsig.toLowerCase().contains("pathogenic"))
-			{
-				continue;
-			}
-
-			// eg. NM_005343.2(HRAS):c.37G>C (p.Gly13Arg)
-			String name = lineSplit[2];
-			// eg. HRAS
-			String gene = lineSplit[4];
-
-			// System.out.println(line);
-
-			String geneFromName = null;
-			if (name.contains("("))
-			{
-				geneFromName = name.substring(name.indexOf('(') + 1, name.indexOf(')'));
-			}
-
-			if (gene.equals("-") || gene.equals(""))
-			{
-				if(gene.equals("")) { System.out.println("override: '"+gene+"' to '"+geneFromName+"'"); }
-				gene = geneFromName;
-			}
-
-			if (gene == null)
-			{
-				lost++;
-				continue;
-			}
-
-			String chrom = lineSplit[13];
-			String pos = lineSplit[14];
-			String id = lineSplit[6];
-			String ref = lineSplit[25];
-			String alt = lineSplit[26];
-
-			ClinVarVariant cvv = new ClinVarVariant(chrom, pos, id, ref, alt, name, gene, clinsig);
-			
-			if(res.containsKey(gene))
-			{
-				res.get(gene).add(cvv);
-			}
-			else
-			{
-				List<ClinVarVariant> cvvList = new ArrayList<ClinVarVariant>();
-				cvvList.add(cvv);
-				res.put(gene, cvvList);
-			}
-			
-			totalvariants++;
-
-		}
-		
-		s.close();
-
-		System.out.println("..done, put " + totalvariants + " 'pathogenic' variants in " + res.size() + " genes, lost " + lost + " due to non-recoverable gene symbols");
-		
-		return res;
-
+		return new VariantSummaryReader(threads).read(clinvarFile);
 	}
 
 }
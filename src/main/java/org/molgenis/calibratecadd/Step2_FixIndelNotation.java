@@ -1,13 +1,20 @@
 package org.molgenis.calibratecadd;
 
+import java.io.BufferedReader;
 import java.io.File;
-import java.io.PrintWriter;
+import java.io.FileInputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Scanner;
+import java.util.zip.GZIPInputStream;
 
 import org.molgenis.calibratecadd.support.ChrPosRefAltUniqueVariants;
+import org.molgenis.calibratecadd.support.SortedVcfWriter;
+import org.molgenis.calibratecadd.support.TabixRegionQueryService;
 import org.molgenis.data.Entity;
-import org.molgenis.data.annotator.tabix.TabixVcfRepository;
 
 public class Step2_FixIndelNotation
 {
@@ -16,9 +23,14 @@ public class Step2_FixIndelNotation
 	 * TODO: after all curation, there are about 156 duplicate lines - must keep track and don't write them out
 	 * 
 	 * Uses:
-	 * [0] file produced in step 1
+	 * [0] file produced in step 1 (plain or .gz)
 	 * [1] ftp://ftp.ncbi.nlm.nih.gov/pub/clinvar/vcf_GRCh37/clinvar.vcf.gz
-	 * [2] output file
+	 * [2] output file, sorted on chromosome and position, bgzipped with a tabix index if the name ends with .gz
+	 * 
+	 * Options:
+	 * --sort-buffer N : keep at most N variants in memory while sorting, more are sorted via temporary files (default 1000000)
+	 * --batch : collect all variants to fix and match them in one pass over the ClinVar VCF, instead of one tabix query per variant,
+	 *           output is the same
 	 * 
 	 * Example:
 	 * E:\Data\clinvarcadd\clinvar.patho.vcf
@@ -35,10 +47,28 @@ public class Step2_FixIndelNotation
 	 */
 	public static void main(String[] args) throws Exception
 	{
-		Scanner s = new Scanner(new File(args[0]));
-		PrintWriter pw = new PrintWriter(new File(args[2]));
+		int sortBuffer = SortedVcfWriter.DEFAULT_MAX_RECORDS_IN_MEMORY;
+		boolean batch = false;
+		for(int i = 3; i < args.length; i++)
+		{
+			if(args[i].equals("--sort-buffer") && i + 1 < args.length)
+			{
+				sortBuffer = Integer.parseInt(args[++i]);
+			}
+			else if(args[i].equals("--batch"))
+			{
+				batch = true;
+			}
+			else
+			{
+				throw new Exception("unknown option: " + args[i]);
+			}
+		}
 		
-		TabixVcfRepository clinvarVcf = new TabixVcfRepository(new File(args[1]), "clinvar");
+		Scanner s = args[0].endsWith(".gz") ? new Scanner(new GZIPInputStream(new FileInputStream(args[0])), "UTF-8") : new Scanner(new File(args[0]));
+		SortedVcfWriter vcf = new SortedVcfWriter(new File(args[2]), sortBuffer);
+		
+		TabixRegionQueryService clinvarVcf = batch ? null : new TabixRegionQueryService(new File(args[1]), "clinvar", 1);
 		
 		int fixes = 0;
 		int failedFixes = 0;
@@ -52,13 +82,17 @@ public class Step2_FixIndelNotation
 		
 		ChrPosRefAltUniqueVariants lines = new ChrPosRefAltUniqueVariants();
 		
+		//batch mode: all lines in input order, so they are added to 'lines' in the same order as without batching
+		List<BatchFix> batchLines = new ArrayList<BatchFix>();
+		HashMap<String, List<BatchFix>> batchFixesByRsId = new HashMap<String, List<BatchFix>>();
+		
 		while(s.hasNextLine())
 		{
 			line = s.nextLine();
 			if(line.startsWith("#"))
 			{
 				//header, just print and continue
-				pw.println(line);
+				vcf.addHeader(line);
 				continue;
 			}
 			
@@ -71,7 +105,14 @@ public class Step2_FixIndelNotation
 			if(!(lineSplit[3].equals("na") || lineSplit[4].equals("na") || lineSplit[3].equals("-") || lineSplit[4].equals("-") || lineSplit[3].equals(lineSplit[4])))
 			{
 				totalPassedVariants++;
-				lines.add(line);
+				if(batch)
+				{
+					batchLines.add(new BatchFix(line, null));
+				}
+				else
+				{
+					lines.add(line);
+				}
 				continue;
 			}
 			
@@ -90,6 +131,18 @@ public class Step2_FixIndelNotation
 			// "47635557 AG -" will be at "47635554	rs63749848 CAG C"
 			//tricky? yes... but we can grab a window and match by RS id :-)
 			
+			if(batch)
+			{
+				BatchFix fix = new BatchFix(line, lineSplit);
+				batchLines.add(fix);
+				if(!batchFixesByRsId.containsKey(lineSplit[2]))
+				{
+					batchFixesByRsId.put(lineSplit[2], new ArrayList<BatchFix>());
+				}
+				batchFixesByRsId.get(lineSplit[2]).add(fix);
+				continue;
+			}
+			
 			List<Entity> records = clinvarVcf.query(lineSplit[0], Long.parseLong(lineSplit[1])-fixWindowSearchSize, Long.parseLong(lineSplit[1])+fixWindowSearchSize);
 			
 			boolean match = false;
@@ -101,38 +154,11 @@ public class Step2_FixIndelNotation
 				{
 					if(match == true)
 					{
-						pw.close();
 						s.close();
 						clinvarVcf.close();
 						throw new Exception("double match?? " + line);
 					}
-					StringBuffer fixedLine = new StringBuffer();
-					for(int i = 0; i < lineSplit.length; i++)
-					{
-						if(i == 1)
-						{
-					//		System.out.println("updating position from " + lineSplit[1] + " to " + e.getString("POS"));
-							fixedLine.append(e.getString("POS") + "\t");
-						}
-						else if(i == 3)
-						{
-							fixedLine.append(e.getString("REF") + "\t");
-						}
-						else if(i == 4)
-						{
-							fixedLine.append(e.getString("ALT") + "\t");
-						}
-						else
-						{
-							fixedLine.append(lineSplit[i] + "\t");
-						}
-//						if(e.getString("REF").equals(e.getString("ALT")))
-//						{
-//							System.out.println("WTF?? " + e.toString());
-//						}
-					}
-					fixedLine.deleteCharAt(fixedLine.length()-1);
-					lines.add(fixedLine.toString());
+					lines.add(fixLine(lineSplit, e.getString("POS"), e.getString("REF"), e.getString("ALT")));
 					match = true;
 					fixes++;
 					totalPassedVariants++;
@@ -146,15 +172,40 @@ public class Step2_FixIndelNotation
 			
 		}
 		
+		if(batch)
+		{
+			System.out.println("matching " + (batchLines.size() - totalPassedVariants) + " variants to fix in one pass over " + args[1]);
+			matchInOnePass(new File(args[1]), batchFixesByRsId, fixWindowSearchSize);
+			for(BatchFix fix : batchLines)
+			{
+				if(fix.lineSplit == null)
+				{
+					lines.add(fix.line);
+				}
+				else if(fix.fixedLine != null)
+				{
+					lines.add(fix.fixedLine);
+					fixes++;
+					totalPassedVariants++;
+				}
+				else
+				{
+					failedFixes++;
+				}
+			}
+		}
+		
 		for(String writeLine : lines.getLines().values())
 		{
-			pw.println(writeLine);
+			vcf.add(writeLine);
 		}
 		
-		pw.flush();
-		pw.close();
+		vcf.close();
 		s.close();
-		clinvarVcf.close();
+		if(clinvarVcf != null)
+		{
+			clinvarVcf.close();
+		}
 		
 		System.out.println("total variants seen: " + (totalPassedVariants+lost+failedFixes));
 		System.out.println("total passed variants after checking & fixing: " + totalPassedVariants);
@@ -167,4 +218,117 @@ public class Step2_FixIndelNotation
 		System.out.println("total duplicate variants dropped out: " + lines.getDuplicateLines().size());
 	}
 
+	/**
+	 * A line to fix in batch mode, or a line that passed as-is when lineSplit is null
+	 */
+	private static class BatchFix
+	{
+		String line;
+		String[] lineSplit;
+		String fixedLine;
+
+		BatchFix(String line, String[] lineSplit)
+		{
+			this.line = line;
+			this.lineSplit = lineSplit;
+		}
+	}
+
+	/**
+	 * Replace POS, REF and ALT of a line from step 1 with those of the matching ClinVar VCF record
+	 */
+	private static String fixLine(String[] lineSplit, String pos, String ref, String alt)
+	{
+		StringBuffer fixedLine = new StringBuffer();
+		for(int i = 0; i < lineSplit.length; i++)
+		{
+			if(i == 1)
+			{
+				fixedLine.append(pos + "\t");
+			}
+			else if(i == 3)
+			{
+				fixedLine.append(ref + "\t");
+			}
+			else if(i == 4)
+			{
+				fixedLine.append(alt + "\t");
+			}
+			else
+			{
+				fixedLine.append(lineSplit[i] + "\t");
+			}
+		}
+		fixedLine.deleteCharAt(fixedLine.length()-1);
+		return fixedLine.toString();
+	}
+
+	/**
+	 * Read the ClinVar VCF once from start to end, and look up each record by RS id in the variants to fix.
+	 * A record matches when it is on the same chromosome and its POS is in pos-window..pos+window, the records
+	 * the query per variant returns (see support.ExACSiteSource for this rule). Matching more than one record
+	 * is an error, as it is for the query per variant.
+	 * @param clinvarVcfFile
+	 * @param fixesByRsId
+	 * @param window
+	 * @throws Exception
+	 */
+	private static void matchInOnePass(File clinvarVcfFile, HashMap<String, List<BatchFix>> fixesByRsId, int window) throws Exception
+	{
+		BufferedReader br = new BufferedReader(new InputStreamReader(new GZIPInputStream(new FileInputStream(clinvarVcfFile), 1 << 16), StandardCharsets.UTF_8), 1 << 16);
+		try
+		{
+			//only the first 5 columns are needed: CHROM, POS, ID, REF, ALT
+			int[] tabs = new int[5];
+			String line;
+			while((line = br.readLine()) != null)
+			{
+				if(line.startsWith("#"))
+				{
+					continue;
+				}
+				int nrOfTabs = 0;
+				for(int i = 0; i < line.length() && nrOfTabs < tabs.length; i++)
+				{
+					if(line.charAt(i) == '\t')
+					{
+						tabs[nrOfTabs++] = i;
+					}
+				}
+				if(nrOfTabs < 4)
+				{
+					throw new Exception("expected at least CHROM, POS, ID, REF and ALT in line: " + line);
+				}
+				String id = line.substring(tabs[1] + 1, tabs[2]).replace("rs", "");
+				List<BatchFix> candidates = fixesByRsId.get(id);
+				if(candidates == null)
+				{
+					continue;
+				}
+				String chrom = line.substring(0, tabs[0]);
+				String pos = line.substring(tabs[0] + 1, tabs[1]);
+				String ref = line.substring(tabs[2] + 1, tabs[3]);
+				String alt = line.substring(tabs[3] + 1, nrOfTabs > 4 ? tabs[4] : line.length());
+				long start = Long.parseLong(pos);
+				for(BatchFix fix : candidates)
+				{
+					long fixPos = Long.parseLong(fix.lineSplit[1]);
+					if(!fix.lineSplit[0].equals(chrom) || start < fixPos - window || start > fixPos + window)
+					{
+						continue;
+					}
+					if(fix.fixedLine != null)
+					{
+						throw new Exception("double match?? " + fix.line);
+					}
+					fix.fixedLine = fixLine(fix.lineSplit, pos, ref, alt);
+				}
+			}
+		}
+		finally
+		{
+			br.close();
+		}
+	}
+
 }
@@ -1,14 +1,57 @@
 package org.molgenis.calibratecadd;
 
+import java.io.File;
+import java.io.PrintWriter;
+
+import org.molgenis.calibratecadd.support.SnpEffProcessAnnotator;
+import org.molgenis.calibratecadd.support.VcfAnnotator;
+
 public class Step3_SnpEff
 {
 
 	/**
-	 * 
+	 *
 	 * Downloaden from: http://snpeff.sourceforge.net/
-	 * 
+	 *
 	 * Run using: java -Xmx4g -jar snpEff.jar hg19 -noStats -noLog -lof -canon -ud 0 clinvar.patho.fix.vcf > clinvar.patho.fix.snpeff.vcf
-	 * 
-	 * 
+	 *
+	 * or run this class, which does the same:
+	 * [0] file produced in step 2
+	 * [1] snpEff.jar
+	 * [2] output file
+	 *
+	 * Options:
+	 * --snpeff-genome NAME : snpEff genome to annotate with (default hg19)
+	 *
+	 * To skip writing this file, use the --snpeff option of step 4 instead, which annotates the output of step 2 while loading it.
+	 *
 	 */
+	public static void main(String[] args) throws Exception
+	{
+		String genome = SnpEffProcessAnnotator.DEFAULT_GENOME;
+		for(int i = 3; i < args.length; i++)
+		{
+			if(args[i].equals("--snpeff-genome") && i + 1 < args.length)
+			{
+				genome = args[++i];
+			}
+			else
+			{
+				throw new Exception("unknown option: " + args[i]);
+			}
+		}
+
+		final PrintWriter pw = new PrintWriter(new File(args[2]));
+		VcfAnnotator snpEff = new SnpEffProcessAnnotator(new File(args[1]), genome, SnpEffProcessAnnotator.DEFAULT_MAX_HEAP);
+		try
+		{
+			snpEff.annotate(new File(args[0]), line -> pw.println(line));
+		}
+		finally
+		{
+			snpEff.close();
+			pw.flush();
+			pw.close();
+		}
+	}
 }
@@ -4,18 +4,44 @@ import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.PrintWriter;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
 import org.apache.commons.lang3.StringUtils;
-import org.molgenis.calibratecadd.support.EntityPlus;
+import org.molgenis.calibratecadd.support.AlleleRecord;
+import org.molgenis.calibratecadd.support.Chromosomes;
+import org.molgenis.calibratecadd.support.ExACSite;
+import org.molgenis.calibratecadd.support.ExACSiteSource;
+import org.molgenis.calibratecadd.support.ExACStore;
+import org.molgenis.calibratecadd.support.GeneWindow;
+import org.molgenis.calibratecadd.support.GenomeSweep;
 import org.molgenis.calibratecadd.support.ImpactRatios;
+import org.molgenis.calibratecadd.support.IndexedFasta;
+import org.molgenis.calibratecadd.support.SnpEffProcessAnnotator;
 import org.molgenis.calibratecadd.support.Step4_Helper;
+import org.molgenis.calibratecadd.support.TabixExACSiteSource;
+import org.molgenis.calibratecadd.support.VEPimpactCategories;
 import org.molgenis.calibratecadd.support.VariantIntersectResult;
+import org.molgenis.calibratecadd.support.VariantKey;
+import org.molgenis.calibratecadd.support.VariantKeyMap;
+import org.molgenis.calibratecadd.support.VariantNormaliser;
+import org.molgenis.calibratecadd.support.VcfAnnotator;
 import org.molgenis.data.Entity;
-import org.molgenis.data.annotator.tabix.TabixVcfRepository;
 import org.molgenis.data.vcf.VcfRepository;
 
 public class Step4_MatchingVariantsFromExAC
@@ -23,193 +49,353 @@ public class Step4_MatchingVariantsFromExAC
 
 	/**
 	 * Uses:
-	 * [0] file produced in step 3
+	 * [0] file produced in step 3, or in step 2 when using --snpeff
 	 * [1] ftp://ftp.broadinstitute.org/pub/ExAC_release/release0.3/ExAC.r0.3.sites.vep.vcf.gz (+ in the same folder ExAC.r0.3.sites.vep.vcf.gz.tbi )
+	 *     or the same data extracted once with support.ExACStoreBuilder, which is much faster to query
 	 * [2] output file
 	 * 
+	 * Options:
+	 * --threads N : process N genes at the same time (default 1), output is the same for any N
+	 * --sweep : read the ExAC file once from start to end instead of a tabix query per gene, output is the same,
+ *           as each gene gets the ExAC records with a POS in its window (see support.ExACSiteSource)
+	 * --reference FILE : reference genome FASTA with a .fai index (e.g. human_g1k_v37.fasta), when given ExAC and ClinVar
+	 *                    variants are matched after left-aligning and trimming them, so indels written differently are also found
+	 * --snpeff FILE : snpEff.jar, to annotate the output of step 2 while loading it, instead of running step 3 first
+	 * --snpeff-genome NAME : snpEff genome to annotate with (default hg19)
+	 * 
 	 * Example:
 	 * E:\Data\clinvarcadd\clinvar.patho.fix.snpeff.vcf
 	 * E:\Data\clinvarcadd\ExAC.r0.3.sites.vep.vcf.gz
 	 * E:\Data\clinvarcadd\clinvar.patho.fix.snpeff.exac.vcf
+	 * --threads 8
 	 * 
 	 */
 	public static void main(String[] args) throws Exception
 	{
-		Step4_MatchingVariantsFromExAC step4 = new Step4_MatchingVariantsFromExAC();
-		step4.loadClinvarPatho(args[0]);
-		step4.createMatchingExACsets(args[1]);
-		step4.printVariantsToFile(args[2]);
+		int threads = 1;
+		boolean sweep = false;
+		File reference = null;
+		File snpEffJar = null;
+		String snpEffGenome = SnpEffProcessAnnotator.DEFAULT_GENOME;
+		for(int i = 3; i < args.length; i++)
+		{
+			if(args[i].equals("--threads") && i + 1 < args.length)
+			{
+				threads = Integer.parseInt(args[++i]);
+			}
+			else if(args[i].equals("--sweep"))
+			{
+				sweep = true;
+			}
+			else if(args[i].equals("--reference") && i + 1 < args.length)
+			{
+				reference = new File(args[++i]);
+			}
+			else if(args[i].equals("--snpeff") && i + 1 < args.length)
+			{
+				snpEffJar = new File(args[++i]);
+			}
+			else if(args[i].equals("--snpeff-genome") && i + 1 < args.length)
+			{
+				snpEffGenome = args[++i];
+			}
+			else
+			{
+				throw new Exception("unknown option: " + args[i]);
+			}
+		}
 
+		VcfAnnotator annotator = snpEffJar == null ? null : new SnpEffProcessAnnotator(snpEffJar, snpEffGenome, SnpEffProcessAnnotator.DEFAULT_MAX_HEAP);
+		try
+		{
+			run(args[0], args[1], args[2], threads, sweep, reference, annotator);
+		}
+		finally
+		{
+			if(annotator != null)
+			{
+				annotator.close();
+			}
+		}
+	}
+
+	/**
+	 * Same as main, with any annotation stage, e.g. a stub annotator in a test
+	 * @param clinvarPathoLoc file produced in step 3, or in step 2 when an annotator is given
+	 * @param exacLoc
+	 * @param outputLoc
+	 * @param threads
+	 * @param sweep
+	 * @param reference FASTA to normalise variants with, or null
+	 * @param annotator annotates the output of step 2 while it is loaded, or null, not closed here
+	 * @throws Exception
+	 */
+	public static void run(String clinvarPathoLoc, String exacLoc, String outputLoc, int threads, boolean sweep, File reference, VcfAnnotator annotator) throws Exception
+	{
+		Step4_MatchingVariantsFromExAC step4 = new Step4_MatchingVariantsFromExAC();
+		IndexedFasta referenceFasta = reference == null ? null : new IndexedFasta(reference);
+		try
+		{
+			step4.loadClinvarPatho(clinvarPathoLoc, annotator);
+			step4.createMatchingExACsets(exacLoc, threads, sweep, referenceFasta == null ? null : new VariantNormaliser(referenceFasta));
+			step4.printVariantsToFile(outputLoc);
+		}
+		finally
+		{
+			if(referenceFasta != null)
+			{
+				referenceFasta.close();
+			}
+		}
 	}
 
 	public static String NA = "";
-	HashMap<String, List<Entity>> clinvarPatho = new HashMap<String, List<Entity>>();
-	HashMap<String, List<EntityPlus>> matchedExACvariants = new HashMap<String, List<EntityPlus>>();
-	HashMap<String, String> geneInfo = new HashMap<String, String>();
+	HashMap<String, List<AlleleRecord>> clinvarPatho = new HashMap<String, List<AlleleRecord>>();
+	
+	//filled per gene, possibly by multiple threads
+	ConcurrentHashMap<String, List<AlleleRecord>> matchedExACvariants = new ConcurrentHashMap<String, List<AlleleRecord>>();
+	ConcurrentHashMap<String, String> geneInfo = new ConcurrentHashMap<String, String>();
+	ConcurrentHashMap<String, Long> geneProcessingTime = new ConcurrentHashMap<String, Long>();
+	AtomicInteger passedGenes = new AtomicInteger();
+	AtomicInteger matchedVariants = new AtomicInteger();
+	AtomicInteger droppedGenesClinVarTooFew = new AtomicInteger();
+	AtomicInteger droppedGenesExACtooFew = new AtomicInteger();
+	AtomicInteger droppedGenesNoMatchedVariants = new AtomicInteger();
 	
 	// keep track of which 'ANN' field index was used to match the gene to ClinVar symbol
 	//e.g. if the matched gene is the second ANN field, we need to use that impact in the analysis
-	HashMap<String, Integer> variantToNonZeroSnpEffGeneIndex = new HashMap<String, Integer>();
+	VariantKeyMap<Integer> variantToNonZeroSnpEffGeneIndex = new VariantKeyMap<Integer>();
 
-	private void loadClinvarPatho(String clinvarPathoLoc) throws Exception
+	/**
+	 * Load the ClinVar pathogenic variants per gene
+	 * @param clinvarPathoLoc file produced in step 3, or in step 2 when an annotator is given
+	 * @param annotator annotates the file while it is loaded, e.g. SnpEffProcessAnnotator, or null
+	 * @throws Exception
+	 */
+	public void loadClinvarPatho(String clinvarPathoLoc, VcfAnnotator annotator) throws Exception
 	{
+		if(annotator != null)
+		{
+			loadAnnotatedClinvarPatho(clinvarPathoLoc, annotator);
+			return;
+		}
 		System.out.println("loading clinvar pathogenic variants from " + clinvarPathoLoc + " ..");
 		VcfRepository vcfRepo = new VcfRepository(new File(clinvarPathoLoc), "clinvar");
-
-		java.util.Iterator<Entity> vcfRepoIter = vcfRepo.iterator();
-
-		while (vcfRepoIter.hasNext())
+		try
 		{
-			Entity record = vcfRepoIter.next();
-			if (record.getString("ANN") == null)
-			{
-				vcfRepo.close();
-				throw new Exception("Please annotate the VCF with a recent snpEff version! ANN field not found for "
-						+ record.toString());
-			}
-
-			if (record.getString(Step1_GetClinVarPathogenic.CLINVAR_INFO) == null)
+			java.util.Iterator<Entity> vcfRepoIter = vcfRepo.iterator();
+			while (vcfRepoIter.hasNext())
 			{
-				vcfRepo.close();
-				throw new Exception("Did you create this VCF running Step1? " + Step1_GetClinVarPathogenic.CLINVAR_INFO
-						+ " field not found for " + record.toString());
+				Entity record = vcfRepoIter.next();
+				addClinvarPatho(record.getString("#CHROM"), record.getLong("POS"), record.getString("REF"), record.getString("ALT"),
+						record.getString("ANN"), record.getString(Step1_GetClinVarPathogenic.CLINVAR_INFO), record);
 			}
+		}
+		finally
+		{
+			vcfRepo.close();
+		}
+		
+		System.out.println("there are " + variantToNonZeroSnpEffGeneIndex.size() + " ClinVar variants for which the first SnpEff gene symbol is not the one matched to the ClinVar gene symbol");
+	}
 
-			String geneAccordingToClinVar = record.getString(Step1_GetClinVarPathogenic.CLINVAR_INFO).split("\\|", -1)[1];
-			
-			//sanity check
-			if(geneAccordingToClinVar.length() == 0)
+	/**
+	 * Annotate the output of step 2 on the fly and load the annotated records as they come in, instead of reading the output of step 3
+	 * @param clinvarPathoLoc
+	 * @param annotator
+	 * @throws Exception
+	 */
+	private void loadAnnotatedClinvarPatho(String clinvarPathoLoc, VcfAnnotator annotator) throws Exception
+	{
+		System.out.println("annotating and loading clinvar pathogenic variants from " + clinvarPathoLoc + " ..");
+		final String clinvarInfoPrefix = Step1_GetClinVarPathogenic.CLINVAR_INFO + "=";
+		annotator.annotate(new File(clinvarPathoLoc), line -> {
+			if(line.startsWith("#"))
 			{
-				vcfRepo.close();
-				throw new Exception("geneAccordingToClinVar length 0");
+				return;
 			}
-			
-			//add all gene symbols provided by SnpEff to a list
-			List<String> genesAccordingToSnpEff = new ArrayList<String>();
-			String[] annSplit = record.getString("ANN").split(",", -1);
-			for(String ann : annSplit)
+			String[] split = line.split("\t", -1);
+			String ann = null;
+			String clinvarInfo = null;
+			for(String info : split[7].split(";", -1))
 			{
-				String symbol = ann.split("\\|")[3];
-				if(!symbol.isEmpty())
+				if(info.startsWith("ANN="))
 				{
-					genesAccordingToSnpEff.add(symbol);
+					ann = info.substring(4);
+				}
+				else if(info.startsWith(clinvarInfoPrefix))
+				{
+					clinvarInfo = info.substring(clinvarInfoPrefix.length());
 				}
 			}
-			
-			String finalGeneSymbol = null;
+			addClinvarPatho(split[0], Long.parseLong(split[1]), split[3], split[4], ann, clinvarInfo, line);
+		});
+		
+		System.out.println("there are " + variantToNonZeroSnpEffGeneIndex.size() + " ClinVar variants for which the first SnpEff gene symbol is not the one matched to the ClinVar gene symbol");
+	}
 
-			// if snpeff has no genes, use the clinvar one (difference solved!)
-			// happens a lot for mitochondrial genes (e.g. MT-ND6, MT-CYB, MT-RNR1 etc)
-			if (genesAccordingToSnpEff.isEmpty())
+	/**
+	 * Assign one annotated ClinVar variant to a gene
+	 * @param chrom
+	 * @param pos
+	 * @param ref
+	 * @param alt
+	 * @param ann SnpEff ANN field
+	 * @param clinvarInfo CLINVAR field written in step 1
+	 * @param record only used in error messages
+	 * @throws Exception
+	 */
+	private void addClinvarPatho(String chrom, long pos, String ref, String alt, String ann, String clinvarInfo, Object record) throws Exception
+	{
+		if (ann == null)
+		{
+			throw new Exception("Please annotate the VCF with a recent snpEff version! ANN field not found for "
+					+ record.toString());
+		}
+
+		if (clinvarInfo == null)
+		{
+			throw new Exception("Did you create this VCF running Step1? " + Step1_GetClinVarPathogenic.CLINVAR_INFO
+					+ " field not found for " + record.toString());
+		}
+
+		String geneAccordingToClinVar = clinvarInfo.split("\\|", -1)[1];
+		
+		//sanity check
+		if(geneAccordingToClinVar.length() == 0)
+		{
+			throw new Exception("geneAccordingToClinVar length 0");
+		}
+		
+		//add all gene symbols provided by SnpEff to a list
+		List<String> genesAccordingToSnpEff = new ArrayList<String>();
+		String[] annSplit = ann.split(",", -1);
+		for(String annotation : annSplit)
+		{
+			String symbol = annotation.split("\\|")[3];
+			if(!symbol.isEmpty())
 			{
-				finalGeneSymbol = geneAccordingToClinVar;
+				genesAccordingToSnpEff.add(symbol);
 			}
+		}
+		
+		String finalGeneSymbol = null;
 
-			String chrPosRefAlt = record.getString("#CHROM") + "_" + record.getString("POS") + "_" + record.getString("REF") + "_" + record.getString("ALT");
-			
-			// no joy? then we check all SnpEff symbols vs ClinVar
-			if(finalGeneSymbol == null)
+		// if snpeff has no genes, use the clinvar one (difference solved!)
+		// happens a lot for mitochondrial genes (e.g. MT-ND6, MT-CYB, MT-RNR1 etc)
+		if (genesAccordingToSnpEff.isEmpty())
+		{
+			finalGeneSymbol = geneAccordingToClinVar;
+		}
+
+		VariantKey chrPosRefAlt = VariantKey.of(chrom, pos, ref, alt);
+		
+		// no joy? then we check all SnpEff symbols vs ClinVar
+		if(finalGeneSymbol == null)
+		{
+			int index = 0;
+			for(String snpEffGene : genesAccordingToSnpEff)
 			{
-				int index = 0;
-				for(String snpEffGene : genesAccordingToSnpEff)
+				// if this snpeff gene equals the clinvar one, we're done
+				if (snpEffGene.equals(geneAccordingToClinVar))
 				{
-					// if this snpeff gene equals the clinvar one, we're done
-					if (snpEffGene.equals(geneAccordingToClinVar))
-					{
-						finalGeneSymbol = geneAccordingToClinVar;
-					}
-
-					// sometimes, a SnpEff symbol 'contains' the ClinVar symbol
-					// happens quite often, e.g. TTN-AS1 contains TTN, INS-IGF2 contains INS etc.
-					// if this happens, assign the ClinVar symbol (ie. the smaller one) and we're done
-					else if (snpEffGene.contains(geneAccordingToClinVar))
-					{
-						finalGeneSymbol = geneAccordingToClinVar;
-					}
-					
-					// opposite scenario: clinvar gene contains the snpeff one, use the snpeff one
-					// seems to happen once: ClinVar CORO7-PAM16 contains SnpEff gene PAM16
-					else if(geneAccordingToClinVar.contains(snpEffGene))
-					{
-						finalGeneSymbol = snpEffGene;
-					}
-
-					if(finalGeneSymbol != null)
-					{
-						if(index > 0)
-						{
-							variantToNonZeroSnpEffGeneIndex.put(chrPosRefAlt, index);
-						}
-						break;
-					}
-					index++;
+					finalGeneSymbol = geneAccordingToClinVar;
 				}
-			}
-			
 
-			// still no joy?
-			// there is a difference we cannot resolve nicely
-			// so we concatenate the symbols from both
-			if (finalGeneSymbol == null)
-			{
-				// simple case: we have 1 + 1
-				if(genesAccordingToSnpEff.size() == 1)
+				// sometimes, a SnpEff symbol 'contains' the ClinVar symbol
+				// happens quite often, e.g. TTN-AS1 contains TTN, INS-IGF2 contains INS etc.
+				// if this happens, assign the ClinVar symbol (ie. the smaller one) and we're done
+				else if (snpEffGene.contains(geneAccordingToClinVar))
 				{
-					finalGeneSymbol = geneAccordingToClinVar + "_" + genesAccordingToSnpEff.iterator().next();
+					finalGeneSymbol = geneAccordingToClinVar;
 				}
 				
-				
-				//we make 1 exception for a mistake in clinvar: 'p.p.Arg801His' is actually gene 'RTEL1', but the notation is swapped
-				//hopefully this will be fixed in the future so this exception is no longer needed (and removed)
-				else if(geneAccordingToClinVar.equals("p.p.Arg801His"))
+				// opposite scenario: clinvar gene contains the snpeff one, use the snpeff one
+				// seems to happen once: ClinVar CORO7-PAM16 contains SnpEff gene PAM16
+				else if(geneAccordingToClinVar.contains(snpEffGene))
 				{
-					finalGeneSymbol = "RTEL1";
+					finalGeneSymbol = snpEffGene;
 				}
-				
-				// if still not solved, we have 1 clinvar and 2+ snpeff symbols, so simply add them all to 1 big symbol
-				// note 1: does not occur with clinvar november 2015 release
-				// note 2: this would be slightly problematic because we don't know which SnpEff ANN field to consider later on!
-				else
+
+				if(finalGeneSymbol != null)
 				{
-					String snpEffGenes = "";
-					for(String snpEffGene : genesAccordingToSnpEff)
+					if(index > 0)
 					{
-						snpEffGenes +=  "_" + snpEffGene;
+						variantToNonZeroSnpEffGeneIndex.put(chrPosRefAlt, index);
 					}
-					finalGeneSymbol = geneAccordingToClinVar + snpEffGenes;
+					break;
 				}
-			}		
+				index++;
+			}
+		}
+		
 
-			if (clinvarPatho.containsKey(finalGeneSymbol))
+		// still no joy?
+		// there is a difference we cannot resolve nicely
+		// so we concatenate the symbols from both
+		if (finalGeneSymbol == null)
+		{
+			// simple case: we have 1 + 1
+			if(genesAccordingToSnpEff.size() == 1)
+			{
+				finalGeneSymbol = geneAccordingToClinVar + "_" + genesAccordingToSnpEff.iterator().next();
+			}
+			
+			
+			//we make 1 exception for a mistake in clinvar: 'p.p.Arg801His' is actually gene 'RTEL1', but the notation is swapped
+			//hopefully this will be fixed in the future so this exception is no longer needed (and removed)
+			else if(geneAccordingToClinVar.equals("p.p.Arg801His"))
 			{
-				clinvarPatho.get(finalGeneSymbol).add(record);
+				finalGeneSymbol = "RTEL1";
 			}
+			
+			// if still not solved, we have 1 clinvar and 2+ snpeff symbols, so simply add them all to 1 big symbol
+			// note 1: does not occur with clinvar november 2015 release
+			// note 2: this would be slightly problematic because we don't know which SnpEff ANN field to consider later on!
 			else
 			{
-				List<Entity> variants = new ArrayList<Entity>();
-				variants.add(record);
-				clinvarPatho.put(finalGeneSymbol, variants);
+				String snpEffGenes = "";
+				for(String snpEffGene : genesAccordingToSnpEff)
+				{
+					snpEffGenes +=  "_" + snpEffGene;
+				}
+				finalGeneSymbol = geneAccordingToClinVar + snpEffGenes;
 			}
+		}		
+
+		//keep only what we need of the record, including the impact from the ANN field of the matched gene
+		int annIndex = variantToNonZeroSnpEffGeneIndex.containsKey(chrPosRefAlt) ? variantToNonZeroSnpEffGeneIndex.get(chrPosRefAlt) : 0;
+		AlleleRecord variant = new AlleleRecord(chrom, (int) pos, ref, alt, 0, 0, null);
+		variant.impact = (byte) VEPimpactCategories.getImpactRank(annSplit[annIndex].split("\\|", -1)[2]);
+
+		if (clinvarPatho.containsKey(finalGeneSymbol))
+		{
+			clinvarPatho.get(finalGeneSymbol).add(variant);
+		}
+		else
+		{
+			List<AlleleRecord> variants = new ArrayList<AlleleRecord>();
+			variants.add(variant);
+			clinvarPatho.put(finalGeneSymbol, variants);
 		}
-		
-		System.out.println("there are " + variantToNonZeroSnpEffGeneIndex.size() + " ClinVar variants for which the first SnpEff gene symbol is not the one matched to the ClinVar gene symbol");
-		
-		vcfRepo.close();
 	}
 
-	private void createMatchingExACsets(String exacLoc) throws Exception
+	private void createMatchingExACsets(String exacLoc, int threads, boolean sweep, VariantNormaliser normaliser) throws Exception
 	{
-		Step4_Helper st4h = new Step4_Helper(variantToNonZeroSnpEffGeneIndex);
-		System.out.println("loading matching exac variants..");
-
-		int passedGenes = 0;
-		int matchedVariants = 0;
-		int droppedGenesClinVarTooFew = 0;
-		int droppedGenesExACtooFew = 0;
-		int droppedGenesNoMatchedVariants = 0;
-
+		final Step4_Helper st4h = new Step4_Helper(normaliser);
+		System.out.println("loading matching exac variants using " + threads + " thread(s)" + (sweep ? ", in one sweep over " + exacLoc : "") + "..");
+
+		//genes are independent of each other, so process them on a bounded pool
+		//results are collected per gene and written out later in sorted gene order, so the output does not depend on the nr of threads
+		final ExecutorService pool = Executors.newFixedThreadPool(threads);
+		final List<Future<?>> geneTasks = new ArrayList<Future<?>>();
+		long startTime = System.nanoTime();
+
+		//number the genes in sorted order and determine the window in which we look for ExAC variants
+		final HashMap<String, Integer> geneIndex = new HashMap<String, Integer>();
+		List<GeneWindow> windows = new ArrayList<GeneWindow>();
 		int index = 0;
-		for (String gene : clinvarPatho.keySet())
+		for (String gene : new TreeSet<String>(clinvarPatho.keySet()))
 		{
 			index++;
 			
@@ -223,138 +409,281 @@ public class Step4_MatchingVariantsFromExAC
 //				break;
 //			}
 
-			String chrom = null;
-			long leftMostPos = -1;
-			long rightMostPos = -1;
-			
-			for (Entity cvv : clinvarPatho.get(gene))
-			{
-				long pos = cvv.getLong("POS");
-				String cvvchrom = cvv.getString("#CHROM");
-				if (pos > rightMostPos)
-				{
-					rightMostPos = pos;
-				}
+			geneIndex.put(gene, index);
+			windows.add(GeneWindow.fromClinVarVariants(gene, clinvarPatho.get(gene)));
+		}
 
-				if (pos < leftMostPos || leftMostPos == -1)
+		ExACSiteSource exac = null;
+		VcfRepository exacVcf = null;
+		try
+		{
+			if(sweep && ExACStore.isStore(new File(exacLoc)))
+			{
+				throw new Exception("--sweep reads the ExAC VCF, an ExAC store is queried directly: " + exacLoc);
+			}
+			if(sweep)
+			{
+				//read ExAC once from start to end, and hand each gene its variants as soon as the sweep has passed its window
+				//limit the nr of genes waiting to be processed, so the sweep does not run far ahead of the pool and fill up memory
+				final Semaphore genesInFlight = new Semaphore(threads * 2);
+				exacVcf = new VcfRepository(new File(exacLoc), "exac");
+				new GenomeSweep(windows).sweep(exacVcf.iterator(), new GenomeSweep.WindowListener()
 				{
-					leftMostPos = pos;
-				}
-				if (chrom == null)
+					@Override
+					public void windowComplete(GeneWindow window, List<Entity> records) throws Exception
+					{
+						genesInFlight.acquire();
+						geneTasks.add(submitGene(pool, window, geneIndex.get(window.gene), records, null, st4h, genesInFlight));
+					}
+				});
+			}
+			else
+			{
+				//open ExAC (an extracted store, or the VCF and its tabix index) once for all genes, instead of once per gene
+				exac = ExACStore.isStore(new File(exacLoc)) ? new ExACStore(new File(exacLoc)) : new TabixExACSiteSource(new File(exacLoc), threads);
+				for (GeneWindow window : windows)
 				{
-					chrom = cvvchrom;
+					geneTasks.add(submitGene(pool, window, geneIndex.get(window.gene), null, exac, st4h, null));
 				}
 			}
-			
-			// include (biggest) part of exon the variant(s) are in, typical exon is 147 nt
-			// http://nar.oxfordjournals.org/content/early/2012/07/11/nar.gks652.full
-			leftMostPos = leftMostPos - 100;
-			rightMostPos = rightMostPos + 100;
-
-			TabixVcfRepository tr = new TabixVcfRepository(new File(exacLoc), "exac");
-
-			List<Entity> exacVariants = new ArrayList<Entity>();
 
-			try
+			for (Future<?> geneTask : geneTasks)
 			{
-				exacVariants = tr.query(chrom, leftMostPos, rightMostPos);
+				geneTask.get();
 			}
-			catch (java.lang.ArrayIndexOutOfBoundsException e)
+		}
+		catch (ExecutionException e)
+		{
+			throw new Exception("failed to process gene", e.getCause());
+		}
+		finally
+		{
+			//all genes are done when we get here without an error, otherwise stop the ones still running
+			//the pool threads are not daemons, so the JVM would not exit while the pool is up
+			pool.shutdownNow();
+			if(exacVcf != null)
 			{
-				// no chrom in tabix or so
+				exacVcf.close();
 			}
-			
-			//there are a lot of genes with only 1 pathogenic variant.. a bit silly to consider them seriously for calibration work
-			//drop and report as N1
-			if(clinvarPatho.get(gene).size() < 2)
+			if(exac != null)
 			{
-				droppedGenesClinVarTooFew++;
-				//report exac impact and MAF (if overlaps with clinvar) anyway
-				String exacImpact = exacVariants.size() > 0 ? "\t" + st4h.calculateImpactRatiosFromUnprocessedVariants(exacVariants).toString() : StringUtils.repeat("\t" + NA, 4);
-				String maf = exacVariants.size() > 0 ? st4h.getExACMAFforUnprocessedClinvarVariant(clinvarPatho.get(gene).get(0), exacVariants) : NA;
-				geneInfo.put(gene, "N1" + "\t" + clinvarPatho.get(gene).get(0).getString("#CHROM") + "\t" + clinvarPatho.get(gene).get(0).getString("POS") + "\t" + clinvarPatho.get(gene).get(0).getString("POS") + "\t" + exacVariants.size() + "\t" + clinvarPatho.get(gene).size() + "\t" + (maf.equals(NA) ? 0 : 1) + "\t" + 0 + "\t" + maf + exacImpact + "\t" + st4h.calculateImpactRatiosFromUnprocessedVariants(clinvarPatho.get(gene)) + StringUtils.repeat("\t" + NA, 4));
-				continue;
+				exac.close();
 			}
+		}
+		long totalTime = System.nanoTime() - startTime;
+		
+		System.out.println();
+		System.out.println("#### done ####");
+		System.out.println();
+		
+		// oct 2015: 2638 pass, 960040 variants, 393 dropped
+		System.out.println("passed genes (>0 properly matched interval exac variants): " + passedGenes);
+		System.out.println("matched variants (total variants used for final calibration): " + matchedVariants);
+		System.out.println("dropped genes (less than 2 clinvar variants): " + droppedGenesClinVarTooFew);
+		System.out.println("dropped genes (2+ clinvar, but 0 interval exac variants): " + droppedGenesExACtooFew);
+		System.out.println("dropped genes (2+ clinvar, but >0 interval exac variants, but 0 matched variants left after filtering): " + droppedGenesNoMatchedVariants);
+		printTimingSummary(totalTime, threads);
+	}
 
-			System.out.println("\n#####\n");
-			System.out.println(gene + " (" + index + " of " + clinvarPatho.keySet().size() + ") " + leftMostPos + " " + rightMostPos + " " + " has " + exacVariants.size());
-
-			if (exacVariants.size() > 0)
+	/**
+	 * Run the gene on the pool, either on the ExAC records collected by the sweep or on the result of a query
+	 * @param pool
+	 * @param window
+	 * @param index
+	 * @param sweptExacRecords records collected by the sweep, or null to query them
+	 * @param exac only used when there are no swept records
+	 * @param st4h
+	 * @param genesInFlight released when done, may be null
+	 * @return
+	 */
+	private Future<?> submitGene(ExecutorService pool, final GeneWindow window, final int index, final List<Entity> sweptExacRecords,
+			final ExACSiteSource exac, final Step4_Helper st4h, final Semaphore genesInFlight)
+	{
+		return pool.submit(new Callable<Void>()
+		{
+			@Override
+			public Void call() throws Exception
 			{
-				//found out: which variants are only in ExAC, which only in ClinVar, which in both
-				VariantIntersectResult vir = st4h.intersectVariants(exacVariants, clinvarPatho.get(gene));
-				
-				System.out.println("VariantIntersectResult for '"+gene+"', clinvaronly: " + vir.inClinVarOnly.size() + ", exaconly: " + vir.inExACOnly.size() + ", both: " + vir.inBoth_exac.size());
-				
-				//calculate MAF for shared variants, and use them to filter the other ExAC variants
-				//this way, we use the overlap to determine a fair cutoff for the 'assumed benign' variants
-				//if we have nothing to go on, we will set this to 0 and only select singleton variants
-				double pathogenicMAF = st4h.calculatePathogenicMAF(vir.inBoth_exac, vir.inClinVarOnly.size());
-				List<EntityPlus> exacFilteredByMAF = st4h.filterExACvariantsByMAF(vir.inExACOnly, pathogenicMAF);
-
-				System.out.println("exaconly filtered down to " + exacFilteredByMAF.size() + " variants using pathogenic MAF " + pathogenicMAF);
-
-				//calculate impact ratios over all clinvar variants, and use them to 'shape' the remaining ExAC variants
-				//they must become a set that looks just like the ClinVar variants, including same distribution of impact types
-				ImpactRatios pathoImpactRatio = st4h.calculateImpactRatios(Stream.concat(vir.inClinVarOnly.stream(), vir.inBoth_clinvar.stream()).collect(Collectors.toList()));
-				String unfilteredExacImpactRatio = vir.inExACOnly.size() > 0 ? "\t" + st4h.calculateImpactRatios(vir.inExACOnly).toString() : StringUtils.repeat("\t" + NA, 4);
-				
-				if(exacFilteredByMAF.size() == 0)
-				{
-					geneInfo.put(gene, "T1" + "\t" + chrom + "\t" + leftMostPos + "\t" + rightMostPos + "\t" + exacVariants.size() + "\t" + clinvarPatho.get(gene).size() + "\t" + vir.inBoth_clinvar.size() + "\t" + 0 + "\t" + pathogenicMAF + unfilteredExacImpactRatio + "\t" + pathoImpactRatio.toString() + StringUtils.repeat("\t" + NA, 4));
-					continue;
-				}
-				
-				List<EntityPlus> exacFilteredByMAFandImpact = st4h.shapeExACvariantsByImpactRatios(exacFilteredByMAF, pathoImpactRatio);
-				System.out.println("exaconly filtered down to " + exacFilteredByMAFandImpact.size() + " variants");
-				
-				
-				if (exacFilteredByMAFandImpact.size() > 0)
+				try
 				{
-					passedGenes++;
-					matchedExACvariants.put(gene, exacFilteredByMAFandImpact);
-					matchedVariants += exacFilteredByMAFandImpact.size();
-					//impacts AFTER impact correction and MAF filter has been applied
-					ImpactRatios MAFandImpactFilteredExacImpactRatio = st4h.calculateImpactRatios(exacFilteredByMAFandImpact);
-					geneInfo.put(gene, "Cx" + "\t" + chrom + "\t" + leftMostPos + "\t" + rightMostPos + "\t" + exacVariants.size() + "\t" + clinvarPatho.get(gene).size() + "\t" + vir.inBoth_clinvar.size() + "\t" + exacFilteredByMAFandImpact.size() + "\t" + pathogenicMAF + unfilteredExacImpactRatio + "\t" + pathoImpactRatio.toString().toString() + "\t" + MAFandImpactFilteredExacImpactRatio.toString());
+					long geneStartTime = System.nanoTime();
+					List<ExACSite> exacVariants = sweptExacRecords != null ? TabixExACSiteSource.toSites(sweptExacRecords) : exac.query(window.chrom, window.start, window.end);
+					processGene(window, index, exacVariants, st4h);
+					geneProcessingTime.put(window.gene, System.nanoTime() - geneStartTime);
+					return null;
 				}
-				else
+				finally
 				{
-					//impacts BEFORE impact correction (which whould have set it to 0) but AFTER the MAF filter has been applied
-					ImpactRatios MAFfilteredExacImpactRatio = st4h.calculateImpactRatios(exacFilteredByMAF);
-					String cat = st4h.determineImpactFilterCat(MAFfilteredExacImpactRatio, pathoImpactRatio, pathogenicMAF);
-					geneInfo.put(gene, cat + "\t" + chrom + "\t" + leftMostPos + "\t" + rightMostPos + "\t" + exacVariants.size() + "\t" + clinvarPatho.get(gene).size() + "\t" + vir.inBoth_clinvar.size() + "\t" + exacFilteredByMAF.size() + "\t" + pathogenicMAF + unfilteredExacImpactRatio + "\t" + pathoImpactRatio.toString() + "\t" + MAFfilteredExacImpactRatio.toString());
-					droppedGenesNoMatchedVariants++;
+					if(genesInFlight != null)
+					{
+						genesInFlight.release();
+					}
 				}
-				
-				
+			}
+		});
+	}
 
+	/**
+	 * Match the ExAC variants in the window around the ClinVar variants of this gene, and store the results in geneInfo and matchedExACvariants.
+	 * Only reads shared state, so genes can be processed concurrently.
+	 * @param window
+	 * @param index
+	 * @param exacVariants
+	 * @param st4h
+	 * @throws Exception
+	 */
+	private void processGene(GeneWindow window, int index, List<ExACSite> exacVariants, Step4_Helper st4h) throws Exception
+	{
+		//printed in one go, so the reports of genes processed at the same time do not interleave
+		StringBuilder report = new StringBuilder();
+		try
+		{
+			processGene(window, index, exacVariants, st4h, report);
+		}
+		finally
+		{
+			if(report.length() > 0)
+			{
+				System.out.print(report);
+			}
+		}
+	}
+
+	private void processGene(GeneWindow window, int index, List<ExACSite> exacVariants, Step4_Helper st4h, StringBuilder report) throws Exception
+	{
+		String gene = window.gene;
+		String chrom = window.chrom;
+		long leftMostPos = window.start;
+		long rightMostPos = window.end;
+		
+		//there are a lot of genes with only 1 pathogenic variant.. a bit silly to consider them seriously for calibration work
+		//drop and report as N1
+		if(clinvarPatho.get(gene).size() < 2)
+		{
+			droppedGenesClinVarTooFew.incrementAndGet();
+			//report exac impact and MAF (if overlaps with clinvar) anyway
+			String exacImpact = exacVariants.size() > 0 ? "\t" + st4h.calculateImpactRatiosFromUnprocessedVariants(exacVariants).toString() : StringUtils.repeat("\t" + NA, 4);
+			String maf = exacVariants.size() > 0 ? st4h.getExACMAFforUnprocessedClinvarVariant(clinvarPatho.get(gene).get(0), exacVariants) : NA;
+			geneInfo.put(gene, "N1" + "\t" + clinvarPatho.get(gene).get(0).getChromName() + "\t" + clinvarPatho.get(gene).get(0).pos + "\t" + clinvarPatho.get(gene).get(0).pos + "\t" + exacVariants.size() + "\t" + clinvarPatho.get(gene).size() + "\t" + (maf.equals(NA) ? 0 : 1) + "\t" + 0 + "\t" + maf + exacImpact + "\t" + st4h.calculateImpactRatios(clinvarPatho.get(gene)) + StringUtils.repeat("\t" + NA, 4));
+			return;
+		}
+
+		report.append("\n#####\n\n");
+		report.append(gene + " (" + index + " of " + clinvarPatho.size() + ") " + leftMostPos + " " + rightMostPos + " " + " has " + exacVariants.size()).append('\n');
+
+		if (exacVariants.size() > 0)
+		{
+			//found out: which variants are only in ExAC, which only in ClinVar, which in both
+			VariantIntersectResult vir = st4h.intersectVariants(exacVariants, clinvarPatho.get(gene));
+			
+			report.append("VariantIntersectResult for '"+gene+"', clinvaronly: " + vir.inClinVarOnly.size() + ", exaconly: " + vir.inExACOnly.size() + ", both: " + vir.inBoth_exac.size()).append('\n');
+			
+			//calculate MAF for shared variants, and use them to filter the other ExAC variants
+			//this way, we use the overlap to determine a fair cutoff for the 'assumed benign' variants
+			//if we have nothing to go on, we will set this to 0 and only select singleton variants
+			double pathogenicMAF = st4h.calculatePathogenicMAF(vir.inBoth_exac, vir.inClinVarOnly.size());
+			List<AlleleRecord> exacFilteredByMAF = st4h.filterExACvariantsByMAF(vir.inExACOnly, pathogenicMAF);
+
+			report.append("exaconly filtered down to " + exacFilteredByMAF.size() + " variants using pathogenic MAF " + pathogenicMAF).append('\n');
+
+			//calculate impact ratios over all clinvar variants, and use them to 'shape' the remaining ExAC variants
+			//they must become a set that looks just like the ClinVar variants, including same distribution of impact types
+			ImpactRatios pathoImpactRatio = st4h.calculateImpactRatios(Stream.concat(vir.inClinVarOnly.stream(), vir.inBoth_clinvar.stream()).collect(Collectors.toList()));
+			String unfilteredExacImpactRatio = vir.inExACOnly.size() > 0 ? "\t" + st4h.calculateImpactRatios(vir.inExACOnly).toString() : StringUtils.repeat("\t" + NA, 4);
+			
+			if(exacFilteredByMAF.size() == 0)
+			{
+				geneInfo.put(gene, "T1" + "\t" + chrom + "\t" + leftMostPos + "\t" + rightMostPos + "\t" + exacVariants.size() + "\t" + clinvarPatho.get(gene).size() + "\t" + vir.inBoth_clinvar.size() + "\t" + 0 + "\t" + pathogenicMAF + unfilteredExacImpactRatio + "\t" + pathoImpactRatio.toString() + StringUtils.repeat("\t" + NA, 4));
+				return;
+			}
+			
+			List<AlleleRecord> exacFilteredByMAFandImpact = st4h.shapeExACvariantsByImpactRatios(exacFilteredByMAF, pathoImpactRatio, report);
+			report.append("exaconly filtered down to " + exacFilteredByMAFandImpact.size() + " variants").append('\n');
+			
+			
+			if (exacFilteredByMAFandImpact.size() > 0)
+			{
+				passedGenes.incrementAndGet();
+				matchedExACvariants.put(gene, exacFilteredByMAFandImpact);
+				matchedVariants.addAndGet(exacFilteredByMAFandImpact.size());
+				//impacts AFTER impact correction and MAF filter has been applied
+				ImpactRatios MAFandImpactFilteredExacImpactRatio = st4h.calculateImpactRatios(exacFilteredByMAFandImpact);
+				geneInfo.put(gene, "Cx" + "\t" + chrom + "\t" + leftMostPos + "\t" + rightMostPos + "\t" + exacVariants.size() + "\t" + clinvarPatho.get(gene).size() + "\t" + vir.inBoth_clinvar.size() + "\t" + exacFilteredByMAFandImpact.size() + "\t" + pathogenicMAF + unfilteredExacImpactRatio + "\t" + pathoImpactRatio.toString().toString() + "\t" + MAFandImpactFilteredExacImpactRatio.toString());
 			}
 			else
 			{
-				droppedGenesExACtooFew++;
-				geneInfo.put(gene, "N2" + "\t" + chrom + "\t" + leftMostPos + "\t" + rightMostPos + "\t" + 0 + "\t" + clinvarPatho.get(gene).size() + "\t" + 0 + "\t" + 0 + "\t" + 0 + StringUtils.repeat("\t" + NA, 4)  + "\t" + st4h.calculateImpactRatiosFromUnprocessedVariants(clinvarPatho.get(gene)) + StringUtils.repeat("\t" + NA, 4));
+				//impacts BEFORE impact correction (which whould have set it to 0) but AFTER the MAF filter has been applied
+				ImpactRatios MAFfilteredExacImpactRatio = st4h.calculateImpactRatios(exacFilteredByMAF);
+				String cat = st4h.determineImpactFilterCat(MAFfilteredExacImpactRatio, pathoImpactRatio, pathogenicMAF);
+				geneInfo.put(gene, cat + "\t" + chrom + "\t" + leftMostPos + "\t" + rightMostPos + "\t" + exacVariants.size() + "\t" + clinvarPatho.get(gene).size() + "\t" + vir.inBoth_clinvar.size() + "\t" + exacFilteredByMAF.size() + "\t" + pathogenicMAF + unfilteredExacImpactRatio + "\t" + pathoImpactRatio.toString() + "\t" + MAFfilteredExacImpactRatio.toString());
+				droppedGenesNoMatchedVariants.incrementAndGet();
 			}
 			
-			tr.close();
 			
+
+		}
+		else
+		{
+			droppedGenesExACtooFew.incrementAndGet();
+			geneInfo.put(gene, "N2" + "\t" + chrom + "\t" + leftMostPos + "\t" + rightMostPos + "\t" + 0 + "\t" + clinvarPatho.get(gene).size() + "\t" + 0 + "\t" + 0 + "\t" + 0 + StringUtils.repeat("\t" + NA, 4)  + "\t" + st4h.calculateImpactRatios(clinvarPatho.get(gene)) + StringUtils.repeat("\t" + NA, 4));
+		}
+	}
+
+	private void printTimingSummary(long totalTime, int threads)
+	{
+		if(geneProcessingTime.isEmpty())
+		{
+			return;
+		}
+		List<Map.Entry<String, Long>> slowestFirst = new ArrayList<Map.Entry<String, Long>>(geneProcessingTime.entrySet());
+		Collections.sort(slowestFirst, new Comparator<Map.Entry<String, Long>>()
+		{
+			@Override
+			public int compare(Map.Entry<String, Long> e1, Map.Entry<String, Long> e2)
+			{
+				return e2.getValue().compareTo(e1.getValue());
+			}
+		});
+		long summedGeneTime = 0;
+		for(Map.Entry<String, Long> e : slowestFirst)
+		{
+			summedGeneTime += e.getValue();
+		}
+
+		System.out.println("wall time: " + TimeUnit.NANOSECONDS.toMillis(totalTime) + " ms using " + threads + " thread(s)");
+		System.out.println("summed per-gene time: " + TimeUnit.NANOSECONDS.toMillis(summedGeneTime) + " ms for " + slowestFirst.size() + " genes, mean " + TimeUnit.NANOSECONDS.toMillis(summedGeneTime / slowestFirst.size()) + " ms, median " + TimeUnit.NANOSECONDS.toMillis(slowestFirst.get(slowestFirst.size() / 2).getValue()) + " ms");
+		System.out.println("slowest genes:");
+		for(int i = 0; i < Math.min(10, slowestFirst.size()); i++)
+		{
+			System.out.println("\t" + slowestFirst.get(i).getKey() + "\t" + TimeUnit.NANOSECONDS.toMillis(slowestFirst.get(i).getValue()) + " ms");
 		}
-		
-		System.out.println();
-		System.out.println("#### done ####");
-		System.out.println();
-		
-		// oct 2015: 2638 pass, 960040 variants, 393 dropped
-		System.out.println("passed genes (>0 properly matched interval exac variants): " + passedGenes);
-		System.out.println("matched variants (total variants used for final calibration): " + matchedVariants);
-		System.out.println("dropped genes (less than 2 clinvar variants): " + droppedGenesClinVarTooFew);
-		System.out.println("dropped genes (2+ clinvar, but 0 interval exac variants): " + droppedGenesExACtooFew);
-		System.out.println("dropped genes (2+ clinvar, but >0 interval exac variants, but 0 matched variants left after filtering): " + droppedGenesNoMatchedVariants);
-		
 	}
 	
 	
-	private void printVariantsToFile(String file) throws FileNotFoundException
+	/**
+	 * One line of the .variants.tsv file
+	 */
+	private static class VariantLine
+	{
+		final String gene;
+		final AlleleRecord variant;
+		final String group;
+
+		VariantLine(String gene, AlleleRecord variant, String group)
+		{
+			this.gene = gene;
+			this.variant = variant;
+			this.group = group;
+		}
+	}
+
+	/**
+	 * Write the gene info in gene order, and the variants of the passed genes sorted on chromosome and position, so
+	 * step 6 can merge them with the CADD scores in one pass. Variants at the same position keep their gene order.
+	 * @param file prefix of the .variants.tsv, .cadd.tsv and .genes.tsv files
+	 * @throws FileNotFoundException
+	 */
+	void printVariantsToFile(String file) throws FileNotFoundException
 	{
 		PrintWriter pw_variantInfo = new PrintWriter(file + ".variants.tsv");
 		PrintWriter pw_forCADD = new PrintWriter(file + ".cadd.tsv");
@@ -363,26 +692,47 @@ public class Step4_MatchingVariantsFromExAC
 		pw_variantInfo.println( "gene" + "\t" + "chr" + "\t" + "pos" + "\t" + "ref" + "\t" + "alt" + "\t" + "group");
 		pw_geneInfo.println( "Gene" + "\t" + "Category" + "\t" + "Chr" + "\t" + "Start" + "\t" + "End" + "\t" + "NrOfPopulationVariants" + "\t" + "NrOfPathogenicVariants" + "\t" + "NrOfOverlappingVariants" + "\t" + "NrOfFilteredPopVariants" + "\t" + "PathoMAFThreshold" + "\t" + "PopImpactHighPerc" + "\t" + "PopImpactModeratePerc" + "\t" + "PopImpactLowPerc" + "\t" + "PopImpactModifierPerc" + "\t" + "PathoImpactHighPerc" + "\t" + "PathoImpactModeratePerc" + "\t" + "PathoImpactLowPerc" + "\t" + "PathoImpactModifierPerc" + "\t" + "PopImpactHighEq" + "\t" + "PopImpactModerateEq" + "\t" + "PopImpactLowEq" + "\t" + "PopImpactModifierEq");
 		
-		for(String gene : clinvarPatho.keySet())
+		//in gene order until sorted on position below
+		List<VariantLine> variantLines = new ArrayList<VariantLine>();
+		
+		//sorted gene order, so the output is the same no matter in which order genes were processed
+		for(String gene : new TreeSet<String>(clinvarPatho.keySet()))
 		{
 			if(matchedExACvariants.containsKey(gene))
 			{
 				//print data from clinvarPatho and matchedExACvariants to file
-				for(Entity variant : clinvarPatho.get(gene))
+				for(AlleleRecord variant : clinvarPatho.get(gene))
 				{
-					pw_forCADD.println(variant.getString("#CHROM") + "\t" + variant.getString("POS") + "\t" + "." + "\t" + variant.getString("REF") + "\t" + variant.getString("ALT"));
-					pw_variantInfo.println(gene + "\t" + variant.getString("#CHROM") + "\t" + variant.getString("POS") + "\t" + variant.getString("REF") + "\t" + variant.getString("ALT") + "\t" + "PATHOGENIC");
+					variantLines.add(new VariantLine(gene, variant, "PATHOGENIC"));
 				}
-				for(EntityPlus variant : matchedExACvariants.get(gene))
+				for(AlleleRecord variant : matchedExACvariants.get(gene))
 				{
-					pw_forCADD.println(variant.getE().getString("#CHROM") + "\t" + variant.getE().getString("POS") + "\t" + "." + "\t"+ variant.getE().getString("REF") + "\t" + variant.getKeyVal().get("ALT").toString());
-					pw_variantInfo.println(gene + "\t" + variant.getE().getString("#CHROM") + "\t" + variant.getE().getString("POS") + "\t" + variant.getE().getString("REF") + "\t" + variant.getKeyVal().get("ALT").toString() + "\t" + "POPULATION");
+					variantLines.add(new VariantLine(gene, variant, "POPULATION"));
 				}
 			}
 			//replace "/" by "_" because R should not write output files with "/" in them, for obvious reasons.
 			pw_geneInfo.println(gene.replace("/", "_") + "\t" + geneInfo.get(gene));
 		}
 		
+		//stable sort, so lines at the same position stay in gene order
+		Collections.sort(variantLines, new Comparator<VariantLine>()
+		{
+			@Override
+			public int compare(VariantLine l1, VariantLine l2)
+			{
+				AlleleRecord v1 = l1.variant;
+				AlleleRecord v2 = l2.variant;
+				int chromCompare = Chromosomes.compare(v1.chrom, v2.chrom);
+				return chromCompare != 0 ? chromCompare : Integer.compare(v1.pos, v2.pos);
+			}
+		});
+		for(VariantLine line : variantLines)
+		{
+			AlleleRecord variant = line.variant;
+			pw_forCADD.println(variant.getChromName() + "\t" + variant.pos + "\t" + "." + "\t" + variant.ref + "\t" + variant.alt);
+			pw_variantInfo.println(line.gene + "\t" + variant.getChromName() + "\t" + variant.pos + "\t" + variant.ref + "\t" + variant.alt + "\t" + line.group);
+		}
+		
 		pw_variantInfo.flush();
 		pw_variantInfo.close();
 		
@@ -1,22 +1,72 @@
 package org.molgenis.calibratecadd;
 
-public class Step5_CADDScores 
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.molgenis.calibratecadd.support.LocalCADDScorer;
+
+public class Step5_CADDScores
 {
 	/**
 	 * Run the output file of the previous step through the CADD web service at
 	 * cadd.gs.washington.edu/score
-	 * 
+	 *
 	 * The filenames ends in '.cadd', e.g. clinvar.patho.fix.snpeff.exac.vcf.cadd
-	 * 
+	 *
 	 * You may have to split up the file in smaller ones, say aroung 50k variants each or 1 MB in size.
-	 * 
+	 *
 	 * When done, combine the result files (for download at the URLs provided, after a certain waiting period)
 	 * back into 1 file and proceed to the next step.
-	 * 
-	 * 
+	 *
+	 *
 	 * Alternatively, ofcourse, run CADD locally. But keep in mind that you'll have to run against multiple CADD
 	 * files to get all SNVs and indels scores as best as possible. Ideally, install the CADD algorithm for live
 	 * (and complete) calculation of scores.
-	 * 
+	 *
+	 * To look up the scores in local, tabix indexed CADD files, run this class:
+	 * [0] the '.cadd.tsv' file produced in step 4
+	 * [1] output file, in the format of the web service output
+	 * [2] and further: CADD files to look up variants in, in this order, e.g. whole_genome_SNVs.tsv.gz InDels.tsv.gz
+	 *
+	 * Options:
+	 * --threads N : score N chromosomes at the same time (default 1)
+	 *
+	 * Variants that are in none of the CADD files are written to [1] + '.missing', in the format of [0],
+	 * so they can still be scored by the web service.
+	 *
+	 * To score those (or any other variants) with a scoring service without splitting and uploading by hand, use
+	 * CADDServiceClient, which sends them in chunks, retries failed chunks and can resume a stopped run.
+	 * CADDStandInServer is a local stand-in service with made-up scores to try this offline.
+	 *
 	 */
+	public static void main(String[] args) throws Exception
+	{
+		List<File> caddFiles = new ArrayList<File>();
+		int i = 2;
+		for(; i < args.length && !args[i].startsWith("--"); i++)
+		{
+			caddFiles.add(new File(args[i]));
+		}
+		if(caddFiles.isEmpty())
+		{
+			throw new Exception("please provide at least one CADD file");
+		}
+
+		int threads = 1;
+		for(; i < args.length; i++)
+		{
+			if(args[i].equals("--threads") && i + 1 < args.length)
+			{
+				threads = Integer.parseInt(args[++i]);
+			}
+			else
+			{
+				throw new Exception("unknown option: " + args[i]);
+			}
+		}
+
+		File outputFile = new File(args[1]);
+		new LocalCADDScorer(caddFiles, threads).score(new File(args[0]), outputFile, new File(outputFile.getPath() + ".missing"));
+	}
 }
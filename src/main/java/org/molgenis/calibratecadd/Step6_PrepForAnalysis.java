@@ -1,11 +1,15 @@
 package org.molgenis.calibratecadd;
 
+import java.io.BufferedReader;
 import java.io.File;
+import java.io.FileReader;
 import java.io.PrintWriter;
 import java.util.HashMap;
 import java.util.Scanner;
 
+import org.molgenis.calibratecadd.support.Chromosomes;
 import org.molgenis.calibratecadd.support.LoadCADDWebserviceOutput;
+import org.molgenis.calibratecadd.support.VariantKeyDoubleMap;
 
 /**
  * Example usage:
@@ -41,60 +45,221 @@ import org.molgenis.calibratecadd.support.LoadCADDWebserviceOutput;
  * IFT172	2	27693963	C	T	PATHOGENIC	36
  * etc
  * 
+ * Variants without a CADD score are written to the output file + '.unmatched', in the format of the info file.
+ * 
+ * Options:
+ * --join auto|merge|hash : how to find the CADD score of each variant (default auto)
+ *   merge: stream both files side by side, in constant memory. Both must be sorted on chromosome (1-22, X, Y, MT,
+ *   then other contigs alphabetically) and position, such as the info file of step 4 and the output of step 5.
+ *   hash: load all CADD scores in memory first, for files in any order.
+ *   auto: merge, and when either file turns out not to be sorted, start over with hash.
+ *
+ * Both joins match chromosomes on their code (see support.Chromosomes), not on the exact text: a 'chr' prefix is
+ * ignored and M is the same as MT, so e.g. 'chr1' in the info file finds the CADD scores of '1'. The output keeps
+ * the chromosome as written in the info file.
  *
  */
 public class Step6_PrepForAnalysis
 {
+	private static class UnsortedInputException extends Exception
+	{
+		private static final long serialVersionUID = 1L;
+
+		UnsortedInputException(String message)
+		{
+			super(message);
+		}
+	}
 
 	public static void main(String[] args) throws Exception
 	{
-//		Scanner cadd = new Scanner(new File(args[0]));
-		Scanner info = new Scanner(new File(args[1]));
-		PrintWriter pw = new PrintWriter(new File(args[2]));
-		
-		HashMap<String, Double> caddScores = LoadCADDWebserviceOutput.load(new File(args[0]));
+		String join = "auto";
+		for(int i = 3; i < args.length; i++)
+		{
+			if(args[i].equals("--join") && i + 1 < args.length && (args[i + 1].equals("auto") || args[i + 1].equals("merge") || args[i + 1].equals("hash")))
+			{
+				join = args[++i];
+			}
+			else
+			{
+				throw new Exception("unknown option: " + args[i]);
+			}
+		}
+		File caddFile = new File(args[0]);
+		File infoFile = new File(args[1]);
+		File outputFile = new File(args[2]);
+		File unmatchedFile = new File(args[2] + ".unmatched");
+
+		int[] counts;
+		if(join.equals("hash"))
+		{
+			counts = hashJoin(caddFile, infoFile, outputFile, unmatchedFile);
+		}
+		else
+		{
+			try
+			{
+				counts = mergeJoin(caddFile, infoFile, outputFile, unmatchedFile);
+			}
+			catch(UnsortedInputException e)
+			{
+				if(join.equals("merge"))
+				{
+					throw e;
+				}
+				System.out.println(e.getMessage() + ", joining with all CADD scores in memory instead");
+				counts = hashJoin(caddFile, infoFile, outputFile, unmatchedFile);
+			}
+		}
+		System.out.println("..done, found a CADD score for " + counts[0] + " variants, " + counts[1] + " without CADD score written to " + unmatchedFile.getName());
+	}
+
+	/**
+	 * Load all CADD scores, then stream the info file
+	 * @return nr of matched and unmatched variants
+	 */
+	private static int[] hashJoin(File caddFile, File infoFile, File outputFile, File unmatchedFile) throws Exception
+	{
+		VariantKeyDoubleMap caddScores = LoadCADDWebserviceOutput.load(caddFile);
 		
-//		HashMap<String, Double> caddScores = new HashMap<String, Double>();
-//		
-		String line = null;
-//		while(cadd.hasNextLine())
-//		{
-//			line = cadd.nextLine();
-//			if(line.startsWith("#"))
-//			{
-//				continue;
-//			}
-//			String[] split = line.split("\t", -1);
-//			caddScores.put(split[0] + "_" + split[1] + "_" + split[2] + "_" + split[3], Double.parseDouble(split[5]));
-//		}
-//		cadd.close();
+		Scanner info = new Scanner(infoFile);
+		PrintWriter pw = new PrintWriter(outputFile);
+		PrintWriter pwUnmatched = new PrintWriter(unmatchedFile);
+		int[] counts = new int[2];
 		
 		//write header of output
 		pw.println("gene" + "\t" + "chr" + "\t" + "pos" + "\t" + "ref" + "\t" + "alt" + "\t" + "group" + "\t" + "cadd");
 		
 		//skip header of input
-		info.nextLine();
+		pwUnmatched.println(info.nextLine());
 		
 		while(info.hasNextLine())
 		{
-			line = info.nextLine();
+			String line = info.nextLine();
 			String[] split = line.split("\t", -1);
-			String key = split[1] + "_" + split[2] + "_" + split[3] + "_" + split[4];
-			if(caddScores.containsKey(key))
+			long pos = Long.parseLong(split[2]);
+			if(caddScores.containsKey(split[1], pos, split[3], split[4]))
 			{
 				//FIXME: need to replace '/' to prevent problems in R later on when writing plots based on gene names..
-				pw.println(line.replace("/", "_") + "\t" + caddScores.get(key));
+				pw.println(line.replace("/", "_") + "\t" + caddScores.get(split[1], pos, split[3], split[4]));
+				counts[0]++;
 			}
 			else
 			{
-				System.out.println("WARNING: could not get CADD score for " + key);
+				pwUnmatched.println(line);
+				counts[1]++;
 			}
 		}
 		
 		info.close();
 		pw.flush();
 		pw.close();
-		
-		
+		pwUnmatched.flush();
+		pwUnmatched.close();
+		return counts;
+	}
+
+	/**
+	 * Stream both files in position order, keeping only the CADD scores of the current position
+	 * @return nr of matched and unmatched variants
+	 * @throws UnsortedInputException as soon as either file is found not to be sorted, output written so far is incomplete
+	 */
+	private static int[] mergeJoin(File caddFile, File infoFile, File outputFile, File unmatchedFile) throws Exception
+	{
+		BufferedReader cadd = new BufferedReader(new FileReader(caddFile), 1 << 16);
+		BufferedReader info = new BufferedReader(new FileReader(infoFile), 1 << 16);
+		PrintWriter pw = new PrintWriter(outputFile);
+		PrintWriter pwUnmatched = new PrintWriter(unmatchedFile);
+		int[] counts = new int[2];
+		try
+		{
+			pw.println("gene" + "\t" + "chr" + "\t" + "pos" + "\t" + "ref" + "\t" + "alt" + "\t" + "group" + "\t" + "cadd");
+			pwUnmatched.println(info.readLine());
+
+			//ref + tab + alt to score, of all CADD lines at the position of the current variant
+			HashMap<String, Double> scoresAtPos = new HashMap<String, Double>();
+			String scoresChrom = null;
+			long scoresPos = -1;
+
+			String caddLine = nextCaddLine(cadd);
+			String[] caddSplit = caddLine == null ? null : caddLine.split("\t", -1);
+			String previousInfoChrom = null;
+			long previousInfoPos = -1;
+
+			String line;
+			while((line = info.readLine()) != null)
+			{
+				String[] split = line.split("\t", -1);
+				String chrom = split[1];
+				long pos = Long.parseLong(split[2]);
+				if(previousInfoChrom != null && compare(chrom, pos, previousInfoChrom, previousInfoPos) < 0)
+				{
+					throw new UnsortedInputException(infoFile.getName() + " is not sorted, " + chrom + ":" + pos + " after " + previousInfoChrom + ":" + previousInfoPos);
+				}
+				previousInfoChrom = chrom;
+				previousInfoPos = pos;
+
+				if(scoresChrom == null || compare(chrom, pos, scoresChrom, scoresPos) != 0)
+				{
+					//skip CADD lines before this position, and collect the ones at it
+					scoresAtPos.clear();
+					scoresChrom = chrom;
+					scoresPos = pos;
+					while(caddSplit != null && compare(caddSplit[0], Long.parseLong(caddSplit[1]), chrom, pos) <= 0)
+					{
+						if(compare(caddSplit[0], Long.parseLong(caddSplit[1]), chrom, pos) == 0)
+						{
+							scoresAtPos.put(caddSplit[2] + "\t" + caddSplit[3], Double.parseDouble(caddSplit[5]));
+						}
+						String nextLine = nextCaddLine(cadd);
+						String[] nextSplit = nextLine == null ? null : nextLine.split("\t", -1);
+						if(nextSplit != null && compare(nextSplit[0], Long.parseLong(nextSplit[1]), caddSplit[0], Long.parseLong(caddSplit[1])) < 0)
+						{
+							throw new UnsortedInputException(caddFile.getName() + " is not sorted, " + nextSplit[0] + ":" + nextSplit[1] + " after " + caddSplit[0] + ":" + caddSplit[1]);
+						}
+						caddSplit = nextSplit;
+					}
+				}
+
+				Double score = scoresAtPos.get(split[3] + "\t" + split[4]);
+				if(score != null)
+				{
+					//FIXME: need to replace '/' to prevent problems in R later on when writing plots based on gene names..
+					pw.println(line.replace("/", "_") + "\t" + score);
+					counts[0]++;
+				}
+				else
+				{
+					pwUnmatched.println(line);
+					counts[1]++;
+				}
+			}
+		}
+		finally
+		{
+			cadd.close();
+			info.close();
+			pw.flush();
+			pw.close();
+			pwUnmatched.flush();
+			pwUnmatched.close();
+		}
+		return counts;
+	}
+
+	private static String nextCaddLine(BufferedReader cadd) throws Exception
+	{
+		String line = cadd.readLine();
+		while(line != null && (line.isEmpty() || line.startsWith("#")))
+		{
+			line = cadd.readLine();
+		}
+		return line;
+	}
+
+	private static int compare(String chrom1, long pos1, String chrom2, long pos2)
+	{
+		int chromCompare = chrom1.equals(chrom2) ? 0 : Chromosomes.ORDER.compare(chrom1, chrom2);
+		return chromCompare != 0 ? chromCompare : Long.compare(pos1, pos2);
 	}
 }
@@ -5,15 +5,18 @@ import java.io.FileNotFoundException;
 import java.io.PrintWriter;
 import java.text.DecimalFormat;
 import java.text.NumberFormat;
-import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.Scanner;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.LongAdder;
 
 import org.apache.commons.lang3.StringUtils;
-import org.apache.commons.math3.stat.descriptive.moment.Mean;
-import org.apache.commons.math3.stat.descriptive.rank.Percentile;
-import org.apache.commons.math3.stat.descriptive.rank.Percentile.EstimationType;
-import org.apache.commons.math3.stat.inference.MannWhitneyUTest;
+import org.molgenis.calibratecadd.support.DoubleList;
+import org.molgenis.calibratecadd.support.PercentileBootstrap;
+import org.molgenis.calibratecadd.support.PermutationUTest;
+import org.molgenis.calibratecadd.support.TwoSampleStatistics;
 
 /**
  * 
@@ -52,9 +55,65 @@ import org.apache.commons.math3.stat.inference.MannWhitneyUTest;
  */
 public class Step7_BasicResults
 {
-	HashMap<String, String> geneToInfo = new HashMap<String, String>();
-	HashMap<String, ArrayList<String>> geneToVariantAndCADD = new HashMap<String, ArrayList<String>>();
+	/**
+	 * CADD scores of the pathogenic and the population variants of one gene
+	 */
+	static class GeneCADDScores
+	{
+		DoubleList patho = new DoubleList();
+		DoubleList popul = new DoubleList();
+	}
+
+	/**
+	 * Everything needed to process one gene, not changed once made
+	 */
+	static class GeneInput
+	{
+		final String gene;
+		final String info;
+		final double[] patho;
+		final double[] popul;
+
+		/**
+		 * @param patho null, as well as popul, when there are no CADD scores at all for this gene
+		 */
+		GeneInput(String gene, String info, double[] patho, double[] popul)
+		{
+			this.gene = gene;
+			this.info = info;
+			this.patho = patho;
+			this.popul = popul;
+		}
+	}
+
+	/**
+	 * Gene info with the CADD statistics appended, and the table line to write
+	 */
+	static class GeneOutput
+	{
+		final String info;
+		final String line;
+
+		GeneOutput(String info, String line)
+		{
+			this.info = info;
+			this.line = line;
+		}
+	}
+
+	/**
+	 * Genes processed in one go by a fork-join task
+	 */
+	private static final int GENES_PER_TASK = 32;
+
+	HashMap<String, String> geneToInfo = new LinkedHashMap<String, String>();
+	HashMap<String, GeneCADDScores> geneToCADD = new HashMap<String, GeneCADDScores>();
 	NumberFormat f = new DecimalFormat("#0.00");
+	int threads;
+	PermutationUTest permutationTest;
+	PercentileBootstrap bootstrap;
+	long nrOfGenesPathGtPopPval_5perc;
+	long nrOfGenesPathGtPopPval_1perc;
 	
 	public void loadGeneInfo(String geneInfoFile) throws FileNotFoundException
 	{
@@ -82,7 +141,15 @@ public class Step7_BasicResults
 	 */
 	public String getRecommendation(String gene, String category) throws Exception
 	{
-		String[] infoSplit = geneToInfo.get(gene).split("\t", -1);
+		return getRecommendation(geneToInfo.get(gene).split("\t", -1), category, f);
+	}
+	
+	/**
+	 * @param infoSplit gene info, with the CADD statistics appended for the C categories
+	 * @param f number format, which is not thread-safe
+	 */
+	private static String getRecommendation(String[] infoSplit, String category, NumberFormat f) throws Exception
+	{
 		String mafRec = null;
 		if(infoSplit[8].isEmpty())
 		{
@@ -113,27 +180,59 @@ public class Step7_BasicResults
 	      }
 	}
 	
-	public void loadVariantInfo(String variantInfoFile) throws FileNotFoundException
+	public void loadVariantInfo(String variantInfoFile) throws Exception
 	{
 		/**
-		 * read variant + cadd data and put in map
+		 * read variant + cadd data, and keep only the scores per gene and group
+		 * only genes of the gene info file are reported, so call loadGeneInfo first: lines of other genes are skipped unchecked
 		 */
 		Scanner variantsWithCADDScanner = new Scanner(new File(variantInfoFile));
 		variantsWithCADDScanner.nextLine();
 		String line = null;
+		int[] tabs = new int[6];
 		while(variantsWithCADDScanner.hasNextLine())
 		{
 			line = variantsWithCADDScanner.nextLine();
-			String gene = line.split("\t", -1)[0];
-			if(geneToVariantAndCADD.containsKey(gene))
+			int geneEnd = line.indexOf('\t');
+			String gene = geneEnd == -1 ? line : line.substring(0, geneEnd);
+			if(!geneToInfo.containsKey(gene))
+			{
+				continue;
+			}
+
+			//gene, chr, pos, ref, alt, group, cadd: only look for the tabs we need instead of splitting the whole line
+			int nrOfTabs = 0;
+			for(int i = line.indexOf('\t'); i != -1 && nrOfTabs < tabs.length; i = line.indexOf('\t', i + 1))
+			{
+				tabs[nrOfTabs++] = i;
+			}
+			if(nrOfTabs < tabs.length)
+			{
+				variantsWithCADDScanner.close();
+				throw new Exception("expected gene, chr, pos, ref, alt, group and cadd columns, but got: " + line);
+			}
+			int caddEnd = line.indexOf('\t', tabs[5] + 1);
+			double cadd = Double.parseDouble(line.substring(tabs[5] + 1, caddEnd == -1 ? line.length() : caddEnd));
+
+			GeneCADDScores scores = geneToCADD.get(gene);
+			if(scores == null)
 			{
-				geneToVariantAndCADD.get(gene).add(line);
+				scores = new GeneCADDScores();
+				geneToCADD.put(gene, scores);
+			}
+			String group = line.substring(tabs[4] + 1, tabs[5]);
+			if(group.equals("PATHOGENIC"))
+			{
+				scores.patho.add(cadd);
+			}
+			else if(group.equals("POPULATION"))
+			{
+				scores.popul.add(cadd);
 			}
 			else
 			{
-				ArrayList<String> lines = new ArrayList<String>();
-				lines.add(line);
-				geneToVariantAndCADD.put(gene, lines);
+				variantsWithCADDScanner.close();
+				throw new Exception("unknown group " + group);
 			}
 		}
 		variantsWithCADDScanner.close();
@@ -145,124 +244,243 @@ public class Step7_BasicResults
 		 * process everything and write out
 		 */
 		PrintWriter pw = new PrintWriter(new File(outputFile));
-		pw.println("Gene" + "\t" + "Category" + "\t" + "Chr" + "\t" + "Start" + "\t" + "End" + "\t" + "NrOfPopulationVariants" + "\t" + "NrOfPathogenicVariants" + "\t" + "NrOfOverlappingVariants" + "\t" + "NrOfFilteredPopVariants" + "\t" + "PathoMAFThreshold" + "\t" + "PopImpactHighPerc" + "\t" + "PopImpactModeratePerc" + "\t" + "PopImpactLowPerc" + "\t" + "PopImpactModifierPerc" + "\t" + "PathoImpactHighPerc" + "\t" + "PathoImpactModeratePerc" + "\t" + "PathoImpactLowPerc" + "\t" + "PathoImpactModifierPerc" + "\t" + "PopImpactHighEq" + "\t" + "PopImpactModerateEq" + "\t" + "PopImpactLowEq" + "\t" + "PopImpactModifierEq" + "\t" + "NrOfCADDScoredPopulationVars" + "\t" + "NrOfCADDScoredPathogenicVars" + "\t" + "MeanPopulationCADDScore" + "\t" + "MeanPathogenicCADDScore" + "\t" + "MeanDifference" + "\t" + "UTestPvalue" + "\t" + "Sens95thPerCADDThreshold" +"\t" + "Spec95thPerCADDThreshold" + "\t" + "Recommendation");
-		
-		int nrOfGenesPathGtPopPval_5perc = 0;
-		int nrOfGenesPathGtPopPval_1perc = 0;
+		pw.println("Gene" + "\t" + "Category" + "\t" + "Chr" + "\t" + "Start" + "\t" + "End" + "\t" + "NrOfPopulationVariants" + "\t" + "NrOfPathogenicVariants" + "\t" + "NrOfOverlappingVariants" + "\t" + "NrOfFilteredPopVariants" + "\t" + "PathoMAFThreshold" + "\t" + "PopImpactHighPerc" + "\t" + "PopImpactModeratePerc" + "\t" + "PopImpactLowPerc" + "\t" + "PopImpactModifierPerc" + "\t" + "PathoImpactHighPerc" + "\t" + "PathoImpactModeratePerc" + "\t" + "PathoImpactLowPerc" + "\t" + "PathoImpactModifierPerc" + "\t" + "PopImpactHighEq" + "\t" + "PopImpactModerateEq" + "\t" + "PopImpactLowEq" + "\t" + "PopImpactModifierEq" + "\t" + "NrOfCADDScoredPopulationVars" + "\t" + "NrOfCADDScoredPathogenicVars" + "\t" + "MeanPopulationCADDScore" + "\t" + "MeanPathogenicCADDScore" + "\t" + "MeanDifference" + "\t" + "UTestPvalue" + "\t" + "Sens95thPerCADDThreshold" +"\t" + "Spec95thPerCADDThreshold" + "\t" + "Recommendation" + (bootstrap == null ? "" : "\t" + "Sens95thPerCADDThresholdCILower" + "\t" + "Sens95thPerCADDThresholdCIUpper" + "\t" + "Spec95thPerCADDThresholdCILower" + "\t" + "Spec95thPerCADDThresholdCIUpper"));
 		
+		//snapshot every gene with its scores, so the genes can be processed in parallel without sharing anything but the counters
+		GeneInput[] inputs = new GeneInput[geneToInfo.size()];
+		int index = 0;
 		for(String gene : geneToInfo.keySet())
 		{
-			if(!geneToVariantAndCADD.containsKey(gene))
+			GeneCADDScores scores = geneToCADD.get(gene);
+			inputs[index++] = scores == null ? new GeneInput(gene, geneToInfo.get(gene), null, null) : new GeneInput(gene, geneToInfo.get(gene), scores.patho.toArray(), scores.popul.toArray());
+		}
+		
+		LongAdder pathGtPopPval_5perc = new LongAdder();
+		LongAdder pathGtPopPval_1perc = new LongAdder();
+		GeneOutput[] outputs = new GeneOutput[inputs.length];
+		ForkJoinPool pool = new ForkJoinPool(threads);
+		try
+		{
+			pool.invoke(new GeneStatisticsTask(inputs, outputs, 0, inputs.length, permutationTest, bootstrap, pathGtPopPval_5perc, pathGtPopPval_1perc));
+		}
+		catch(GeneStatisticsException e)
+		{
+			pw.close();
+			throw new Exception("failed to process gene " + e.gene, e.getCause());
+		}
+		finally
+		{
+			pool.shutdown();
+		}
+		
+		//write in the order of the gene info file, whichever thread finished first
+		for(int i = 0; i < inputs.length; i++)
+		{
+			geneToInfo.put(inputs[i].gene, outputs[i].info);
+			pw.println(outputs[i].line);
+		}
+		
+		nrOfGenesPathGtPopPval_5perc = pathGtPopPval_5perc.sum();
+		nrOfGenesPathGtPopPval_1perc = pathGtPopPval_1perc.sum();
+		System.out.println("total nr of genes: " + geneToCADD.size());
+		System.out.println("nr of genes where patho > pop, pval < 0.05: " + nrOfGenesPathGtPopPval_5perc);
+		System.out.println("nr of genes where patho > pop, pval < 0.01: " + nrOfGenesPathGtPopPval_1perc);
+		
+		pw.flush();
+		pw.close();
+	}
+	
+	/**
+	 * Compute the category, statistics and recommendation of one gene
+	 * @param stats reused between genes of the same thread
+	 * @param f not thread-safe, so one per thread
+	 * @param permutationTest null to always use the normal approximation of the U test p-value
+	 * @param bootstrap null to not add confidence intervals of the thresholds
+	 */
+	private static GeneOutput processGene(GeneInput input, TwoSampleStatistics stats, NumberFormat f, PermutationUTest permutationTest, PercentileBootstrap bootstrap, LongAdder nrOfGenesPathGtPopPval_5perc, LongAdder nrOfGenesPathGtPopPval_1perc) throws Exception
+	{
+		String gene = input.gene;
+		String info = input.info;
+		String noIntervals = bootstrap == null ? "" : StringUtils.repeat("\t" + Step4_MatchingVariantsFromExAC.NA, 4);
+		if(input.patho == null)
+		{
+			String[] infoSplit = info.split("\t", -1);
+			return new GeneOutput(info, gene + "\t" + info + StringUtils.repeat("\t" + Step4_MatchingVariantsFromExAC.NA, 8) + "\t" + getRecommendation(infoSplit, infoSplit[0], f) + noIntervals);
+		}
+		
+		double[] caddPathoPrim = input.patho;
+		double[] caddPopulPrim = input.popul;
+		
+		//it can happen that variants for one group did not pass CADD webservice, e.g. for PRRT2 we have only 1 population variant and when that fails, we have cannot assess...
+		//replace 'Cx' with 'N3'
+		if(caddPathoPrim.length == 0 || caddPopulPrim.length == 0)
+		{
+			return new GeneOutput(info, gene + "\t" + "N3" + info.substring(2, info.length()) + "\t" + caddPopulPrim.length + "\t" + caddPathoPrim.length + StringUtils.repeat("\t" + Step4_MatchingVariantsFromExAC.NA, 6) + "\t" + getRecommendation(info.split("\t", -1), "N3", f) + noIntervals);
+		}
+		
+		//sorts each group once for the means, U test and percentiles, same numbers as Mean, MannWhitneyUTest and Percentile (R_7)
+		stats.set(caddPathoPrim, caddPopulPrim);
+		double pathoMean = stats.getMeanX();
+		double populMean = stats.getMeanY();
+		double meanDiff = pathoMean-populMean;
+		
+		double pval = stats.getMannWhitneyUTestPValue();
+		
+		//the normal approximation is unreliable for small groups, which would end up in C3, so permute instead if asked
+		if(permutationTest != null && (caddPathoPrim.length < 5 || caddPopulPrim.length < 5))
+		{
+			pval = permutationTest.pValue(caddPathoPrim, caddPopulPrim, gene.hashCode());
+		}
+		
+		//get thresholds for 95% sensitivity and 95% specificity
+		//sensitive: we catch 95% of the known pathogenic variants, no matter how many population variants we also include when using this threshold
+		//specific: we only allow a 'top 5%' error (=finding population variants) in finding pathogenic variants, no matter how many pathogenic variants we have above this threshold right now
+		double sensThres = stats.getPercentileX(5);
+		double specThres = stats.getPercentileY(95);
+		
+		//how much would these thresholds move with other variants from the same distributions
+		String intervals = "";
+		if(bootstrap != null)
+		{
+			double[] sensInterval = bootstrap.interval(caddPathoPrim, 5, gene.hashCode() * 31L);
+			double[] specInterval = bootstrap.interval(caddPopulPrim, 95, gene.hashCode() * 31L + 1);
+			intervals = "\t" + f.format(sensInterval[0]) + "\t" + f.format(sensInterval[1]) + "\t" + f.format(specInterval[0]) + "\t" + f.format(specInterval[1]);
+		}
+		
+		String cat = null;
+		//to show some stats in the sysout
+		if(pval <= 0.05 && pathoMean > populMean)
+		{
+			cat = "C2";
+			nrOfGenesPathGtPopPval_5perc.increment();
+			if(pval <= 0.01)
+			{
+				cat = "C1";
+				nrOfGenesPathGtPopPval_1perc.increment();
+			}
+		}
+		
+		if(pval > 0.05)
+		{
+			if(caddPathoPrim.length < 5 || caddPopulPrim.length < 5)
 			{
-				pw.println(gene + "\t" + geneToInfo.get(gene) + StringUtils.repeat("\t" + Step4_MatchingVariantsFromExAC.NA, 8) + "\t" + getRecommendation(gene, geneToInfo.get(gene).split("\t", -1)[0]));
+				cat = "C3";
 			}
 			else
 			{
-				ArrayList<Double> caddPatho = new ArrayList<Double>();
-				ArrayList<Double> caddPopul = new ArrayList<Double>();
-				for(String lineForGene : geneToVariantAndCADD.get(gene))
-				{
-					String[] split = lineForGene.split("\t", -1);
-					String group = split[5];
-					double cadd = Double.parseDouble(split[6]);
-					if(group.equals("PATHOGENIC"))
-					{
-						caddPatho.add(cadd);
-					}
-					else if(group.equals("POPULATION"))
-					{
-						caddPopul.add(cadd);
-					}
-					else
-					{
-						pw.close();
-						throw new Exception("unknown group " + group);
-					}
-				}
-				
-				//it can happen that variants for one group did not pass CADD webservice, e.g. for PRRT2 we have only 1 population variant and when that fails, we have cannot assess...
-				//replace 'Cx' with 'N3'
-				if(caddPatho.size() == 0 || caddPopul.size() == 0)
-				{
-					pw.println(gene + "\t" + "N3" + geneToInfo.get(gene).substring(2, geneToInfo.get(gene).length()) + "\t" + caddPopul.size() + "\t" + caddPatho.size() + StringUtils.repeat("\t" + Step4_MatchingVariantsFromExAC.NA, 6) + "\t" + getRecommendation(gene, "N3"));
-					continue;
-				}
-				
-				double[] caddPathoPrim = new double[caddPatho.size()];
-				for(int i = 0; i < caddPatho.size(); i++)
-				{
-					caddPathoPrim[i] = caddPatho.get(i);
-				}
-				
-				double[] caddPopulPrim = new double[caddPopul.size()];
-				for(int i = 0; i < caddPopul.size(); i++)
-				{
-					caddPopulPrim[i] = caddPopul.get(i);
-				}
-				
-				Mean mean = new Mean();
-				double pathoMean = mean.evaluate(caddPathoPrim);
-				double populMean = mean.evaluate(caddPopulPrim);
-				double meanDiff = pathoMean-populMean;
-				
-				MannWhitneyUTest utest = new MannWhitneyUTest();
-				double pval = utest.mannWhitneyUTest(caddPathoPrim, caddPopulPrim);
-				
-				//get thresholds for 95% sensitivity and 95% specificity
-				//sensitive: we catch 95% of the known pathogenic variants, no matter how many population variants we also include when using this threshold
-				//specific: we only allow a 'top 5%' error (=finding population variants) in finding pathogenic variants, no matter how many pathogenic variants we have above this threshold right now
-				Percentile perc = new Percentile().withEstimationType(EstimationType.R_7);
-				double sensThres = perc.evaluate(caddPathoPrim, 5);
-				double specThres = perc.evaluate(caddPopulPrim, 95);
-				
-				String cat = null;
-				//to show some stats in the sysout
-				if(pval <= 0.05 && pathoMean > populMean)
-				{
-					cat = "C2";
-					nrOfGenesPathGtPopPval_5perc ++;
-					if(pval <= 0.01)
-					{
-						cat = "C1";
-						nrOfGenesPathGtPopPval_1perc++;
-					}
-				}
-				
-				if(pval > 0.05)
+				cat = "C4";
+			}
+		}
+		
+		if(cat == null)
+		{
+			cat = "C5";
+		}
+		
+		//add info to gene
+		info = info + "\t" + caddPopulPrim.length + "\t" + caddPathoPrim.length + "\t" + f.format(populMean) + "\t" + f.format(pathoMean) + "\t" + f.format(meanDiff) + "\t" + pval + "\t" + f.format(sensThres) + "\t" + f.format(specThres);
+		
+		//table line
+		return new GeneOutput(info, gene + "\t" + cat + info.substring(2, info.length()) + "\t" + getRecommendation(info.split("\t", -1), cat, f) + intervals);
+	}
+	
+	/**
+	 * Processes a range of genes, split in halves until small enough to do on one thread
+	 */
+	private static class GeneStatisticsTask extends RecursiveAction
+	{
+		private static final long serialVersionUID = 1L;
+		
+		private GeneInput[] inputs;
+		private GeneOutput[] outputs;
+		private int from;
+		private int to;
+		private PermutationUTest permutationTest;
+		private PercentileBootstrap bootstrap;
+		private LongAdder nrOfGenesPathGtPopPval_5perc;
+		private LongAdder nrOfGenesPathGtPopPval_1perc;
+		
+		GeneStatisticsTask(GeneInput[] inputs, GeneOutput[] outputs, int from, int to, PermutationUTest permutationTest, PercentileBootstrap bootstrap, LongAdder nrOfGenesPathGtPopPval_5perc, LongAdder nrOfGenesPathGtPopPval_1perc)
+		{
+			this.inputs = inputs;
+			this.outputs = outputs;
+			this.from = from;
+			this.to = to;
+			this.permutationTest = permutationTest;
+			this.bootstrap = bootstrap;
+			this.nrOfGenesPathGtPopPval_5perc = nrOfGenesPathGtPopPval_5perc;
+			this.nrOfGenesPathGtPopPval_1perc = nrOfGenesPathGtPopPval_1perc;
+		}
+		
+		@Override
+		protected void compute()
+		{
+			if(to - from > GENES_PER_TASK)
+			{
+				int middle = (from + to) >>> 1;
+				invokeAll(new GeneStatisticsTask(inputs, outputs, from, middle, permutationTest, bootstrap, nrOfGenesPathGtPopPval_5perc, nrOfGenesPathGtPopPval_1perc),
+						new GeneStatisticsTask(inputs, outputs, middle, to, permutationTest, bootstrap, nrOfGenesPathGtPopPval_5perc, nrOfGenesPathGtPopPval_1perc));
+				return;
+			}
+			TwoSampleStatistics stats = new TwoSampleStatistics();
+			NumberFormat f = new DecimalFormat("#0.00");
+			for(int i = from; i < to; i++)
+			{
+				try
 				{
-					if(caddPathoPrim.length < 5 || caddPopulPrim.length < 5)
-					{
-						cat = "C3";
-					}
-					else
-					{
-						cat = "C4";
-					}
+					outputs[i] = processGene(inputs[i], stats, f, permutationTest, bootstrap, nrOfGenesPathGtPopPval_5perc, nrOfGenesPathGtPopPval_1perc);
 				}
-				
-				if(cat == null)
+				catch(Exception e)
 				{
-					cat = "C5";
+					throw new GeneStatisticsException(inputs[i].gene, e);
 				}
-				
-				//add info to gene
-				geneToInfo.put(gene, geneToInfo.get(gene) + "\t" + caddPopulPrim.length + "\t" + caddPathoPrim.length + "\t" + f.format(populMean) + "\t" + f.format(pathoMean) + "\t" + f.format(meanDiff) + "\t" + pval + "\t" + f.format(sensThres) + "\t" + f.format(specThres));
-				
-				//write table
-				pw.println(gene + "\t" + cat + geneToInfo.get(gene).substring(2, geneToInfo.get(gene).length()) + "\t" + getRecommendation(gene, cat));
 			}
 		}
+	}
+	
+	/**
+	 * Carries a failure of one gene out of the fork-join pool
+	 */
+	private static class GeneStatisticsException extends RuntimeException
+	{
+		private static final long serialVersionUID = 1L;
 		
-		System.out.println("total nr of genes: " + geneToVariantAndCADD.keySet().size());
-		System.out.println("nr of genes where patho > pop, pval < 0.05: " + nrOfGenesPathGtPopPval_5perc);
-		System.out.println("nr of genes where patho > pop, pval < 0.01: " + nrOfGenesPathGtPopPval_1perc);
+		String gene;
 		
-		pw.flush();
-		pw.close();
+		GeneStatisticsException(String gene, Exception cause)
+		{
+			super(cause);
+			this.gene = gene;
+		}
 	}
 	
 	public Step7_BasicResults(String geneInfoFile, String variantInfoFile, String outputFile) throws Exception
 	{
+		this(geneInfoFile, variantInfoFile, outputFile, Runtime.getRuntime().availableProcessors());
+	}
+
+	/**
+	 * @param threads number of genes to process at the same time
+	 */
+	public Step7_BasicResults(String geneInfoFile, String variantInfoFile, String outputFile, int threads) throws Exception
+	{
+		this(geneInfoFile, variantInfoFile, outputFile, threads, 0, 0);
+	}
+
+	/**
+	 * @param threads number of genes to process at the same time
+	 * @param maxPermutations if more than 0, genes with less than 5 CADD scores in a group get a permutation (or exact) U test p-value of up to this many permutations
+	 * @param nrOfResamples if more than 0, add 95% bootstrap confidence intervals of the thresholds from this many resamples
+	 */
+	public Step7_BasicResults(String geneInfoFile, String variantInfoFile, String outputFile, int threads, int maxPermutations, int nrOfResamples) throws Exception
+	{
+		if(threads < 1)
+		{
+			throw new IllegalArgumentException("threads must be at least 1, but was " + threads);
+		}
+		this.threads = threads;
+		this.permutationTest = maxPermutations > 0 ? new PermutationUTest(maxPermutations) : null;
+		this.bootstrap = nrOfResamples > 0 ? new PercentileBootstrap(nrOfResamples, 0.95) : null;
 		System.out.println("starting..");
 		loadGeneInfo(geneInfoFile);
 		loadVariantInfo(variantInfoFile);
@@ -270,9 +488,39 @@ public class Step7_BasicResults
 		System.out.println("..done");
 	}
 
+	/**
+	 * Options:
+	 * --threads N : process N genes at the same time (default: nr of processors)
+	 * --permutations N : for genes with less than 5 CADD scores in a group, compute the U test p-value exactly,
+	 *                    or by up to N random permutations, instead of by normal approximation (default 0, off)
+	 * --bootstrap N : add 95% confidence intervals of the thresholds, from N resamples of the CADD scores of each
+	 *                 group, as 4 columns after the recommendation (default 0, off)
+	 */
 	public static void main(String[] args) throws Exception
 	{
-		new Step7_BasicResults(args[0], args[1], args[2]);
+		int threads = Runtime.getRuntime().availableProcessors();
+		int maxPermutations = 0;
+		int nrOfResamples = 0;
+		for(int i = 3; i < args.length; i++)
+		{
+			if(args[i].equals("--threads") && i + 1 < args.length)
+			{
+				threads = Integer.parseInt(args[++i]);
+			}
+			else if(args[i].equals("--permutations") && i + 1 < args.length)
+			{
+				maxPermutations = Integer.parseInt(args[++i]);
+			}
+			else if(args[i].equals("--bootstrap") && i + 1 < args.length)
+			{
+				nrOfResamples = Integer.parseInt(args[++i]);
+			}
+			else
+			{
+				throw new Exception("unknown option: " + args[i]);
+			}
+		}
+		new Step7_BasicResults(args[0], args[1], args[2], threads, maxPermutations, nrOfResamples);
 	}
 
 }
@@ -4,6 +4,7 @@ import java.io.File;
 import java.nio.file.Files;
 import java.nio.file.Paths;
 import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
 
@@ -25,13 +26,17 @@ public class Step9_AllValidations
 		new File(outFile).createNewFile();
 		Files.write(Paths.get(outFile), "df <- data.frame()\n".getBytes(), StandardOpenOption.APPEND);
 
+		//same rows as one Step9_Validation per dataset and tool, but each prediction file is loaded once and each dataset is read once for all tools
+		List<Step9_Validation.ToolNames> toolNames = new ArrayList<Step9_Validation.ToolNames>();
+		for(String tool: tools)
+		{
+			toolNames.add(Step9_Validation.ToolNames.valueOf(tool));
+		}
+		Step9_Validation.PredictionSources sources = new Step9_Validation.PredictionSources(path);
 		for(String dataset: datasets)
 		{
-			for(String tool: tools)
-			{
-//				new Step9_Validation(path, "/Users/joeri/github/gavin/data/goldstandards/" + dataset, tool, outFile);
-				new Step9_Validation(path, "/Users/joeri/github/gavin/data/goldstandards/cgdpanels/" + dataset, tool, outFile);
-			}
+//			Step9_Validation.validate(sources, "/Users/joeri/github/gavin/data/goldstandards/" + dataset, toolNames, outFile, null);
+			Step9_Validation.validate(sources, "/Users/joeri/github/gavin/data/goldstandards/cgdpanels/" + dataset, toolNames, outFile, null);
 		}
 
 	}
@@ -47,6 +47,11 @@ import org.molgenis.data.annotation.entity.impl.gavin.Judgment.Method;
 * Requiring extra input (pre-scored variants in minimized files) are: 'ponp2', 'mutationtaster2', 'provean', 'sift'
 * See file examples ('Prediction_XXX') in the hardcoded locations on how to plug in different files for different MVL inputs.
 * 
+* Fourth argument: the output file.
+* 
+* Options:
+* --cadd-store FILE : look up CADD scores that are not in the CADD_SCALED column in a store made with CADDStoreBuilder
+* 
 * Example usages:
 * 
  /Users/jvelde/github/maven/gavin/data/CCGG_ClassificationSource_GeneSummary.tsv
@@ -85,18 +90,129 @@ public class Step9_Validation
 	
 	public static void main(String[] args) throws Exception
 	{
-		if(args.length != 4)
+		if(args.length < 4)
 		{
 			throw new Exception("please provide: gavin file, variant vcf, tool, output file");
 		}
+		CADDStore caddStore = null;
+		for(int i = 4; i < args.length; i++)
+		{
+			if(args[i].equals("--cadd-store") && i + 1 < args.length)
+			{
+				caddStore = new CADDStore(new File(args[++i]));
+			}
+			else
+			{
+				throw new Exception("unknown option: " + args[i]);
+			}
+		}
 		new File(args[3]).createNewFile();
-		new Step9_Validation(args[0], args[1], args[2], args[3]);
+		try
+		{
+			new Step9_Validation(args[0], args[1], args[2], args[3], caddStore);
+		}
+		finally
+		{
+			if(caddStore != null)
+			{
+				caddStore.close();
+			}
+		}
 		GavinAnnotator ga = new GavinAnnotator();
 	//	ga.gavin().annotateEntity();
 	}
 
+	/**
+	 * Prediction files of the other tools and the GAVIN calibrations, each loaded once when first needed, and then
+	 * shared by every gold standard file and tool validated with it
+	 */
+	public static class PredictionSources
+	{
+		private String predictionToolPath;
+		private HashMap<String, GavinEntry> gavinData;
+		private PONP2Results ponp2;
+		private ProveanAndSiftResults proveanAndSift;
+		private PolyPhen2Results polyPhen2;
+		private HashMap<ToolNames, MSCResults> msc = new HashMap<ToolNames, MSCResults>();
+		private CondelResults condel;
+		private PredictSNP2Results predictSNP2;
+
+		/**
+		 * @param predictionToolPath folder with GAVIN_calibrations_r0.1.tsv, PON-P2.tsv, PredictSNP2.vcf.gz, etc.
+		 */
+		public PredictionSources(String predictionToolPath)
+		{
+			this.predictionToolPath = predictionToolPath;
+		}
+
+		public HashMap<String, GavinEntry> getGavinData() throws Exception
+		{
+			if(gavinData == null)
+			{
+				gavinData = loadCCGG(predictionToolPath + File.separatorChar + "GAVIN_calibrations_r0.1.tsv").getGeneToEntry();
+			}
+			return gavinData;
+		}
+
+		/**
+		 * Load whatever the tool needs before the gold standard is scanned, so a missing file is found out early
+		 */
+		void load(ToolNames mode) throws Exception
+		{
+			switch(mode)
+			{
+				case PONP2:
+					if(ponp2 == null) { ponp2 = new PONP2Results(new File(predictionToolPath, "PON-P2.tsv")); }
+					break;
+				case PROVEAN:
+				case SIFT:
+					if(proveanAndSift == null) { proveanAndSift = new ProveanAndSiftResults(new File(predictionToolPath, "PROVEAN_SIFT.tsv")); }
+					break;
+				case PolyPhen2:
+					if(polyPhen2 == null) { polyPhen2 = new PolyPhen2Results(new File(predictionToolPath, "PolyPhen2.tsv")); }
+					break;
+				case MSC_ClinVar95CI:
+					if(!msc.containsKey(mode)) { msc.put(mode, new MSCResults(new File(predictionToolPath, "MSC_CADD_cutoffs_ClinVar95CI.tsv"))); }
+					break;
+				case MSC_HGMD99CI:
+					if(!msc.containsKey(mode)) { msc.put(mode, new MSCResults(new File(predictionToolPath, "MSC_CADD_cutoffs_HGMD99CI.tsv"))); }
+					break;
+				case Condel:
+					if(condel == null) { condel = new CondelResults(new File(predictionToolPath, "Condel.tsv")); }
+					break;
+				case PredictSNP2:
+				case FATHMM:
+				case FunSeq:
+				case GWAVA:
+				case DANN:
+					if(predictSNP2 == null) { predictSNP2 = new PredictSNP2Results(new File(predictionToolPath, "PredictSNP2.vcf.gz")); }
+					break;
+				default:
+					break;
+			}
+			//the GAVIN calibrations were always loaded, whatever the tool, so keep failing on a missing file for every tool
+			getGavinData();
+		}
+	}
+
+	/**
+	 * What one tool made of the variants of one gold standard file
+	 */
+	static class ToolResults
+	{
+		ToolNames mode;
+		HashMap<String, List<JudgedVariant>> judgedMVLVariants = new HashMap<String, List<JudgedVariant>>();
+		int judgmentsInCalibratedGenes = 0;
+
+		ToolResults(ToolNames mode)
+		{
+			this.mode = mode;
+		}
+	}
+
 	HashMap<String, GavinEntry> gavinData;
 	GavinAlgorithm gavin;
+	CADDStore caddStore;
 	HashMap<String, List<JudgedVariant>> judgedMVLVariants = new HashMap<String, List<JudgedVariant>>();
 	int judgmentsInCalibratedGenes = 0;
 	
@@ -108,6 +224,16 @@ public class Step9_Validation
 	 */
 	public Step9_Validation(String predictionToolPath, String mvlLoc, String mode, String outFile) throws Exception
 	{
+		this(predictionToolPath, mvlLoc, mode, outFile, null);
+	}
+
+	/**
+	 * Same, but look up CADD scores that are missing from the MVL in a CADDStore
+	 * @throws Exception
+	 */
+	public Step9_Validation(String predictionToolPath, String mvlLoc, String mode, String outFile, CADDStore caddStore) throws Exception
+	{
+		this.caddStore = caddStore;
 		if(!EnumUtils.isValidEnum(ToolNames.class, mode))
 		{
 			throw new Exception("mode needs to be one of : " + java.util.Arrays.asList(ToolNames.values()));
@@ -117,13 +243,72 @@ public class Step9_Validation
 		{
 			throw new Exception("MVL file "+mvlFile+" does not exist or is directory");
 		}
-		this.gavinData = loadCCGG(predictionToolPath + File.separatorChar + "GAVIN_calibrations_r0.1.tsv").getGeneToEntry();
+		PredictionSources sources = new PredictionSources(predictionToolPath);
+		this.gavinData = sources.getGavinData();
 		this.gavin = new GavinAlgorithm();
-		scanMVL(mvlFile, predictionToolPath, ToolNames.valueOf(mode));
+		scanMVL(mvlFile, sources, ToolNames.valueOf(mode));
 		ProcessJudgedVariantMVLResults.printResults(judgedMVLVariants, mode, mvlFile.getName(), judgmentsInCalibratedGenes, outFile);
 	}
 	
+	/**
+	 * Validate several tools on one gold standard file, scanning it only once and classifying each variant with all
+	 * tools in that pass. The results are printed per tool, in the given order, the same as one Step9_Validation
+	 * per tool would.
+	 * @param sources prediction files, loaded once and reused for every call with the same sources
+	 * @param caddStore null, or where to look up CADD scores that are missing from the MVL
+	 * @throws Exception
+	 */
+	public static void validate(PredictionSources sources, String mvlLoc, List<ToolNames> modes, String outFile, CADDStore caddStore) throws Exception
+	{
+		File mvlFile = new File(mvlLoc);
+		if(!mvlFile.exists())
+		{
+			throw new Exception("MVL file "+mvlFile+" does not exist or is directory");
+		}
+		List<ToolResults> results = judge(sources, mvlFile, modes, caddStore);
+		for(ToolResults toolResults : results)
+		{
+			ProcessJudgedVariantMVLResults.printResults(toolResults.judgedMVLVariants, toolResults.mode.toString(), mvlFile.getName(), toolResults.judgmentsInCalibratedGenes, outFile);
+		}
+	}
+
+	/**
+	 * Judge the variants of one gold standard file with several tools, in one scan
+	 * @return what each tool made of it, in the order of modes
+	 * @throws Exception
+	 */
+	static List<ToolResults> judge(PredictionSources sources, File mvlFile, List<ToolNames> modes, CADDStore caddStore) throws Exception
+	{
+		List<ToolResults> results = new ArrayList<ToolResults>();
+		for(ToolNames mode : modes)
+		{
+			sources.load(mode);
+			results.add(new ToolResults(mode));
+		}
+		scanMVL(mvlFile, sources, new GavinAlgorithm(), caddStore, results);
+		return results;
+	}
+
 	public void scanMVL(File mvlFile, String predictionToolPath, ToolNames mode) throws Exception
+	{
+		scanMVL(mvlFile, new PredictionSources(predictionToolPath), mode);
+	}
+
+	private void scanMVL(File mvlFile, PredictionSources sources, ToolNames mode) throws Exception
+	{
+		sources.load(mode);
+		ToolResults toolResults = new ToolResults(mode);
+		//add to what this instance already has, as repeated scans did before
+		toolResults.judgedMVLVariants = judgedMVLVariants;
+		toolResults.judgmentsInCalibratedGenes = judgmentsInCalibratedGenes;
+		scanMVL(mvlFile, sources, gavin, caddStore, java.util.Collections.singletonList(toolResults));
+		judgmentsInCalibratedGenes = toolResults.judgmentsInCalibratedGenes;
+	}
+
+	/**
+	 * Read the gold standard once, and let every tool judge every variant
+	 */
+	private static void scanMVL(File mvlFile, PredictionSources sources, GavinAlgorithm gavin, CADDStore caddStore, List<ToolResults> results) throws Exception
 	{
 		
 		VcfRepository vcfRepo = new VcfRepository(mvlFile, "mvl");
@@ -133,45 +318,14 @@ public class Step9_Validation
 		/**
 		 * Here, we let PON-P2 or other tools handle the classification and see what happens
 		 * Obviously, before this works, you must score your variant list with PON-P2 or other tools
-		 * And then link this file below
+		 * And then link this file in PredictionSources
 		 */
-		PONP2Results p2r = null;
-		MutationTaster2Results m2r = null;
-		ProveanAndSiftResults ps2r = null;
-		PolyPhen2Results pf2r = null;
-		MSCResults mscr = null;
-		CondelResults condelr = null;
-		PredictSNP2Results predictSNP2r = null;
-		if (mode.equals(ToolNames.PONP2))
-		{
-			p2r = new PONP2Results(new File(predictionToolPath, "PON-P2.tsv"));
-		}
-		if (mode.equals(ToolNames.PROVEAN) || mode.equals(ToolNames.SIFT))
-		{
-			ps2r = new ProveanAndSiftResults(new File(predictionToolPath, "PROVEAN_SIFT.tsv"));
-		}
-		if (mode.equals(ToolNames.PolyPhen2))
-		{
-			pf2r = new PolyPhen2Results(new File(predictionToolPath, "PolyPhen2.tsv"));
-		}
-		if (mode.equals(ToolNames.MSC_ClinVar95CI))
-		{
-			mscr = new MSCResults(new File(predictionToolPath, "MSC_CADD_cutoffs_ClinVar95CI.tsv"));
-		}
-		if (mode.equals(ToolNames.MSC_HGMD99CI))
-		{
-			mscr = new MSCResults(new File(predictionToolPath, "MSC_CADD_cutoffs_HGMD99CI.tsv"));
-		}
-		if (mode.equals(ToolNames.Condel))
-		{
-			condelr = new CondelResults(new File(predictionToolPath, "Condel.tsv"));
-		}
-		if (mode.equals(ToolNames.PredictSNP2) || mode.equals(ToolNames.FATHMM) || mode.equals(ToolNames.FunSeq) || mode.equals(ToolNames.GWAVA) || mode.equals(ToolNames.DANN) )
+		HashMap<String, GavinEntry> gavinData = sources.getGavinData();
+		
+		for(ToolResults toolResults : results)
 		{
-			predictSNP2r = new PredictSNP2Results(new File(predictionToolPath, "PredictSNP2.vcf.gz"));
+			System.out.println("Running in mode: " + toolResults.mode);
 		}
-		
-		System.out.println("Running in mode: " + mode);
 
 		while (vcfRepoIter.hasNext())
 		{
@@ -189,6 +343,11 @@ public class Step9_Validation
 			Double getMAF = GavinUtils.getInfoForAllele(record, "EXAC_AF", alt);
 			double MAF = getMAF == null ? 0 : getMAF;
 			Double CADDscore = GavinUtils.getInfoForAllele(record, "CADD_SCALED", alt);
+			if(CADDscore == null && caddStore != null)
+			{
+				float phred = caddStore.getPhred(chr, Long.parseLong(pos), ref, alt);
+				CADDscore = Float.isNaN(phred) ? null : (double) phred;
+			}
 			String ann = record.getString("ANN");
 			Set<String> genes = GavinUtils.getGenesFromAnn(ann);
 			String id = record.getString("ID");
@@ -202,146 +361,161 @@ public class Step9_Validation
 			
 			String mvlClassfc = record.getString("CLSF");
 			String mvlName = record.getString("MVL");
-			
-			ArrayList<Judgment> multipleJudgments = new ArrayList<Judgment>();
-			
-			boolean geneToIdMatchFound = false;
+
+			//the genes and their impacts are the same for every tool
+			List<String> matchingGenes = new ArrayList<String>();
+			List<Impact> impacts = new ArrayList<Impact>();
 			for(String gene : genes)
 			{
 				if(!hasGeneId || gene.equals(geneFromId))
 				{
-					geneToIdMatchFound = true;
-					Impact impact = GavinUtils.getImpact(ann, gene, alt);
-
-					Judgment judgment;
-					if (mode.equals(ToolNames.GAVIN))
-					{
-						judgment = gavin.classifyVariant(impact, CADDscore, MAF, gene, null, this.gavinData);
-					}
-					else if(mode.equals(ToolNames.GAVINnocal))
-					{
-						judgment = gavin.genomewideClassifyVariant(impact, CADDscore, MAF, gene);
-					}
-					else if (mode.equals(ToolNames.PONP2))
-					{
-						judgment = p2r.classifyVariantUsingPONP2Results(chr, pos, ref, alt);
-					}
-					else if (mode.equals(ToolNames.PROVEAN))
-					{
-						judgment = ps2r.classifyVariantUsingProveanResults(chr, pos, ref, alt);
-					}
-					else if (mode.equals(ToolNames.SIFT))
-					{
-						judgment = ps2r.classifyVariantUsingSiftResults(chr, pos, ref, alt);
-					}
-					else if (mode.equals(ToolNames.PolyPhen2))
-					{
-						judgment = pf2r.classifyVariantUsingPolyPhen2Results(chr, pos, ref, alt);
-					}
-					else if (mode.equals(ToolNames.MSC_ClinVar95CI) || mode.equals(ToolNames.MSC_HGMD99CI))
+					matchingGenes.add(gene);
+					impacts.add(GavinUtils.getImpact(ann, gene, alt));
+				}
+			}
+			boolean geneToIdMatchFound = !matchingGenes.isEmpty();
+			
+			for(ToolResults toolResults : results)
+			{
+				ToolNames mode = toolResults.mode;
+				ArrayList<Judgment> multipleJudgments = new ArrayList<Judgment>();
+				
+				for(int i = 0; i < matchingGenes.size(); i++)
+				{
+					multipleJudgments.add(classify(mode, sources, gavin, gavinData, matchingGenes.get(i), impacts.get(i), chr, pos, ref, alt, CADDscore, MAF));
+				}
+				if(hasGeneId && !geneToIdMatchFound)
+				{
+					if(mode.equals(ToolNames.GAVIN) && gavinData.containsKey(geneFromId)) { toolResults.judgmentsInCalibratedGenes++; }
+					System.out.println("WARNING: bad data for variant " + chr + ":" + pos + " " + ref + "/" + alt + ", no match from ID field gene to snpeff annotations!");
+					multipleJudgments.add(new Judgment(Classification.VOUS, Method.calibrated, geneFromId, "Bad data!"));
+				}
+				
+				//if no judgment, add null for this variant
+				if(multipleJudgments.size() == 0)
+				{
+					throw new Exception("No judgments! should not occur.");
+				}
+				
+				//go through the possible classifications and check if any of them are conflicting
+				//also, if we have a calibrated judgment, 
+				int nrOfBenignClsf = 0;
+				int nrOfPathognClsf = 0;
+				boolean hasCalibratedJudgment = false;
+				for(Judgment judgment : multipleJudgments)
+				{
+					if(judgment.getClassification().equals(Classification.Benign))
 					{
-						judgment = mscr.classifyVariantUsingMSCResults(gene, CADDscore);
+						nrOfBenignClsf++;
 					}
-					else if (mode.equals(ToolNames.Condel))
+					if(judgment.getClassification().equals(Classification.Pathogenic))
 					{
-						judgment = condelr.classifyVariantUsingCondelResults(chr, pos, ref, alt);
+						nrOfPathognClsf++;
 					}
-					else if (mode.equals(ToolNames.PredictSNP2) || mode.equals(ToolNames.FATHMM) || mode.equals(ToolNames.FunSeq) || mode.equals(ToolNames.GWAVA) || mode.equals(ToolNames.DANN) )
+					if(judgment.getConfidence().equals(Method.calibrated))
 					{
-						judgment = predictSNP2r.classifyVariantUsingPredictSNP2Results(chr, pos, ref, alt, mode.toString());
+						hasCalibratedJudgment = true;
 					}
-					else if (mode.equals(ToolNames.CADD))
+				}
+				
+				/**
+				 * Now we can assign the final verdict for this variant
+				 */
+				
+				//check if we have any conflicts
+				//TODO could be improved by prioritizing calibrated over genomewide results for our method
+				if(nrOfBenignClsf > 0 && nrOfPathognClsf > 0)
+				{
+					if(mode.equals(ToolNames.GAVIN) && hasCalibratedJudgment) { toolResults.judgmentsInCalibratedGenes++; }
+					System.out.println("WARNING: conflicting classification! adding no judgment for this variant: " + chr + ":" + pos + " " + ref + "/" + alt + ", judged: " + multipleJudgments.toString() );
+					addToMVLResults(toolResults.judgedMVLVariants, new Judgment(Classification.VOUS, (hasCalibratedJudgment ? Method.calibrated : Method.genomewide), geneFromId, "Conflicting classification!!"), mvlClassfc, mvlName, record);
+				}
+				else
+				{
+					for(Judgment judgment : multipleJudgments)
 					{
-						if(CADDscore != null && CADDscore > 15)
+						//if we know we have calibrated results, wait for it, then add it, and then break
+						if(hasCalibratedJudgment && judgment.getConfidence().equals(Method.calibrated))
 						{
-							judgment = new Judgment(Classification.Pathogenic, Method.calibrated, gene, "CADD score > 15");
+							addToMVLResults(toolResults.judgedMVLVariants, judgment, mvlClassfc, mvlName, record);
+							if(mode.equals(ToolNames.GAVIN)) { toolResults.judgmentsInCalibratedGenes++; }
+							break;
 						}
-						else if(CADDscore != null && CADDscore <= 15)
+						//if not, might as well add this one and be done
+						//TODO: this means there may be multiple verdicts, e.g. 2x BENIGN for context in two genes, but we only add 1 of them, to keep things a bit more simple
+						else if(!hasCalibratedJudgment)
 						{
-							judgment = new Judgment(Classification.Benign, Method.calibrated, gene, "CADD score <= 15");
-						}
-						else{
-							judgment = new Judgment(Classification.VOUS, Method.calibrated, gene, "CADD score not available");
+							addToMVLResults(toolResults.judgedMVLVariants, judgment, mvlClassfc, mvlName, record);
+							break;
 						}
 					}
-					else
-					{
-						throw new Exception("Mode unknown: " + mode);
-					}
-					
-					multipleJudgments.add(judgment);
 				}
 			}
-			if(hasGeneId && !geneToIdMatchFound)
-			{
-				if(mode.equals(ToolNames.GAVIN) && gavinData.containsKey(geneFromId)) { judgmentsInCalibratedGenes++; }
-				System.out.println("WARNING: bad data for variant " + chr + ":" + pos + " " + ref + "/" + alt + ", no match from ID field gene to snpeff annotations!");
-				multipleJudgments.add(new Judgment(Classification.VOUS, Method.calibrated, geneFromId, "Bad data!"));
-			}
-			
-			//if no judgment, add null for this variant
-			if(multipleJudgments.size() == 0)
-			{
-				throw new Exception("No judgments! should not occur.");
-			}
-			
-			//go through the possible classifications and check if any of them are conflicting
-			//also, if we have a calibrated judgment, 
-			int nrOfBenignClsf = 0;
-			int nrOfPathognClsf = 0;
-			boolean hasCalibratedJudgment = false;
-			for(Judgment judgment : multipleJudgments)
+		}
+	}
+	
+	/**
+	 * The judgment of one tool on a variant in the context of one gene
+	 */
+	private static Judgment classify(ToolNames mode, PredictionSources sources, GavinAlgorithm gavin, HashMap<String, GavinEntry> gavinData, String gene, Impact impact, String chr, String pos, String ref, String alt, Double CADDscore, double MAF) throws Exception
+	{
+		if (mode.equals(ToolNames.GAVIN))
+		{
+			return gavin.classifyVariant(impact, CADDscore, MAF, gene, null, gavinData);
+		}
+		else if(mode.equals(ToolNames.GAVINnocal))
+		{
+			return gavin.genomewideClassifyVariant(impact, CADDscore, MAF, gene);
+		}
+		else if (mode.equals(ToolNames.PONP2))
+		{
+			return sources.ponp2.classifyVariantUsingPONP2Results(chr, pos, ref, alt);
+		}
+		else if (mode.equals(ToolNames.PROVEAN))
+		{
+			return sources.proveanAndSift.classifyVariantUsingProveanResults(chr, pos, ref, alt);
+		}
+		else if (mode.equals(ToolNames.SIFT))
+		{
+			return sources.proveanAndSift.classifyVariantUsingSiftResults(chr, pos, ref, alt);
+		}
+		else if (mode.equals(ToolNames.PolyPhen2))
+		{
+			return sources.polyPhen2.classifyVariantUsingPolyPhen2Results(chr, pos, ref, alt);
+		}
+		else if (mode.equals(ToolNames.MSC_ClinVar95CI) || mode.equals(ToolNames.MSC_HGMD99CI))
+		{
+			return sources.msc.get(mode).classifyVariantUsingMSCResults(gene, CADDscore);
+		}
+		else if (mode.equals(ToolNames.Condel))
+		{
+			return sources.condel.classifyVariantUsingCondelResults(chr, pos, ref, alt);
+		}
+		else if (mode.equals(ToolNames.PredictSNP2) || mode.equals(ToolNames.FATHMM) || mode.equals(ToolNames.FunSeq) || mode.equals(ToolNames.GWAVA) || mode.equals(ToolNames.DANN) )
+		{
+			return sources.predictSNP2.classifyVariantUsingPredictSNP2Results(chr, pos, ref, alt, mode.toString());
+		}
+		else if (mode.equals(ToolNames.CADD))
+		{
+			if(CADDscore != null && CADDscore > 15)
 			{
-				if(judgment.getClassification().equals(Classification.Benign))
-				{
-					nrOfBenignClsf++;
-				}
-				if(judgment.getClassification().equals(Classification.Pathogenic))
-				{
-					nrOfPathognClsf++;
-				}
-				if(judgment.getConfidence().equals(Method.calibrated))
-				{
-					hasCalibratedJudgment = true;
-				}
+				return new Judgment(Classification.Pathogenic, Method.calibrated, gene, "CADD score > 15");
 			}
-			
-			/**
-			 * Now we can assign the final verdict for this variant
-			 */
-			
-			//check if we have any conflicts
-			//TODO could be improved by prioritizing calibrated over genomewide results for our method
-			if(nrOfBenignClsf > 0 && nrOfPathognClsf > 0)
+			else if(CADDscore != null && CADDscore <= 15)
 			{
-				if(mode.equals(ToolNames.GAVIN) && hasCalibratedJudgment) { judgmentsInCalibratedGenes++; }
-				System.out.println("WARNING: conflicting classification! adding no judgment for this variant: " + chr + ":" + pos + " " + ref + "/" + alt + ", judged: " + multipleJudgments.toString() );
-				addToMVLResults(new Judgment(Classification.VOUS, (hasCalibratedJudgment ? Method.calibrated : Method.genomewide), geneFromId, "Conflicting classification!!"), mvlClassfc, mvlName, record);
+				return new Judgment(Classification.Benign, Method.calibrated, gene, "CADD score <= 15");
 			}
-			else
-			{
-				for(Judgment judgment : multipleJudgments)
-				{
-					//if we know we have calibrated results, wait for it, then add it, and then break
-					if(hasCalibratedJudgment && judgment.getConfidence().equals(Method.calibrated))
-					{
-						addToMVLResults(judgment, mvlClassfc, mvlName, record);
-						if(mode.equals(ToolNames.GAVIN)) { judgmentsInCalibratedGenes++; }
-						break;
-					}
-					//if not, might as well add this one and be done
-					//TODO: this means there may be multiple verdicts, e.g. 2x BENIGN for context in two genes, but we only add 1 of them, to keep things a bit more simple
-					else if(!hasCalibratedJudgment)
-					{
-						addToMVLResults(judgment, mvlClassfc, mvlName, record);
-						break;
-					}
-				}
+			else{
+				return new Judgment(Classification.VOUS, Method.calibrated, gene, "CADD score not available");
 			}
 		}
+		else
+		{
+			throw new Exception("Mode unknown: " + mode);
+		}
 	}
 	
-	private void addToMVLResults(Judgment judgment, String mvlClasfc, String mvl, Entity variant)
+	private static void addToMVLResults(HashMap<String, List<JudgedVariant>> judgedMVLVariants, Judgment judgment, String mvlClasfc, String mvl, Entity variant)
 	{
 		if(!judgedMVLVariants.containsKey(mvl))
 		{
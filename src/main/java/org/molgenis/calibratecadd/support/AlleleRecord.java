@@ -0,0 +1,63 @@
+package org.molgenis.calibratecadd.support;
+
+/**
+ * One alt allele of an ExAC or ClinVar variant, with only the values Step4 needs, so the full VCF entity
+ * (with all its INFO fields) does not have to be kept in memory while genes are matched.
+ *
+ * ExAC alleles of the same VCF record share one ParsedCSQ. ClinVar alleles have no CSQ, but get their
+ * impact from the SnpEff ANN field when they are created.
+ */
+public class AlleleRecord
+{
+	public static final byte IMPACT_UNKNOWN = -1;
+
+	//chromosome code, see Chromosomes
+	public final int chrom;
+	//chromosome as written in ExAC or ClinVar, e.g. with 'chr' prefix or M, which is what the output of Step4 keeps
+	public final String chromName;
+	public final int pos;
+	//interned, since the same few alleles occur over and over
+	public final String ref;
+	public final String alt;
+	//allele frequency, 0 for ClinVar
+	public final double af;
+	//for ExAC: AC_Adj of the first alt allele of the record, which is what the singleton filter has always used, 0 for ClinVar
+	public final int acAdj;
+	//shared by all alleles of an ExAC record, null for ClinVar or when the record has no CSQ
+	public final ParsedCSQ csq;
+	//impact rank (see VEPimpactCategories.getImpactRank), known for ClinVar, and for ExAC once matched to a canonical transcript
+	public byte impact = IMPACT_UNKNOWN;
+
+	public AlleleRecord(String chromName, int pos, String ref, String alt, double af, int acAdj, ParsedCSQ csq)
+	{
+		this.chrom = Chromosomes.code(chromName);
+		this.chromName = chromName.intern();
+		this.pos = pos;
+		this.ref = ref.intern();
+		this.alt = alt.intern();
+		this.af = af;
+		this.acAdj = acAdj;
+		this.csq = csq;
+	}
+
+	public String getChromName()
+	{
+		return chromName;
+	}
+
+	public VariantKey getKey()
+	{
+		return VariantKey.of(chrom, pos, ref, alt);
+	}
+
+	public String getImpactName()
+	{
+		return VEPimpactCategories.getImpactName(impact);
+	}
+
+	@Override
+	public String toString()
+	{
+		return getChromName() + "_" + pos + "_" + ref + "_" + alt;
+	}
+}
@@ -0,0 +1,411 @@
+package org.molgenis.calibratecadd.support;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Scanner;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32;
+
+import org.apache.http.HttpResponse;
+import org.apache.http.client.methods.HttpPost;
+import org.apache.http.entity.ContentType;
+import org.apache.http.entity.StringEntity;
+import org.apache.http.impl.client.DefaultHttpClient;
+import org.apache.http.impl.conn.PoolingClientConnectionManager;
+import org.apache.http.params.HttpConnectionParams;
+import org.apache.http.util.EntityUtils;
+
+/**
+ * Score variants with a CADD scoring service, for the variants that are not in the local CADD files
+ * (see LocalCADDScorer), instead of uploading and downloading chunks by hand.
+ *
+ * The variants are split into chunks of at most a number of variants and bytes, in input order. Chunks are POSTed
+ * as tab-separated CHROM, POS, ID, REF, ALT lines, at most 'concurrency' at the same time, and the service answers
+ * with CADD output lines (CHROM, POS, REF, ALT, RawScore, PHRED). A chunk that fails is retried after 1, 2, 4, ..
+ * times the initial backoff. Each finished chunk is saved in the checkpoint directory, so a run that was stopped
+ * halfway only sends the chunks that are not there yet. Saved chunks are used only when their input is the same.
+ * When all chunks are done, their results are merged in input order into one file in the web service output format.
+ *
+ * CADDStandInServer answers the same requests with deterministic scores, to try this without the real service.
+ */
+public class CADDServiceClient
+{
+	public static final int DEFAULT_MAX_CHUNK_VARIANTS = 50000;
+	public static final int DEFAULT_MAX_CHUNK_BYTES = 1 << 20;
+	public static final int DEFAULT_CONCURRENCY = 2;
+	public static final int DEFAULT_MAX_RETRIES = 5;
+	public static final long DEFAULT_BACKOFF_MILLIS = 1000;
+	private static final int TIMEOUT_MILLIS = 30 * 60 * 1000;
+	private static final String CHECKPOINT_HEADER = "## chunk ";
+	private static final long SHUTDOWN_WAIT_SECONDS = 60;
+
+	/**
+	 * Uses:
+	 * [0] variants to score, e.g. the '.cadd.tsv' file of step 4 or the '.missing' file of step 5
+	 * [1] URL of the scoring service
+	 * [2] output file, in the format of the web service output
+	 *
+	 * Options:
+	 * --concurrency N : nr of chunks sent at the same time (default 2)
+	 * --chunk-variants N : max nr of variants per chunk (default 50000)
+	 * --chunk-bytes N : max size of a chunk in bytes (default 1 MB)
+	 * --retries N : nr of times a failed chunk is sent again (default 5)
+	 * --backoff MS : wait before the first retry, doubled for every next one (default 1000)
+	 * --checkpoint DIR : keep finished chunks here, and skip them when run again (default [2] + '.chunks')
+	 */
+	public static void main(String[] args) throws Exception
+	{
+		CADDServiceClient client = new CADDServiceClient(args[1]);
+		File checkpointDir = new File(args[2] + ".chunks");
+		for(int i = 3; i < args.length; i++)
+		{
+			if(args[i].equals("--concurrency") && i + 1 < args.length)
+			{
+				client.concurrency = Integer.parseInt(args[++i]);
+			}
+			else if(args[i].equals("--chunk-variants") && i + 1 < args.length)
+			{
+				client.maxChunkVariants = Integer.parseInt(args[++i]);
+			}
+			else if(args[i].equals("--chunk-bytes") && i + 1 < args.length)
+			{
+				client.maxChunkBytes = Integer.parseInt(args[++i]);
+			}
+			else if(args[i].equals("--retries") && i + 1 < args.length)
+			{
+				client.maxRetries = Integer.parseInt(args[++i]);
+			}
+			else if(args[i].equals("--backoff") && i + 1 < args.length)
+			{
+				client.backoffMillis = Long.parseLong(args[++i]);
+			}
+			else if(args[i].equals("--checkpoint") && i + 1 < args.length)
+			{
+				checkpointDir = new File(args[++i]);
+			}
+			else
+			{
+				throw new Exception("unknown option: " + args[i]);
+			}
+		}
+		client.score(new File(args[0]), new File(args[2]), checkpointDir);
+	}
+
+	private static class Chunk
+	{
+		int number;
+		List<String> lines = new ArrayList<String>();
+		int nrOfBytes = 0;
+		String request;
+		long checksum;
+	}
+
+	private String serviceUrl;
+	private int concurrency = DEFAULT_CONCURRENCY;
+	private int maxChunkVariants = DEFAULT_MAX_CHUNK_VARIANTS;
+	private int maxChunkBytes = DEFAULT_MAX_CHUNK_BYTES;
+	private int maxRetries = DEFAULT_MAX_RETRIES;
+	private long backoffMillis = DEFAULT_BACKOFF_MILLIS;
+
+	public CADDServiceClient(String serviceUrl)
+	{
+		this.serviceUrl = serviceUrl;
+	}
+
+	public CADDServiceClient(String serviceUrl, int concurrency, int maxChunkVariants, int maxChunkBytes, int maxRetries, long backoffMillis)
+	{
+		this.serviceUrl = serviceUrl;
+		this.concurrency = concurrency;
+		this.maxChunkVariants = maxChunkVariants;
+		this.maxChunkBytes = maxChunkBytes;
+		this.maxRetries = maxRetries;
+		this.backoffMillis = backoffMillis;
+	}
+
+	/**
+	 * Score all variants, and merge the results in input order
+	 * @param variantsFile CHROM, POS, ID, REF, ALT lines
+	 * @param outputFile CADD web service format: CHROM, POS, REF, ALT, RawScore, PHRED
+	 * @param checkpointDir where finished chunks are kept, created if needed
+	 * @return nr of variants scored
+	 * @throws Exception
+	 */
+	public int score(File variantsFile, File outputFile, File checkpointDir) throws Exception
+	{
+		if(concurrency < 1 || maxChunkVariants < 1 || maxChunkBytes < 1 || maxRetries < 0 || backoffMillis < 0)
+		{
+			throw new IllegalArgumentException("concurrency and chunk sizes must be at least 1, retries and backoff at least 0");
+		}
+		if(!checkpointDir.isDirectory() && !checkpointDir.mkdirs())
+		{
+			throw new IOException("could not create checkpoint directory " + checkpointDir.getAbsolutePath());
+		}
+		List<Chunk> chunks = readChunks(variantsFile);
+
+		PoolingClientConnectionManager connections = new PoolingClientConnectionManager();
+		connections.setMaxTotal(concurrency);
+		connections.setDefaultMaxPerRoute(concurrency);
+		final DefaultHttpClient httpClient = new DefaultHttpClient(connections);
+		HttpConnectionParams.setConnectionTimeout(httpClient.getParams(), TIMEOUT_MILLIS);
+		HttpConnectionParams.setSoTimeout(httpClient.getParams(), TIMEOUT_MILLIS);
+
+		ExecutorService pool = Executors.newFixedThreadPool(concurrency);
+		List<Future<File>> results = new ArrayList<Future<File>>();
+		int nrFromCheckpoint = 0;
+		try
+		{
+			for (final Chunk chunk : chunks)
+			{
+				final File chunkFile = new File(checkpointDir, String.format("chunk-%06d.tsv", chunk.number));
+				if(isCheckpointed(chunkFile, chunk))
+				{
+					nrFromCheckpoint++;
+					results.add(null);
+					continue;
+				}
+				results.add(pool.submit(new Callable<File>()
+				{
+					@Override
+					public File call() throws Exception
+					{
+						String response = post(httpClient, chunk);
+						saveChunk(chunkFile, chunk, response);
+						return chunkFile;
+					}
+				}));
+			}
+			System.out.println("split " + variantsFile.getName() + " into " + chunks.size() + " chunks, of which " + nrFromCheckpoint + " already done, scoring the others with " + concurrency + " concurrent requests ..");
+
+			//wait for all chunks before writing, so a failed run leaves no partial output
+			int nrDone = nrFromCheckpoint;
+			for (Future<File> result : results)
+			{
+				if(result != null)
+				{
+					result.get();
+					nrDone++;
+					if(nrDone % 10 == 0)
+					{
+						System.out.println(nrDone + " of " + chunks.size() + " chunks done");
+					}
+				}
+			}
+
+			int nrOfResults = 0;
+			PrintWriter pw = new PrintWriter(outputFile);
+			try
+			{
+				pw.println("## CADD scores from " + serviceUrl);
+				pw.println("#CHROM" + "\t" + "POS" + "\t" + "REF" + "\t" + "ALT" + "\t" + "RawScore" + "\t" + "PHRED");
+				for (Chunk chunk : chunks)
+				{
+					nrOfResults += appendResults(new File(checkpointDir, String.format("chunk-%06d.tsv", chunk.number)), pw);
+				}
+			}
+			finally
+			{
+				pw.flush();
+				pw.close();
+			}
+			int nrOfVariants = 0;
+			for (Chunk chunk : chunks)
+			{
+				nrOfVariants += chunk.lines.size();
+			}
+			System.out.println("..done, scored " + nrOfResults + " of " + nrOfVariants + " variants, written to " + outputFile.getName());
+			return nrOfResults;
+		}
+		catch (ExecutionException e)
+		{
+			throw new Exception("failed to score " + variantsFile.getAbsolutePath() + ", chunks done so far are kept in " + checkpointDir.getAbsolutePath(), e.getCause());
+		}
+		finally
+		{
+			//also when a chunk failed: stop the others before returning, so the checkpoint directory does not change afterwards
+			stopChunks(results, pool, connections);
+		}
+	}
+
+	/**
+	 * Cancel the chunks that are queued or running, and wait until they have stopped.
+	 * Closing the connections makes a request that is waiting for the service fail right away.
+	 */
+	private static void stopChunks(List<Future<File>> results, ExecutorService pool, PoolingClientConnectionManager connections) throws InterruptedException
+	{
+		for (Future<File> result : results)
+		{
+			if(result != null)
+			{
+				result.cancel(true);
+			}
+		}
+		pool.shutdownNow();
+		connections.shutdown();
+		if(!pool.awaitTermination(SHUTDOWN_WAIT_SECONDS, TimeUnit.SECONDS))
+		{
+			System.out.println("chunks still running " + SHUTDOWN_WAIT_SECONDS + " seconds after the run stopped");
+		}
+	}
+
+	private List<Chunk> readChunks(File variantsFile) throws FileNotFoundException
+	{
+		List<Chunk> chunks = new ArrayList<Chunk>();
+		Chunk chunk = null;
+		Scanner s = new Scanner(variantsFile);
+		try
+		{
+			while (s.hasNextLine())
+			{
+				String line = s.nextLine();
+				if(line.isEmpty() || line.startsWith("#"))
+				{
+					continue;
+				}
+				int lineBytes = line.length() + 1;
+				if(chunk == null || chunk.lines.size() == maxChunkVariants || (chunk.nrOfBytes + lineBytes > maxChunkBytes && !chunk.lines.isEmpty()))
+				{
+					chunk = new Chunk();
+					chunk.number = chunks.size();
+					chunks.add(chunk);
+				}
+				chunk.lines.add(line);
+				chunk.nrOfBytes += lineBytes;
+			}
+		}
+		finally
+		{
+			s.close();
+		}
+
+		for (Chunk c : chunks)
+		{
+			StringBuilder request = new StringBuilder(c.nrOfBytes);
+			for (String line : c.lines)
+			{
+				request.append(line).append('\n');
+			}
+			c.request = request.toString();
+			CRC32 crc = new CRC32();
+			crc.update(c.request.getBytes(StandardCharsets.UTF_8));
+			c.checksum = crc.getValue();
+		}
+		return chunks;
+	}
+
+	/**
+	 * Send a chunk, and retry with exponential backoff when it fails on a connection error, a server error (5xx) or 429
+	 */
+	private String post(DefaultHttpClient httpClient, Chunk chunk) throws Exception
+	{
+		for (int attempt = 0;; attempt++)
+		{
+			try
+			{
+				HttpPost post = new HttpPost(serviceUrl);
+				post.setEntity(new StringEntity(chunk.request, ContentType.create("text/tab-separated-values", StandardCharsets.UTF_8)));
+				HttpResponse response = httpClient.execute(post);
+				String body = EntityUtils.toString(response.getEntity(), StandardCharsets.UTF_8);
+				int status = response.getStatusLine().getStatusCode();
+				if(status >= 400 && status < 500 && status != 429)
+				{
+					//the request itself is wrong, sending it again will not help
+					throw new Exception("service answered " + response.getStatusLine() + " for chunk " + chunk.number + ": " + body);
+				}
+				if(status != 200)
+				{
+					throw new IOException("service answered " + response.getStatusLine() + " for chunk " + chunk.number);
+				}
+				return body;
+			}
+			catch (IOException e)
+			{
+				if(attempt == maxRetries)
+				{
+					throw new IOException("chunk " + chunk.number + " failed after " + (maxRetries + 1) + " attempts", e);
+				}
+				long wait = backoffMillis << Math.min(attempt, 20);
+				System.out.println("chunk " + chunk.number + " failed (" + e.getMessage() + "), retrying in " + wait + " ms");
+				Thread.sleep(wait);
+			}
+		}
+	}
+
+	/**
+	 * Write to a temporary file first, so an interrupted run never leaves a partial chunk behind,
+	 * and do not save it at all when the run was stopped in the meantime
+	 */
+	private static void saveChunk(File chunkFile, Chunk chunk, String response) throws IOException
+	{
+		File tmp = new File(chunkFile.getPath() + ".tmp");
+		PrintWriter pw = new PrintWriter(tmp);
+		pw.println(CHECKPOINT_HEADER + chunk.number + " " + chunk.lines.size() + " " + chunk.checksum);
+		pw.print(response);
+		pw.flush();
+		boolean error = pw.checkError();
+		pw.close();
+		if(error)
+		{
+			throw new IOException("could not write " + tmp.getAbsolutePath());
+		}
+		if(Thread.currentThread().isInterrupted())
+		{
+			//the run was stopped while this chunk was being scored
+			tmp.delete();
+			throw new IOException("chunk " + chunk.number + " cancelled");
+		}
+		Files.move(tmp.toPath(), chunkFile.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+	}
+
+	private static boolean isCheckpointed(File chunkFile, Chunk chunk) throws FileNotFoundException
+	{
+		if(!chunkFile.isFile())
+		{
+			return false;
+		}
+		Scanner s = new Scanner(chunkFile);
+		try
+		{
+			return s.hasNextLine() && s.nextLine().equals(CHECKPOINT_HEADER + chunk.number + " " + chunk.lines.size() + " " + chunk.checksum);
+		}
+		finally
+		{
+			s.close();
+		}
+	}
+
+	private static int appendResults(File chunkFile, PrintWriter pw) throws FileNotFoundException
+	{
+		int nrOfResults = 0;
+		Scanner s = new Scanner(chunkFile);
+		try
+		{
+			while (s.hasNextLine())
+			{
+				String line = s.nextLine();
+				if(line.isEmpty() || line.startsWith("#"))
+				{
+					continue;
+				}
+				pw.println(line);
+				nrOfResults++;
+			}
+		}
+		finally
+		{
+			s.close();
+		}
+		return nrOfResults;
+	}
+}
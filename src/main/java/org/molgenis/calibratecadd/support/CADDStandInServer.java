@@ -0,0 +1,177 @@
+package org.molgenis.calibratecadd.support;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.Locale;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.CRC32;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * Local stand-in for a CADD scoring service, answering the requests of CADDServiceClient, so the whole scoring path
+ * can be run offline. The scores are made up, but the same variant always gets the same score.
+ *
+ * Every n-th request can be made to fail, with '503 Service Unavailable' or another status such as '429 Too Many
+ * Requests', to see retries at work.
+ */
+public class CADDStandInServer implements Closeable
+{
+	/**
+	 * Uses:
+	 * [0] port to listen on, e.g. 8080, the service is then at http://localhost:8080/score
+	 *
+	 * Options:
+	 * --fail-every N : answer every N-th request with a failure (default 0, never)
+	 * --fail-status N : HTTP status of the failures (default 503)
+	 */
+	public static void main(String[] args) throws Exception
+	{
+		int failEvery = 0;
+		int failStatus = 503;
+		for(int i = 1; i < args.length; i++)
+		{
+			if(args[i].equals("--fail-every") && i + 1 < args.length)
+			{
+				failEvery = Integer.parseInt(args[++i]);
+			}
+			else if(args[i].equals("--fail-status") && i + 1 < args.length)
+			{
+				failStatus = Integer.parseInt(args[++i]);
+			}
+			else
+			{
+				throw new Exception("unknown option: " + args[i]);
+			}
+		}
+		CADDStandInServer server = new CADDStandInServer(Integer.parseInt(args[0]), failEvery, failStatus);
+		System.out.println("CADD stand-in listening at " + server.getUrl() + ", stop with ctrl-c");
+	}
+
+	private HttpServer server;
+	private ExecutorService pool;
+	private int failEvery;
+	private int failStatus;
+	private AtomicInteger nrOfRequests = new AtomicInteger();
+
+	/**
+	 * Start listening
+	 * @param port 0 for any free port
+	 * @param failEvery answer every n-th request with 503, 0 for never
+	 * @throws IOException
+	 */
+	public CADDStandInServer(int port, int failEvery) throws IOException
+	{
+		this(port, failEvery, 503);
+	}
+
+	/**
+	 * Start listening
+	 * @param port 0 for any free port
+	 * @param failEvery answer every n-th request with failStatus, 0 for never
+	 * @param failStatus e.g. 503 or 429
+	 * @throws IOException
+	 */
+	public CADDStandInServer(int port, int failEvery, int failStatus) throws IOException
+	{
+		this.failEvery = failEvery;
+		this.failStatus = failStatus;
+		this.server = HttpServer.create(new InetSocketAddress("localhost", port), 0);
+		this.pool = Executors.newCachedThreadPool();
+		server.setExecutor(pool);
+		server.createContext("/score", new HttpHandler()
+		{
+			@Override
+			public void handle(HttpExchange exchange) throws IOException
+			{
+				try
+				{
+					score(exchange);
+				}
+				finally
+				{
+					exchange.close();
+				}
+			}
+		});
+		server.start();
+	}
+
+	private void score(HttpExchange exchange) throws IOException
+	{
+		int requestNr = nrOfRequests.incrementAndGet();
+		if(!exchange.getRequestMethod().equals("POST"))
+		{
+			respond(exchange, 405, "POST variants as CHROM, POS, ID, REF, ALT lines\n");
+			return;
+		}
+		if(failEvery > 0 && requestNr % failEvery == 0)
+		{
+			respond(exchange, failStatus, "stand-in failure for request " + requestNr + "\n");
+			return;
+		}
+
+		StringBuilder response = new StringBuilder();
+		response.append("## CADD stand-in, scores are not real\n");
+		response.append("#CHROM\tPOS\tREF\tALT\tRawScore\tPHRED\n");
+		BufferedReader in = new BufferedReader(new InputStreamReader(exchange.getRequestBody(), StandardCharsets.UTF_8));
+		String line;
+		while ((line = in.readLine()) != null)
+		{
+			if(line.isEmpty() || line.startsWith("#"))
+			{
+				continue;
+			}
+			String[] split = line.split("\t", -1);
+			if(split.length < 5)
+			{
+				respond(exchange, 400, "expected CHROM, POS, ID, REF, ALT but got: " + line + "\n");
+				return;
+			}
+			CRC32 crc = new CRC32();
+			crc.update((split[0] + "\t" + split[1] + "\t" + split[3] + "\t" + split[4]).getBytes(StandardCharsets.UTF_8));
+			long hash = crc.getValue();
+			double phred = (hash % 50000) / 1000.0;
+			double rawScore = ((hash >>> 16) % 20000) / 1000.0 - 5;
+			response.append(split[0]).append('\t').append(split[1]).append('\t').append(split[3]).append('\t').append(split[4]).append('\t')
+					.append(String.format(Locale.ROOT, "%.6f", rawScore)).append('\t').append(String.format(Locale.ROOT, "%.3f", phred)).append('\n');
+		}
+		respond(exchange, 200, response.toString());
+	}
+
+	private static void respond(HttpExchange exchange, int status, String body) throws IOException
+	{
+		byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+		exchange.getResponseHeaders().set("Content-Type", "text/tab-separated-values; charset=UTF-8");
+		exchange.sendResponseHeaders(status, bytes.length);
+		OutputStream out = exchange.getResponseBody();
+		out.write(bytes);
+		out.close();
+	}
+
+	public String getUrl()
+	{
+		return "http://localhost:" + server.getAddress().getPort() + "/score";
+	}
+
+	public int getNrOfRequests()
+	{
+		return nrOfRequests.get();
+	}
+
+	@Override
+	public void close()
+	{
+		server.stop(0);
+		pool.shutdownNow();
+	}
+}
@@ -0,0 +1,296 @@
+package org.molgenis.calibratecadd.support;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Memory-mapped CADD PHRED scores of all possible SNVs in a set of regions, written by CADDStoreBuilder.
+ * A lookup is a few array reads and one read from the mapped file: no tabix query, no parsing and no allocation.
+ *
+ * Each position takes 6 bytes: the scores of the three alternative bases, in A, C, G, T order without the reference
+ * base, as half-precision floats (about 3 significant digits, e.g. 23.456 is stored as 23.453125). Scores are never
+ * negative, so the sign bits of the first two scores hold the reference base (0-3 for A, C, G, T), which a lookup
+ * checks against the given REF. A score that is not in CADD is NaN.
+ *
+ * File layout (big-endian):
+ * <pre>
+ * "GAVINCDS" int version
+ * data: per chromosome, per region, per position: 3 x short score
+ * index:
+ *   int nrOfChroms, per chromosome: UTF name, long dataStart, int nrOfRegions,
+ *   per region: int start, int end (inclusive), int first position number (relative to dataStart)
+ * long indexStart
+ * </pre>
+ * Regions of a chromosome are sorted and do not overlap. To find the region of a position in constant time, regions
+ * are also indexed per bucket of 2^16 bp.
+ *
+ * Each chromosome is mapped separately, so one chromosome must stay under 2 GB (about 350 Mb of regions).
+ * Safe to query from multiple threads.
+ */
+public class CADDStore implements Closeable
+{
+	static final byte[] MAGIC = "GAVINCDS".getBytes(StandardCharsets.US_ASCII);
+	static final int VERSION = 1;
+	static final int BYTES_PER_POSITION = 6;
+	static final int MISSING = 0x7E00;
+	static final int SIGN_BIT = 0x8000;
+	private static final int BUCKET_BITS = 16;
+
+	private static class ChromData
+	{
+		MappedByteBuffer data;
+		int[] regionStarts;
+		int[] regionEnds;
+		int[] regionFirstPositions;
+		//per bucket, the first region that ends in or after it
+		int[] bucketFirstRegions;
+	}
+
+	private RandomAccessFile file;
+	//by chromosome code, see Chromosomes
+	private ChromData[] chroms = new ChromData[0];
+	private long nrOfPositions = 0;
+
+	public CADDStore(File storeFile) throws IOException
+	{
+		this.file = new RandomAccessFile(storeFile, "r");
+		FileChannel channel = file.getChannel();
+
+		byte[] magic = new byte[MAGIC.length];
+		file.readFully(magic);
+		if(!Arrays.equals(magic, MAGIC))
+		{
+			file.close();
+			throw new IOException("not a CADD store: " + storeFile.getAbsolutePath());
+		}
+		int version = file.readInt();
+		if(version != VERSION)
+		{
+			file.close();
+			throw new IOException("CADD store version " + version + " not supported, expected " + VERSION + ", please rebuild " + storeFile.getAbsolutePath());
+		}
+
+		file.seek(file.length() - 8);
+		long indexStart = file.readLong();
+		file.seek(indexStart);
+		int nrOfChroms = file.readInt();
+		for (int c = 0; c < nrOfChroms; c++)
+		{
+			String chrom = file.readUTF();
+			long dataStart = file.readLong();
+			int nrOfRegions = file.readInt();
+			ChromData chromData = new ChromData();
+			chromData.regionStarts = new int[nrOfRegions];
+			chromData.regionEnds = new int[nrOfRegions];
+			chromData.regionFirstPositions = new int[nrOfRegions];
+			long chromPositions = 0;
+			for (int i = 0; i < nrOfRegions; i++)
+			{
+				chromData.regionStarts[i] = file.readInt();
+				chromData.regionEnds[i] = file.readInt();
+				chromData.regionFirstPositions[i] = file.readInt();
+				chromPositions += chromData.regionEnds[i] - chromData.regionStarts[i] + 1;
+			}
+			if(chromPositions * BYTES_PER_POSITION > Integer.MAX_VALUE)
+			{
+				throw new IOException("chromosome " + chrom + " too large to map: " + chromPositions * BYTES_PER_POSITION + " bytes");
+			}
+			chromData.data = channel.map(FileChannel.MapMode.READ_ONLY, dataStart, chromPositions * BYTES_PER_POSITION);
+			chromData.bucketFirstRegions = indexBuckets(chromData.regionEnds);
+			nrOfPositions += chromPositions;
+
+			int code = Chromosomes.code(chrom);
+			if(code >= chroms.length)
+			{
+				chroms = Arrays.copyOf(chroms, code + 1);
+			}
+			chroms[code] = chromData;
+		}
+	}
+
+	private static int[] indexBuckets(int[] regionEnds)
+	{
+		if(regionEnds.length == 0)
+		{
+			return new int[0];
+		}
+		int[] bucketFirstRegions = new int[(regionEnds[regionEnds.length - 1] >>> BUCKET_BITS) + 1];
+		int region = 0;
+		for (int bucket = 0; bucket < bucketFirstRegions.length; bucket++)
+		{
+			while (regionEnds[region] >>> BUCKET_BITS < bucket)
+			{
+				region++;
+			}
+			bucketFirstRegions[bucket] = region;
+		}
+		return bucketFirstRegions;
+	}
+
+	/**
+	 * Get the CADD PHRED score of an SNV
+	 * @param chrom with or without 'chr' prefix
+	 * @param pos
+	 * @param ref
+	 * @param alt
+	 * @return the score, or NaN if the variant is not an SNV, not in the stored regions, not in CADD,
+	 * or has a different reference base
+	 */
+	public float getPhred(String chrom, long pos, String ref, String alt)
+	{
+		//look up without registering the chromosome, it cannot be in the store if it is unknown
+		int chromCode = Chromosomes.findCode(chrom);
+		if(chromCode == -1 || ref.length() != 1 || alt.length() != 1)
+		{
+			return Float.NaN;
+		}
+		return getPhred(chromCode, pos, ref.charAt(0), alt.charAt(0));
+	}
+
+	/**
+	 * @param chromCode see Chromosomes
+	 * @param pos
+	 * @param ref
+	 * @param alt
+	 * @return
+	 */
+	public float getPhred(int chromCode, long pos, char ref, char alt)
+	{
+		int refCode = baseCode(ref);
+		int altCode = baseCode(alt);
+		if(refCode == -1 || altCode == -1 || refCode == altCode || chromCode < 0 || chromCode >= chroms.length || chroms[chromCode] == null)
+		{
+			return Float.NaN;
+		}
+		ChromData chromData = chroms[chromCode];
+		int positionNumber = positionNumber(chromData, pos);
+		if(positionNumber == -1)
+		{
+			return Float.NaN;
+		}
+
+		int offset = positionNumber * BYTES_PER_POSITION;
+		int first = chromData.data.getShort(offset) & 0xFFFF;
+		int second = chromData.data.getShort(offset + 2) & 0xFFFF;
+		int storedRefCode = ((first & SIGN_BIT) >>> 14) | ((second & SIGN_BIT) >>> 15);
+		if(storedRefCode != refCode)
+		{
+			return Float.NaN;
+		}
+		int slot = altCode < refCode ? altCode : altCode - 1;
+		int score = slot == 0 ? first : slot == 1 ? second : chromData.data.getShort(offset + 4) & 0xFFFF;
+		return fromHalf(score & ~SIGN_BIT);
+	}
+
+	/**
+	 * @return position number within the chromosome data, or -1 if the position is not in a region
+	 */
+	private static int positionNumber(ChromData chromData, long pos)
+	{
+		long bucket = pos >>> BUCKET_BITS;
+		if(pos < 1 || bucket >= chromData.bucketFirstRegions.length)
+		{
+			return -1;
+		}
+		int[] starts = chromData.regionStarts;
+		for (int region = chromData.bucketFirstRegions[(int) bucket]; region < starts.length && starts[region] <= pos; region++)
+		{
+			if(pos <= chromData.regionEnds[region])
+			{
+				return chromData.regionFirstPositions[region] + (int) (pos - starts[region]);
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * Whether a position lies within the stored regions
+	 * @param chrom
+	 * @param pos
+	 * @return
+	 */
+	public boolean contains(String chrom, long pos)
+	{
+		int chromCode = Chromosomes.findCode(chrom);
+		return chromCode != -1 && chromCode < chroms.length && chroms[chromCode] != null && positionNumber(chroms[chromCode], pos) != -1;
+	}
+
+	public long getNrOfPositions()
+	{
+		return nrOfPositions;
+	}
+
+	static int baseCode(char base)
+	{
+		switch (base)
+		{
+			case 'A':
+				return 0;
+			case 'C':
+				return 1;
+			case 'G':
+				return 2;
+			case 'T':
+				return 3;
+			default:
+				return -1;
+		}
+	}
+
+	/**
+	 * Half-precision float for a score of 0 or more, rounded to the nearest value, with NaN as MISSING
+	 * @param value
+	 * @return
+	 */
+	static int toHalf(float value)
+	{
+		if(Float.isNaN(value))
+		{
+			return MISSING;
+		}
+		if(value < 0)
+		{
+			throw new IllegalArgumentException("negative score: " + value);
+		}
+		if(value < 0x1p-14f)
+		{
+			//subnormal, rounds up to the smallest normal value at the boundary
+			return Math.round(value * 0x1p24f);
+		}
+		int bits = Float.floatToIntBits(value);
+		int half = ((((bits >>> 23) & 0xFF) - 112) << 10) | ((bits & 0x7FFFFF) >>> 13);
+		if((bits & 0x1000) != 0)
+		{
+			//a carry into the exponent still gives the nearest value
+			half++;
+		}
+		return Math.min(half, 0x7BFF);
+	}
+
+	static float fromHalf(int half)
+	{
+		int exponent = (half >>> 10) & 0x1F;
+		int mantissa = half & 0x3FF;
+		if(exponent == 0)
+		{
+			return mantissa * 0x1p-24f;
+		}
+		if(exponent == 0x1F)
+		{
+			return mantissa == 0 ? Float.POSITIVE_INFINITY : Float.NaN;
+		}
+		return Float.intBitsToFloat(((exponent + 112) << 23) | (mantissa << 13));
+	}
+
+	@Override
+	public void close() throws IOException
+	{
+		file.close();
+	}
+}
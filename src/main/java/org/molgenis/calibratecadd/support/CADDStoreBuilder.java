@@ -0,0 +1,200 @@
+package org.molgenis.calibratecadd.support;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.TreeMap;
+
+import org.broad.tribble.readers.TabixReader;
+
+/**
+ * One-time extraction of the CADD scores of all possible SNVs in a set of regions into a CADDStore,
+ * e.g. the gene windows of GAVIN_calibrations_r0.1.tsv, so classification does not need tabix lookups per variant.
+ */
+public class CADDStoreBuilder
+{
+	/**
+	 * Uses:
+	 * [0] whole_genome_SNVs.tsv.gz, with the .tbi next to it
+	 * [1] regions: file with Gene, Chr, Start and End columns, e.g. GAVIN_calibrations_r0.1.tsv or the .genes.tsv output of step 4
+	 * [2] output file, e.g. whole_genome_SNVs.gavin.bin
+	 */
+	public static void main(String[] args) throws Exception
+	{
+		new CADDStoreBuilder().build(new File(args[0]), GeneIntervalIndex.loadWindows(new File(args[1])), new File(args[2]));
+	}
+
+	private static class Region
+	{
+		int start;
+		int end;
+
+		Region(int start, int end)
+		{
+			this.start = start;
+			this.end = end;
+		}
+	}
+
+	public void build(File caddFile, List<GeneWindow> windows, File storeFile) throws Exception
+	{
+		System.out.println("extracting scores for " + windows.size() + " windows from " + caddFile.getAbsolutePath() + " into " + storeFile.getAbsolutePath() + " ..");
+		TreeMap<String, List<Region>> regionsPerChrom = mergeWindows(windows);
+
+		DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(storeFile), 1 << 16));
+		TabixReader reader = new TabixReader(caddFile.getAbsolutePath());
+		long written = CADDStore.MAGIC.length + 4;
+		long nrOfPositions = 0;
+		long nrOfScores = 0;
+		List<Long> dataStarts = new ArrayList<Long>();
+		try
+		{
+			out.write(CADDStore.MAGIC);
+			out.writeInt(CADDStore.VERSION);
+
+			for (String chrom : regionsPerChrom.keySet())
+			{
+				dataStarts.add(written);
+				Integer tid = LocalCADDScorer.getSequenceId(reader, chrom);
+				for (Region region : regionsPerChrom.get(chrom))
+				{
+					int length = region.end - region.start + 1;
+					int[] scores = new int[length * 3];
+					Arrays.fill(scores, CADDStore.MISSING);
+					int[] refCodes = new int[length];
+					Arrays.fill(refCodes, -1);
+					if(tid != null)
+					{
+						nrOfScores += readRegion(reader, tid, chrom, region, scores, refCodes);
+					}
+					for (int i = 0; i < length; i++)
+					{
+						int refCode = Math.max(refCodes[i], 0);
+						out.writeShort(scores[i * 3] | ((refCode & 2) != 0 ? CADDStore.SIGN_BIT : 0));
+						out.writeShort(scores[i * 3 + 1] | ((refCode & 1) != 0 ? CADDStore.SIGN_BIT : 0));
+						out.writeShort(scores[i * 3 + 2]);
+					}
+					written += (long) length * CADDStore.BYTES_PER_POSITION;
+					nrOfPositions += length;
+				}
+				System.out.println("chromosome " + chrom + " done, " + nrOfScores + " scores so far");
+			}
+
+			long indexStart = written;
+			out.writeInt(regionsPerChrom.size());
+			int chromNr = 0;
+			for (String chrom : regionsPerChrom.keySet())
+			{
+				out.writeUTF(chrom);
+				out.writeLong(dataStarts.get(chromNr++));
+				List<Region> regions = regionsPerChrom.get(chrom);
+				out.writeInt(regions.size());
+				long firstPosition = 0;
+				for (Region region : regions)
+				{
+					if(firstPosition * CADDStore.BYTES_PER_POSITION > Integer.MAX_VALUE)
+					{
+						throw new Exception("chromosome " + chrom + " too large for one mapped segment");
+					}
+					out.writeInt(region.start);
+					out.writeInt(region.end);
+					out.writeInt((int) firstPosition);
+					firstPosition += region.end - region.start + 1;
+				}
+			}
+			out.writeLong(indexStart);
+		}
+		finally
+		{
+			reader.close();
+			out.close();
+		}
+		System.out.println("done, " + nrOfScores + " scores for " + nrOfPositions + " positions on " + regionsPerChrom.size() + " chromosomes, " + storeFile.length() + " bytes");
+	}
+
+	/**
+	 * Sorted regions per chromosome, with overlapping and adjacent windows merged
+	 */
+	private static TreeMap<String, List<Region>> mergeWindows(List<GeneWindow> windows)
+	{
+		List<GeneWindow> sorted = new ArrayList<GeneWindow>(windows);
+		Collections.sort(sorted, new Comparator<GeneWindow>()
+		{
+			@Override
+			public int compare(GeneWindow w1, GeneWindow w2)
+			{
+				return Long.compare(w1.start, w2.start);
+			}
+		});
+
+		TreeMap<String, List<Region>> regionsPerChrom = new TreeMap<String, List<Region>>(Chromosomes.ORDER);
+		for (GeneWindow window : sorted)
+		{
+			if(window.end < 1 || window.end > Integer.MAX_VALUE)
+			{
+				throw new IllegalArgumentException("window out of range: " + window);
+			}
+			int start = (int) Math.max(1, window.start);
+			int end = (int) window.end;
+			if(!regionsPerChrom.containsKey(window.chrom))
+			{
+				regionsPerChrom.put(window.chrom, new ArrayList<Region>());
+			}
+			List<Region> regions = regionsPerChrom.get(window.chrom);
+			Region last = regions.isEmpty() ? null : regions.get(regions.size() - 1);
+			if(last != null && start <= last.end + 1)
+			{
+				last.end = Math.max(last.end, end);
+			}
+			else
+			{
+				regions.add(new Region(start, end));
+			}
+		}
+		return regionsPerChrom;
+	}
+
+	/**
+	 * Fill the scores and reference bases of a region from the CADD file
+	 * @return nr of scores found
+	 */
+	private static int readRegion(TabixReader reader, int tid, String chrom, Region region, int[] scores, int[] refCodes) throws Exception
+	{
+		//tabix regions are 0-based and half-open
+		TabixReader.Iterator it = reader.query(tid, region.start - 1, region.end);
+		if(it == null)
+		{
+			return 0;
+		}
+		int nrOfScores = 0;
+		String line;
+		while ((line = it.next()) != null)
+		{
+			//CHROM, POS, REF, ALT, RawScore, PHRED
+			String[] split = line.split("\t", -1);
+			long pos = Long.parseLong(split[1]);
+			int refCode = split[2].length() == 1 ? CADDStore.baseCode(split[2].charAt(0)) : -1;
+			int altCode = split[3].length() == 1 ? CADDStore.baseCode(split[3].charAt(0)) : -1;
+			if(pos < region.start || pos > region.end || refCode == -1 || altCode == -1 || refCode == altCode)
+			{
+				continue;
+			}
+			int i = (int) (pos - region.start);
+			if(refCodes[i] != -1 && refCodes[i] != refCode)
+			{
+				throw new Exception("different reference bases at " + chrom + ":" + pos + " in CADD file");
+			}
+			refCodes[i] = refCode;
+			int slot = altCode < refCode ? altCode : altCode - 1;
+			scores[i * 3 + slot] = CADDStore.toHalf(Float.parseFloat(split[5]));
+			nrOfScores++;
+		}
+		return nrOfScores;
+	}
+}
@@ -1,30 +1,27 @@
 package org.molgenis.calibratecadd.support;
 
 import java.util.ArrayList;
-import java.util.HashMap;
 
 public class ChrPosRefAltUniqueVariants
 {
 
 	//VCF lines
-	private HashMap<String,String> lines;
+	private VariantKeyMap<String> lines;
 	
 	//duplicates..
 	private ArrayList<String> duplicateLines;
 	
 	public ChrPosRefAltUniqueVariants()
 	{
-		this.lines = new HashMap<String, String>();
+		this.lines = new VariantKeyMap<String>();
 		this.duplicateLines = new ArrayList<String>();
 	}
 	
 	public boolean add(String line)
 	{
 		String[] split = line.split("\t", -1);
-		String key = split[0] + "_" + split[1] + "_" + split[3] + "_" + split[4];
-		if(!lines.containsKey(key))
+		if(lines.putIfAbsent(VariantKey.of(split[0], Long.parseLong(split[1]), split[3], split[4]), line))
 		{
-			lines.put(key, line);
 			return true;
 		}
 		else
@@ -34,7 +31,10 @@ public class ChrPosRefAltUniqueVariants
 		}
 	}
 	
-	public HashMap<String,String> getLines()
+	/**
+	 * @return unique lines, in the order they were added
+	 */
+	public VariantKeyMap<String> getLines()
 	{
 		return lines;
 	}
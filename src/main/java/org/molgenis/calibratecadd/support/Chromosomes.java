@@ -0,0 +1,150 @@
+package org.molgenis.calibratecadd.support;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+
+/**
+ * Small integer codes for chromosome names, so positions can be packed and compared without strings.
+ * 1-22 map to 1-22, X to 23, Y to 24 and MT (or M) to 25, which is also the order used in GRCh37 VCF and tabix files
+ * such as ExAC and ClinVar. Any other contig (e.g. GL000192.1) gets the next free code the first time it is seen,
+ * so those codes are only valid within one run.
+ */
+public class Chromosomes
+{
+	public static final int X = 23;
+	public static final int Y = 24;
+	public static final int MT = 25;
+
+	private static volatile HashMap<String, Integer> nameToCode = new HashMap<String, Integer>();
+	//copy-on-write as well, so names can be read without locking, e.g. while sorting; code 0 is not used
+	private static volatile String[] codeToName = new String[1];
+
+	static
+	{
+		for(int i = 1; i <= 22; i++)
+		{
+			register(String.valueOf(i));
+		}
+		register("X");
+		register("Y");
+		register("MT");
+		nameToCode.put("M", MT);
+	}
+
+	private static int register(String name)
+	{
+		int code = codeToName.length;
+		codeToName = Arrays.copyOf(codeToName, code + 1);
+		codeToName[code] = name;
+		nameToCode.put(name, code);
+		return code;
+	}
+
+	/**
+	 * Get the code for a chromosome name, with or without 'chr' prefix
+	 * @param chrom
+	 * @return
+	 */
+	public static int code(String chrom)
+	{
+		Integer code = nameToCode.get(chrom);
+		if(code != null)
+		{
+			return code;
+		}
+		if(chrom.startsWith("chr"))
+		{
+			return code(chrom.substring(3));
+		}
+		synchronized (Chromosomes.class)
+		{
+			code = nameToCode.get(chrom);
+			if(code != null)
+			{
+				return code;
+			}
+			//copy-on-write, so lookups outside this lock always see a complete map and name table
+			HashMap<String, Integer> copy = new HashMap<String, Integer>(nameToCode);
+			int newCode = codeToName.length;
+			copy.put(chrom, newCode);
+			String[] names = Arrays.copyOf(codeToName, newCode + 1);
+			names[newCode] = chrom;
+			codeToName = names;
+			nameToCode = copy;
+			return newCode;
+		}
+	}
+
+	/**
+	 * Get the code for a chromosome name, with or without 'chr' prefix, without giving a contig that was not seen
+	 * before a new code, e.g. to look up a variant
+	 * @param chrom
+	 * @return the code, or -1 if the chromosome has none
+	 */
+	public static int findCode(String chrom)
+	{
+		Integer code = nameToCode.get(chrom);
+		if(code != null)
+		{
+			return code;
+		}
+		return chrom.startsWith("chr") ? findCode(chrom.substring(3)) : -1;
+	}
+
+	/**
+	 * Get the chromosome name (without 'chr' prefix) for a code
+	 * @param code
+	 * @return
+	 */
+	public static String name(int code)
+	{
+		return codeToName[code];
+	}
+
+	/**
+	 * Compares chromosome codes in the same order as ORDER compares their names, without a lock
+	 * @param code1
+	 * @param code2
+	 * @return
+	 */
+	public static int compare(int code1, int code2)
+	{
+		if(code1 <= MT || code2 <= MT)
+		{
+			return Integer.compare(code1, code2);
+		}
+		return name(code1).compareTo(name(code2));
+	}
+
+	/**
+	 * Compares chromosome names in 1-22, X, Y, MT order, followed by any other contigs in alphabetical order
+	 * (without 'chr' prefix). Does not give other contigs a code, so sorting a file with many contigs does not
+	 * grow the tables above.
+	 */
+	public static final Comparator<String> ORDER = new Comparator<String>()
+	{
+		@Override
+		public int compare(String chrom1, String chrom2)
+		{
+			int code1 = findCode(chrom1);
+			int code2 = findCode(chrom2);
+			boolean main1 = code1 != -1 && code1 <= MT;
+			boolean main2 = code2 != -1 && code2 <= MT;
+			if(main1 && main2)
+			{
+				return Integer.compare(code1, code2);
+			}
+			if(main1 || main2)
+			{
+				return main1 ? -1 : 1;
+			}
+			return withoutPrefix(chrom1).compareTo(withoutPrefix(chrom2));
+		}
+	};
+
+	private static String withoutPrefix(String chrom)
+	{
+		return chrom.startsWith("chr") ? chrom.substring(3) : chrom;
+	}
+}
@@ -1,8 +1,7 @@
 package org.molgenis.calibratecadd.support;
 
 import java.io.File;
-import java.io.FileNotFoundException;
-import java.util.HashMap;
+import java.util.Arrays;
 import java.util.Scanner;
 
 import org.molgenis.data.annotation.entity.impl.gavin.Judgment;
@@ -16,8 +15,8 @@ public class CondelResults
 		D, N
 	}
 
-	//chr:pos,ref,alt to CondelClassification
-	HashMap<String, CondelClassification> condelFile;
+	//name of the CondelClassification per chrom/pos/ref/alt, indexed next to the Condel file
+	PredictionSource condelFile;
 	
 	/**
 	 * 
@@ -35,48 +34,52 @@ public class CondelResults
 	 */
 	public CondelResults(File condelResults) throws Exception
 	{
-		condelFile = new HashMap<String, CondelClassification>();
-		Scanner s = new Scanner(condelResults);
-		s.nextLine(); //skip header
-		while(s.hasNextLine())
-		{
-			String line = s.nextLine();
-			String[] linesplit = line.split("\t", -1);
-			
-			String chrPosRefAlt = linesplit[0] + ":" + linesplit[1] + "," + linesplit[3] + "," + linesplit[4];
-			CondelClassification prediction = null;
-			if(linesplit[8].equals("D"))
-			{
-				prediction = CondelClassification.D;
-			}
-			else if(linesplit[8].equals("N"))
-			{
-				prediction = CondelClassification.N;
-			}
-			else
+		condelFile = PredictionIndex.open(condelResults, Arrays.asList("Condel"), (file, builder) -> {
+			Scanner s = new Scanner(file);
+			s.nextLine(); //skip header
+			while(s.hasNextLine())
 			{
-				throw new Exception("bad data on line " + line);
+				String line = s.nextLine();
+				String[] linesplit = line.split("\t", -1);
+				
+				long pos = Long.parseLong(linesplit[1]);
+				CondelClassification prediction = null;
+				if(linesplit[8].equals("D"))
+				{
+					prediction = CondelClassification.D;
+				}
+				else if(linesplit[8].equals("N"))
+				{
+					prediction = CondelClassification.N;
+				}
+				else
+				{
+					s.close();
+					throw new Exception("bad data on line " + line);
+				}
+				String previous = builder.get(linesplit[0], pos, linesplit[3], linesplit[4], 0);
+				if(previous != null && !previous.equals(prediction.name()))
+				{
+					System.out.println("WARNING: conflicting classification " + line + ", not adding and removing previous entry too");
+					builder.remove(linesplit[0], pos, linesplit[3], linesplit[4], 0);
+				}
+				else
+				{
+					builder.put(linesplit[0], pos, linesplit[3], linesplit[4], 0, prediction.name());
+				}
+				
 			}
-			if(condelFile.containsKey(chrPosRefAlt) && !condelFile.get(chrPosRefAlt).equals(prediction))
-			{
-				System.out.println("WARNING: conflicting classification " + line + ", not adding and removing previous entry too");
-				condelFile.remove(chrPosRefAlt);
-			}
-			else
-			{
-				condelFile.put(chrPosRefAlt, prediction);
-			}
-			
-		}
-		s.close();
+			s.close();
+		});
 	}
 	
 	public Judgment classifyVariantUsingCondelResults(String chr, String pos, String ref, String alt) throws Exception
 	{
 		String key = chr+":"+pos+","+ref+","+alt;
-		if(condelFile.containsKey(key))
+		String prediction = condelFile.getPrediction(0, chr, Long.parseLong(pos), ref, alt);
+		if(prediction != null)
 		{
-			CondelClassification pc = condelFile.get(key);
+			CondelClassification pc = CondelClassification.valueOf(prediction);
 			if(pc.equals(CondelClassification.N))
 			{
 				return new Judgment(Classification.Benign, Method.calibrated, key, "Condel result 'N'");
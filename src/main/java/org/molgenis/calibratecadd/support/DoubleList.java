@@ -0,0 +1,58 @@
+package org.molgenis.calibratecadd.support;
+
+import java.util.Arrays;
+
+/**
+ * Growable list of primitive doubles, e.g. CADD scores, without boxing every value as ArrayList&lt;Double&gt; does
+ */
+public class DoubleList
+{
+	private double[] values;
+	private int size = 0;
+
+	public DoubleList()
+	{
+		this(8);
+	}
+
+	public DoubleList(int capacity)
+	{
+		values = new double[Math.max(1, capacity)];
+	}
+
+	public void add(double value)
+	{
+		if(size == values.length)
+		{
+			values = Arrays.copyOf(values, size + (size >> 1) + 1);
+		}
+		values[size++] = value;
+	}
+
+	public double get(int index)
+	{
+		if(index < 0 || index >= size)
+		{
+			throw new IndexOutOfBoundsException("index " + index + ", size " + size);
+		}
+		return values[index];
+	}
+
+	public int size()
+	{
+		return size;
+	}
+
+	public boolean isEmpty()
+	{
+		return size == 0;
+	}
+
+	/**
+	 * @return a copy of the values, of exactly size() long
+	 */
+	public double[] toArray()
+	{
+		return Arrays.copyOf(values, size);
+	}
+}
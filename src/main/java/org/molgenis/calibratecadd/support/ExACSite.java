@@ -0,0 +1,69 @@
+package org.molgenis.calibratecadd.support;
+
+import org.molgenis.data.Entity;
+
+/**
+ * One ExAC VCF record with only the fields Step4 uses: CHROM, POS, REF, the ALT alleles with their AF and AC_Adj,
+ * and the parsed CSQ. AF is kept as text, because Step4 reports it as found in ExAC.
+ *
+ * Sites may be shared between genes, so matching must never narrow the CSQ of a site itself, only a newView() of it.
+ */
+public class ExACSite
+{
+	public final String chrom;
+	public final int pos;
+	public final String ref;
+	public final String[] alts;
+	public final String[] afs;
+	//null when the record has no AC_Adj
+	public final int[] acAdjs;
+	//null when the record has no CSQ
+	public final ParsedCSQ csq;
+
+	public ExACSite(String chrom, int pos, String ref, String[] alts, String[] afs, int[] acAdjs, ParsedCSQ csq)
+	{
+		this.chrom = chrom;
+		this.pos = pos;
+		this.ref = ref;
+		this.alts = alts;
+		this.afs = afs;
+		this.acAdjs = acAdjs;
+		this.csq = csq;
+	}
+
+	/**
+	 * Take the fields we need from an ExAC VCF entity
+	 * @param exacVariant
+	 * @return
+	 * @throws Exception
+	 */
+	public static ExACSite fromEntity(Entity exacVariant) throws Exception
+	{
+		String[] alts = exacVariant.getString("ALT").split(",", -1);
+		String[] afs = exacVariant.getString("AF").split(",", -1);
+		if(afs.length != alts.length)
+		{
+			throw new Exception("expected " + alts.length + " AF values for " + exacVariant.toString());
+		}
+		int[] acAdjs = null;
+		String acAdjValue = exacVariant.getString("AC_Adj");
+		if(acAdjValue != null)
+		{
+			String[] acAdjSplit = acAdjValue.split(",", -1);
+			acAdjs = new int[acAdjSplit.length];
+			for(int i = 0; i < acAdjSplit.length; i++)
+			{
+				acAdjs[i] = Integer.parseInt(acAdjSplit[i]);
+			}
+		}
+		String csqValue = exacVariant.getString("CSQ");
+		ParsedCSQ csq = csqValue == null ? null : ParsedCSQ.parse(csqValue);
+		return new ExACSite(exacVariant.getString("#CHROM"), exacVariant.getLong("POS").intValue(), exacVariant.getString("REF"), alts, afs, acAdjs, csq);
+	}
+
+	@Override
+	public String toString()
+	{
+		return chrom + ":" + pos + " " + ref + ">" + String.join(",", alts);
+	}
+}
@@ -0,0 +1,29 @@
+package org.molgenis.calibratecadd.support;
+
+import java.io.Closeable;
+import java.util.List;
+
+/**
+ * Region queries for ExAC sites, from the tabix-indexed VCF or from an extracted ExACStore
+ *
+ * A query selects sites on POS only: a site is returned when its POS is in [start, end], also when its REF is
+ * longer than one base. So a long deletion that starts before start is not returned, even if its REF overlaps
+ * the region. This is what the TabixVcfRepository query returns (see Step2_FixIndelNotationTest), and every
+ * other path that collects sites for a region (the ExACStore, the --sweep of Step4, the --batch of Step2)
+ * follows the same rule.
+ *
+ * The .tbi index itself covers the REF span, so a raw TabixReader query does return such a deletion
+ * (see SortedVcfWriterTest). Only the records it yields with a POS in the region are kept.
+ */
+public interface ExACSiteSource extends Closeable
+{
+	/**
+	 * All sites with a POS between start and end (inclusive) on this chromosome, sorted on position
+	 * @param chrom
+	 * @param start
+	 * @param end
+	 * @return
+	 * @throws Exception
+	 */
+	List<ExACSite> query(String chrom, long start, long end) throws Exception;
+}
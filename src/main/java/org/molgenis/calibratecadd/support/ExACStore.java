@@ -0,0 +1,236 @@
+package org.molgenis.calibratecadd.support;
+
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+
+/**
+ * Memory-mapped reader for the binary ExAC store written by ExACStoreBuilder, holding per site only
+ * CHROM, POS, REF, ALT, AF, AC_Adj and per CSQ annotation the allele, canonical flag and highest impact.
+ *
+ * File layout (big-endian):
+ * <pre>
+ * "GAVINEXS" int version
+ * records, grouped per chromosome and sorted on position within a chromosome:
+ *   int pos, str ref, short nrOfAlts, per alt: str alt, str af
+ *   short nrOfAcAdj (-1 if none), per value: int acAdj
+ *   int nrOfCsqEntries (-1 if no CSQ), short nrOfCsqAlleles, per allele: str allele,
+ *   per entry: short alleleIndex, byte (0x80 if canonical | impact rank + 1, 0 for unknown consequence)
+ * index:
+ *   int nrOfChroms, per chromosome: UTF name, long dataStart, long dataEnd, int nrOfRecords,
+ *   int nrOfSamples, per sample: int pos, int offset (relative to dataStart) of every SAMPLE_INTERVAL-th record
+ * long indexStart
+ * </pre>
+ * where str is an unsigned short length followed by that many ASCII bytes.
+ *
+ * Each chromosome is mapped separately, so one chromosome must stay under 2 GB.
+ * Safe to query from multiple threads.
+ */
+public class ExACStore implements ExACSiteSource
+{
+	static final byte[] MAGIC = "GAVINEXS".getBytes(StandardCharsets.US_ASCII);
+	static final int VERSION = 1;
+	static final int SAMPLE_INTERVAL = 256;
+	static final int CANONICAL_FLAG = 0x80;
+
+	private static class ChromData
+	{
+		MappedByteBuffer data;
+		int nrOfRecords;
+		int[] samplePos;
+		int[] sampleOffset;
+	}
+
+	private RandomAccessFile file;
+	private HashMap<String, ChromData> chroms = new HashMap<String, ChromData>();
+
+	public ExACStore(File storeFile) throws IOException
+	{
+		if(!isStore(storeFile))
+		{
+			throw new IOException("not an ExAC store: " + storeFile.getAbsolutePath());
+		}
+		this.file = new RandomAccessFile(storeFile, "r");
+		FileChannel channel = file.getChannel();
+
+		file.seek(MAGIC.length);
+		int version = file.readInt();
+		if(version != VERSION)
+		{
+			file.close();
+			throw new IOException("ExAC store version " + version + " not supported, expected " + VERSION + ", please re-extract " + storeFile.getAbsolutePath());
+		}
+
+		file.seek(file.length() - 8);
+		long indexStart = file.readLong();
+		file.seek(indexStart);
+		int nrOfChroms = file.readInt();
+		for (int c = 0; c < nrOfChroms; c++)
+		{
+			String chrom = file.readUTF();
+			long dataStart = file.readLong();
+			long dataEnd = file.readLong();
+			ChromData chromData = new ChromData();
+			chromData.nrOfRecords = file.readInt();
+			int nrOfSamples = file.readInt();
+			chromData.samplePos = new int[nrOfSamples];
+			chromData.sampleOffset = new int[nrOfSamples];
+			for (int i = 0; i < nrOfSamples; i++)
+			{
+				chromData.samplePos[i] = file.readInt();
+				chromData.sampleOffset[i] = file.readInt();
+			}
+			if(dataEnd - dataStart > Integer.MAX_VALUE)
+			{
+				throw new IOException("chromosome " + chrom + " too large to map: " + (dataEnd - dataStart) + " bytes");
+			}
+			chromData.data = channel.map(FileChannel.MapMode.READ_ONLY, dataStart, dataEnd - dataStart);
+			chroms.put(chrom, chromData);
+		}
+	}
+
+	/**
+	 * Check the magic bytes, so callers can accept either a store or a VCF
+	 * @param file
+	 * @return
+	 * @throws IOException
+	 */
+	public static boolean isStore(File file) throws IOException
+	{
+		if(!file.isFile() || file.length() < MAGIC.length)
+		{
+			return false;
+		}
+		byte[] magic = new byte[MAGIC.length];
+		DataInputStream in = new DataInputStream(new FileInputStream(file));
+		try
+		{
+			in.readFully(magic);
+		}
+		finally
+		{
+			in.close();
+		}
+		return Arrays.equals(magic, MAGIC);
+	}
+
+	@Override
+	public List<ExACSite> query(String chrom, long start, long end) throws Exception
+	{
+		List<ExACSite> sites = new ArrayList<ExACSite>();
+		ChromData chromData = chroms.get(chrom);
+		if(chromData == null)
+		{
+			return sites;
+		}
+
+		//start at the last sampled record before start, the ones after it up to start are skipped while reading
+		int low = 0;
+		int high = chromData.samplePos.length;
+		while (low < high)
+		{
+			int mid = (low + high) >>> 1;
+			if(chromData.samplePos[mid] < start)
+			{
+				low = mid + 1;
+			}
+			else
+			{
+				high = mid;
+			}
+		}
+		int sample = low - 1;
+
+		ByteBuffer buffer = chromData.data.duplicate();
+		buffer.position(sample < 0 ? 0 : chromData.sampleOffset[sample]);
+		while (buffer.hasRemaining())
+		{
+			ExACSite site = readSite(chrom, buffer);
+			if(site.pos > end)
+			{
+				break;
+			}
+			if(site.pos >= start)
+			{
+				sites.add(site);
+			}
+		}
+		return sites;
+	}
+
+	public int getNrOfRecords(String chrom)
+	{
+		ChromData chromData = chroms.get(chrom);
+		return chromData == null ? 0 : chromData.nrOfRecords;
+	}
+
+	private static ExACSite readSite(String chrom, ByteBuffer buffer)
+	{
+		int pos = buffer.getInt();
+		String ref = readString(buffer);
+		int nrOfAlts = buffer.getShort();
+		String[] alts = new String[nrOfAlts];
+		String[] afs = new String[nrOfAlts];
+		for (int i = 0; i < nrOfAlts; i++)
+		{
+			alts[i] = readString(buffer);
+			afs[i] = readString(buffer);
+		}
+		int[] acAdjs = null;
+		int nrOfAcAdj = buffer.getShort();
+		if(nrOfAcAdj >= 0)
+		{
+			acAdjs = new int[nrOfAcAdj];
+			for (int i = 0; i < nrOfAcAdj; i++)
+			{
+				acAdjs[i] = buffer.getInt();
+			}
+		}
+		ParsedCSQ csq = null;
+		int nrOfCsqEntries = buffer.getInt();
+		if(nrOfCsqEntries >= 0)
+		{
+			String[] csqAlleles = new String[buffer.getShort()];
+			for (int i = 0; i < csqAlleles.length; i++)
+			{
+				csqAlleles[i] = readString(buffer);
+			}
+			String[] entryAlleles = new String[nrOfCsqEntries];
+			boolean[] canonical = new boolean[nrOfCsqEntries];
+			byte[] impactRanks = new byte[nrOfCsqEntries];
+			for (int i = 0; i < nrOfCsqEntries; i++)
+			{
+				entryAlleles[i] = csqAlleles[buffer.getShort()];
+				int flags = buffer.get() & 0xFF;
+				canonical[i] = (flags & CANONICAL_FLAG) != 0;
+				impactRanks[i] = (byte) ((flags & ~CANONICAL_FLAG) - 1);
+			}
+			csq = ParsedCSQ.of(entryAlleles, canonical, impactRanks);
+		}
+		return new ExACSite(chrom, pos, ref, alts, afs, acAdjs, csq);
+	}
+
+	private static String readString(ByteBuffer buffer)
+	{
+		int length = buffer.getShort() & 0xFFFF;
+		byte[] bytes = new byte[length];
+		buffer.get(bytes);
+		return new String(bytes, StandardCharsets.US_ASCII);
+	}
+
+	@Override
+	public void close() throws IOException
+	{
+		file.close();
+	}
+}
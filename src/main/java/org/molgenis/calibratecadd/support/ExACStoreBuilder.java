@@ -0,0 +1,237 @@
+package org.molgenis.calibratecadd.support;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Set;
+
+import org.molgenis.data.Entity;
+import org.molgenis.data.vcf.VcfRepository;
+
+/**
+ * One-time extraction of the fields Step4 needs from the ExAC VCF into a binary ExACStore.
+ * Step4 accepts the resulting file in place of the ExAC VCF, which saves parsing the VCF and its CSQ field on every run.
+ */
+public class ExACStoreBuilder
+{
+	/**
+	 * Uses:
+	 * [0] ExAC.r0.3.sites.vep.vcf.gz
+	 * [1] output file, e.g. ExAC.r0.3.sites.gavin.bin
+	 */
+	public static void main(String[] args) throws Exception
+	{
+		new ExACStoreBuilder().build(new File(args[0]), new File(args[1]));
+	}
+
+	private static class ChromIndex
+	{
+		long dataStart;
+		long dataEnd;
+		int nrOfRecords;
+		List<int[]> samples = new ArrayList<int[]>();
+	}
+
+	/**
+	 * Counts the bytes written, since DataOutputStream.size() overflows at 2 GB
+	 */
+	private static class CountingOutputStream extends FilterOutputStream
+	{
+		long count = 0;
+
+		CountingOutputStream(OutputStream out)
+		{
+			super(out);
+		}
+
+		@Override
+		public void write(int b) throws IOException
+		{
+			out.write(b);
+			count++;
+		}
+
+		@Override
+		public void write(byte[] b, int off, int len) throws IOException
+		{
+			out.write(b, off, len);
+			count += len;
+		}
+	}
+
+	public void build(File exacVcf, File storeFile) throws Exception
+	{
+		System.out.println("extracting " + exacVcf.getAbsolutePath() + " into " + storeFile.getAbsolutePath() + " ..");
+		CountingOutputStream counter = new CountingOutputStream(new BufferedOutputStream(new FileOutputStream(storeFile), 1 << 16));
+		DataOutputStream out = new DataOutputStream(counter);
+		out.write(ExACStore.MAGIC);
+		out.writeInt(ExACStore.VERSION);
+
+		LinkedHashMap<String, ChromIndex> index = new LinkedHashMap<String, ChromIndex>();
+		Set<String> seenChroms = new HashSet<String>();
+		ChromIndex current = null;
+		String currentChrom = null;
+		int previousPos = -1;
+		long nrOfRecords = 0;
+
+		VcfRepository vcf = new VcfRepository(exacVcf, "exac");
+		Iterator<Entity> it = vcf.iterator();
+		while (it.hasNext())
+		{
+			ExACSite site = ExACSite.fromEntity(it.next());
+			if(!site.chrom.equals(currentChrom))
+			{
+				if(!seenChroms.add(site.chrom))
+				{
+					vcf.close();
+					out.close();
+					throw new Exception("input is not sorted, chromosome " + site.chrom + " seen again after " + currentChrom);
+				}
+				if(current != null)
+				{
+					current.dataEnd = counter.count;
+				}
+				current = new ChromIndex();
+				current.dataStart = counter.count;
+				index.put(site.chrom, current);
+				currentChrom = site.chrom;
+				previousPos = -1;
+			}
+			if(site.pos < previousPos)
+			{
+				vcf.close();
+				out.close();
+				throw new Exception("input is not sorted, position " + site.chrom + ":" + site.pos + " after " + previousPos);
+			}
+			previousPos = site.pos;
+
+			long offset = counter.count - current.dataStart;
+			if(offset > Integer.MAX_VALUE)
+			{
+				vcf.close();
+				out.close();
+				throw new Exception("chromosome " + site.chrom + " too large for one mapped segment");
+			}
+			if(current.nrOfRecords % ExACStore.SAMPLE_INTERVAL == 0)
+			{
+				current.samples.add(new int[] { site.pos, (int) offset });
+			}
+			writeSite(site, out);
+			current.nrOfRecords++;
+
+			nrOfRecords++;
+			if(nrOfRecords % 100000 == 0)
+			{
+				System.out.println("written " + nrOfRecords + " sites, now at " + site.chrom + ":" + site.pos);
+			}
+		}
+		vcf.close();
+		if(current != null)
+		{
+			current.dataEnd = counter.count;
+		}
+
+		long indexStart = counter.count;
+		out.writeInt(index.size());
+		for (String chrom : index.keySet())
+		{
+			ChromIndex chromIndex = index.get(chrom);
+			out.writeUTF(chrom);
+			out.writeLong(chromIndex.dataStart);
+			out.writeLong(chromIndex.dataEnd);
+			out.writeInt(chromIndex.nrOfRecords);
+			out.writeInt(chromIndex.samples.size());
+			for (int[] sample : chromIndex.samples)
+			{
+				out.writeInt(sample[0]);
+				out.writeInt(sample[1]);
+			}
+		}
+		out.writeLong(indexStart);
+		out.close();
+		System.out.println("done, " + nrOfRecords + " sites on " + index.size() + " chromosomes, " + storeFile.length() + " bytes");
+	}
+
+	private void writeSite(ExACSite site, DataOutputStream out) throws Exception
+	{
+		out.writeInt(site.pos);
+		writeString(site.ref, out);
+		out.writeShort(checkShort(site.alts.length, site));
+		for (int i = 0; i < site.alts.length; i++)
+		{
+			writeString(site.alts[i], out);
+			writeString(site.afs[i], out);
+		}
+		if(site.acAdjs == null)
+		{
+			out.writeShort(-1);
+		}
+		else
+		{
+			out.writeShort(checkShort(site.acAdjs.length, site));
+			for (int acAdj : site.acAdjs)
+			{
+				out.writeInt(acAdj);
+			}
+		}
+		if(site.csq == null)
+		{
+			out.writeInt(-1);
+			return;
+		}
+		ParsedCSQ csq = site.csq;
+		List<String> csqAlleles = new ArrayList<String>();
+		short[] alleleIndices = new short[csq.size()];
+		for (int entry = 0; entry < csq.size(); entry++)
+		{
+			int alleleIndex = csqAlleles.indexOf(csq.getAllele(entry));
+			if(alleleIndex == -1)
+			{
+				alleleIndex = csqAlleles.size();
+				csqAlleles.add(csq.getAllele(entry));
+			}
+			alleleIndices[entry] = (short) checkShort(alleleIndex, site);
+		}
+		out.writeInt(csq.size());
+		out.writeShort(checkShort(csqAlleles.size(), site));
+		for (String allele : csqAlleles)
+		{
+			writeString(allele, out);
+		}
+		for (int entry = 0; entry < csq.size(); entry++)
+		{
+			out.writeShort(alleleIndices[entry]);
+			out.writeByte((csq.isCanonical(entry) ? ExACStore.CANONICAL_FLAG : 0) | (csq.getStoredImpactRank(entry) + 1));
+		}
+	}
+
+	private static int checkShort(int value, ExACSite site) throws Exception
+	{
+		if(value > Short.MAX_VALUE)
+		{
+			throw new Exception("too many values (" + value + ") to store for " + site);
+		}
+		return value;
+	}
+
+	private static void writeString(String value, DataOutputStream out) throws IOException
+	{
+		byte[] bytes = value.getBytes(StandardCharsets.US_ASCII);
+		if(bytes.length > 0xFFFF)
+		{
+			throw new IOException("value too long to store: " + value.substring(0, 50) + "..");
+		}
+		out.writeShort(bytes.length);
+		out.write(bytes);
+	}
+}
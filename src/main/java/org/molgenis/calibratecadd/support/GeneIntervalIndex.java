@@ -0,0 +1,181 @@
+package org.molgenis.calibratecadd.support;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Scanner;
+
+/**
+ * Answers "which genes cover this position / region" with one interval tree per chromosome,
+ * instead of scanning all genes.
+ *
+ * Can be built from gene windows, or from any file with Gene, Chr, Start and End columns, such as the
+ * .genes.tsv output of Step4 or GAVIN_calibrations_r0.1.tsv. Rows without a numeric Start and End are skipped.
+ */
+public class GeneIntervalIndex
+{
+	private final GeneWindow[] windows;
+	private final HashMap<String, IntervalTree> chromToTree;
+
+	public GeneIntervalIndex(Collection<GeneWindow> geneWindows)
+	{
+		this.windows = geneWindows.toArray(new GeneWindow[geneWindows.size()]);
+		HashMap<String, IntervalTree.Builder> builders = new HashMap<String, IntervalTree.Builder>();
+		for (int i = 0; i < windows.length; i++)
+		{
+			String chrom = windows[i].chrom;
+			if(!builders.containsKey(chrom))
+			{
+				builders.put(chrom, new IntervalTree.Builder());
+			}
+			builders.get(chrom).add(windows[i].start, windows[i].end, i);
+		}
+		this.chromToTree = new HashMap<String, IntervalTree>();
+		for (String chrom : builders.keySet())
+		{
+			chromToTree.put(chrom, builders.get(chrom).build());
+		}
+	}
+
+	/**
+	 * Load from a tab-separated file with a header line containing Gene, Chr, Start and End
+	 * @param geneFile
+	 * @return
+	 * @throws Exception
+	 */
+	public static GeneIntervalIndex load(File geneFile) throws Exception
+	{
+		return new GeneIntervalIndex(loadWindows(geneFile));
+	}
+
+	/**
+	 * Read the gene windows from a tab-separated file with a header line containing Gene, Chr, Start and End
+	 * @param geneFile
+	 * @return
+	 * @throws Exception
+	 */
+	public static List<GeneWindow> loadWindows(File geneFile) throws Exception
+	{
+		Scanner s = new Scanner(geneFile);
+		if(!s.hasNextLine())
+		{
+			s.close();
+			throw new Exception("empty file: " + geneFile.getAbsolutePath());
+		}
+		List<String> header = Arrays.asList(s.nextLine().split("\t", -1));
+		int geneCol = header.indexOf("Gene");
+		int chrCol = header.indexOf("Chr");
+		int startCol = header.indexOf("Start");
+		int endCol = header.indexOf("End");
+		if(geneCol == -1 || chrCol == -1 || startCol == -1 || endCol == -1)
+		{
+			s.close();
+			throw new Exception("expected Gene, Chr, Start and End columns in header of " + geneFile.getAbsolutePath());
+		}
+
+		List<GeneWindow> geneWindows = new ArrayList<GeneWindow>();
+		while (s.hasNextLine())
+		{
+			String line = s.nextLine();
+			if(line.isEmpty())
+			{
+				continue;
+			}
+			String[] split = line.split("\t", -1);
+			if(!isNumeric(split[startCol]) || !isNumeric(split[endCol]))
+			{
+				continue;
+			}
+			geneWindows.add(new GeneWindow(split[geneCol], split[chrCol], Long.parseLong(split[startCol]), Long.parseLong(split[endCol])));
+		}
+		s.close();
+		return geneWindows;
+	}
+
+	private static boolean isNumeric(String value)
+	{
+		if(value.isEmpty())
+		{
+			return false;
+		}
+		for (int i = 0; i < value.length(); i++)
+		{
+			if(!Character.isDigit(value.charAt(i)))
+			{
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Gene windows that contain this position, ordered on start
+	 * @param chrom
+	 * @param pos
+	 * @return
+	 */
+	public List<GeneWindow> windowsAt(String chrom, long pos)
+	{
+		return windowsOverlapping(chrom, pos, pos);
+	}
+
+	/**
+	 * Gene windows that overlap [start, end], ordered on start
+	 * @param chrom
+	 * @param start
+	 * @param end
+	 * @return
+	 */
+	public List<GeneWindow> windowsOverlapping(String chrom, long start, long end)
+	{
+		IntervalTree tree = chromToTree.get(chrom);
+		if(tree == null)
+		{
+			return new ArrayList<GeneWindow>();
+		}
+		int[] hits = tree.overlap(start, end);
+		List<GeneWindow> result = new ArrayList<GeneWindow>(hits.length);
+		for (int hit : hits)
+		{
+			result.add(windows[hit]);
+		}
+		return result;
+	}
+
+	/**
+	 * Genes that cover this position
+	 * @param chrom
+	 * @param pos
+	 * @return
+	 */
+	public List<String> genesAt(String chrom, long pos)
+	{
+		return genesOverlapping(chrom, pos, pos);
+	}
+
+	/**
+	 * Genes that overlap [start, end], e.g. to slice a gene panel out of a region
+	 * @param chrom
+	 * @param start
+	 * @param end
+	 * @return
+	 */
+	public List<String> genesOverlapping(String chrom, long start, long end)
+	{
+		List<String> genes = new ArrayList<String>();
+		for (GeneWindow window : windowsOverlapping(chrom, start, end))
+		{
+			genes.add(window.gene);
+		}
+		return genes;
+	}
+
+	public int size()
+	{
+		return windows.length;
+	}
+}
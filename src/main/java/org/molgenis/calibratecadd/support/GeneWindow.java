@@ -0,0 +1,72 @@
+package org.molgenis.calibratecadd.support;
+
+import java.util.List;
+
+/**
+ * The genomic window in which we look for ExAC variants for a gene: from 100 bp before the left-most
+ * to 100 bp after the right-most ClinVar variant, on the chromosome of the first ClinVar variant.
+ * Same as the Chr/Start/End columns of the .genes.tsv output of Step4.
+ */
+public class GeneWindow
+{
+	public String gene;
+	public String chrom;
+	public long start;
+	public long end;
+
+	public GeneWindow(String gene, String chrom, long start, long end)
+	{
+		super();
+		this.gene = gene;
+		this.chrom = chrom;
+		this.start = start;
+		this.end = end;
+	}
+
+	/**
+	 * Window around a list of ClinVar variants of one gene
+	 * @param gene
+	 * @param clinvarVariants
+	 * @return
+	 */
+	public static GeneWindow fromClinVarVariants(String gene, List<AlleleRecord> clinvarVariants)
+	{
+		String chrom = null;
+		long leftMostPos = -1;
+		long rightMostPos = -1;
+
+		for (AlleleRecord cvv : clinvarVariants)
+		{
+			long pos = cvv.pos;
+			String cvvchrom = cvv.getChromName();
+			if (pos > rightMostPos)
+			{
+				rightMostPos = pos;
+			}
+
+			if (pos < leftMostPos || leftMostPos == -1)
+			{
+				leftMostPos = pos;
+			}
+			if (chrom == null)
+			{
+				chrom = cvvchrom;
+			}
+		}
+
+		// include (biggest) part of exon the variant(s) are in, typical exon is 147 nt
+		// http://nar.oxfordjournals.org/content/early/2012/07/11/nar.gks652.full
+		return new GeneWindow(gene, chrom, leftMostPos - 100, rightMostPos + 100);
+	}
+
+	public boolean contains(String chrom, long pos)
+	{
+		return this.chrom.equals(chrom) && pos >= start && pos <= end;
+	}
+
+	@Override
+	public String toString()
+	{
+		return gene + " " + chrom + ":" + start + "-" + end;
+	}
+}
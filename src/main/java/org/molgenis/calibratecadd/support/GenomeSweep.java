@@ -0,0 +1,155 @@
+package org.molgenis.calibratecadd.support;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeMap;
+
+import org.molgenis.data.Entity;
+
+/**
+ * Collect the records of a coordinate-sorted VCF (e.g. ExAC) for many gene windows in one sequential pass,
+ * instead of one random-access tabix query per window.
+ *
+ * Each record is routed with a GeneIntervalIndex to the windows that contain its POS, the same records a query of
+ * an ExACSiteSource on that window returns.
+ * A window is completed as soon as the sweep has passed its end (or has left its chromosome),
+ * so only the records of windows that are still open are kept in memory.
+ */
+public class GenomeSweep
+{
+	/**
+	 * Called once for every window, in the order in which the sweep completes them
+	 */
+	public interface WindowListener
+	{
+		void windowComplete(GeneWindow window, List<Entity> records) throws Exception;
+	}
+
+	private GeneIntervalIndex index;
+	private HashMap<String, List<GeneWindow>> windowsPerChrom = new HashMap<String, List<GeneWindow>>();
+
+	public GenomeSweep(Collection<GeneWindow> windows)
+	{
+		this.index = new GeneIntervalIndex(windows);
+		for (GeneWindow window : windows)
+		{
+			if(!windowsPerChrom.containsKey(window.chrom))
+			{
+				windowsPerChrom.put(window.chrom, new ArrayList<GeneWindow>());
+			}
+			windowsPerChrom.get(window.chrom).add(window);
+		}
+		//in the order in which the sweep passes their end
+		for (List<GeneWindow> chromWindows : windowsPerChrom.values())
+		{
+			Collections.sort(chromWindows, new Comparator<GeneWindow>()
+			{
+				@Override
+				public int compare(GeneWindow w1, GeneWindow w2)
+				{
+					return Long.compare(w1.end, w2.end);
+				}
+			});
+		}
+	}
+
+	/**
+	 * Stream all records once, and hand every window its records
+	 * @param records must be sorted on position within a chromosome, and not revisit a chromosome
+	 * @param listener
+	 * @throws Exception
+	 */
+	public void sweep(Iterator<Entity> records, WindowListener listener) throws Exception
+	{
+		Set<String> sweptChroms = new HashSet<String>();
+		String currentChrom = null;
+		long previousPos = -1;
+		List<GeneWindow> chromWindows = Collections.emptyList();
+		int nextToComplete = 0;
+		//records of the windows that got any and are not complete yet
+		IdentityHashMap<GeneWindow, List<Entity>> windowRecords = new IdentityHashMap<GeneWindow, List<Entity>>();
+
+		while (records.hasNext())
+		{
+			Entity record = records.next();
+			String chrom = record.getString("#CHROM");
+			long pos = record.getLong("POS");
+
+			if(!chrom.equals(currentChrom))
+			{
+				//left the previous chromosome: everything on it is complete, including windows the sweep never reached
+				for (int i = nextToComplete; i < chromWindows.size(); i++)
+				{
+					complete(chromWindows.get(i), windowRecords, listener);
+				}
+				if(!sweptChroms.add(chrom))
+				{
+					throw new Exception("input is not sorted, chromosome " + chrom + " seen again after " + currentChrom);
+				}
+				currentChrom = chrom;
+				previousPos = -1;
+				chromWindows = windowsPerChrom.containsKey(chrom) ? windowsPerChrom.get(chrom) : Collections.<GeneWindow>emptyList();
+				nextToComplete = 0;
+			}
+			if(pos < previousPos)
+			{
+				throw new Exception("input is not sorted, position " + chrom + ":" + pos + " after " + previousPos);
+			}
+			previousPos = pos;
+
+			//complete the windows that end before this position, no later record can overlap them
+			while (nextToComplete < chromWindows.size() && chromWindows.get(nextToComplete).end < pos)
+			{
+				complete(chromWindows.get(nextToComplete++), windowRecords, listener);
+			}
+
+			//matching does not modify records, so overlapping windows can share them
+			for (GeneWindow window : index.windowsAt(chrom, pos))
+			{
+				List<Entity> recordsOfWindow = windowRecords.get(window);
+				if(recordsOfWindow == null)
+				{
+					recordsOfWindow = new ArrayList<Entity>();
+					windowRecords.put(window, recordsOfWindow);
+				}
+				recordsOfWindow.add(record);
+			}
+		}
+
+		for (int i = nextToComplete; i < chromWindows.size(); i++)
+		{
+			complete(chromWindows.get(i), windowRecords, listener);
+		}
+
+		//windows on chromosomes without any record, in a stable order
+		TreeMap<String, List<GeneWindow>> unsweptChroms = new TreeMap<String, List<GeneWindow>>(Chromosomes.ORDER);
+		for (String chrom : windowsPerChrom.keySet())
+		{
+			if(!sweptChroms.contains(chrom))
+			{
+				unsweptChroms.put(chrom, windowsPerChrom.get(chrom));
+			}
+		}
+		for (List<GeneWindow> windows : unsweptChroms.values())
+		{
+			for (GeneWindow window : windows)
+			{
+				listener.windowComplete(window, new ArrayList<Entity>());
+			}
+		}
+	}
+
+	private static void complete(GeneWindow window, IdentityHashMap<GeneWindow, List<Entity>> windowRecords, WindowListener listener) throws Exception
+	{
+		List<Entity> recordsOfWindow = windowRecords.remove(window);
+		listener.windowComplete(window, recordsOfWindow == null ? new ArrayList<Entity>() : recordsOfWindow);
+	}
+}
@@ -0,0 +1,155 @@
+package org.molgenis.calibratecadd.support;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.HashMap;
+import java.util.Scanner;
+
+/**
+ * Memory-mapped reference genome (e.g. human_g1k_v37.fasta) with a samtools faidx index (.fai) next to it.
+ * Each sequence is mapped separately, so bases are read straight from the page cache without loading the genome.
+ *
+ * Sequences are found by name with or without 'chr' prefix, and MT also as M (and the other way around).
+ * Safe to use from multiple threads.
+ */
+public class IndexedFasta implements Closeable
+{
+	private static class Sequence
+	{
+		long length;
+		int lineBases;
+		int lineWidth;
+		MappedByteBuffer data;
+	}
+
+	private RandomAccessFile file;
+	private HashMap<String, Sequence> sequences = new HashMap<String, Sequence>();
+
+	public IndexedFasta(File fastaFile) throws IOException
+	{
+		File faiFile = new File(fastaFile.getPath() + ".fai");
+		if(!faiFile.isFile())
+		{
+			throw new IOException("no index for reference " + fastaFile.getAbsolutePath() + ", please create it with 'samtools faidx'");
+		}
+		this.file = new RandomAccessFile(fastaFile, "r");
+		FileChannel channel = file.getChannel();
+
+		Scanner fai = new Scanner(faiFile);
+		try
+		{
+			while (fai.hasNextLine())
+			{
+				String line = fai.nextLine();
+				if(line.isEmpty())
+				{
+					continue;
+				}
+				//NAME LENGTH OFFSET LINEBASES LINEWIDTH
+				String[] split = line.split("\t", -1);
+				Sequence sequence = new Sequence();
+				sequence.length = Long.parseLong(split[1]);
+				long offset = Long.parseLong(split[2]);
+				sequence.lineBases = Integer.parseInt(split[3]);
+				sequence.lineWidth = Integer.parseInt(split[4]);
+				long nrOfBytes = sequence.length == 0 ? 0 : byteOffset(sequence, sequence.length) + 1;
+				if(nrOfBytes > Integer.MAX_VALUE)
+				{
+					throw new IOException("sequence " + split[0] + " too large to map: " + nrOfBytes + " bytes");
+				}
+				sequence.data = channel.map(FileChannel.MapMode.READ_ONLY, offset, nrOfBytes);
+				sequences.put(split[0], sequence);
+			}
+		}
+		finally
+		{
+			fai.close();
+		}
+	}
+
+	/**
+	 * Position of a base relative to the start of its sequence, skipping line breaks
+	 */
+	private static long byteOffset(Sequence sequence, long pos)
+	{
+		long index = pos - 1;
+		return index / sequence.lineBases * sequence.lineWidth + index % sequence.lineBases;
+	}
+
+	private Sequence getSequence(String chrom)
+	{
+		Sequence sequence = sequences.get(chrom);
+		if(sequence == null)
+		{
+			String name = chrom.startsWith("chr") ? chrom.substring(3) : chrom;
+			String[] aliases = name.equals("MT") || name.equals("M") ? new String[] { "MT", "M", "chrM", "chrMT" } : new String[] { name, "chr" + name };
+			for (int i = 0; i < aliases.length && sequence == null; i++)
+			{
+				sequence = sequences.get(aliases[i]);
+			}
+		}
+		return sequence;
+	}
+
+	public boolean hasSequence(String chrom)
+	{
+		return getSequence(chrom) != null;
+	}
+
+	public long getLength(String chrom)
+	{
+		Sequence sequence = getSequence(chrom);
+		if(sequence == null)
+		{
+			throw new IllegalArgumentException("sequence not in reference: " + chrom);
+		}
+		return sequence.length;
+	}
+
+	/**
+	 * Get one base, in upper case
+	 * @param chrom
+	 * @param pos 1-based
+	 * @return
+	 */
+	public char getBase(String chrom, long pos)
+	{
+		Sequence sequence = getSequence(chrom);
+		if(sequence == null)
+		{
+			throw new IllegalArgumentException("sequence not in reference: " + chrom);
+		}
+		if(pos < 1 || pos > sequence.length)
+		{
+			throw new IllegalArgumentException("position " + chrom + ":" + pos + " outside of reference sequence of length " + sequence.length);
+		}
+		return Character.toUpperCase((char) sequence.data.get((int) byteOffset(sequence, pos)));
+	}
+
+	/**
+	 * Get the bases from start to end (inclusive), in upper case
+	 * @param chrom
+	 * @param start 1-based
+	 * @param end 1-based
+	 * @return
+	 */
+	public String getBases(String chrom, long start, long end)
+	{
+		StringBuilder bases = new StringBuilder((int) (end - start + 1));
+		for (long pos = start; pos <= end; pos++)
+		{
+			bases.append(getBase(chrom, pos));
+		}
+		return bases.toString();
+	}
+
+	@Override
+	public void close() throws IOException
+	{
+		file.close();
+	}
+}
@@ -0,0 +1,231 @@
+package org.molgenis.calibratecadd.support;
+
+import java.util.Arrays;
+
+/**
+ * Immutable interval tree over closed intervals [start, end] on one chromosome, each carrying an int id.
+ *
+ * Intervals are kept in three primitive arrays sorted on start. The tree is implicit in that order (as in cgranges,
+ * https://github.com/lh3/cgranges): the element at index i is a node at level k when its lowest k bits are 1,
+ * and every node also stores the largest end in its subtree, so a query can skip whole subtrees that end before it.
+ * No objects are allocated per interval, and a query costs O(log n + nr of hits).
+ */
+public class IntervalTree
+{
+	private final long[] starts;
+	private final long[] ends;
+	private final long[] maxEnds;
+	private final int[] ids;
+	private final int maxLevel;
+
+	/**
+	 * Collects intervals, then sorts and indexes them once in build()
+	 */
+	public static class Builder
+	{
+		private long[] starts = new long[16];
+		private long[] ends = new long[16];
+		private int[] ids = new int[16];
+		private int size = 0;
+
+		public Builder add(long start, long end, int id)
+		{
+			if(end < start)
+			{
+				throw new IllegalArgumentException("interval end " + end + " before start " + start);
+			}
+			if(size == starts.length)
+			{
+				starts = Arrays.copyOf(starts, size * 2);
+				ends = Arrays.copyOf(ends, size * 2);
+				ids = Arrays.copyOf(ids, size * 2);
+			}
+			starts[size] = start;
+			ends[size] = end;
+			ids[size] = id;
+			size++;
+			return this;
+		}
+
+		public IntervalTree build()
+		{
+			//sort an index array on start, ties on id, so the tree layout does not depend on insertion order
+			Integer[] order = new Integer[size];
+			for (int i = 0; i < size; i++)
+			{
+				order[i] = i;
+			}
+			Arrays.sort(order, (a, b) -> starts[a] != starts[b] ? Long.compare(starts[a], starts[b]) : Integer.compare(ids[a], ids[b]));
+
+			long[] sortedStarts = new long[size];
+			long[] sortedEnds = new long[size];
+			int[] sortedIds = new int[size];
+			for (int i = 0; i < size; i++)
+			{
+				sortedStarts[i] = starts[order[i]];
+				sortedEnds[i] = ends[order[i]];
+				sortedIds[i] = ids[order[i]];
+			}
+			return new IntervalTree(sortedStarts, sortedEnds, sortedIds);
+		}
+	}
+
+	private IntervalTree(long[] starts, long[] ends, int[] ids)
+	{
+		this.starts = starts;
+		this.ends = ends;
+		this.ids = ids;
+		this.maxEnds = new long[starts.length];
+		this.maxLevel = index();
+	}
+
+	/**
+	 * Fill maxEnds bottom-up, level by level, and return the level of the root
+	 * @return
+	 */
+	private int index()
+	{
+		int n = starts.length;
+		if(n == 0)
+		{
+			return -1;
+		}
+		int lastIndex = 0;
+		long last = 0;
+		//leaves
+		for (int i = 0; i < n; i += 2)
+		{
+			lastIndex = i;
+			last = maxEnds[i] = ends[i];
+		}
+		int k;
+		for (k = 1; 1L << k <= n; k++)
+		{
+			int x = 1 << (k - 1);
+			int firstNode = (x << 1) - 1;
+			int step = x << 2;
+			for (int i = firstNode; i < n; i += step)
+			{
+				long leftMax = maxEnds[i - x];
+				//the right subtree may be partially or completely beyond n, then 'last' holds the max of what is there
+				long rightMax = i + x < n ? maxEnds[i + x] : last;
+				maxEnds[i] = Math.max(ends[i], Math.max(leftMax, rightMax));
+			}
+			lastIndex = (lastIndex >> k & 1) != 0 ? lastIndex - x : lastIndex + x;
+			if(lastIndex < n && maxEnds[lastIndex] > last)
+			{
+				last = maxEnds[lastIndex];
+			}
+		}
+		return k - 1;
+	}
+
+	public int size()
+	{
+		return starts.length;
+	}
+
+	/**
+	 * Ids of all intervals that contain this position
+	 * @param pos
+	 * @return
+	 */
+	public int[] stab(long pos)
+	{
+		return overlap(pos, pos);
+	}
+
+	/**
+	 * Ids of all intervals that overlap [start, end], ordered on interval start
+	 * @param start
+	 * @param end
+	 * @return
+	 */
+	public int[] overlap(long start, long end)
+	{
+		int n = starts.length;
+		if(n == 0)
+		{
+			return new int[0];
+		}
+		int[] hits = new int[4];
+		int nrOfHits = 0;
+
+		//explicit stack of (node, level, left subtree done), at most 2 entries per level
+		int[] stackNode = new int[2 * (maxLevel + 2)];
+		int[] stackLevel = new int[stackNode.length];
+		boolean[] stackLeftDone = new boolean[stackNode.length];
+		int top = 0;
+		stackNode[top] = (1 << maxLevel) - 1;
+		stackLevel[top] = maxLevel;
+		stackLeftDone[top] = false;
+		top++;
+
+		while (top > 0)
+		{
+			top--;
+			int node = stackNode[top];
+			int level = stackLevel[top];
+			boolean leftDone = stackLeftDone[top];
+
+			if(level <= 3)
+			{
+				//small subtree: a linear scan is faster than descending further
+				int from = node >> level << level;
+				int to = Math.min(from + (1 << (level + 1)) - 1, n);
+				for (int i = from; i < to && starts[i] <= end; i++)
+				{
+					if(ends[i] >= start)
+					{
+						if(nrOfHits == hits.length)
+						{
+							hits = Arrays.copyOf(hits, nrOfHits * 2);
+						}
+						hits[nrOfHits++] = i;
+					}
+				}
+			}
+			else if(!leftDone)
+			{
+				//revisit this node after its left subtree, which only needs a look if something in it ends at or after start
+				int left = node - (1 << (level - 1));
+				stackNode[top] = node;
+				stackLevel[top] = level;
+				stackLeftDone[top] = true;
+				top++;
+				if(left >= n || maxEnds[left] >= start)
+				{
+					stackNode[top] = left;
+					stackLevel[top] = level - 1;
+					stackLeftDone[top] = false;
+					top++;
+				}
+			}
+			else if(node < n && starts[node] <= end)
+			{
+				//everything right of this node starts at or after it, so only descend when this node does not start after end
+				if(ends[node] >= start)
+				{
+					if(nrOfHits == hits.length)
+					{
+						hits = Arrays.copyOf(hits, nrOfHits * 2);
+					}
+					hits[nrOfHits++] = node;
+				}
+				stackNode[top] = node + (1 << (level - 1));
+				stackLevel[top] = level - 1;
+				stackLeftDone[top] = false;
+				top++;
+			}
+		}
+
+		//hits are array indices, which are in start order
+		Arrays.sort(hits, 0, nrOfHits);
+		int[] result = new int[nrOfHits];
+		for (int i = 0; i < nrOfHits; i++)
+		{
+			result[i] = ids[hits[i]];
+		}
+		return result;
+	}
+}
@@ -2,25 +2,22 @@ package org.molgenis.calibratecadd.support;
 
 import java.io.File;
 import java.io.FileNotFoundException;
-import java.util.HashMap;
 import java.util.Scanner;
 
-import org.apache.commons.lang3.StringUtils;
-
 public class LoadCADDWebserviceOutput
 {
 
 	/**
-	 * "chr_pos_ref_alt" to CADD PHRED score
+	 * chr/pos/ref/alt to CADD PHRED score
 	 * @param caddFile
 	 * @return
 	 * @throws FileNotFoundException
 	 */
-	public static HashMap<String, Double> load(File caddFile) throws FileNotFoundException
+	public static VariantKeyDoubleMap load(File caddFile) throws FileNotFoundException
 	{
 		Scanner cadd = new Scanner(caddFile);
 		
-		HashMap<String, Double> caddScores = new HashMap<String, Double>();
+		VariantKeyDoubleMap caddScores = new VariantKeyDoubleMap();
 		
 		String line = null;
 		while(cadd.hasNextLine())
@@ -31,7 +28,7 @@ public class LoadCADDWebserviceOutput
 				continue;
 			}
 			String[] split = line.split("\t", -1);
-			caddScores.put(split[0] + "_" + split[1] + "_" + split[2] + "_" + split[3], Double.parseDouble(split[5]));
+			caddScores.put(split[0], Long.parseLong(split[1]), split[2], split[3], Double.parseDouble(split[5]));
 		}
 		cadd.close();
 		return caddScores;
@@ -50,28 +47,13 @@ public class LoadCADDWebserviceOutput
 	 */
 	public static String trimRefAlt(String ref, String alt, String sep)
 	{
-		// GATA -> ATAG
-		char[] refRev = StringUtils.reverse(ref).toCharArray();
-		// GATAGATA -> ATAGATAG
-		char[] altRev = StringUtils.reverse(alt).toCharArray();
-		
+		//compare from the end, without reversing, e.g. GATA and GATAGATA: A, T, A. Do not touch the first reference base (G),
+		//nor the first alt base, which is reached first in case of a deletion, e.g. TTCTT_T must not become TTCT_
 		int nrToDelete = 0;
-		//iterate over: A, T, A. Do not touch the last reference base (G).
-		for(int i = 0; i < refRev.length-1; i++)
+		while(nrToDelete < ref.length()-1 && nrToDelete < alt.length()-1
+				&& ref.charAt(ref.length()-1-nrToDelete) == alt.charAt(alt.length()-1-nrToDelete))
 		{
-			char refBase = refRev[i];
-			char altBase = altRev[i];
-
-			//altRev.length > i+1 prevents the last matching alt base from being/attempted deleted, e.g. TTCTT_T -> TTCT_
-			//this may happen because we iterate over reference, which may be longer in case of a deletion
-			if(refBase == altBase && altRev.length > i+1)
-			{
-				nrToDelete++;
-			}
-			else
-			{
-				break;
-			}
+			nrToDelete++;
 		}
 		String newRef = ref.substring(0, ref.length()-nrToDelete);
 		String newAlt = alt.substring(0, alt.length()-nrToDelete);
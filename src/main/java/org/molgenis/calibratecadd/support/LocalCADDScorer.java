@@ -0,0 +1,348 @@
+package org.molgenis.calibratecadd.support;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Scanner;
+import java.util.TreeMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.broad.tribble.readers.TabixReader;
+
+/**
+ * Score the variants of a Step4 '.cadd.tsv' file with local, tabix indexed CADD files (e.g. whole_genome_SNVs.tsv.gz
+ * and InDels.tsv.gz), instead of uploading them to the CADD web service, and write the result in the format of the
+ * web service output, as read by LoadCADDWebserviceOutput.
+ *
+ * The variants are sorted per chromosome, and nearby positions are merged into one region, so each CADD file is read
+ * in a single forward sweep per chromosome with one tabix query per region, instead of one query per variant.
+ * Chromosomes are scored in parallel, each with its own readers. A variant is looked up in the CADD files in the given
+ * order, and only in the next file when not found yet. It matches a CADD line on the same position with the same
+ * REF/ALT after trimming the bases they share at the end, e.g. 'TTCCTCCTCC TTCCTCC' matches 'TTCC T'.
+ *
+ * Variants that are in none of the files are written to a separate file in '.cadd.tsv' format, so they can still be
+ * scored by the web service.
+ */
+public class LocalCADDScorer
+{
+	//positions closer than this are read as one region, about the number of positions in one bgzip block of whole_genome_SNVs
+	private static final int MAX_REGION_GAP = 1000;
+
+	private static class CADDVariant
+	{
+		String chrom;
+		long pos;
+		String ref;
+		String alt;
+		String trimmedRefAlt;
+		String rawScore;
+		String phred;
+	}
+
+	private static class ChromResult
+	{
+		List<CADDVariant> variants;
+		int[] nrFoundPerFile;
+	}
+
+	private List<File> caddFiles;
+	private int threads;
+
+	/**
+	 * @param caddFiles bgzipped CADD files, with the .tbi next to them, in the order in which to look up variants
+	 * @param threads nr of chromosomes scored at the same time
+	 */
+	public LocalCADDScorer(List<File> caddFiles, int threads)
+	{
+		if(threads < 1)
+		{
+			throw new IllegalArgumentException("threads must be at least 1, but was " + threads);
+		}
+		for (File caddFile : caddFiles)
+		{
+			if(!new File(caddFile.getPath() + ".tbi").isFile())
+			{
+				throw new IllegalArgumentException("no tabix index for CADD file " + caddFile.getAbsolutePath());
+			}
+		}
+		this.caddFiles = caddFiles;
+		this.threads = threads;
+	}
+
+	/**
+	 * Score all variants, and write them sorted by chromosome and position
+	 * @param variantsFile the '.cadd.tsv' file of Step4: CHROM, POS, ID, REF, ALT
+	 * @param outputFile CADD web service format: CHROM, POS, REF, ALT, RawScore, PHRED
+	 * @param missingFile the variants that are not in any of the CADD files, in '.cadd.tsv' format
+	 * @return nr of variants not in any of the CADD files
+	 * @throws Exception
+	 */
+	public int score(File variantsFile, File outputFile, File missingFile) throws Exception
+	{
+		TreeMap<String, List<CADDVariant>> variantsPerChrom = readVariants(variantsFile);
+
+		ExecutorService pool = Executors.newFixedThreadPool(threads);
+		Map<String, Future<ChromResult>> results = new HashMap<String, Future<ChromResult>>();
+		for (final List<CADDVariant> chromVariants : variantsPerChrom.values())
+		{
+			results.put(chromVariants.get(0).chrom, pool.submit(new Callable<ChromResult>()
+			{
+				@Override
+				public ChromResult call() throws Exception
+				{
+					return scoreChrom(chromVariants);
+				}
+			}));
+		}
+		pool.shutdown();
+
+		PrintWriter pw = new PrintWriter(outputFile);
+		PrintWriter pwMissing = new PrintWriter(missingFile);
+		int[] nrFoundPerFile = new int[caddFiles.size()];
+		int nrOfVariants = 0;
+		int nrMissing = 0;
+		try
+		{
+			pw.println("## CADD scores from local files: " + caddFiles);
+			pw.println("#CHROM" + "\t" + "POS" + "\t" + "REF" + "\t" + "ALT" + "\t" + "RawScore" + "\t" + "PHRED");
+
+			//in chromosome order, while the next chromosomes are still being scored
+			for (String chrom : variantsPerChrom.keySet())
+			{
+				ChromResult result = results.get(chrom).get();
+				int chromMissing = 0;
+				for (CADDVariant variant : result.variants)
+				{
+					if(variant.phred != null)
+					{
+						pw.println(variant.chrom + "\t" + variant.pos + "\t" + variant.ref + "\t" + variant.alt + "\t" + variant.rawScore + "\t" + variant.phred);
+					}
+					else
+					{
+						pwMissing.println(variant.chrom + "\t" + variant.pos + "\t" + "." + "\t" + variant.ref + "\t" + variant.alt);
+						chromMissing++;
+					}
+				}
+				for (int i = 0; i < nrFoundPerFile.length; i++)
+				{
+					nrFoundPerFile[i] += result.nrFoundPerFile[i];
+				}
+				nrOfVariants += result.variants.size();
+				nrMissing += chromMissing;
+				System.out.println("chromosome " + chrom + ": scored " + (result.variants.size() - chromMissing) + " of " + result.variants.size() + " variants");
+			}
+		}
+		catch (ExecutionException e)
+		{
+			throw new Exception("failed to score " + variantsFile.getAbsolutePath(), e.getCause());
+		}
+		finally
+		{
+			pool.shutdownNow();
+			pw.flush();
+			pw.close();
+			pwMissing.flush();
+			pwMissing.close();
+		}
+
+		for (int i = 0; i < caddFiles.size(); i++)
+		{
+			System.out.println("found " + nrFoundPerFile[i] + " variants in " + caddFiles.get(i).getName());
+		}
+		System.out.println("..done, scored " + (nrOfVariants - nrMissing) + " of " + nrOfVariants + " unique variants, " + nrMissing + " missing from the CADD files, written to " + missingFile.getName());
+		return nrMissing;
+	}
+
+	/**
+	 * Unique variants per chromosome, sorted on position, and in file order within a position
+	 */
+	private TreeMap<String, List<CADDVariant>> readVariants(File variantsFile) throws IOException
+	{
+		TreeMap<String, List<CADDVariant>> variantsPerChrom = new TreeMap<String, List<CADDVariant>>(Chromosomes.ORDER);
+		VariantKeySet seen = new VariantKeySet();
+		int nrOfLines = 0;
+		Scanner s = new Scanner(variantsFile);
+		try
+		{
+			while (s.hasNextLine())
+			{
+				String line = s.nextLine();
+				if(line.isEmpty() || line.startsWith("#"))
+				{
+					continue;
+				}
+				nrOfLines++;
+				String[] split = line.split("\t", -1);
+				CADDVariant variant = new CADDVariant();
+				variant.chrom = split[0];
+				variant.pos = Long.parseLong(split[1]);
+				variant.ref = split[3];
+				variant.alt = split[4];
+				if(!seen.add(VariantKey.of(variant.chrom, variant.pos, variant.ref, variant.alt)))
+				{
+					continue;
+				}
+				variant.trimmedRefAlt = LoadCADDWebserviceOutput.trimRefAlt(variant.ref, variant.alt, "\t");
+				if(!variantsPerChrom.containsKey(variant.chrom))
+				{
+					variantsPerChrom.put(variant.chrom, new ArrayList<CADDVariant>());
+				}
+				variantsPerChrom.get(variant.chrom).add(variant);
+			}
+		}
+		finally
+		{
+			s.close();
+		}
+
+		for (List<CADDVariant> chromVariants : variantsPerChrom.values())
+		{
+			//stable, so variants at the same position keep their order
+			Collections.sort(chromVariants, new Comparator<CADDVariant>()
+			{
+				@Override
+				public int compare(CADDVariant v1, CADDVariant v2)
+				{
+					return Long.compare(v1.pos, v2.pos);
+				}
+			});
+		}
+		System.out.println("read " + nrOfLines + " variants from " + variantsFile.getName() + ", of which " + seen.size() + " unique on " + variantsPerChrom.size() + " chromosomes");
+		return variantsPerChrom;
+	}
+
+	private ChromResult scoreChrom(List<CADDVariant> chromVariants) throws IOException
+	{
+		ChromResult result = new ChromResult();
+		result.variants = chromVariants;
+		result.nrFoundPerFile = new int[caddFiles.size()];
+
+		List<CADDVariant> unscored = chromVariants;
+		for (int i = 0; i < caddFiles.size() && !unscored.isEmpty(); i++)
+		{
+			result.nrFoundPerFile[i] = sweep(caddFiles.get(i), unscored);
+
+			List<CADDVariant> stillUnscored = new ArrayList<CADDVariant>();
+			for (CADDVariant variant : unscored)
+			{
+				if(variant.phred == null)
+				{
+					stillUnscored.add(variant);
+				}
+			}
+			unscored = stillUnscored;
+		}
+		return result;
+	}
+
+	/**
+	 * Read the regions around the variants from one CADD file, in order, and score the variants found in it
+	 * @param caddFile
+	 * @param variants sorted on position, all on the same chromosome
+	 * @return nr of variants scored
+	 * @throws IOException
+	 */
+	private int sweep(File caddFile, List<CADDVariant> variants) throws IOException
+	{
+		TabixReader reader = new TabixReader(caddFile.getAbsolutePath());
+		try
+		{
+			Integer tid = getSequenceId(reader, variants.get(0).chrom);
+			if(tid == null)
+			{
+				return 0;
+			}
+
+			int nrFound = 0;
+			int regionStart = 0;
+			while (regionStart < variants.size())
+			{
+				int regionEnd = regionStart + 1;
+				while (regionEnd < variants.size() && variants.get(regionEnd).pos - variants.get(regionEnd - 1).pos <= MAX_REGION_GAP)
+				{
+					regionEnd++;
+				}
+				nrFound += scoreRegion(reader, tid, variants, regionStart, regionEnd);
+				regionStart = regionEnd;
+			}
+			return nrFound;
+		}
+		finally
+		{
+			reader.close();
+		}
+	}
+
+	/**
+	 * Score variants [regionStart, regionEnd) from a single tabix query that spans all of them
+	 */
+	private static int scoreRegion(TabixReader reader, int tid, List<CADDVariant> variants, int regionStart, int regionEnd) throws IOException
+	{
+		//tabix regions are 0-based and half-open
+		TabixReader.Iterator it = reader.query(tid, (int) variants.get(regionStart).pos - 1, (int) variants.get(regionEnd - 1).pos);
+		if(it == null)
+		{
+			return 0;
+		}
+
+		int nrFound = 0;
+		int next = regionStart;
+		String line;
+		while (next < regionEnd && (line = it.next()) != null)
+		{
+			//CHROM, POS, REF, ALT, RawScore, PHRED
+			int posEnd = line.indexOf('\t', line.indexOf('\t') + 1);
+			long pos = Long.parseLong(line.substring(line.indexOf('\t') + 1, posEnd));
+			while (next < regionEnd && variants.get(next).pos < pos)
+			{
+				next++;
+			}
+			if(next == regionEnd || variants.get(next).pos != pos)
+			{
+				continue;
+			}
+
+			String[] split = line.split("\t", -1);
+			String trimmedRefAlt = LoadCADDWebserviceOutput.trimRefAlt(split[2], split[3], "\t");
+			for (int v = next; v < regionEnd && variants.get(v).pos == pos; v++)
+			{
+				CADDVariant variant = variants.get(v);
+				if(variant.phred == null && variant.trimmedRefAlt.equals(trimmedRefAlt))
+				{
+					variant.rawScore = split[4];
+					variant.phred = split[5];
+					nrFound++;
+				}
+			}
+		}
+		return nrFound;
+	}
+
+	/**
+	 * The sequence number of a chromosome in the index, with or without 'chr' prefix, MT also as M
+	 */
+	static Integer getSequenceId(TabixReader reader, String chrom)
+	{
+		String name = chrom.startsWith("chr") ? chrom.substring(3) : chrom;
+		String[] aliases = name.equals("MT") || name.equals("M") ? new String[] { "MT", "M", "chrM", "chrMT" } : new String[] { name, "chr" + name };
+		for (String alias : aliases)
+		{
+			Integer tid = reader.mChr2tid.get(alias);
+			if(tid != null)
+			{
+				return tid;
+			}
+		}
+		return null;
+	}
+}
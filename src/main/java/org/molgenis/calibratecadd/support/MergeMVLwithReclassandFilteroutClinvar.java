@@ -5,9 +5,6 @@ import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.PrintWriter;
-import java.util.ArrayList;
-import java.util.HashMap;
-import java.util.List;
 
 import org.molgenis.data.Entity;
 import org.molgenis.data.MolgenisDataException;
@@ -17,14 +14,14 @@ import org.molgenis.data.vcf.utils.VcfWriterUtils;
 
 public class MergeMVLwithReclassandFilteroutClinvar
 {
-	//chrom_pos_ref_alt as key
-	HashMap<String, Entity> mvlRecords = new HashMap<String, Entity>();
+	//chrom/pos/ref/alt as key
+	VariantKeyMap<Entity> mvlRecords = new VariantKeyMap<Entity>();
 	
-	//chrom_pos_ref_alt as key
-	HashMap<String, Entity> reclassfRecords = new HashMap<String, Entity>();
+	//chrom/pos/ref/alt as key
+	VariantKeyMap<Entity> reclassfRecords = new VariantKeyMap<Entity>();
 	
-	//chrom_pos_ref_alt
-	List<String> clinvarPositions = new ArrayList<String>();
+	//chrom/pos/ref/alt
+	VariantKeySet clinvarPositions = new VariantKeySet();
 	
 	public MergeMVLwithReclassandFilteroutClinvar(File mvlFile, File reclassfFile, File clinvarFile, File output) throws IOException
 	{
@@ -35,32 +32,32 @@ public class MergeMVLwithReclassandFilteroutClinvar
 		System.out.println("Reclsf size: " + reclassfRecords.size());
 		System.out.println("ClinVar size: " + clinvarPositions.size());
 		
-		HashMap<String, Entity> mergedRecords = mergeMvlWithReclassf();
+		VariantKeyMap<Entity> mergedRecords = mergeMvlWithReclassf();
 		System.out.println("MVL merged with Reclsf size: " + mergedRecords.size());
 		
-		HashMap<String, Entity> mergedFilteredRecords = removeClinVar(mergedRecords);
+		VariantKeyMap<Entity> mergedFilteredRecords = removeClinVar(mergedRecords);
 		System.out.println("After removing ClinVar variants size: " + mergedFilteredRecords.size());
 		
 		print(mergedFilteredRecords, output);
 	}
 	
-	public void print(HashMap<String, Entity> printMe, File output) throws MolgenisDataException, IOException
+	public void print(VariantKeyMap<Entity> printMe, File output) throws MolgenisDataException, IOException
 	{
 		BufferedWriter pw = new BufferedWriter(new PrintWriter(output));
-		for(String key : printMe.keySet())
+		for(Entity record : printMe.values())
 		{
-			VcfWriterUtils.writeToVcf(printMe.get(key), pw);
+			VcfWriterUtils.writeToVcf(record, pw);
 			pw.write('\n');
 		}
 		pw.flush();
 		pw.close();
 	}
 	
-	public HashMap<String, Entity> removeClinVar(HashMap<String, Entity> mergedRecords)
+	public VariantKeyMap<Entity> removeClinVar(VariantKeyMap<Entity> mergedRecords)
 	{
-		HashMap<String, Entity> filteredRecords = new HashMap<String, Entity>();
+		VariantKeyMap<Entity> filteredRecords = new VariantKeyMap<Entity>();
 		
-		for(String key : mergedRecords.keySet())
+		for(VariantKey key : mergedRecords.keys())
 		{
 			if(!clinvarPositions.contains(key))
 			{
@@ -70,12 +67,12 @@ public class MergeMVLwithReclassandFilteroutClinvar
 		return filteredRecords;
 	}
 	
-	public HashMap<String, Entity> mergeMvlWithReclassf()
+	public VariantKeyMap<Entity> mergeMvlWithReclassf()
 	{
-		HashMap<String, Entity> mergedRecords = new HashMap<String, Entity>();
+		VariantKeyMap<Entity> mergedRecords = new VariantKeyMap<Entity>();
 		
-		List<String> inBoth = new ArrayList<String>();
-		for(String key : mvlRecords.keySet())
+		VariantKeySet inBoth = new VariantKeySet();
+		for(VariantKey key : mvlRecords.keys())
 		{
 			if(reclassfRecords.containsKey(key))
 			{
@@ -95,7 +92,7 @@ public class MergeMVLwithReclassandFilteroutClinvar
 			
 		}
 		
-		for(String key : reclassfRecords.keySet())
+		for(VariantKey key : reclassfRecords.keys())
 		{
 			if(!inBoth.contains(key))
 			{
@@ -106,6 +103,11 @@ public class MergeMVLwithReclassandFilteroutClinvar
 		return mergedRecords;
 	}
 	
+	private static VariantKey getKey(Entity record)
+	{
+		return VariantKey.of(record.getString("#CHROM"), Long.parseLong(record.getString("POS")), record.getString("REF"), record.getString("ALT"));
+	}
+	
 	public void readFiles(File mvlFile, File reclassfFile, File clinvarFile) throws IOException
 	{
 		VcfRepository mvlVcfRepo = new VcfRepository(mvlFile, "mvl");
@@ -113,7 +115,7 @@ public class MergeMVLwithReclassandFilteroutClinvar
 		while (vcfRepoIter.hasNext())
 		{
 			Entity record = vcfRepoIter.next();
-			mvlRecords.put(record.getString("#CHROM") + "_" + record.getString("POS") + "_" + record.getString("REF") + "_" + record.getString("ALT"), record);
+			mvlRecords.put(getKey(record), record);
 		}
 		mvlVcfRepo.close();
 		
@@ -122,7 +124,7 @@ public class MergeMVLwithReclassandFilteroutClinvar
 		while (vcfRepoIter.hasNext())
 		{
 			Entity record = vcfRepoIter.next();
-			reclassfRecords.put(record.getString("#CHROM") + "_" + record.getString("POS") + "_" + record.getString("REF") + "_" + record.getString("ALT"), record);
+			reclassfRecords.put(getKey(record), record);
 		}
 		reclassfVcfRepo.close();
 		
@@ -131,7 +133,7 @@ public class MergeMVLwithReclassandFilteroutClinvar
 		while (vcfRepoIter.hasNext())
 		{
 			Entity record = vcfRepoIter.next();
-			clinvarPositions.add(record.getString("#CHROM") + "_" + record.getString("POS") + "_" + record.getString("REF") + "_" + record.getString("ALT"));
+			clinvarPositions.add(getKey(record));
 		}
 	}
 	
@@ -1,8 +1,7 @@
 package org.molgenis.calibratecadd.support;
 
 import java.io.File;
-import java.io.FileNotFoundException;
-import java.util.HashMap;
+import java.util.Arrays;
 import java.util.Scanner;
 
 import org.molgenis.data.annotation.entity.impl.gavin.Judgment;
@@ -16,8 +15,8 @@ public class MutationTaster2Results
 		disease_causing, polymorphism
 	}
 
-	//chr:pos,ref,alt to MutationTasterClassification
-	HashMap<String, MutationTasterClassification> muttasterFile;
+	//name of the MutationTasterClassification per chrom/pos/ref/alt, indexed next to the MutationTaster2 file
+	PredictionSource muttasterFile;
 	
 	/**
 	 * 
@@ -31,44 +30,47 @@ public class MutationTaster2Results
 	 */
 	public MutationTaster2Results(File muttaster2results) throws Exception
 	{
-		muttasterFile = new HashMap<String, MutationTasterClassification>();
-		Scanner s = new Scanner(muttaster2results);
-		s.nextLine(); //skip header
-		while(s.hasNextLine())
-		{
-			String line = s.nextLine();
-			String[] linesplit = line.split("\t", -1);
-			
-			//2	220285298	disease_causing_automatic	G	CG
-			//2	220284876	disease_causing	C	T
-			//2	220285088	polymorphism	C	T
-			//2	220286064	polymorphism_automatic	C	T
-			String chrPosRefAlt = linesplit[0] + ":" + linesplit[1] + "," + linesplit[3] + "," + linesplit[4];
-			MutationTasterClassification prediction = null;
-			if(linesplit[2].startsWith("disease_causing"))
-			{
-				prediction = MutationTasterClassification.disease_causing;
-			}
-			else if(linesplit[2].startsWith("polymorphism"))
+		muttasterFile = PredictionIndex.open(muttaster2results, Arrays.asList("MutationTaster2"), (file, builder) -> {
+			Scanner s = new Scanner(file);
+			s.nextLine(); //skip header
+			while(s.hasNextLine())
 			{
-				prediction = MutationTasterClassification.polymorphism;
+				String line = s.nextLine();
+				String[] linesplit = line.split("\t", -1);
+				
+				//2	220285298	disease_causing_automatic	G	CG
+				//2	220284876	disease_causing	C	T
+				//2	220285088	polymorphism	C	T
+				//2	220286064	polymorphism_automatic	C	T
+				long pos = Long.parseLong(linesplit[1]);
+				MutationTasterClassification prediction = null;
+				if(linesplit[2].startsWith("disease_causing"))
+				{
+					prediction = MutationTasterClassification.disease_causing;
+				}
+				else if(linesplit[2].startsWith("polymorphism"))
+				{
+					prediction = MutationTasterClassification.polymorphism;
+				}
+				else
+				{
+					s.close();
+					throw new Exception("bad data on line " + line);
+				}
+				
+				builder.put(linesplit[0], pos, linesplit[3], linesplit[4], 0, prediction.name());
 			}
-			else
-			{
-				throw new Exception("bad data on line " + line);
-			}
-			
-			muttasterFile.put(chrPosRefAlt, prediction);
-		}
-		s.close();
+			s.close();
+		});
 	}
 	
 	public Judgment classifyVariantUsingMutationTaster2Results(String chr, String pos, String ref, String alt) throws Exception
 	{
 		String key = chr+":"+pos+","+ref+","+alt;
-		if(muttasterFile.containsKey(key))
+		String prediction = muttasterFile.getPrediction(0, chr, Long.parseLong(pos), ref, alt);
+		if(prediction != null)
 		{
-			MutationTasterClassification pc = muttasterFile.get(key);
+			MutationTasterClassification pc = MutationTasterClassification.valueOf(prediction);
 			if(pc.equals(MutationTasterClassification.polymorphism))
 			{
 				return new Judgment(Classification.Benign, Method.calibrated, key, "MutationTaster2 result 'polymorphism'");
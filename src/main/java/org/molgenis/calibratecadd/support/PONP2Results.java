@@ -5,8 +5,7 @@ import org.molgenis.data.annotation.entity.impl.gavin.Judgment.Classification;
 import org.molgenis.data.annotation.entity.impl.gavin.Judgment.Method;
 
 import java.io.File;
-import java.io.FileNotFoundException;
-import java.util.HashMap;
+import java.util.Arrays;
 import java.util.Scanner;
 
 public class PONP2Results
@@ -16,8 +15,8 @@ public class PONP2Results
 		Unknown, Neutral, Pathogenic
 	}
 
-	//chr:pos,ref,alt to PonpClassification
-	HashMap<String, PonpClassification> ponpFile;
+	//name of the PonpClassification per chrom/pos/ref/alt, indexed next to the PON-P2 file
+	PredictionSource ponpFile;
 	
 	/**
 	 * 
@@ -27,29 +26,46 @@ public class PONP2Results
 	 * 12:32949167,T,C	ENSG00000057294	I789V	0.152	0.051	Neutral	 
 	 * 2:220285283,C,G	ENSG00000175084	P268A	0.497	0.105	Unknown	 
 	 * 18:28660261,C,T	ENSG00000134755	A441T	0.325	0.130	Unknown	 
-	 * @throws FileNotFoundException 
+	 * 
+	 * Lines of which the query is not chr:pos,ref,alt are skipped and counted. The chromosome is matched with or
+	 * without 'chr' prefix.
+	 * @throws Exception 
 	 * 
 	 */
-	public PONP2Results(File ponp2results) throws FileNotFoundException
+	public PONP2Results(File ponp2results) throws Exception
 	{
-		ponpFile = new HashMap<String, PonpClassification>();
-		Scanner s = new Scanner(ponp2results);
-		s.nextLine();
-		while(s.hasNextLine())
-		{
-			String line = s.nextLine();
-			String[] linesplit = line.split("\t", -1);
-			ponpFile.put(linesplit[0], PonpClassification.valueOf(linesplit[5]));
-		}
-		s.close();
+		ponpFile = PredictionIndex.open(ponp2results, Arrays.asList("PON-P2"), (file, builder) -> {
+			Scanner s = new Scanner(file);
+			s.nextLine();
+			int badLines = 0;
+			while(s.hasNextLine())
+			{
+				String line = s.nextLine();
+				String[] linesplit = line.split("\t", -1);
+				String[] query = linesplit[0].split("[:,]", -1);
+				long pos = query.length == 4 ? VariantKey.parsePos(query[1]) : -1;
+				if(pos == -1)
+				{
+					badLines++;
+					continue;
+				}
+				builder.put(query[0], pos, query[2], query[3], 0, PonpClassification.valueOf(linesplit[5]).name());
+			}
+			s.close();
+			if(badLines > 0)
+			{
+				System.out.println("WARNING: skipped " + badLines + " lines of " + file.getName() + " without a chr:pos,ref,alt query");
+			}
+		});
 	}
 	
 	public Judgment classifyVariantUsingPONP2Results(String chr, String pos, String ref, String alt) throws Exception
 	{
 		String key = chr+":"+pos+","+ref+","+alt;
-		if(ponpFile.containsKey(key))
+		String prediction = ponpFile.getPrediction(0, chr, Long.parseLong(pos), ref, alt);
+		if(prediction != null)
 		{
-			PonpClassification pc = ponpFile.get(key);
+			PonpClassification pc = PonpClassification.valueOf(prediction);
 			if(pc.equals(PonpClassification.Unknown))
 			{
 				return new Judgment(Classification.VOUS, Method.calibrated, key, "PON-P2 'unknown'");
@@ -0,0 +1,281 @@
+package org.molgenis.calibratecadd.support;
+
+/**
+ * The VEP 'CSQ' field of one ExAC record, parsed once into arrays with one entry per (transcript, allele) annotation:
+ * the allele, whether the transcript is canonical, the consequences as a bitmask over VEPimpactCategories.CONSEQUENCES
+ * and the highest impact rank of those consequences.
+ *
+ * All alleles of a record share one instance (or one view, see newView). When an allele is matched to its canonical
+ * annotation, the record is 'narrowed' to that annotation, so that from then on only that one is visible to all alleles
+ * of the record. This replaces overwriting the CSQ string of the record with the matching annotation.
+ */
+public class ParsedCSQ
+{
+	private static final int ALLELE_FIELD = 0;
+	private static final int CONSEQUENCE_FIELD = 4;
+	private static final int CANONICAL_FIELD = 18;
+
+	private final String[] alleles;
+	private final boolean[] canonical;
+	private final long[] consequences;
+	private final byte[] impactRanks;
+	//only set for annotations with a consequence that is not in VEPimpactCategories, reported when its impact is asked for
+	private String[] unknownConsequences;
+	private int narrowedTo = -1;
+
+	private ParsedCSQ(int size)
+	{
+		this.alleles = new String[size];
+		this.canonical = new boolean[size];
+		this.consequences = new long[size];
+		this.impactRanks = new byte[size];
+	}
+
+	private ParsedCSQ(String[] alleles, boolean[] canonical, long[] consequences, byte[] impactRanks, String[] unknownConsequences)
+	{
+		this.alleles = alleles;
+		this.canonical = canonical;
+		this.consequences = consequences;
+		this.impactRanks = impactRanks;
+		this.unknownConsequences = unknownConsequences;
+	}
+
+	/**
+	 * From values stored without the consequences themselves (e.g. in an ExACStore), in which case getConsequences returns 0.
+	 * An impact rank of -1 means the annotation had an unknown consequence.
+	 * @param alleles
+	 * @param canonical
+	 * @param impactRanks
+	 * @return
+	 */
+	public static ParsedCSQ of(String[] alleles, boolean[] canonical, byte[] impactRanks)
+	{
+		String[] unknownConsequences = null;
+		for (int entry = 0; entry < impactRanks.length; entry++)
+		{
+			if(impactRanks[entry] == -1)
+			{
+				if(unknownConsequences == null)
+				{
+					unknownConsequences = new String[impactRanks.length];
+				}
+				unknownConsequences[entry] = "(not stored)";
+			}
+		}
+		return new ParsedCSQ(alleles, canonical, new long[alleles.length], impactRanks, unknownConsequences);
+	}
+
+	/**
+	 * A view on the same annotations that can be narrowed on its own, so one parsed record can be
+	 * shared between genes that are matched independently
+	 * @return
+	 */
+	public ParsedCSQ newView()
+	{
+		return new ParsedCSQ(alleles, canonical, consequences, impactRanks, unknownConsequences);
+	}
+
+	/**
+	 * Parse a CSQ value: annotations separated by ',', fields by '|' and consequences by '&'
+	 * @param csq
+	 * @return
+	 * @throws Exception
+	 */
+	public static ParsedCSQ parse(String csq) throws Exception
+	{
+		int size = 1;
+		for (int i = 0; i < csq.length(); i++)
+		{
+			if(csq.charAt(i) == ',')
+			{
+				size++;
+			}
+		}
+		ParsedCSQ parsed = new ParsedCSQ(size);
+
+		int entryStart = 0;
+		for (int entry = 0; entry < size; entry++)
+		{
+			int entryEnd = csq.indexOf(',', entryStart);
+			if(entryEnd == -1)
+			{
+				entryEnd = csq.length();
+			}
+
+			//find the fields we need, without splitting the other fields into strings
+			int field = 0;
+			int fieldStart = entryStart;
+			int alleleStart = -1, alleleEnd = -1, consequenceStart = -1, consequenceEnd = -1, canonicalStart = -1, canonicalEnd = -1;
+			for (int i = entryStart; i <= entryEnd; i++)
+			{
+				if(i == entryEnd || csq.charAt(i) == '|')
+				{
+					if(field == ALLELE_FIELD)
+					{
+						alleleStart = fieldStart;
+						alleleEnd = i;
+					}
+					else if(field == CONSEQUENCE_FIELD)
+					{
+						consequenceStart = fieldStart;
+						consequenceEnd = i;
+					}
+					else if(field == CANONICAL_FIELD)
+					{
+						canonicalStart = fieldStart;
+						canonicalEnd = i;
+						break;
+					}
+					field++;
+					fieldStart = i + 1;
+				}
+			}
+			if(canonicalStart == -1)
+			{
+				throw new Exception("expected at least " + (CANONICAL_FIELD + 1) + " fields in CSQ annotation: " + csq.substring(entryStart, entryEnd));
+			}
+
+			parsed.alleles[entry] = parsed.sharedAllele(csq, alleleStart, alleleEnd, entry);
+			parsed.canonical[entry] = canonicalEnd - canonicalStart == 3 && csq.startsWith("YES", canonicalStart);
+			parsed.parseConsequences(csq, consequenceStart, consequenceEnd, entry);
+
+			entryStart = entryEnd + 1;
+		}
+		return parsed;
+	}
+
+	/**
+	 * Most annotations are for the same few alleles, so reuse the string of an earlier annotation when possible
+	 */
+	private String sharedAllele(String csq, int start, int end, int entry)
+	{
+		int length = end - start;
+		for (int i = 0; i < entry; i++)
+		{
+			if(alleles[i].length() == length && csq.regionMatches(start, alleles[i], 0, length))
+			{
+				return alleles[i];
+			}
+		}
+		return csq.substring(start, end);
+	}
+
+	private void parseConsequences(String csq, int start, int end, int entry)
+	{
+		long mask = 0;
+		int termStart = start;
+		for (int i = start; i <= end; i++)
+		{
+			if(i == end || csq.charAt(i) == '&')
+			{
+				String term = csq.substring(termStart, i);
+				int bit = VEPimpactCategories.getConsequenceBit(term);
+				if(bit == -1 && unknownConsequences == null)
+				{
+					unknownConsequences = new String[alleles.length];
+				}
+				if(bit == -1 && unknownConsequences[entry] == null)
+				{
+					unknownConsequences[entry] = term;
+				}
+				else if(bit != -1)
+				{
+					mask |= 1L << bit;
+				}
+				termStart = i + 1;
+			}
+		}
+		consequences[entry] = mask;
+		impactRanks[entry] = (byte) (unknownConsequences != null && unknownConsequences[entry] != null ? -1 : VEPimpactCategories.getHighestImpactRank(mask));
+	}
+
+	public int size()
+	{
+		return alleles.length;
+	}
+
+	/**
+	 * False for annotations hidden by narrowing the record to another annotation
+	 * @param entry
+	 * @return
+	 */
+	public boolean isVisible(int entry)
+	{
+		return narrowedTo == -1 || narrowedTo == entry;
+	}
+
+	public boolean isNarrowed()
+	{
+		return narrowedTo != -1;
+	}
+
+	public String getAllele(int entry)
+	{
+		return alleles[entry];
+	}
+
+	public boolean isCanonical(int entry)
+	{
+		return canonical[entry];
+	}
+
+	/**
+	 * Consequences as a bitmask over VEPimpactCategories.CONSEQUENCES
+	 * @param entry
+	 * @return
+	 */
+	public long getConsequences(int entry)
+	{
+		return consequences[entry];
+	}
+
+	/**
+	 * Highest impact rank of the consequences of this annotation, see VEPimpactCategories.getImpactRank
+	 * e.g. "splice_acceptor_variant&non_coding_transcript_variant" is both HIGH and MODIFIER impact, so HIGH (3)
+	 * @param entry
+	 * @return
+	 * @throws Exception when a consequence is unknown
+	 */
+	public int getImpactRank(int entry) throws Exception
+	{
+		if(impactRanks[entry] == -1)
+		{
+			throw new Exception("consequence unknown: " + unknownConsequences[entry]);
+		}
+		return impactRanks[entry];
+	}
+
+	/**
+	 * Impact rank as stored, -1 when a consequence is unknown
+	 */
+	byte getStoredImpactRank(int entry)
+	{
+		return impactRanks[entry];
+	}
+
+	/**
+	 * First visible annotation of this allele on a canonical transcript, or -1 if there is none
+	 * @param allele
+	 * @return
+	 */
+	public int findCanonical(String allele)
+	{
+		for (int entry = 0; entry < alleles.length; entry++)
+		{
+			if(isVisible(entry) && canonical[entry] && alleles[entry].equals(allele))
+			{
+				return entry;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * Hide all other annotations of this record
+	 * @param entry
+	 */
+	public void narrowTo(int entry)
+	{
+		narrowedTo = entry;
+	}
+}
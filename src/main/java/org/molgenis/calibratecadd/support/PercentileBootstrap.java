@@ -0,0 +1,155 @@
+package org.molgenis.calibratecadd.support;
+
+import java.util.Arrays;
+import java.util.SplittableRandom;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Bootstrap confidence interval of an R-7 percentile of a sample, e.g. the CADD threshold at the 5th percentile of the
+ * pathogenic variants of a gene, to see how stable that threshold is.
+ *
+ * The sample is resampled with replacement many times, the percentile of every resample is estimated, and the
+ * interval is given by the percentiles of those estimates (the percentile method). The sample is sorted once, so a
+ * resample only needs a count per index: drawing indices and writing the counted values back in sorted order gives
+ * the sorted resample without sorting it, and without allocating, as the buffers are kept per thread.
+ *
+ * Resamples are drawn in blocks that run as fork-join tasks, in the pool of the calling task if there is one, or
+ * else in the common pool. Every block draws from its own SplittableRandom, split from one seeded per call, so the
+ * interval only depends on the sample and the seed, and not on the number of threads.
+ */
+public class PercentileBootstrap
+{
+	private static final int RESAMPLES_PER_BLOCK = 250;
+
+	private static final ThreadLocal<int[]> COUNT_BUFFERS = new ThreadLocal<int[]>();
+	private static final ThreadLocal<double[]> RESAMPLE_BUFFERS = new ThreadLocal<double[]>();
+
+	private int nrOfResamples;
+	private double confidence;
+
+	/**
+	 * @param nrOfResamples e.g. 2000
+	 * @param confidence e.g. 0.95 for a 95% interval
+	 */
+	public PercentileBootstrap(int nrOfResamples, double confidence)
+	{
+		if(nrOfResamples < 1)
+		{
+			throw new IllegalArgumentException("nrOfResamples must be at least 1, but was " + nrOfResamples);
+		}
+		if(confidence <= 0 || confidence >= 1)
+		{
+			throw new IllegalArgumentException("confidence must be between 0 and 1, but was " + confidence);
+		}
+		this.nrOfResamples = nrOfResamples;
+		this.confidence = confidence;
+	}
+
+	/**
+	 * @param values sample, not modified
+	 * @param p percentile, in (0, 100]
+	 * @param seed for the resamples, e.g. derived from the gene name so the order of genes does not matter
+	 * @return lower and upper bound of the interval, or NaN for both when the sample is empty
+	 */
+	public double[] interval(double[] values, double p, long seed)
+	{
+		if(values.length == 0)
+		{
+			return new double[] { Double.NaN, Double.NaN };
+		}
+		double[] sorted = values.clone();
+		Arrays.sort(sorted);
+
+		double[] estimates = new double[nrOfResamples];
+		int nrOfBlocks = (nrOfResamples + RESAMPLES_PER_BLOCK - 1) / RESAMPLES_PER_BLOCK;
+		ResampleBlocks blocks = new ResampleBlocks(sorted, p, estimates, 0, nrOfBlocks, new SplittableRandom(seed));
+		if(ForkJoinTask.inForkJoinPool())
+		{
+			blocks.invoke();
+		}
+		else
+		{
+			ForkJoinPool.commonPool().invoke(blocks);
+		}
+
+		Arrays.sort(estimates);
+		double alpha = 1 - confidence;
+		return new double[] { TwoSampleStatistics.percentile(estimates, estimates.length, 100 * alpha / 2),
+				TwoSampleStatistics.percentile(estimates, estimates.length, 100 * (1 - alpha / 2)) };
+	}
+
+	/**
+	 * Estimates the percentile of a range of blocks of resamples, split in halves down to one block per task
+	 */
+	private class ResampleBlocks extends RecursiveAction
+	{
+		private static final long serialVersionUID = 1L;
+
+		private double[] sorted;
+		private double p;
+		private double[] estimates;
+		private int fromBlock;
+		private int toBlock;
+		private SplittableRandom random;
+
+		ResampleBlocks(double[] sorted, double p, double[] estimates, int fromBlock, int toBlock, SplittableRandom random)
+		{
+			this.sorted = sorted;
+			this.p = p;
+			this.estimates = estimates;
+			this.fromBlock = fromBlock;
+			this.toBlock = toBlock;
+			this.random = random;
+		}
+
+		@Override
+		protected void compute()
+		{
+			if(toBlock - fromBlock > 1)
+			{
+				int middle = (fromBlock + toBlock) >>> 1;
+				//split before forking, so which block gets which stream does not depend on timing
+				ResampleBlocks right = new ResampleBlocks(sorted, p, estimates, middle, toBlock, random.split());
+				ResampleBlocks left = new ResampleBlocks(sorted, p, estimates, fromBlock, middle, random);
+				invokeAll(left, right);
+				return;
+			}
+
+			int n = sorted.length;
+			int[] counts = COUNT_BUFFERS.get();
+			if(counts == null || counts.length < n)
+			{
+				counts = new int[Math.max(n, 64)];
+				COUNT_BUFFERS.set(counts);
+			}
+			double[] resample = RESAMPLE_BUFFERS.get();
+			if(resample == null || resample.length < n)
+			{
+				resample = new double[Math.max(n, 64)];
+				RESAMPLE_BUFFERS.set(resample);
+			}
+
+			int from = fromBlock * RESAMPLES_PER_BLOCK;
+			int to = Math.min(from + RESAMPLES_PER_BLOCK, nrOfResamples);
+			for(int r = from; r < to; r++)
+			{
+				Arrays.fill(counts, 0, n, 0);
+				for(int i = 0; i < n; i++)
+				{
+					counts[random.nextInt(n)]++;
+				}
+				int size = 0;
+				for(int i = 0; i < n; i++)
+				{
+					for(int c = counts[i]; c > 0; c--)
+					{
+						resample[size++] = sorted[i];
+					}
+				}
+				estimates[r] = TwoSampleStatistics.percentile(resample, n, p);
+			}
+		}
+	}
+}
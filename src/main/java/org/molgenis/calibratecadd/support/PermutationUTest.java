@@ -0,0 +1,300 @@
+package org.molgenis.calibratecadd.support;
+
+import java.util.Arrays;
+import java.util.SplittableRandom;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Two-sided p-value of the Mann-Whitney U test by permutation, for samples that are too small for the normal
+ * approximation of MannWhitneyUTest, e.g. genes with less than 5 CADD scored pathogenic or population variants.
+ *
+ * Under the null hypothesis every split of the pooled ranks (averaged over ties) into the two groups is equally
+ * likely, so the p-value is the fraction of splits where the rank sum of the smaller group is at least as far from
+ * its expected value as observed. When there are not too many splits they are all counted, giving the exact
+ * p-value. Otherwise random splits are drawn in rounds of blocks that run as fork-join tasks, in the pool of the
+ * calling task if there is one, or else in the common pool. Drawing stops when the p-value is clearly on one side
+ * of each of the 0.01 and 0.05 boundaries, or at the maximum number of permutations.
+ *
+ * Every block draws from its own SplittableRandom, split from one seeded per call, so the p-value only depends on
+ * the samples and the seed, and not on the number of threads.
+ */
+public class PermutationUTest
+{
+	/**
+	 * Count every split when there are no more than this many
+	 */
+	public static final long MAX_EXACT_SPLITS = 200000;
+
+	private static final int PERMUTATIONS_PER_BLOCK = 1000;
+	private static final int BLOCKS_PER_ROUND = 8;
+
+	/**
+	 * Keep drawing while a boundary is within this many standard errors of the estimated p-value, about 99.9%
+	 */
+	private static final double Z = 3.29;
+	private static final double[] BOUNDARIES = new double[] { 0.01, 0.05 };
+
+	/**
+	 * Ranks of a gene are copied here to be shuffled, so only one buffer per thread is ever made
+	 */
+	private static final ThreadLocal<double[]> BUFFERS = new ThreadLocal<double[]>();
+
+	private int maxPermutations;
+
+	/**
+	 * @param maxPermutations draw no more than this many random splits, e.g. 100000
+	 */
+	public PermutationUTest(int maxPermutations)
+	{
+		if(maxPermutations < PERMUTATIONS_PER_BLOCK)
+		{
+			throw new IllegalArgumentException("maxPermutations must be at least " + PERMUTATIONS_PER_BLOCK + ", but was " + maxPermutations);
+		}
+		this.maxPermutations = maxPermutations;
+	}
+
+	/**
+	 * @param seed for the random splits, e.g. derived from the gene name so the order of genes does not matter
+	 * @return two-sided p-value
+	 */
+	public double pValue(double[] x, double[] y, long seed)
+	{
+		if(x.length == 0 || y.length == 0)
+		{
+			throw new IllegalArgumentException("both samples need at least one value, but got " + x.length + " and " + y.length);
+		}
+		int n = x.length + y.length;
+		int k = Math.min(x.length, y.length);
+		double[] ranks = ranks(x, y);
+
+		//rank sum of the smaller sample, the other one follows from it
+		double observed = 0;
+		int from = x.length <= y.length ? 0 : x.length;
+		for(int i = from; i < from + k; i++)
+		{
+			observed += ranks[i];
+		}
+		double expected = k * (n + 1) / 2.0;
+		//ranks are whole or halves, so deviations are too; the margin only absorbs rounding of the sums
+		double threshold = Math.abs(observed - expected) - 1e-9;
+
+		if(nrOfSplits(n, k) <= MAX_EXACT_SPLITS)
+		{
+			return exact(ranks, k, expected, threshold);
+		}
+
+		SplittableRandom random = new SplittableRandom(seed);
+		long extreme = 0;
+		long done = 0;
+		while(done < maxPermutations)
+		{
+			int blocks = (int) Math.min(BLOCKS_PER_ROUND, (maxPermutations - done + PERMUTATIONS_PER_BLOCK - 1) / PERMUTATIONS_PER_BLOCK);
+			PermutationBlocks round = new PermutationBlocks(ranks, k, expected, threshold, blocks, random.split());
+			extreme += ForkJoinTask.inForkJoinPool() ? round.invoke() : ForkJoinPool.commonPool().invoke(round);
+			done += (long) blocks * PERMUTATIONS_PER_BLOCK;
+			if(isClear(extreme, done))
+			{
+				break;
+			}
+		}
+		//the observed split is one of the permutations, so the p-value is never 0
+		return (extreme + 1) / (double) (done + 1);
+	}
+
+	/**
+	 * Average ranks (1-based) of x followed by y in one array, in the order of the samples.
+	 * Each value finds its group of ties in a sorted copy of the pooled values, so nothing is boxed.
+	 */
+	static double[] ranks(double[] x, double[] y)
+	{
+		int n = x.length + y.length;
+		double[] pooled = new double[n];
+		System.arraycopy(x, 0, pooled, 0, x.length);
+		System.arraycopy(y, 0, pooled, x.length, y.length);
+		double[] sorted = pooled.clone();
+		Arrays.sort(sorted);
+
+		double[] ranks = new double[n];
+		for(int i = 0; i < n; i++)
+		{
+			//ties are sorted[first] up to sorted[end - 1], at ranks first + 1 to end
+			int first = firstNotBefore(sorted, pooled[i], false);
+			int end = firstNotBefore(sorted, pooled[i], true);
+			ranks[i] = (first + 1 + end) / 2.0;
+		}
+		return ranks;
+	}
+
+	/**
+	 * Index of the first value in sorted that is not before value, or that is after it if after is set,
+	 * in the order of Double.compare, which Arrays.sort uses too
+	 */
+	private static int firstNotBefore(double[] sorted, double value, boolean after)
+	{
+		int low = 0;
+		int high = sorted.length;
+		while(low < high)
+		{
+			int mid = (low + high) >>> 1;
+			int compared = Double.compare(sorted[mid], value);
+			if(compared < 0 || (after && compared == 0))
+			{
+				low = mid + 1;
+			}
+			else
+			{
+				high = mid;
+			}
+		}
+		return low;
+	}
+
+	/**
+	 * n choose k, or Long.MAX_VALUE when more than MAX_EXACT_SPLITS anyway
+	 */
+	private static long nrOfSplits(int n, int k)
+	{
+		long splits = 1;
+		for(int i = 1; i <= k; i++)
+		{
+			//exact at every step, splits * (n - k + i) / i is (n - k + i) choose i
+			splits = splits * (n - k + i) / i;
+			if(splits > MAX_EXACT_SPLITS)
+			{
+				return Long.MAX_VALUE;
+			}
+		}
+		return splits;
+	}
+
+	/**
+	 * Go through every k-subset of the ranks in lexicographic order
+	 */
+	private static double exact(double[] ranks, int k, double expected, double threshold)
+	{
+		int n = ranks.length;
+		int[] subset = new int[k];
+		for(int i = 0; i < k; i++)
+		{
+			subset[i] = i;
+		}
+		long extreme = 0;
+		long total = 0;
+		while(true)
+		{
+			double sum = 0;
+			for(int i = 0; i < k; i++)
+			{
+				sum += ranks[subset[i]];
+			}
+			if(Math.abs(sum - expected) >= threshold)
+			{
+				extreme++;
+			}
+			total++;
+
+			int i = k - 1;
+			while(i >= 0 && subset[i] == n - k + i)
+			{
+				i--;
+			}
+			if(i < 0)
+			{
+				return extreme / (double) total;
+			}
+			subset[i]++;
+			for(int j = i + 1; j < k; j++)
+			{
+				subset[j] = subset[j - 1] + 1;
+			}
+		}
+	}
+
+	/**
+	 * Is the estimated p-value far enough from every boundary to tell on which side it is
+	 */
+	private static boolean isClear(long extreme, long done)
+	{
+		double p = (extreme + 1) / (double) (done + 1);
+		double margin = Z * Math.sqrt(p * (1 - p) / done);
+		for(double boundary : BOUNDARIES)
+		{
+			if(Math.abs(p - boundary) <= margin)
+			{
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Draws a number of blocks of random splits and counts the extreme ones, split in halves down to one block per task
+	 */
+	private static class PermutationBlocks extends RecursiveTask<Long>
+	{
+		private static final long serialVersionUID = 1L;
+
+		private double[] ranks;
+		private int k;
+		private double expected;
+		private double threshold;
+		private int blocks;
+		private SplittableRandom random;
+
+		PermutationBlocks(double[] ranks, int k, double expected, double threshold, int blocks, SplittableRandom random)
+		{
+			this.ranks = ranks;
+			this.k = k;
+			this.expected = expected;
+			this.threshold = threshold;
+			this.blocks = blocks;
+			this.random = random;
+		}
+
+		@Override
+		protected Long compute()
+		{
+			if(blocks > 1)
+			{
+				int half = blocks / 2;
+				//split before forking, so which block gets which stream does not depend on timing
+				PermutationBlocks right = new PermutationBlocks(ranks, k, expected, threshold, blocks - half, random.split());
+				PermutationBlocks left = new PermutationBlocks(ranks, k, expected, threshold, half, random);
+				right.fork();
+				long extreme = left.compute();
+				return extreme + right.join();
+			}
+
+			double[] buffer = BUFFERS.get();
+			if(buffer == null || buffer.length < ranks.length)
+			{
+				buffer = new double[Math.max(ranks.length, 64)];
+				BUFFERS.set(buffer);
+			}
+			int n = ranks.length;
+			System.arraycopy(ranks, 0, buffer, 0, n);
+
+			long extreme = 0;
+			for(int permutation = 0; permutation < PERMUTATIONS_PER_BLOCK; permutation++)
+			{
+				//partial Fisher-Yates: the first k of the buffer become a uniformly random k-subset, whatever order it was in
+				double sum = 0;
+				for(int i = 0; i < k; i++)
+				{
+					int j = i + random.nextInt(n - i);
+					double rank = buffer[j];
+					buffer[j] = buffer[i];
+					buffer[i] = rank;
+					sum += rank;
+				}
+				if(Math.abs(sum - expected) >= threshold)
+				{
+					extreme++;
+				}
+			}
+			return extreme;
+		}
+	}
+}
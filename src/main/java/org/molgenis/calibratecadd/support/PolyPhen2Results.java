@@ -1,8 +1,7 @@
 package org.molgenis.calibratecadd.support;
 
 import java.io.File;
-import java.io.FileNotFoundException;
-import java.util.HashMap;
+import java.util.Arrays;
 import java.util.Scanner;
 
 import org.molgenis.data.annotation.entity.impl.gavin.Judgment;
@@ -16,8 +15,8 @@ public class PolyPhen2Results
 		Benign, Damaging
 	}
 
-	//chr:pos,ref,alt to PolyPhenClassification
-	HashMap<String, String> polyphenFile;
+	//PolyPhen2 prediction as written in the file (e.g. 'probably damaging') per chrom/pos/ref/alt, indexed next to the file
+	PredictionSource polyphenFile;
 	
 	/**
 	 * 
@@ -27,29 +26,30 @@ public class PolyPhen2Results
 	 * 14	23857459	G	A	probably damaging
 	 * 1	237821276	T	C	possibly damaging
 	 * 
-	 * @throws FileNotFoundException 
+	 * @throws Exception 
 	 * 
 	 */
-	public PolyPhen2Results(File polyphen2results) throws FileNotFoundException
+	public PolyPhen2Results(File polyphen2results) throws Exception
 	{
-		polyphenFile = new HashMap<String, String>();
-		Scanner s = new Scanner(polyphen2results);
-	//	s.nextLine(); no header!
-		while(s.hasNextLine())
-		{
-			String line = s.nextLine();
-			String[] linesplit = line.split("\t", -1);
-			polyphenFile.put(linesplit[0] + "_" + linesplit[1] + "_" + linesplit[2] + "_" + linesplit[3], linesplit[4]);
-		}
-		s.close();
+		polyphenFile = PredictionIndex.open(polyphen2results, Arrays.asList("PolyPhen2"), (file, builder) -> {
+			Scanner s = new Scanner(file);
+		//	s.nextLine(); no header!
+			while(s.hasNextLine())
+			{
+				String line = s.nextLine();
+				String[] linesplit = line.split("\t", -1);
+				builder.put(linesplit[0], Long.parseLong(linesplit[1]), linesplit[2], linesplit[3], 0, linesplit[4]);
+			}
+			s.close();
+		});
 	}
 	
 	public Judgment classifyVariantUsingPolyPhen2Results(String chr, String pos, String ref, String alt) throws Exception
 	{
 		String key = chr+"_"+pos+"_"+ref+"_"+alt;
-		if(polyphenFile.containsKey(key))
+		String pc = polyphenFile.getPrediction(0, chr, Long.parseLong(pos), ref, alt);
+		if(pc != null)
 		{
-			String pc = polyphenFile.get(key);
 			
 			if(pc.contains("benign"))
 			{
@@ -7,67 +7,62 @@ import org.molgenis.data.annotation.entity.impl.gavin.Judgment.Method;
 import org.molgenis.data.vcf.VcfRepository;
 
 import java.io.File;
-import java.io.FileNotFoundException;
-import java.io.IOException;
-import java.util.HashMap;
-import java.util.Scanner;
+import java.util.Arrays;
 
 public class PredictSNP2Results
 {
 
-	//chr:pos,ref,alt to PredictSNP2 consensus ("PSNPE" info field)
-	HashMap<String, HashMap<String, String>> toolToEstimatedEffect;
+	//chr/pos/ref/alt to PredictSNP2 consensus ("PSNPE" info field) or the estimate of each tool
+	PredictionSource toolToEstimatedEffect;
 
 	/**
 	 *
 	 */
-	public PredictSNP2Results(File ps2Results) throws IOException
+	public PredictSNP2Results(File ps2Results) throws Exception
 	{
-		VcfRepository vcfRepo = new VcfRepository(ps2Results, "mvl");
-		HashMap<String, String> PredictSNP2 = new HashMap<String, String>();
-		HashMap<String, String> FATHMM = new HashMap<String, String>();
-		HashMap<String, String> GWAVA = new HashMap<String, String>();
-		HashMap<String, String> FunSeq = new HashMap<String, String>();
-		HashMap<String, String> DANN = new HashMap<String, String>();
-		toolToEstimatedEffect = new HashMap<String, HashMap<String, String>>();
+		toolToEstimatedEffect = PredictionIndex.open(ps2Results, Arrays.asList("PredictSNP2", "FATHMM", "GWAVA", "FunSeq", "DANN"), (file, builder) -> {
+			VcfRepository vcfRepo = new VcfRepository(file, "mvl");
+			java.util.Iterator<Entity> vcfRepoIter = vcfRepo.iterator();
 
-		java.util.Iterator<Entity> vcfRepoIter = vcfRepo.iterator();
+			while (vcfRepoIter.hasNext()) {
+				Entity record = vcfRepoIter.next();
 
-		while (vcfRepoIter.hasNext()) {
-			Entity record = vcfRepoIter.next();
-
-			String chr = record.getString("#CHROM");
-			String pos = record.getString("POS");
-			String ref = record.getString("REF");
-			String alt = record.getString("ALT");
-			String PSNPE = record.getString("PSNPE");
-			String FATE = record.getString("FATE");
-			String GWAVAE = record.getString("GWAVAE");
-			String DANNE = record.getString("DANNE");
-			String FUNE = record.getString("FUNE");
-			PredictSNP2.put(chr + "_" + pos + "_" + ref + "_"+alt,PSNPE);
-			FATHMM.put(chr + "_" + pos + "_" + ref + "_"+alt,FATE);
-			GWAVA.put(chr + "_" + pos + "_" + ref + "_"+alt,GWAVAE);
-			FunSeq.put(chr + "_" + pos + "_" + ref + "_"+alt,FUNE);
-			DANN.put(chr + "_" + pos + "_" + ref + "_"+alt,DANNE);
-		}
-		toolToEstimatedEffect.put("PredictSNP2", PredictSNP2);
-		toolToEstimatedEffect.put("FATHMM", FATHMM);
-		toolToEstimatedEffect.put("GWAVA", GWAVA);
-		toolToEstimatedEffect.put("FunSeq", FunSeq);
-		toolToEstimatedEffect.put("DANN", DANN);
+				String chr = record.getString("#CHROM");
+				String pos = record.getString("POS");
+				String ref = record.getString("REF");
+				String alt = record.getString("ALT");
+				String PSNPE = record.getString("PSNPE");
+				String FATE = record.getString("FATE");
+				String GWAVAE = record.getString("GWAVAE");
+				String DANNE = record.getString("DANNE");
+				String FUNE = record.getString("FUNE");
+				long position = Long.parseLong(pos);
+				//a missing info field gives a null label, and so no prediction of that tool
+				builder.put(chr, position, ref, alt, 0, PSNPE);
+				builder.put(chr, position, ref, alt, 1, FATE);
+				builder.put(chr, position, ref, alt, 2, GWAVAE);
+				builder.put(chr, position, ref, alt, 3, FUNE);
+				builder.put(chr, position, ref, alt, 4, DANNE);
+			}
+			vcfRepo.close();
+		});
 	}
 
-	public static void main (String[] args) throws IOException {
+	public static void main (String[] args) throws Exception {
 		new PredictSNP2Results(new File("/Users/joeri/github/gavin/data/predictions", "PredictSNP2.vcf.gz"));
 	}
 	
 	public Judgment classifyVariantUsingPredictSNP2Results(String chr, String pos, String ref, String alt, String tool) throws Exception
 	{
 		String key = chr+"_"+pos+"_"+ref+"_"+alt;
-		if(toolToEstimatedEffect.get(tool).containsKey(key))
+		int toolNr = toolToEstimatedEffect.getTool(tool);
+		if(toolNr == -1)
+		{
+			throw new Exception("Unknown PredictSNP2 tool: " + tool);
+		}
+		String consensus = toolToEstimatedEffect.getPrediction(toolNr, chr, Long.parseLong(pos), ref, alt);
+		if(consensus != null)
 		{
-			String consensus = toolToEstimatedEffect.get(tool).get(key);
 
 			if(consensus.contains("neutral"))
 			{
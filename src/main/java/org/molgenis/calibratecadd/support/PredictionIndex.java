@@ -0,0 +1,609 @@
+package org.molgenis.calibratecadd.support;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+
+/**
+ * PredictionSource on a memory-mapped binary index of the predictions in a tool output file, sorted by variant, with
+ * one byte per tool per variant. The index is built from the source file the first time it is opened, and stored next
+ * to it with extension '.pidx', so later runs only map it: no parsing, and a lookup is a binary search that reads
+ * the mapped file without allocating. The index is built again when the size or modification time of the source file
+ * differs from when the index was built, or when it was built with another version of the parser.
+ *
+ * File layout (big-endian):
+ * <pre>
+ * "GAVINPRD" int version int headerLength
+ * header: long sourceLength, long sourceLastModified, int parserVersion,
+ *         int nrOfTools, per tool: UTF name, int nrOfLabels, nrOfLabels x UTF label (code 1 and up),
+ *         int nrOfChroms, nrOfChroms x UTF name, int nrOfVariants
+ * nrOfVariants x long chromPos, sorted together with the alleles
+ * nrOfVariants x long alleles
+ * nrOfVariants x int offset of the alleles in the allele section, or -1 when the alleles are packed in the long
+ * nrOfVariants x nrOfTools x byte code, 0 for no prediction
+ * allele section: per variant with an offset: short length, ref, short length, alt (ASCII)
+ * </pre>
+ * Chromosomes are numbered in the order of the header, not by their (per run) Chromosomes code. Alleles are packed as
+ * VariantKey does when they fit in a long, and are otherwise given by a hash, with the strings themselves in the
+ * allele section to tell apart alleles with the same hash.
+ *
+ * The index must stay under 2 GB. Safe to query from multiple threads.
+ */
+public class PredictionIndex implements PredictionSource
+{
+	static final byte[] MAGIC = "GAVINPRD".getBytes(StandardCharsets.US_ASCII);
+	static final int VERSION = 2;
+	public static final String INDEX_EXTENSION = ".pidx";
+	private static final int MAX_LABELS = 255;
+
+	/**
+	 * Reads a tool output file into a Builder
+	 */
+	public interface Parser
+	{
+		void parse(File sourceFile, Builder builder) throws Exception;
+	}
+
+	/**
+	 * Same as open with parser version 1
+	 */
+	public static PredictionIndex open(File sourceFile, List<String> toolNames, Parser parser) throws Exception
+	{
+		return open(sourceFile, toolNames, 1, parser);
+	}
+
+	/**
+	 * Open the index of a tool output file, and build it first if it is not there or not built from the file as it is now
+	 * @param sourceFile e.g. PON-P2.tsv
+	 * @param toolNames the tools in the file, in the order of their tool numbers
+	 * @param parserVersion increase when the parser reads the file differently, so existing indexes are built again
+	 * @param parser to build the index with
+	 * @return
+	 * @throws Exception
+	 */
+	public static PredictionIndex open(File sourceFile, List<String> toolNames, int parserVersion, Parser parser) throws Exception
+	{
+		if(!sourceFile.exists())
+		{
+			throw new IOException("prediction file " + sourceFile.getAbsolutePath() + " does not exist");
+		}
+		File indexFile = new File(sourceFile.getPath() + INDEX_EXTENSION);
+		//taken before parsing, so a file that changes while it is parsed is found out on the next open
+		long sourceLength = sourceFile.length();
+		long sourceLastModified = sourceFile.lastModified();
+		if(indexFile.exists())
+		{
+			try
+			{
+				PredictionIndex index = new PredictionIndex(indexFile);
+				if(index.sourceLength == sourceLength && index.sourceLastModified == sourceLastModified
+						&& index.parserVersion == parserVersion && index.getToolNames().equals(toolNames))
+				{
+					return index;
+				}
+			}
+			catch (IOException e)
+			{
+				System.out.println("WARNING: rebuilding " + indexFile.getAbsolutePath() + ": " + e.getMessage());
+			}
+		}
+
+		System.out.println("building prediction index for " + sourceFile.getAbsolutePath());
+		Builder builder = new Builder(toolNames);
+		parser.parse(sourceFile, builder);
+		File tmp = null;
+		try
+		{
+			//a name of its own, so concurrent builds of the same index do not write into each other's file, and a
+			//reader only ever sees a complete index
+			tmp = File.createTempFile(indexFile.getName() + ".", ".tmp", indexFile.getAbsoluteFile().getParentFile());
+			builder.write(tmp, sourceLength, sourceLastModified, parserVersion);
+			Files.move(tmp.toPath(), indexFile.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		}
+		catch (IOException e)
+		{
+			//e.g. a read-only folder: still use an index, but only for this run
+			System.out.println("WARNING: could not store " + indexFile.getAbsolutePath() + ", using a temporary index: " + e.getMessage());
+			if(tmp != null)
+			{
+				tmp.delete();
+			}
+			indexFile = File.createTempFile("prediction", INDEX_EXTENSION);
+			indexFile.deleteOnExit();
+			builder.write(indexFile, sourceLength, sourceLastModified, parserVersion);
+		}
+		return new PredictionIndex(indexFile);
+	}
+
+	private long sourceLength;
+	private long sourceLastModified;
+	private int parserVersion;
+	private List<String> toolNames;
+	private HashMap<String, Integer> toolNumbers = new HashMap<String, Integer>();
+	//per tool, label by code, with null for code 0
+	private String[][] labels;
+	//file chromosome number by Chromosomes code, -1 if not in the file
+	private int[] chromsByCode = new int[0];
+	private int nrOfVariants;
+	private int nrOfTools;
+	private ByteBuffer data;
+	private int chromPosStart;
+	private int allelesStart;
+	private int offsetsStart;
+	private int codesStart;
+	private int allelesSectionStart;
+
+	public PredictionIndex(File indexFile) throws IOException
+	{
+		RandomAccessFile file = new RandomAccessFile(indexFile, "r");
+		try
+		{
+			byte[] magic = new byte[MAGIC.length];
+			file.readFully(magic);
+			if(!Arrays.equals(magic, MAGIC))
+			{
+				throw new IOException("not a prediction index: " + indexFile.getAbsolutePath());
+			}
+			int version = file.readInt();
+			if(version != VERSION)
+			{
+				throw new IOException("prediction index version " + version + " not supported, expected " + VERSION);
+			}
+			byte[] headerBytes = new byte[file.readInt()];
+			file.readFully(headerBytes);
+			DataInputStream header = new DataInputStream(new ByteArrayInputStream(headerBytes));
+
+			sourceLength = header.readLong();
+			sourceLastModified = header.readLong();
+			parserVersion = header.readInt();
+			nrOfTools = header.readInt();
+			List<String> names = new ArrayList<String>();
+			labels = new String[nrOfTools][];
+			for(int tool = 0; tool < nrOfTools; tool++)
+			{
+				String name = header.readUTF();
+				names.add(name);
+				toolNumbers.put(name, tool);
+				labels[tool] = new String[header.readInt() + 1];
+				for(int code = 1; code < labels[tool].length; code++)
+				{
+					labels[tool][code] = header.readUTF();
+				}
+			}
+			toolNames = Collections.unmodifiableList(names);
+
+			int nrOfChroms = header.readInt();
+			for(int chrom = 0; chrom < nrOfChroms; chrom++)
+			{
+				int code = Chromosomes.code(header.readUTF());
+				if(code >= chromsByCode.length)
+				{
+					int oldLength = chromsByCode.length;
+					chromsByCode = Arrays.copyOf(chromsByCode, code + 1);
+					Arrays.fill(chromsByCode, oldLength, chromsByCode.length, -1);
+				}
+				chromsByCode[code] = chrom;
+			}
+			nrOfVariants = header.readInt();
+
+			long dataStart = file.getFilePointer();
+			long dataLength = file.length() - dataStart;
+			if(dataLength > Integer.MAX_VALUE)
+			{
+				throw new IOException("prediction index too large to map: " + dataLength + " bytes");
+			}
+			data = file.getChannel().map(FileChannel.MapMode.READ_ONLY, dataStart, dataLength);
+			chromPosStart = 0;
+			allelesStart = chromPosStart + 8 * nrOfVariants;
+			offsetsStart = allelesStart + 8 * nrOfVariants;
+			codesStart = offsetsStart + 4 * nrOfVariants;
+			allelesSectionStart = codesStart + nrOfTools * nrOfVariants;
+			if(allelesSectionStart > dataLength)
+			{
+				throw new IOException("prediction index is truncated: " + indexFile.getAbsolutePath());
+			}
+		}
+		finally
+		{
+			//the mapping stays valid after closing
+			file.close();
+		}
+	}
+
+	@Override
+	public List<String> getToolNames()
+	{
+		return toolNames;
+	}
+
+	@Override
+	public int getTool(String toolName)
+	{
+		Integer tool = toolNumbers.get(toolName);
+		return tool == null ? -1 : tool;
+	}
+
+	@Override
+	public String getLabel(int tool, int code)
+	{
+		return labels[tool][code];
+	}
+
+	@Override
+	public int getNrOfVariants()
+	{
+		return nrOfVariants;
+	}
+
+	@Override
+	public int getCode(int tool, String chrom, long pos, String ref, String alt)
+	{
+		int code = Chromosomes.findCode(chrom);
+		if(code == -1 || code >= chromsByCode.length || chromsByCode[code] == -1)
+		{
+			return NO_PREDICTION;
+		}
+		long chromPos = VariantKey.packChromPos(chromsByCode[code], pos);
+		long alleles = VariantKey.packInlineAlleles(ref, alt);
+		boolean inline = alleles != -1;
+		if(!inline)
+		{
+			alleles = hashAlleles(ref, alt);
+		}
+
+		//first variant not before the key
+		int low = 0;
+		int high = nrOfVariants;
+		while(low < high)
+		{
+			int middle = (low + high) >>> 1;
+			if(compare(data.getLong(chromPosStart + 8 * middle), data.getLong(allelesStart + 8 * middle), chromPos, alleles) < 0)
+			{
+				low = middle + 1;
+			}
+			else
+			{
+				high = middle;
+			}
+		}
+
+		//only hashed alleles can have more than one variant with the same key
+		for(int i = low; i < nrOfVariants && data.getLong(chromPosStart + 8 * i) == chromPos && data.getLong(allelesStart + 8 * i) == alleles; i++)
+		{
+			if(inline || allelesEqual(data.getInt(offsetsStart + 4 * i), ref, alt))
+			{
+				return data.get(codesStart + i * nrOfTools + tool) & 0xFF;
+			}
+		}
+		return NO_PREDICTION;
+	}
+
+	private boolean allelesEqual(int offset, String ref, String alt)
+	{
+		int position = allelesSectionStart + offset;
+		position = stringEqual(position, ref);
+		return position != -1 && stringEqual(position, alt) != -1;
+	}
+
+	/**
+	 * @return the position after the string in the allele section, or -1 if it is not equal to the given one
+	 */
+	private int stringEqual(int position, String string)
+	{
+		int length = data.getShort(position) & 0xFFFF;
+		if(length != string.length())
+		{
+			return -1;
+		}
+		position += 2;
+		for(int i = 0; i < length; i++)
+		{
+			if((data.get(position + i) & 0xFF) != string.charAt(i))
+			{
+				return -1;
+			}
+		}
+		return position + length;
+	}
+
+	private static int compare(long chromPos1, long alleles1, long chromPos2, long alleles2)
+	{
+		int compare = Long.compare(chromPos1, chromPos2);
+		return compare != 0 ? compare : Long.compare(alleles1, alleles2);
+	}
+
+	/**
+	 * FNV-1a over ref, tab, alt, with the highest bit set, which packed alleles never have
+	 */
+	static long hashAlleles(String ref, String alt)
+	{
+		long hash = 0xcbf29ce484222325L;
+		for(int i = 0; i < ref.length(); i++)
+		{
+			hash = (hash ^ ref.charAt(i)) * 0x100000001b3L;
+		}
+		hash = (hash ^ '\t') * 0x100000001b3L;
+		for(int i = 0; i < alt.length(); i++)
+		{
+			hash = (hash ^ alt.charAt(i)) * 0x100000001b3L;
+		}
+		return Long.MIN_VALUE | (hash >>> 1);
+	}
+
+	/**
+	 * Collects the predictions of a tool output file in memory and writes them as an index.
+	 *
+	 * Variants are keyed as VariantKey does, except that alleles that do not fit in a long are numbered in a table of
+	 * this builder instead of the shared allele table of VariantKey, so building an index leaves nothing behind.
+	 */
+	public static class Builder
+	{
+		private static final long LOCAL_TABLE_FLAG = Long.MIN_VALUE;
+
+		private List<String> toolNames;
+		private List<List<String>> labels = new ArrayList<List<String>>();
+		private List<HashMap<String, Integer>> labelCodes = new ArrayList<HashMap<String, Integer>>();
+		private VariantKeyMap<byte[]> codes = new VariantKeyMap<byte[]>();
+		private HashMap<String, Integer> allelesToNumber = new HashMap<String, Integer>();
+		private List<String[]> numberToAlleles = new ArrayList<String[]>();
+
+		public Builder(List<String> toolNames)
+		{
+			this.toolNames = toolNames;
+			for(int tool = 0; tool < toolNames.size(); tool++)
+			{
+				labels.add(new ArrayList<String>());
+				labelCodes.add(new HashMap<String, Integer>());
+			}
+		}
+
+		/**
+		 * Set the prediction of a tool for a variant, replacing any previous one
+		 * @param label the prediction as written in the file, null for none
+		 */
+		public void put(String chrom, long pos, String ref, String alt, int tool, String label)
+		{
+			if(label == null)
+			{
+				remove(chrom, pos, ref, alt, tool);
+				return;
+			}
+			Integer code = labelCodes.get(tool).get(label);
+			if(code == null)
+			{
+				if(labels.get(tool).size() == MAX_LABELS)
+				{
+					throw new IllegalArgumentException("more than " + MAX_LABELS + " different predictions for " + toolNames.get(tool) + ", e.g. " + label);
+				}
+				labels.get(tool).add(label);
+				code = labels.get(tool).size();
+				labelCodes.get(tool).put(label, code);
+			}
+			VariantKey key = key(chrom, pos, ref, alt, true);
+			byte[] variantCodes = codes.get(key);
+			if(variantCodes == null)
+			{
+				variantCodes = new byte[toolNames.size()];
+				codes.put(key, variantCodes);
+			}
+			variantCodes[tool] = (byte) code.intValue();
+		}
+
+		/**
+		 * @return the prediction of a tool for a variant so far, or null
+		 */
+		public String get(String chrom, long pos, String ref, String alt, int tool)
+		{
+			VariantKey key = key(chrom, pos, ref, alt, false);
+			byte[] variantCodes = key == null ? null : codes.get(key);
+			if(variantCodes == null || variantCodes[tool] == NO_PREDICTION)
+			{
+				return null;
+			}
+			return labels.get(tool).get((variantCodes[tool] & 0xFF) - 1);
+		}
+
+		public void remove(String chrom, long pos, String ref, String alt, int tool)
+		{
+			VariantKey key = key(chrom, pos, ref, alt, false);
+			byte[] variantCodes = key == null ? null : codes.get(key);
+			if(variantCodes != null)
+			{
+				variantCodes[tool] = NO_PREDICTION;
+			}
+		}
+
+		/**
+		 * @param add number new alleles in the table of this builder, else return null for them
+		 */
+		private VariantKey key(String chrom, long pos, String ref, String alt, boolean add)
+		{
+			long chromPos = VariantKey.packChromPos(Chromosomes.code(chrom), pos);
+			long alleles = VariantKey.packInlineAlleles(ref, alt);
+			if(alleles != -1)
+			{
+				return VariantKey.of(chromPos, alleles);
+			}
+			String refAlt = ref + "\t" + alt;
+			Integer number = allelesToNumber.get(refAlt);
+			if(number == null)
+			{
+				if(!add)
+				{
+					return null;
+				}
+				number = numberToAlleles.size();
+				numberToAlleles.add(new String[] { ref, alt });
+				allelesToNumber.put(refAlt, number);
+			}
+			return VariantKey.of(chromPos, LOCAL_TABLE_FLAG | number);
+		}
+
+		/**
+		 * Ref and alt of a key of this builder, which must not be unpacked by VariantKey when in the table of this builder
+		 */
+		private String[] refAlt(VariantKey key)
+		{
+			if((key.getAlleles() & LOCAL_TABLE_FLAG) != 0)
+			{
+				return numberToAlleles.get((int) key.getAlleles());
+			}
+			return new String[] { key.getRef(), key.getAlt() };
+		}
+
+		/**
+		 * @param sourceLength size of the source file, as it was when parsed
+		 * @param sourceLastModified modification time of the source file, as it was when parsed
+		 * @param parserVersion version of the parser that read it
+		 */
+		void write(File indexFile, long sourceLength, long sourceLastModified, int parserVersion) throws IOException
+		{
+			//variants with a prediction of any tool, numbered by file chromosome
+			List<VariantKey> keys = new ArrayList<VariantKey>();
+			List<String> chroms = new ArrayList<String>();
+			for(VariantKey key : codes.keys())
+			{
+				if(hasPrediction(codes.get(key)))
+				{
+					keys.add(key);
+					if(!chroms.contains(key.getChromName()))
+					{
+						chroms.add(key.getChromName());
+					}
+				}
+			}
+			Collections.sort(chroms, Chromosomes.ORDER);
+			HashMap<String, Integer> chromNumbers = new HashMap<String, Integer>();
+			for(String chrom : chroms)
+			{
+				chromNumbers.put(chrom, chromNumbers.size());
+			}
+
+			final int n = keys.size();
+			final long[] chromPos = new long[n];
+			final long[] alleles = new long[n];
+			final String[][] refAlts = new String[n][];
+			for(int i = 0; i < n; i++)
+			{
+				VariantKey key = keys.get(i);
+				refAlts[i] = refAlt(key);
+				chromPos[i] = VariantKey.packChromPos(chromNumbers.get(key.getChromName()), key.getPos());
+				long packed = VariantKey.packInlineAlleles(refAlts[i][0], refAlts[i][1]);
+				alleles[i] = packed != -1 ? packed : hashAlleles(refAlts[i][0], refAlts[i][1]);
+			}
+			Integer[] order = new Integer[n];
+			for(int i = 0; i < n; i++)
+			{
+				order[i] = i;
+			}
+			Arrays.sort(order, (a, b) -> compare(chromPos[a], alleles[a], chromPos[b], alleles[b]));
+
+			ByteArrayOutputStream headerBytes = new ByteArrayOutputStream();
+			DataOutputStream header = new DataOutputStream(headerBytes);
+			header.writeLong(sourceLength);
+			header.writeLong(sourceLastModified);
+			header.writeInt(parserVersion);
+			header.writeInt(toolNames.size());
+			for(int tool = 0; tool < toolNames.size(); tool++)
+			{
+				header.writeUTF(toolNames.get(tool));
+				header.writeInt(labels.get(tool).size());
+				for(String label : labels.get(tool))
+				{
+					header.writeUTF(label);
+				}
+			}
+			header.writeInt(chroms.size());
+			for(String chrom : chroms)
+			{
+				header.writeUTF(chrom);
+			}
+			header.writeInt(n);
+			header.close();
+
+			DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(indexFile), 1 << 16));
+			try
+			{
+				out.write(MAGIC);
+				out.writeInt(VERSION);
+				out.writeInt(headerBytes.size());
+				headerBytes.writeTo(out);
+				for(int i : order)
+				{
+					out.writeLong(chromPos[i]);
+				}
+				for(int i : order)
+				{
+					out.writeLong(alleles[i]);
+				}
+				int offset = 0;
+				for(int i : order)
+				{
+					if(alleles[i] < 0)
+					{
+						out.writeInt(offset);
+						offset += 4 + refAlts[i][0].length() + refAlts[i][1].length();
+					}
+					else
+					{
+						out.writeInt(-1);
+					}
+				}
+				for(int i : order)
+				{
+					out.write(codes.get(keys.get(i)));
+				}
+				for(int i : order)
+				{
+					if(alleles[i] < 0)
+					{
+						writeAllele(out, refAlts[i][0]);
+						writeAllele(out, refAlts[i][1]);
+					}
+				}
+			}
+			finally
+			{
+				out.close();
+			}
+		}
+
+		private static boolean hasPrediction(byte[] variantCodes)
+		{
+			for(byte code : variantCodes)
+			{
+				if(code != NO_PREDICTION)
+				{
+					return true;
+				}
+			}
+			return false;
+		}
+
+		private static void writeAllele(DataOutputStream out, String allele) throws IOException
+		{
+			if(allele.length() > 0xFFFF)
+			{
+				throw new IOException("allele too long for a prediction index: " + allele.length() + " bases");
+			}
+			out.writeShort(allele.length());
+			out.write(allele.getBytes(StandardCharsets.US_ASCII));
+		}
+	}
+}
@@ -0,0 +1,57 @@
+package org.molgenis.calibratecadd.support;
+
+import java.util.List;
+
+/**
+ * Predictions of one or more external tools (PON-P2, PROVEAN, SIFT, PolyPhen2, Condel, MutationTaster2, PredictSNP2 and
+ * the tools it combines) for chrom/pos/ref/alt variants, as found in the files those tools produced.
+ *
+ * Every tool has its own small set of predictions (e.g. 'Neutral', 'Deleterious'), numbered 1 and up, so a lookup
+ * only gives a number and the prediction text is shared.
+ */
+public interface PredictionSource
+{
+	/**
+	 * Code for a variant that has no prediction of a tool
+	 */
+	int NO_PREDICTION = 0;
+
+	/**
+	 * @return the tools, in the order of their tool numbers
+	 */
+	List<String> getToolNames();
+
+	/**
+	 * @param toolName
+	 * @return the tool number, or -1 if this source has no predictions of that tool
+	 */
+	int getTool(String toolName);
+
+	/**
+	 * @param tool tool number
+	 * @return the code of the prediction of the tool, or NO_PREDICTION
+	 */
+	int getCode(int tool, String chrom, long pos, String ref, String alt);
+
+	/**
+	 * @param tool tool number
+	 * @param code a code other than NO_PREDICTION
+	 * @return the prediction as written in the source file, e.g. 'probably damaging'
+	 */
+	String getLabel(int tool, int code);
+
+	/**
+	 * @return the number of variants with a prediction of at least one tool
+	 */
+	int getNrOfVariants();
+
+	/**
+	 * @param tool tool number
+	 * @return the prediction as written in the source file, or null if there is none
+	 */
+	default String getPrediction(int tool, String chrom, long pos, String ref, String alt)
+	{
+		int code = getCode(tool, chrom, pos, ref, alt);
+		return code == NO_PREDICTION ? null : getLabel(tool, code);
+	}
+}
@@ -1,8 +1,7 @@
 package org.molgenis.calibratecadd.support;
 
 import java.io.File;
-import java.io.FileNotFoundException;
-import java.util.HashMap;
+import java.util.Arrays;
 import java.util.Scanner;
 
 import org.molgenis.data.annotation.entity.impl.gavin.Judgment;
@@ -20,11 +19,10 @@ public class ProveanAndSiftResults
 		Tolerated, Damaging, NA
 	}
 
-	//chr,pos,ref,alt to ProveanClassification
-	HashMap<String, ProveanClassification> proveanFile;
-	
-	//chr,pos,ref,alt to SiftClassification
-	HashMap<String, SiftClassification> siftFile;
+	//names of the ProveanClassification (tool 0) and SiftClassification (tool 1) per chrom/pos/ref/alt, indexed next to the file
+	PredictionSource proveanAndSiftFile;
+	private static final int PROVEAN = 0;
+	private static final int SIFT = 1;
 	
 	/**
 	 * 
@@ -36,37 +34,52 @@ public class ProveanAndSiftResults
 	 * 2,220285283,C,G	Deleterious	Damaging
 	 * 18,28660261,C,T	Deleterious	Damaging
 	 * 
+	 * Lines of which the input is not chr,pos,ref,alt are skipped and counted. The chromosome is matched with or
+	 * without 'chr' prefix.
 	 */
 	public ProveanAndSiftResults(File proveanAndSiftResults) throws Exception
 	{
-		proveanFile = new HashMap<String, ProveanClassification>();
-		siftFile = new HashMap<String, SiftClassification>();
-		Scanner s = new Scanner(proveanAndSiftResults);
-		s.nextLine(); //skip header
-		while(s.hasNextLine())
-		{
-			String line = s.nextLine();
-			String[] linesplit = line.split("\t", -1);
-			if(!linesplit[1].isEmpty())
+		proveanAndSiftFile = PredictionIndex.open(proveanAndSiftResults, Arrays.asList("PROVEAN", "SIFT"), (file, builder) -> {
+			Scanner s = new Scanner(file);
+			s.nextLine(); //skip header
+			int badLines = 0;
+			while(s.hasNextLine())
 			{
-				ProveanClassification proveanPred = ProveanClassification.valueOf(linesplit[1]);
-				proveanFile.put(linesplit[0], proveanPred);
+				String line = s.nextLine();
+				String[] linesplit = line.split("\t", -1);
+				String[] input = linesplit[0].split(",", -1);
+				long pos = input.length == 4 ? VariantKey.parsePos(input[1]) : -1;
+				if(pos == -1)
+				{
+					badLines++;
+					continue;
+				}
+				if(!linesplit[1].isEmpty())
+				{
+					ProveanClassification proveanPred = ProveanClassification.valueOf(linesplit[1]);
+					builder.put(input[0], pos, input[2], input[3], PROVEAN, proveanPred.name());
+				}
+				if(!linesplit[2].isEmpty())
+				{
+					SiftClassification siftPred = SiftClassification.valueOf(linesplit[2]);
+					builder.put(input[0], pos, input[2], input[3], SIFT, siftPred.name());
+				}
 			}
-			if(!linesplit[2].isEmpty())
+			s.close();
+			if(badLines > 0)
 			{
-				SiftClassification siftPred = SiftClassification.valueOf(linesplit[2]);
-				siftFile.put(linesplit[0], siftPred);
+				System.out.println("WARNING: skipped " + badLines + " lines of " + file.getName() + " without a chr,pos,ref,alt input");
 			}
-		}
-		s.close();
+		});
 	}
 	
 	public Judgment classifyVariantUsingProveanResults(String chr, String pos, String ref, String alt) throws Exception
 	{
 		String key = chr+","+pos+","+ref+","+alt;
-		if(proveanFile.containsKey(key))
+		String prediction = proveanAndSiftFile.getPrediction(PROVEAN, chr, Long.parseLong(pos), ref, alt);
+		if(prediction != null)
 		{
-			ProveanClassification pc = proveanFile.get(key);
+			ProveanClassification pc = ProveanClassification.valueOf(prediction);
 			if(pc.equals(ProveanClassification.Neutral))
 			{
 				return new Judgment(Classification.Benign, Method.calibrated, key, "PROVEAN result 'Neutral'");
@@ -89,9 +102,10 @@ public class ProveanAndSiftResults
 	public Judgment classifyVariantUsingSiftResults(String chr, String pos, String ref, String alt) throws Exception
 	{
 		String key = chr+","+pos+","+ref+","+alt;
-		if(siftFile.containsKey(key))
+		String prediction = proveanAndSiftFile.getPrediction(SIFT, chr, Long.parseLong(pos), ref, alt);
+		if(prediction != null)
 		{
-			SiftClassification pc = siftFile.get(key);
+			SiftClassification pc = SiftClassification.valueOf(prediction);
 			if(pc.equals(SiftClassification.Tolerated))
 			{
 				return new Judgment(Classification.Benign, Method.calibrated, key, "SIFT result 'Tolerated'");
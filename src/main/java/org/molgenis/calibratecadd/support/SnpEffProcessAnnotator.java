@@ -0,0 +1,136 @@
+package org.molgenis.calibratecadd.support;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Runs snpEff as a child process and pipes the VCF through it: the input is written to its stdin by a separate thread
+ * while the annotated lines are read from its stdout, so no intermediate files are needed. snpEff messages go to our stderr.
+ *
+ * Uses the same settings as described in Step3_SnpEff: -noStats -noLog -lof -canon -ud 0
+ */
+public class SnpEffProcessAnnotator implements VcfAnnotator
+{
+	public static final String DEFAULT_GENOME = "hg19";
+	public static final String DEFAULT_MAX_HEAP = "4g";
+
+	private List<String> command;
+	private Process process;
+
+	/**
+	 * @param snpEffJar snpEff.jar, with snpEff.config and the genome data where snpEff expects them
+	 * @param genome e.g. hg19
+	 * @param maxHeap e.g. 4g
+	 */
+	public SnpEffProcessAnnotator(File snpEffJar, String genome, String maxHeap)
+	{
+		String java = System.getProperty("java.home") + File.separator + "bin" + File.separator + "java";
+		this.command = new ArrayList<String>(Arrays.asList(java, "-Xmx" + maxHeap, "-jar", snpEffJar.getAbsolutePath(), genome,
+				"-noStats", "-noLog", "-lof", "-canon", "-ud", "0"));
+	}
+
+	public SnpEffProcessAnnotator(File snpEffJar)
+	{
+		this(snpEffJar, DEFAULT_GENOME, DEFAULT_MAX_HEAP);
+	}
+
+	@Override
+	public void annotate(final File vcfFile, LineHandler handler) throws Exception
+	{
+		System.out.println("annotating " + vcfFile.getName() + " using: " + String.join(" ", command));
+		ProcessBuilder processBuilder = new ProcessBuilder(command);
+		processBuilder.redirectError(ProcessBuilder.Redirect.INHERIT);
+		process = processBuilder.start();
+
+		//feed the input on its own thread, snpEff only writes output when it has read enough input
+		final AtomicReference<Exception> feedError = new AtomicReference<Exception>();
+		final OutputStream toSnpEff = process.getOutputStream();
+		Thread feeder = new Thread(new Runnable()
+		{
+			@Override
+			public void run()
+			{
+				try
+				{
+					InputStream in = new FileInputStream(vcfFile);
+					if(vcfFile.getName().endsWith(".gz"))
+					{
+						in = new GZIPInputStream(in, 1 << 16);
+					}
+					try
+					{
+						byte[] buffer = new byte[1 << 16];
+						int read;
+						while ((read = in.read(buffer)) != -1)
+						{
+							toSnpEff.write(buffer, 0, read);
+						}
+					}
+					finally
+					{
+						in.close();
+						toSnpEff.close();
+					}
+				}
+				catch (IOException e)
+				{
+					feedError.set(e);
+				}
+			}
+		}, "snpeff-input");
+		feeder.setDaemon(true);
+		feeder.start();
+
+		BufferedReader fromSnpEff = new BufferedReader(new InputStreamReader(process.getInputStream(), StandardCharsets.UTF_8), 1 << 16);
+		try
+		{
+			String line;
+			while ((line = fromSnpEff.readLine()) != null)
+			{
+				handler.handle(line);
+			}
+		}
+		catch (Exception e)
+		{
+			process.destroy();
+			throw e;
+		}
+		finally
+		{
+			fromSnpEff.close();
+		}
+
+		int exitCode = process.waitFor();
+		feeder.join();
+		process = null;
+		if(exitCode != 0)
+		{
+			throw new Exception("snpEff failed with exit code " + exitCode + " on " + vcfFile.getAbsolutePath());
+		}
+		if(feedError.get() != null)
+		{
+			throw new Exception("failed to pass " + vcfFile.getAbsolutePath() + " to snpEff", feedError.get());
+		}
+	}
+
+	@Override
+	public void close() throws IOException
+	{
+		if(process != null)
+		{
+			process.destroy();
+			process = null;
+		}
+	}
+}
@@ -0,0 +1,259 @@
+package org.molgenis.calibratecadd.support;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+
+import net.sf.samtools.util.BlockCompressedOutputStream;
+
+/**
+ * Writes VCF lines sorted on chromosome (see Chromosomes.ORDER) and position, whatever order they are added in.
+ * Lines on the same position are sorted on the full line, so the output does not depend on the input order.
+ *
+ * At most maxRecordsInMemory lines are kept in memory. When there are more, sorted runs are written to temporary
+ * files and merged when the writer is closed.
+ *
+ * If the output file name ends with .gz, it is bgzip-compressed and a tabix index (.tbi) is written next to it,
+ * so the file can be region-queried right away.
+ */
+public class SortedVcfWriter implements Closeable
+{
+	public static final int DEFAULT_MAX_RECORDS_IN_MEMORY = 1000000;
+
+	private static class Record
+	{
+		String chrom;
+		long pos;
+		String line;
+
+		Record(String line)
+		{
+			int chromEnd = line.indexOf('\t');
+			int posEnd = chromEnd == -1 ? -1 : line.indexOf('\t', chromEnd + 1);
+			if(posEnd == -1)
+			{
+				throw new IllegalArgumentException("expected at least CHROM, POS and one more column in line: " + line);
+			}
+			this.chrom = line.substring(0, chromEnd);
+			this.pos = Long.parseLong(line.substring(chromEnd + 1, posEnd));
+			this.line = line;
+		}
+
+		int getRefLength()
+		{
+			int refStart = line.indexOf('\t', line.indexOf('\t', line.indexOf('\t') + 1) + 1) + 1;
+			int refEnd = line.indexOf('\t', refStart);
+			return refStart == 0 ? 1 : (refEnd == -1 ? line.length() : refEnd) - refStart;
+		}
+	}
+
+	private static final Comparator<Record> RECORD_ORDER = new Comparator<Record>()
+	{
+		@Override
+		public int compare(Record r1, Record r2)
+		{
+			if(!r1.chrom.equals(r2.chrom))
+			{
+				return Chromosomes.ORDER.compare(r1.chrom, r2.chrom);
+			}
+			if(r1.pos != r2.pos)
+			{
+				return Long.compare(r1.pos, r2.pos);
+			}
+			return r1.line.compareTo(r2.line);
+		}
+	};
+
+	private File outputFile;
+	private int maxRecordsInMemory;
+	private List<String> header = new ArrayList<String>();
+	private List<Record> records = new ArrayList<Record>();
+	private List<File> runs = new ArrayList<File>();
+	private int nrOfRecords = 0;
+
+	public SortedVcfWriter(File outputFile)
+	{
+		this(outputFile, DEFAULT_MAX_RECORDS_IN_MEMORY);
+	}
+
+	public SortedVcfWriter(File outputFile, int maxRecordsInMemory)
+	{
+		if(maxRecordsInMemory < 1)
+		{
+			throw new IllegalArgumentException("maxRecordsInMemory must be at least 1, but was " + maxRecordsInMemory);
+		}
+		this.outputFile = outputFile;
+		this.maxRecordsInMemory = maxRecordsInMemory;
+	}
+
+	/**
+	 * Header lines are written first, in the order they are added
+	 * @param line
+	 */
+	public void addHeader(String line)
+	{
+		header.add(line);
+	}
+
+	/**
+	 * Add a data line, tab-separated and starting with CHROM and POS
+	 * @param line
+	 * @throws IOException
+	 */
+	public void add(String line) throws IOException
+	{
+		records.add(new Record(line));
+		nrOfRecords++;
+		if(records.size() >= maxRecordsInMemory)
+		{
+			writeRun();
+		}
+	}
+
+	public int getNrOfRecords()
+	{
+		return nrOfRecords;
+	}
+
+	private void writeRun() throws IOException
+	{
+		Collections.sort(records, RECORD_ORDER);
+		File run = File.createTempFile("gavin-sort-", ".vcf");
+		run.deleteOnExit();
+		BufferedWriter bw = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(run), StandardCharsets.UTF_8), 1 << 16);
+		try
+		{
+			for (Record record : records)
+			{
+				bw.write(record.line);
+				bw.write('\n');
+			}
+		}
+		finally
+		{
+			bw.close();
+		}
+		runs.add(run);
+		records.clear();
+	}
+
+	/**
+	 * Sort, write the output file and, for .gz output, its tabix index
+	 */
+	@Override
+	public void close() throws IOException
+	{
+		boolean bgzip = outputFile.getName().endsWith(".gz");
+		OutputStream out = bgzip ? new BlockCompressedOutputStream(outputFile) : new BufferedOutputStream(new FileOutputStream(outputFile), 1 << 16);
+		TabixIndexWriter index = bgzip ? new TabixIndexWriter() : null;
+		List<BufferedReader> readers = new ArrayList<BufferedReader>();
+		try
+		{
+			for (String line : header)
+			{
+				out.write((line + "\n").getBytes(StandardCharsets.UTF_8));
+			}
+
+			if(runs.isEmpty())
+			{
+				Collections.sort(records, RECORD_ORDER);
+				for (Record record : records)
+				{
+					write(record, out, index);
+				}
+			}
+			else
+			{
+				if(!records.isEmpty())
+				{
+					writeRun();
+				}
+				merge(readers, out, index);
+			}
+		}
+		finally
+		{
+			out.close();
+			for (BufferedReader reader : readers)
+			{
+				reader.close();
+			}
+			for (File run : runs)
+			{
+				run.delete();
+			}
+			records.clear();
+		}
+
+		if(bgzip)
+		{
+			index.write(new File(outputFile.getPath() + ".tbi"));
+		}
+	}
+
+	/**
+	 * k-way merge of the sorted runs, keeping one line per run in memory
+	 */
+	private void merge(List<BufferedReader> readers, OutputStream out, TabixIndexWriter index) throws IOException
+	{
+		final List<Record> heads = new ArrayList<Record>();
+		PriorityQueue<Integer> queue = new PriorityQueue<Integer>(runs.size(), new Comparator<Integer>()
+		{
+			@Override
+			public int compare(Integer run1, Integer run2)
+			{
+				return RECORD_ORDER.compare(heads.get(run1), heads.get(run2));
+			}
+		});
+		for (int run = 0; run < runs.size(); run++)
+		{
+			BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(runs.get(run)), StandardCharsets.UTF_8), 1 << 16);
+			readers.add(reader);
+			String line = reader.readLine();
+			heads.add(line == null ? null : new Record(line));
+			if(line != null)
+			{
+				queue.add(run);
+			}
+		}
+		while (!queue.isEmpty())
+		{
+			int run = queue.poll();
+			write(heads.get(run), out, index);
+			String line = readers.get(run).readLine();
+			if(line != null)
+			{
+				heads.set(run, new Record(line));
+				queue.add(run);
+			}
+		}
+	}
+
+	private static void write(Record record, OutputStream out, TabixIndexWriter index) throws IOException
+	{
+		byte[] bytes = (record.line + "\n").getBytes(StandardCharsets.UTF_8);
+		if(index == null)
+		{
+			out.write(bytes);
+			return;
+		}
+		BlockCompressedOutputStream bgzf = (BlockCompressedOutputStream) out;
+		long start = bgzf.getFilePointer();
+		bgzf.write(bytes);
+		index.add(record.chrom, record.pos, record.getRefLength(), start, bgzf.getFilePointer());
+	}
+}
@@ -1,51 +1,53 @@
 package org.molgenis.calibratecadd.support;
 
 import java.util.ArrayList;
-import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
 
 import org.apache.commons.math3.stat.descriptive.rank.Percentile;
 import org.apache.commons.math3.stat.descriptive.rank.Percentile.EstimationType;
-import org.molgenis.data.Entity;
 
 public class Step4_Helper
 {
-	private HashMap<String, Integer> variantToNonZeroSnpEffGeneIndex;
-	
+	//when set, variants are matched on their normalised representation
+	private VariantNormaliser normaliser;
+
+	public Step4_Helper()
+	{
+	}
+
 	/**
-	 * Constructor
-	 * @param variantToNonZeroSnpEffGeneIndex
+	 * Match ExAC and ClinVar variants after normalising them, so e.g. an indel that ExAC writes as part of a multi-allelic site
+	 * is still matched to the same indel in ClinVar
+	 * @param normaliser null to match variants as they are
 	 */
-	public Step4_Helper(HashMap<String, Integer> variantToNonZeroSnpEffGeneIndex)
+	public Step4_Helper(VariantNormaliser normaliser)
 	{
-		this.variantToNonZeroSnpEffGeneIndex = variantToNonZeroSnpEffGeneIndex;
+		this.normaliser = normaliser;
 	}
 
 	/**
 	 * If these ExAC and ClinVar variants have a matching ALT allele, report the ExAC AF, else return 0
 	 * @param clinvarVariant
-	 * @param exacVariant
+	 * @param exacVariants ExAC sites, i.e. not split into alleles
 	 * @return
 	 * @throws Exception
 	 */
-	public String getExACMAFforUnprocessedClinvarVariant(Entity clinvarVariant, List<Entity> exacVariants) throws Exception
+	public String getExACMAFforUnprocessedClinvarVariant(AlleleRecord clinvarVariant, List<ExACSite> exacVariants) throws Exception
 	{
-		for(Entity exacVar : exacVariants)
+		for(ExACSite exacVar : exacVariants)
 		{
-			if (exacVar.getString("#CHROM").equals(clinvarVariant.getString("#CHROM"))
-					&& exacVar.getString("POS").equals(clinvarVariant.getString("POS"))
-					&& exacVar.getString("REF").equals(clinvarVariant.getString("REF"))
+			if (Chromosomes.findCode(exacVar.chrom) == clinvarVariant.chrom
+					&& exacVar.pos == clinvarVariant.pos
+					&& exacVar.ref.equals(clinvarVariant.ref)
 					)
 			{
-				String clinvarAlt = clinvarVariant.getString("ALT");
-				String[] altSplit = exacVar.getString("ALT").split(",", -1);
-				for(int altIndex = 0; altIndex < altSplit.length; altIndex++)
+				for(int altIndex = 0; altIndex < exacVar.alts.length; altIndex++)
 				{
-					if(clinvarAlt.equals(altSplit[altIndex]))
+					if(clinvarVariant.alt.equals(exacVar.alts[altIndex]))
 					{
-						return exacVar.getString("AF").split(",", -1)[altIndex];
+						return exacVar.afs[altIndex];
 					}
 				}
 			}
@@ -54,81 +56,108 @@ public class Step4_Helper
 	}
 	
 	/**
-	 * Take 2 lists and return 4: exac-only, clinvar-only, exac-inboth, clinvar-inboth.
+	 * Split ExAC sites into one compact record per alt allele, with that allele's AF.
+	 * The alleles of a site share one view on its parsed CSQ, so narrowing it does not affect other genes using the same site.
 	 * @param exacMultiAllelic
-	 * @param clinvar
 	 * @return
 	 * @throws Exception
 	 */
-	public VariantIntersectResult intersectVariants(List<Entity> exacMultiAllelic, List<Entity> clinvar) throws Exception
+	public List<AlleleRecord> splitExACAlleles(List<ExACSite> exacMultiAllelic) throws Exception
 	{
-		List<EntityPlus> inExAConly = new ArrayList<EntityPlus>();
-		List<EntityPlus> inClinVarOnly = new ArrayList<EntityPlus>();
-		List<EntityPlus> inBoth_exac = new ArrayList<EntityPlus>();
-		List<EntityPlus> inBoth_clinvar = new ArrayList<EntityPlus>();
-		
-		//preprocess: expand multiallelic ExaC variants into seperate variants, for 'easy of looping'
-		//update the alt allele and AF. This only goes for ExAC variants because they can be multi-allelic, whereas ClinVar variants are not.
-		//example of where this goes wrong if we don't do this: 6:32007887 . Here, there is an ExAC variant G -> T,A and ClinVar G -> C and G -> T.
-		//move ALT and AF fields to keyVal map
-		List<EntityPlus> exac = new ArrayList<EntityPlus>();
-		for (Entity exacVariant : exacMultiAllelic)
+		List<AlleleRecord> exac = new ArrayList<AlleleRecord>();
+		for (ExACSite exacVariant : exacMultiAllelic)
 		{
-			String[] altSplit = exacVariant.getString("ALT").split(",", -1);
+			if(exacVariant.acAdjs == null)
+			{
+				throw new Exception("AC_Adj missing for " + exacVariant.toString());
+			}
+			ParsedCSQ csq = exacVariant.csq == null ? null : exacVariant.csq.newView();
 			Set<String> altsSeenForVariant = new HashSet<String>();
-			for(int altIndex = 0; altIndex < altSplit.length; altIndex++)
+			for(int altIndex = 0; altIndex < exacVariant.alts.length; altIndex++)
 			{
-				String alt = altSplit[altIndex];
-				EntityPlus exacVariantCopy = new EntityPlus(exacVariant);
+				String alt = exacVariant.alts[altIndex];
 				//sanity check
 				if(altsSeenForVariant.contains(alt))
 				{
 					throw new Exception("Same alt seen twice for " + exacVariant.toString());
 				}
 				altsSeenForVariant.add(alt);
-				exacVariantCopy.getKeyVal().put("ALT", alt);
-				exacVariantCopy.getKeyVal().put("AF", Double.parseDouble(exacVariant.getString("AF").split(",", -1)[altIndex]));
-				exac.add(exacVariantCopy);
+				exac.add(new AlleleRecord(exacVariant.chrom, exacVariant.pos, exacVariant.ref, alt, Double.parseDouble(exacVariant.afs[altIndex]), exacVariant.acAdjs[0], csq));
 			}
-			//set original to null so we don't accidentally use it somewhere
-			exacVariant.set("ALT", null);
-			exacVariant.set("AF", null);
 		}
+		return exac;
+	}
+	
+	private VariantKey getKey(AlleleRecord variant)
+	{
+		return normaliser == null ? variant.getKey() : normaliser.normalise(variant.chrom, variant.pos, variant.ref, variant.alt);
+	}
+	
+	/**
+	 * Take 2 lists and return 4: exac-only, clinvar-only, exac-inboth, clinvar-inboth.
+	 * Uses a hash join on chrom/pos/ref/alt, so this is linear in the number of ExAC alleles plus ClinVar variants.
+	 * @param exacMultiAllelic
+	 * @param clinvar
+	 * @return
+	 * @throws Exception
+	 */
+	public VariantIntersectResult intersectVariants(List<ExACSite> exacMultiAllelic, List<AlleleRecord> clinvar) throws Exception
+	{
+		List<AlleleRecord> inExAConly = new ArrayList<AlleleRecord>();
+		List<AlleleRecord> inClinVarOnly = new ArrayList<AlleleRecord>();
+		List<AlleleRecord> inBoth_exac = new ArrayList<AlleleRecord>();
+		List<AlleleRecord> inBoth_clinvar = new ArrayList<AlleleRecord>();
+		
+		//preprocess: expand multiallelic ExaC variants into seperate variants, for 'easy of looping'
+		//update the alt allele and AF. This only goes for ExAC variants because they can be multi-allelic, whereas ClinVar variants are not.
+		//example of where this goes wrong if we don't do this: 6:32007887 . Here, there is an ExAC variant G -> T,A and ClinVar G -> C and G -> T.
+		List<AlleleRecord> exac = splitExACAlleles(exacMultiAllelic);
 		
-		for (EntityPlus exacVariant : exac)
+		//hash join instead of comparing every ExAC allele to every ClinVar variant
+		//ClinVar variants are indexed on chrom/pos/ref/alt, keeping their original order for duplicates
+		VariantKeyMap<List<Integer>> clinvarIndex = new VariantKeyMap<List<Integer>>(clinvar.size());
+		for (int i = 0; i < clinvar.size(); i++)
 		{
-			boolean exacVariantInClinVar = false;
-			for (Entity clinvarVariant : clinvar)
+			VariantKey key = getKey(clinvar.get(i));
+			List<Integer> indices = clinvarIndex.get(key);
+			if(indices == null)
 			{
-				// TODO
-				// for now, we accept that we might miss *some* variants due to 2 reasons:
-				// 1) offset positions due to complex indels
-				// 2) alternative notation of indels, e.g.: consider this variant: 1 6529182 . TTCCTCC TTCC
-				// you will find that it is seen in ExAC: 1 6529182 . TTCCTCCTCC TTCCTCC,TTCC,T,TTCCTCCTCCTCC,TTCCTCCTCCTCCTCC,TTCCTCCTCCTCCTCCTCCTCC
-				// but there denoted as "TTCCTCCTCC/TTCCTCC"...
-				if (exacVariant.getE().getString("#CHROM").equals(clinvarVariant.getString("#CHROM"))
-						&& exacVariant.getE().getString("POS").equals(clinvarVariant.getString("POS"))
-						&& exacVariant.getE().getString("REF").equals(clinvarVariant.getString("REF"))
-						&& exacVariant.getKeyVal().get("ALT").toString().equals(clinvarVariant.getString("ALT")))
-				{
-					inBoth_exac.add(exacVariant);
-					inBoth_clinvar.add(new EntityPlus(clinvarVariant));
-					exacVariantInClinVar = true;
-				}
+				indices = new ArrayList<Integer>(1);
+				clinvarIndex.put(key, indices);
 			}
-			if(!exacVariantInClinVar)
+			indices.add(i);
+		}
+		boolean[] clinvarVariantInExAC = new boolean[clinvar.size()];
+		
+		for (AlleleRecord exacVariant : exac)
+		{
+			// TODO
+			// without a normaliser, we accept that we might miss *some* variants due to 2 reasons:
+			// 1) offset positions due to complex indels
+			// 2) alternative notation of indels, e.g.: consider this variant: 1 6529182 . TTCCTCC TTCC
+			// you will find that it is seen in ExAC: 1 6529182 . TTCCTCCTCC TTCCTCC,TTCC,T,TTCCTCCTCCTCC,TTCCTCCTCCTCCTCC,TTCCTCCTCCTCCTCCTCCTCC
+			// but there denoted as "TTCCTCCTCC/TTCCTCC"...
+			List<Integer> matchingClinvarIndices = clinvarIndex.get(getKey(exacVariant));
+			if(matchingClinvarIndices == null)
 			{
 				inExAConly.add(exacVariant);
+				continue;
+			}
+			for (int i : matchingClinvarIndices)
+			{
+				inBoth_exac.add(exacVariant);
+				inBoth_clinvar.add(clinvar.get(i));
+				clinvarVariantInExAC[i] = true;
 			}
 		}
 		
 		// now have have the list of variants that are shared
 		// do a pass of clinvar variants and find out which are not shared
-		for (Entity clinVarVariant : clinvar)
+		for (int i = 0; i < clinvar.size(); i++)
 		{
-			if(!EntityPlus.contains(inBoth_clinvar, clinVarVariant))
+			if(!clinvarVariantInExAC[i])
 			{
-				inClinVarOnly.add(new EntityPlus(clinVarVariant));
+				inClinVarOnly.add(clinvar.get(i));
 			}
 		}
 				
@@ -151,7 +180,7 @@ public class Step4_Helper
 	 * @param nrOfClinVarOnly
 	 * @return
 	 */
-	public double calculatePathogenicMAF(List<EntityPlus> exacVariants, int nrOfClinVarOnly)
+	public double calculatePathogenicMAF(List<AlleleRecord> exacVariants, int nrOfClinVarOnly)
 	{
 		if(exacVariants.size() == 0)
 		{
@@ -160,7 +189,7 @@ public class Step4_Helper
 		double[] mafs = new double[exacVariants.size() + nrOfClinVarOnly];
 		for(int i = 0; i < exacVariants.size(); i++)
 		{
-			mafs[i] = (double) exacVariants.get(i).getKeyVal().get("AF");
+			mafs[i] = exacVariants.get(i).af;
 		}
 		for(int i = exacVariants.size(); i < exacVariants.size() + nrOfClinVarOnly; i++)
 		{
@@ -180,73 +209,47 @@ public class Step4_Helper
 	 * @return
 	 * @throws Exception
 	 */
-	public List<EntityPlus> filterExACvariantsByMAF(List<EntityPlus> inExACOnly, double MAFthreshold) throws Exception
+	public List<AlleleRecord> filterExACvariantsByMAF(List<AlleleRecord> inExACOnly, double MAFthreshold) throws Exception
 	{
-		List<EntityPlus> res = new ArrayList<EntityPlus>();
+		List<AlleleRecord> res = new ArrayList<AlleleRecord>();
 		
-		filterVariants:
-		for(EntityPlus exacVariantPlus : inExACOnly)
+		for(AlleleRecord exacVariant : inExACOnly)
 		{
-	
-			String[] altSplit = exacVariantPlus.getKeyVal().get("ALT").toString().split(",", -1);
-			for(int altIndex = 0; altIndex < altSplit.length; altIndex++)
+			//we consider each alt allele as a possible 'keep' or 'ditch'
+			boolean keep = false;
+			
+			//the clinvar variants were all 'singletons', so we only select singletons from exac
+			if(MAFthreshold == 0.0 && exacVariant.acAdj == 1)
+			{
+				keep = true;
+			}
+			//else it must be under/equal to MAF threshold
+			else if(exacVariant.af <= MAFthreshold)
 			{
-				String alt = altSplit[altIndex];
-				//System.out.println("AF field: " + exacVariantPlus.getE().getString("AF"));
+				keep = true;
+			}
 			
-				double maf = Double.parseDouble(exacVariantPlus.getKeyVal().get("AF").toString().split(",",-1)[altIndex]);				
-				int AC_Adj = Integer.parseInt(exacVariantPlus.getE().getString("AC_Adj").split(",",-1)[altIndex]);
-		
-				//we consider each alt allele as a possible 'keep' or 'ditch'
-				//though we only keep 1 alt allele if that one is a match
-				boolean keep = false;
-				
-				//the clinvar variants were all 'singletons', so we only select singletons from exac
-				if(MAFthreshold == 0.0 && AC_Adj == 1)
-				{
-					keep = true;
-				}
-				//else it must be under/equal to MAF threshold
-				else if(maf <= MAFthreshold)
-				{
-					keep = true;
-				}
-				
-				//if keep: we have to update this variant to remove any 'ditched' alternative alleles!
-				if(keep)
-				{
-					
-					//update the 'variant annotation' line 'CSQ' to match this alt
-					//includes adding 'impact' for later use
-					boolean success = updateCSQ(exacVariantPlus, alt, maf, AC_Adj);
-					
-					if(success)
-					{
-						res.add(exacVariantPlus);
-
-						//don't consider other alt alleles, just stick with the one we found first and continue
-						continue filterVariants;
-					}
-				}
+			//if keep: narrow the 'variant annotation' CSQ to this alt
+			//includes setting 'impact' for later use
+			if(keep && updateCSQ(exacVariant))
+			{
+				res.add(exacVariant);
 			}
 		}
-//		System.out.println("RETURNING " + res.get(0).getKeyVal().get(VEPimpactCategories.IMPACT).toString());
 		return res;
 	}
 
 	/**
-	 * Helper function to update CSQ (consequence) field to only contain the CSQ for the matching
-	 * alt allele, containing the highest impact effect, and for canonical transcripts only
+	 * Helper function to narrow the CSQ (consequence) of a variant to only the annotation for its
+	 * alt allele on the canonical transcript, and store the highest impact of that annotation for later use.
+	 * The narrowing applies to the whole ExAC record, so also to its other alt alleles.
 	 * @param exacVariant
-	 * @param altAllele
-	 * @param maf
-	 * @param AC_Adj
 	 * @return
 	 * @throws Exception
 	 */
-	private boolean updateCSQ(EntityPlus exacVariant, String altAllele, double maf, int AC_Adj) throws Exception
+	private boolean updateCSQ(AlleleRecord exacVariant) throws Exception
 	{
-		String csq = exacVariant.getE().getString("CSQ");
+		ParsedCSQ csq = exacVariant.csq;
 		
 		//can be null when using +/- 100 bp window! e.g. for 19:36399198
 		if(csq == null)
@@ -254,193 +257,101 @@ public class Step4_Helper
 			return false;
 		}
 
-		boolean found = false;
-		
 		//multiple transcripts, with each multiple alleles
-		for(String csqs : csq.split(",", -1))
+		int entry = csq.findCanonical(exacVariant.alt);
+		if(entry == -1)
 		{
-			String[] csqSplit = csqs.split("\\|", -1);
-			
-//			System.out.println("csqSplit[0]="+csqSplit[0]);
-//			System.out.println("csqSplit[18]="+csqSplit[18]);
-	
-			if(csqSplit[0].equals(altAllele) && csqSplit[18].equals("YES"))
-			{
-				exacVariant.getE().set("CSQ", csqs);
-				exacVariant.getE().set("ALT", altAllele);
-				exacVariant.getE().set("AF", maf);
-				exacVariant.getE().set("AC_Adj", AC_Adj);
-				String impact = getHighestImpact(csqSplit[4]);
-				exacVariant.getKeyVal().put(VEPimpactCategories.IMPACT, impact);
-				found = true;
-				break;
-			}
-		}
-		
-		if(!found)
-		{
-	//		System.out.println("could not return CSQ, no alt allele match for '"+altAllele+"' && 'YES' consensus for " + csq);
+	//		System.out.println("could not return CSQ, no alt allele match for '"+exacVariant.alt+"' && 'YES' consensus");
 			return false;
 		}
-		else
-		{
-			return true;
-		}
 		
+		csq.narrowTo(entry);
+		exacVariant.impact = (byte) csq.getImpactRank(entry);
+		return true;
 	}
-
+	
 	/**
-	 * Helper function to get the highest impact type for a specific ref-alt combination in ExAC
-	 * e.g. "splice_acceptor_variant&non_coding_transcript_variant" is both HIGH and MODIFIER impact
-	 * we want to consider the HIGH impact in this case
-	 * @param csqConsequences
+	 * Impact ratios of ExAC sites that were not split into alleles, counted over the consequences of all their alleles
+	 * @param sites
 	 * @return
 	 * @throws Exception
 	 */
-	private String getHighestImpact(String csqConsequences) throws Exception
+	public ImpactRatios calculateImpactRatiosFromUnprocessedVariants(List<ExACSite> sites) throws Exception
 	{
-		int highestImpactRank = -1;
-		for(String consequence : csqConsequences.split("&", -1))
+		Integer[] impactCounts = new Integer[]{ 0, 0, 0, 0};
+		for(ExACSite site : sites)
 		{
-			String impact = VEPimpactCategories.getImpact(consequence);
-			int impactRank = VEPimpactCategories.getImpactRank(impact);
-			if(impactRank > highestImpactRank)
+			if(site.csq != null)
 			{
-				highestImpactRank = impactRank;
+				countImpactsInCSQWithFallback(site.csq, impactCounts);
 			}
 		}
-		if(highestImpactRank == -1)
-		{
-			throw new Exception("no impact match on " + csqConsequences);
-		}
-		return highestImpactRank == 3 ? "HIGH" : highestImpactRank == 2 ? "MODERATE" : highestImpactRank == 1 ? "LOW" : "MODIFIER";
-	}
-	
-	public ImpactRatios calculateImpactRatiosFromUnprocessedVariants(List<Entity> entities) throws Exception
-	{
-		//liftover entity to entityplus and count
-		List<EntityPlus> clinvarVariants = new ArrayList<EntityPlus>();
-		for(Entity e : entities)
-		{
-			clinvarVariants.add(new EntityPlus(e));
-		}
-		return calculateImpactRatios(clinvarVariants);
+		return toImpactRatios(impactCounts);
 	}
 	
 	/**
-	 * Pass existing counts by reference, and increment one value based on the impact:
+	 * Pass existing counts by reference, and increment one value based on the impact rank:
 	 * counts[0] = "HIGH"
 	 * counts[1] = "MODERATE"
 	 * counts[2] = "LOW"
 	 * counts[3] = "MODIFIER"
 	 * @param counts
-	 * @param impact
+	 * @param impactRank
 	 * @throws Exception
 	 *
 	 */
-	public void countImpacts(Integer[] counts, String impact) throws Exception
+	public void countImpacts(Integer[] counts, int impactRank) throws Exception
 	{
-		if(impact.equals("HIGH"))
+		if(impactRank < 0 || impactRank > 3)
 		{
-			counts[0]++;
-		}
-		else if(impact.equals("MODERATE"))
-		{
-			counts[1]++;
-		}
-		else if(impact.equals("LOW"))
-		{
-			counts[2]++;
-		}
-		else if(impact.equals("MODIFIER"))
-		{
-			counts[3]++;
-		}
-		else
-		{
-			throw new Exception("unrecognized impact: " + impact);
+			throw new Exception("unrecognized impact rank: " + impactRank);
 		}
+		counts[3 - impactRank]++;
 	}
 	
 	/**
 	 * Determine ratio of impacts for a list of variants
-	 * @param entities
+	 * @param variants
 	 * @return
 	 * @throws Exception
 	 */
-	public ImpactRatios calculateImpactRatios(List<EntityPlus> entities) throws Exception
+	public ImpactRatios calculateImpactRatios(List<AlleleRecord> variants) throws Exception
 	{
 		Integer[] impactCounts = new Integer[]{ 0, 0, 0, 0};
 		
-		for(EntityPlus e : entities)
+		for(AlleleRecord variant : variants)
 		{
-			
-			if(e.getE().getString("ANN") != null || e.getKeyVal().get(VEPimpactCategories.IMPACT) != null)
+			//clinvar, or matched exac
+			if(variant.impact != AlleleRecord.IMPACT_UNKNOWN)
 			{
-				String impact = null;
-				//clinvar
-				if(e.getE().getString("ANN") != null)
-				{
-					String[] multiAnn = e.getE().getString("ANN").split(",", -1);
-					
-					if(multiAnn.length > 1)
-					{
-						//special: the ANN field for the gene symbol we mapped is not present on index 0
-						//get it from the list of 'exceptions' we stored earlier
-						String chrPosRefAlt = e.getE().getString("#CHROM") + "_" + e.getE().getString("POS") + "_" + e.getE().getString("REF") + "_" + e.getE().getString("ALT");
-						if(variantToNonZeroSnpEffGeneIndex.containsKey(chrPosRefAlt))
-						{
-							impact = multiAnn[variantToNonZeroSnpEffGeneIndex.get(chrPosRefAlt)].split("\\|", -1)[2];
-						}
-						else
-						{
-							impact = multiAnn[0].split("\\|", -1)[2];
-						}
-					}
-					else
-					{
-						impact =  multiAnn[0].split("\\|", -1)[2];
-					}
-					
-				}
-				//exac
-				else if(e.getKeyVal().get(VEPimpactCategories.IMPACT) != null)
-				{
-					impact = e.getKeyVal().get(VEPimpactCategories.IMPACT).toString();
-				}
-				else
-				{
-					throw new Exception("should not be reached");
-				}
-				
-				countImpacts(impactCounts, impact);
-				
+				countImpacts(impactCounts, variant.impact);
 			}
-			else
+			//we are looking at 'raw' exac data, that does not have a CSQ narrowed to this allele
+			//so lets get impacts right now
+			else if(variant.csq != null)
 			{
-				//we are looking at the 'raw' exac data, that does not have an updated CSQ line per allele
-				//so lets get impacts right now
-			
-				//get consequence field
-				String csq = e.getE().getString("CSQ");
-				
-				if(csq == null)
-				{
-					continue;
-				}
-				
-				//multiple transcripts, with each multiple alleles
-				boolean canonicalTranscriptFound = countImpactsInCSQ(csq, impactCounts, true);
-				
-				//for some genes, there are no annotated canonical transcripts (e.g. 'KIZ')
-				//re-count except now for any transcript
-				if(!canonicalTranscriptFound)
-				{
-					countImpactsInCSQ(csq, impactCounts, false);
-				}
+				countImpactsInCSQWithFallback(variant.csq, impactCounts);
 			}
 		}
 		
+		return toImpactRatios(impactCounts);
+	}
+	
+	private void countImpactsInCSQWithFallback(ParsedCSQ csq, Integer[] impactCounts) throws Exception
+	{
+		//multiple transcripts, with each multiple alleles
+		boolean canonicalTranscriptFound = countImpactsInCSQ(csq, impactCounts, true);
+		
+		//for some genes, there are no annotated canonical transcripts (e.g. 'KIZ')
+		//re-count except now for any transcript
+		if(!canonicalTranscriptFound)
+		{
+			countImpactsInCSQ(csq, impactCounts, false);
+		}
+	}
+	
+	private ImpactRatios toImpactRatios(Integer[] impactCounts) throws Exception
+	{
 		double total = impactCounts[0] + impactCounts[1] + impactCounts[2] + impactCounts[3];
 		double highPerc = impactCounts[0] == 0 ? 0 :((double)impactCounts[0]/total)*100.0;
 		double modrPerc = impactCounts[1] == 0 ? 0 : ((double)impactCounts[1]/total)*100.0;
@@ -455,24 +366,25 @@ public class Step4_Helper
 	}
 	
 	/**
-	 * Count protein impacts from all consequences (comma-separated). If countCanonicalOnly, the 'canonical' field must be 'YES'.
+	 * Count protein impacts from all (visible) consequences. If countCanonicalOnly, the transcript must be canonical.
 	 * @param csq
 	 * @param countCanonicalOnly
 	 * @return
 	 * @throws Exception 
 	 */
-	public boolean countImpactsInCSQ(String csq, Integer[] impactCounts, boolean countCanonicalOnly) throws Exception
+	public boolean countImpactsInCSQ(ParsedCSQ csq, Integer[] impactCounts, boolean countCanonicalOnly) throws Exception
 	{
 		boolean canonicalTranscriptFound = false;
-		for(String csqs : csq.split(",", -1))
+		for(int entry = 0; entry < csq.size(); entry++)
 		{
-			String[] csqSplit = csqs.split("\\|", -1);
-	
-			if((countCanonicalOnly && csqSplit[18].equals("YES")) || !countCanonicalOnly)
+			if(!csq.isVisible(entry))
+			{
+				continue;
+			}
+			if((countCanonicalOnly && csq.isCanonical(entry)) || !countCanonicalOnly)
 			{
 				canonicalTranscriptFound = true;
-				String csqImpact = getHighestImpact(csqSplit[4]);
-				countImpacts(impactCounts, csqImpact);
+				countImpacts(impactCounts, csq.getImpactRank(entry));
 			}
 		}
 		return canonicalTranscriptFound;
@@ -482,24 +394,30 @@ public class Step4_Helper
 	 * TODO: this function has an interesting side effect: when there are (only) HIGH effect variants in clinvar, but only MODERATE (or LOW/MODF) variants in ExAC, the matching fails..
 	 * However, we do learn that apparently a HIGH impact variant is pathogenic, whereas non-HIGH are tolerated to some point. Even though we cannot calibrate CADD, this knowledge is
 	 * just as useful and we should capture and report it :)
+	 * @param report to add the lines about the scaling to, e.g. the report of one gene, which is printed in one go so
+	 * genes processed by multiple threads do not interleave
 	 */
-	public List<EntityPlus> shapeExACvariantsByImpactRatios(List<EntityPlus> exacFilteredByMAF, ImpactRatios ir) throws Exception
+	public List<AlleleRecord> shapeExACvariantsByImpactRatios(List<AlleleRecord> exacFilteredByMAF, ImpactRatios ir, StringBuilder report) throws Exception
 	{
-		List<EntityPlus> highImpactVariants = new ArrayList<EntityPlus>();
-		List<EntityPlus> modrImpactVariants = new ArrayList<EntityPlus>();
-		List<EntityPlus> lowImpactVariants = new ArrayList<EntityPlus>();
-		List<EntityPlus> modfImpactVariants = new ArrayList<EntityPlus>();
+		List<AlleleRecord> highImpactVariants = new ArrayList<AlleleRecord>();
+		List<AlleleRecord> modrImpactVariants = new ArrayList<AlleleRecord>();
+		List<AlleleRecord> lowImpactVariants = new ArrayList<AlleleRecord>();
+		List<AlleleRecord> modfImpactVariants = new ArrayList<AlleleRecord>();
 		
 		//first, just count the impact categories like we do for clinvar
 		int nrOfHigh = 0;
 		int nrOfModerate = 0;
 		int nrOfLow = 0;
 		int nrOfModifier = 0;
-		for(EntityPlus e : exacFilteredByMAF)
+		for(AlleleRecord e : exacFilteredByMAF)
 		{
-	//		System.out.println(e.getKeyVal().toString());
-			String impact = e.getKeyVal().get(VEPimpactCategories.IMPACT).toString();
-			if(impact.equals("HIGH"))
+	//		System.out.println(e.toString());
+			String impact = e.getImpactName();
+			if(e.impact == AlleleRecord.IMPACT_UNKNOWN)
+			{
+				throw new Exception("no impact for " + e);
+			}
+			else if(impact.equals("HIGH"))
 			{
 				highImpactVariants.add(e);
 				nrOfHigh++;
@@ -525,7 +443,7 @@ public class Step4_Helper
 			}
 		}
 		
-		System.out.println("counting exac impacts: high="+nrOfHigh+", modr="+nrOfModerate+", low="+nrOfLow + ", modf="+nrOfModifier);
+		report.append("counting exac impacts: high="+nrOfHigh+", modr="+nrOfModerate+", low="+nrOfLow + ", modf="+nrOfModifier).append('\n');
 		
 		//tackle:
 		//we have impact ratios, e.g.: [high=40, moderate=53, low=7, modifier=0]
@@ -574,10 +492,10 @@ public class Step4_Helper
 			modfScaleLowDiff = (int)Math.round(nrOfLow-(nrOfModifier*(ir.low/ir.modifier)));
 		}
 		
-		System.out.println("scaling subtractions for HIGH: moderate=" + highScaleModrDiff + ", low=" + highScaleLowDiff + ", modifier=" + highScaleModfDiff);
-		System.out.println("scaling subtractions for MODERATE: high=" + modrScaleHighDiff + ", low=" + modrScaleLowDiff + ", modifier=" + modrScaleModfDiff);
-		System.out.println("scaling subtractions for LOW: high=" + lowScaleHighDiff + ", moderate=" + lowScaleModrDiff + ", modifier=" + lowScaleModfDiff);
-		System.out.println("scaling subtractions for MODIFIER: high=" + modfScaleHighDiff + ", moderate=" + modfScaleModrDiff + ", low=" + modfScaleLowDiff);
+		report.append("scaling subtractions for HIGH: moderate=" + highScaleModrDiff + ", low=" + highScaleLowDiff + ", modifier=" + highScaleModfDiff).append('\n');
+		report.append("scaling subtractions for MODERATE: high=" + modrScaleHighDiff + ", low=" + modrScaleLowDiff + ", modifier=" + modrScaleModfDiff).append('\n');
+		report.append("scaling subtractions for LOW: high=" + lowScaleHighDiff + ", moderate=" + lowScaleModrDiff + ", modifier=" + lowScaleModfDiff).append('\n');
+		report.append("scaling subtractions for MODIFIER: high=" + modfScaleHighDiff + ", moderate=" + modfScaleModrDiff + ", low=" + modfScaleLowDiff).append('\n');
 		
 		int removeFromHigh = 0, removeFromModerate = 0, removeFromLow = 0, removeFromModifier = 0;
 		
@@ -597,7 +515,7 @@ public class Step4_Helper
 				removeFromModerate = highScaleModrDiff;
 				removeFromLow = highScaleLowDiff;
 				removeFromModifier = highScaleModfDiff;
-				System.out.println("scaling on HIGH is an option, with loss = " + loss);
+				report.append("scaling on HIGH is an option, with loss = " + loss).append('\n');
 			}
 		}
 		
@@ -611,7 +529,7 @@ public class Step4_Helper
 				removeFromModerate = 0;
 				removeFromLow = modrScaleLowDiff;
 				removeFromModifier = modrScaleModfDiff;
-				System.out.println("scaling on MODERATE is a (better) option, with loss = " + loss);
+				report.append("scaling on MODERATE is a (better) option, with loss = " + loss).append('\n');
 			}
 //			System.out.println("we must scale on MODERATE impact using " + modrScaleHighDiff + ", " + modrScaleLowDiff + ", " + modrScaleModfDiff);
 			
@@ -626,7 +544,7 @@ public class Step4_Helper
 				removeFromModerate = lowScaleModrDiff;
 				removeFromLow = 0;
 				removeFromModifier = lowScaleModfDiff;
-				System.out.println("scaling on LOW is a (better) option, with loss = " + loss);
+				report.append("scaling on LOW is a (better) option, with loss = " + loss).append('\n');
 			}
 			
 		}
@@ -640,7 +558,7 @@ public class Step4_Helper
 				removeFromModerate = modfScaleModrDiff;
 				removeFromLow = modfScaleLowDiff;
 				removeFromModifier = 0;
-				System.out.println("scaling on MODIFIER is a (better) option, with loss = " + loss);
+				report.append("scaling on MODIFIER is a (better) option, with loss = " + loss).append('\n');
 			}
 		//	System.out.println("we must scale on MODIFIER impact using " + modfScaleHighDiff + ", " + modfScaleModrDiff + ", " + modfScaleLowDiff);
 			
@@ -651,14 +569,14 @@ public class Step4_Helper
 		}
 		
 		
-		System.out.println("removing from high: " + removeFromHigh + ", moderate: " + removeFromModerate + ", low: " + removeFromLow + ", modf: " + removeFromModifier);
+		report.append("removing from high: " + removeFromHigh + ", moderate: " + removeFromModerate + ", low: " + removeFromLow + ", modf: " + removeFromModifier).append('\n');
 		
-		List<EntityPlus> highScaledDown = scaledownVariantList(highImpactVariants, removeFromHigh);
-		List<EntityPlus> modrScaledDown = scaledownVariantList(modrImpactVariants, removeFromModerate);
-		List<EntityPlus> lowScaledDown = scaledownVariantList(lowImpactVariants, removeFromLow);
-		List<EntityPlus> modfScaledDown = scaledownVariantList(modfImpactVariants, removeFromModifier);
+		List<AlleleRecord> highScaledDown = scaledownVariantList(highImpactVariants, removeFromHigh);
+		List<AlleleRecord> modrScaledDown = scaledownVariantList(modrImpactVariants, removeFromModerate);
+		List<AlleleRecord> lowScaledDown = scaledownVariantList(lowImpactVariants, removeFromLow);
+		List<AlleleRecord> modfScaledDown = scaledownVariantList(modfImpactVariants, removeFromModifier);
 		
-		List<EntityPlus> scaledDownExACvariants = new ArrayList<EntityPlus>();
+		List<AlleleRecord> scaledDownExACvariants = new ArrayList<AlleleRecord>();
 		scaledDownExACvariants.addAll(highScaledDown);
 		scaledDownExACvariants.addAll(modrScaledDown);
 		scaledDownExACvariants.addAll(lowScaledDown);
@@ -668,7 +586,7 @@ public class Step4_Helper
 	}
 	
 	
-	private List<EntityPlus> scaledownVariantList(List<EntityPlus> variants, int amountToRemove) throws Exception
+	private List<AlleleRecord> scaledownVariantList(List<AlleleRecord> variants, int amountToRemove) throws Exception
 	{
 		//remove nothing
 		if(amountToRemove == 0)
@@ -680,13 +598,13 @@ public class Step4_Helper
 		int size = variants.size();
 		if(size-amountToRemove == 0)
 		{
-			return new ArrayList<EntityPlus>();
+			return new ArrayList<AlleleRecord>();
 		}
 
 		//'how often does the final size fit within the list of variants? e.g. want 20 out of 190 variants = 9x
 		//this means we will step through the variant list in steps of 9, to get 'even coverage'
 		int div = Math.floorDiv(size, size-amountToRemove);
-		List<EntityPlus> res = new ArrayList<EntityPlus>();
+		List<AlleleRecord> res = new ArrayList<AlleleRecord>();
 		for(int step = 0; step < size; step += div)
 		{
 			res.add(variants.get(step));
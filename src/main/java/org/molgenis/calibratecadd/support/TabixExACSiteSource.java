@@ -0,0 +1,64 @@
+package org.molgenis.calibratecadd.support;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.molgenis.data.Entity;
+
+/**
+ * ExAC sites from the bgzipped + tabix indexed ExAC VCF, e.g. ExAC.r0.3.sites.vep.vcf.gz
+ */
+public class TabixExACSiteSource implements ExACSiteSource
+{
+	private TabixRegionQueryService tabix;
+
+	/**
+	 * @param exacVcf bgzipped VCF, with the .tbi next to it
+	 * @param poolSize number of readers kept open, typically the number of querying threads
+	 * @throws IOException
+	 */
+	public TabixExACSiteSource(File exacVcf, int poolSize) throws IOException
+	{
+		this.tabix = new TabixRegionQueryService(exacVcf, "exac", poolSize);
+	}
+
+	@Override
+	public List<ExACSite> query(String chrom, long start, long end) throws Exception
+	{
+		List<Entity> records;
+		try
+		{
+			records = tabix.query(chrom, start, end);
+		}
+		catch (java.lang.ArrayIndexOutOfBoundsException e)
+		{
+			// no chrom in tabix or so
+			return new ArrayList<ExACSite>();
+		}
+		return toSites(records);
+	}
+
+	/**
+	 * Convert ExAC VCF entities
+	 * @param records
+	 * @return
+	 * @throws Exception
+	 */
+	public static List<ExACSite> toSites(List<Entity> records) throws Exception
+	{
+		List<ExACSite> sites = new ArrayList<ExACSite>(records.size());
+		for (Entity record : records)
+		{
+			sites.add(ExACSite.fromEntity(record));
+		}
+		return sites;
+	}
+
+	@Override
+	public void close() throws IOException
+	{
+		tabix.close();
+	}
+}
@@ -0,0 +1,217 @@
+package org.molgenis.calibratecadd.support;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.TreeMap;
+
+import net.sf.samtools.util.BlockCompressedOutputStream;
+
+/**
+ * Builds a tabix (.tbi) index for a bgzipped, coordinate-sorted VCF while it is being written, so no separate
+ * 'tabix -p vcf' run is needed. Records are added in file order with their BGZF virtual offsets.
+ *
+ * Follows the index layout of tabix 0.2: per sequence a binning index (UCSC bins, see reg2bin) with chunks of
+ * virtual offsets, and a linear index with the first offset overlapping each 16 kb window.
+ */
+public class TabixIndexWriter
+{
+	private static final int LINEAR_SHIFT = 14;
+	private static final int FORMAT_VCF = 2;
+
+	private static class SequenceIndex
+	{
+		TreeMap<Integer, List<long[]>> bins = new TreeMap<Integer, List<long[]>>();
+		long[] linear = new long[64];
+		int linearSize = 0;
+	}
+
+	private LinkedHashMap<String, SequenceIndex> sequences = new LinkedHashMap<String, SequenceIndex>();
+	private String currentSequence = null;
+	private SequenceIndex current = null;
+	private int previousBeg = -1;
+
+	/**
+	 * Add a record that was written between two virtual offsets
+	 * @param chrom
+	 * @param pos 1-based VCF position
+	 * @param refLength length of the REF allele, which determines the end of the record
+	 * @param startOffset virtual offset of the first byte of the line
+	 * @param endOffset virtual offset after the line
+	 */
+	public void add(String chrom, long pos, int refLength, long startOffset, long endOffset)
+	{
+		if(!chrom.equals(currentSequence))
+		{
+			if(sequences.containsKey(chrom))
+			{
+				throw new IllegalArgumentException("records not sorted, sequence " + chrom + " seen again after " + currentSequence);
+			}
+			current = new SequenceIndex();
+			sequences.put(chrom, current);
+			currentSequence = chrom;
+			previousBeg = -1;
+		}
+		int beg = (int) (pos - 1);
+		int end = beg + Math.max(refLength, 1);
+		if(beg < previousBeg)
+		{
+			throw new IllegalArgumentException("records not sorted, " + chrom + ":" + pos + " after " + (previousBeg + 1));
+		}
+		previousBeg = beg;
+
+		//binning index: extend the last chunk of this bin when the record directly follows it
+		int bin = reg2bin(beg, end);
+		List<long[]> chunks = current.bins.get(bin);
+		if(chunks == null)
+		{
+			chunks = new ArrayList<long[]>();
+			current.bins.put(bin, chunks);
+		}
+		long[] lastChunk = chunks.isEmpty() ? null : chunks.get(chunks.size() - 1);
+		if(lastChunk != null && lastChunk[1] == startOffset)
+		{
+			lastChunk[1] = endOffset;
+		}
+		else
+		{
+			chunks.add(new long[] { startOffset, endOffset });
+		}
+
+		//linear index: first record overlapping each 16 kb window
+		int firstWindow = beg >> LINEAR_SHIFT;
+		int lastWindow = (end - 1) >> LINEAR_SHIFT;
+		if(lastWindow >= current.linear.length)
+		{
+			current.linear = Arrays.copyOf(current.linear, Math.max(lastWindow + 1, current.linear.length * 2));
+		}
+		for (int w = firstWindow; w <= lastWindow; w++)
+		{
+			if(current.linear[w] == 0)
+			{
+				current.linear[w] = startOffset;
+			}
+		}
+		current.linearSize = Math.max(current.linearSize, lastWindow + 1);
+	}
+
+	/**
+	 * UCSC binning scheme, as in the SAM and tabix specifications
+	 * @param beg 0-based start
+	 * @param end 0-based exclusive end
+	 * @return
+	 */
+	static int reg2bin(int beg, int end)
+	{
+		--end;
+		if(beg >> 14 == end >> 14)
+		{
+			return ((1 << 15) - 1) / 7 + (beg >> 14);
+		}
+		if(beg >> 17 == end >> 17)
+		{
+			return ((1 << 12) - 1) / 7 + (beg >> 17);
+		}
+		if(beg >> 20 == end >> 20)
+		{
+			return ((1 << 9) - 1) / 7 + (beg >> 20);
+		}
+		if(beg >> 23 == end >> 23)
+		{
+			return ((1 << 6) - 1) / 7 + (beg >> 23);
+		}
+		if(beg >> 26 == end >> 26)
+		{
+			return ((1 << 3) - 1) / 7 + (beg >> 26);
+		}
+		return 0;
+	}
+
+	/**
+	 * Write the index, bgzipped like the data file
+	 * @param tbiFile
+	 * @throws IOException
+	 */
+	public void write(File tbiFile) throws IOException
+	{
+		BlockCompressedOutputStream out = new BlockCompressedOutputStream(tbiFile);
+		try
+		{
+			ByteBuffer buffer = ByteBuffer.allocate(64).order(ByteOrder.LITTLE_ENDIAN);
+
+			out.write("TBI\1".getBytes(StandardCharsets.US_ASCII));
+			writeInt(out, buffer, sequences.size());
+			writeInt(out, buffer, FORMAT_VCF);
+			//sequence, begin and end columns (1-based, end 0 means computed from REF), meta char and lines to skip
+			writeInt(out, buffer, 1);
+			writeInt(out, buffer, 2);
+			writeInt(out, buffer, 0);
+			writeInt(out, buffer, '#');
+			writeInt(out, buffer, 0);
+
+			int namesLength = 0;
+			for (String name : sequences.keySet())
+			{
+				namesLength += name.getBytes(StandardCharsets.US_ASCII).length + 1;
+			}
+			writeInt(out, buffer, namesLength);
+			for (String name : sequences.keySet())
+			{
+				out.write(name.getBytes(StandardCharsets.US_ASCII));
+				out.write(0);
+			}
+
+			for (SequenceIndex sequence : sequences.values())
+			{
+				writeInt(out, buffer, sequence.bins.size());
+				for (Integer bin : sequence.bins.keySet())
+				{
+					List<long[]> chunks = sequence.bins.get(bin);
+					writeInt(out, buffer, bin);
+					writeInt(out, buffer, chunks.size());
+					for (long[] chunk : chunks)
+					{
+						writeLong(out, buffer, chunk[0]);
+						writeLong(out, buffer, chunk[1]);
+					}
+				}
+				//windows without a record of their own point to the last record before them
+				writeInt(out, buffer, sequence.linearSize);
+				long previous = 0;
+				for (int w = 0; w < sequence.linearSize; w++)
+				{
+					if(sequence.linear[w] == 0)
+					{
+						sequence.linear[w] = previous;
+					}
+					previous = sequence.linear[w];
+					writeLong(out, buffer, sequence.linear[w]);
+				}
+			}
+		}
+		finally
+		{
+			out.close();
+		}
+	}
+
+	private static void writeInt(BlockCompressedOutputStream out, ByteBuffer buffer, int value) throws IOException
+	{
+		buffer.clear();
+		buffer.putInt(value);
+		out.write(buffer.array(), 0, 4);
+	}
+
+	private static void writeLong(BlockCompressedOutputStream out, ByteBuffer buffer, long value) throws IOException
+	{
+		buffer.clear();
+		buffer.putLong(value);
+		out.write(buffer.array(), 0, 8);
+	}
+}
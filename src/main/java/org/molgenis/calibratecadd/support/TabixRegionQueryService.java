@@ -0,0 +1,146 @@
+package org.molgenis.calibratecadd.support;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.molgenis.data.Entity;
+import org.molgenis.data.annotator.tabix.TabixVcfRepository;
+
+/**
+ * Region lookups on a bgzipped + tabix indexed VCF, e.g. ExAC.r0.3.sites.vep.vcf.gz or clinvar.vcf.gz
+ *
+ * Opening a TabixVcfRepository means opening the bgzip file and reading the complete .tbi index,
+ * which for ExAC takes longer than most queries. So instead of a new repository per query, we keep
+ * a bounded pool of readers that are opened once and handed out per query. Readers are opened lazily,
+ * so a single-threaded caller only ever opens one.
+ *
+ * Safe to use from multiple threads: each query borrows its own reader from the pool.
+ */
+public class TabixRegionQueryService implements Closeable
+{
+	private File vcfFile;
+	private String entityName;
+	private int poolSize;
+
+	private LinkedBlockingQueue<TabixVcfRepository> idleReaders = new LinkedBlockingQueue<TabixVcfRepository>();
+	private List<TabixVcfRepository> allReaders = new ArrayList<TabixVcfRepository>();
+	private AtomicInteger openedReaders = new AtomicInteger();
+	private volatile boolean closed = false;
+
+	/**
+	 * Constructor
+	 * @param vcfFile bgzipped VCF, with the .tbi next to it
+	 * @param entityName
+	 * @param poolSize maximum number of readers kept open, typically the number of querying threads
+	 * @throws IOException
+	 */
+	public TabixRegionQueryService(File vcfFile, String entityName, int poolSize) throws IOException
+	{
+		if(poolSize < 1)
+		{
+			throw new IllegalArgumentException("pool size must be at least 1, but was " + poolSize);
+		}
+		this.vcfFile = vcfFile;
+		this.entityName = entityName;
+		this.poolSize = poolSize;
+
+		//open the first reader right away, so a bad file or index fails here and not halfway a run
+		openedReaders.incrementAndGet();
+		idleReaders.add(openReader());
+	}
+
+	/**
+	 * Get all records with a POS in the region chrom:start-end, same as TabixVcfRepository.query (see ExACSiteSource)
+	 * @param chrom
+	 * @param start
+	 * @param end
+	 * @return
+	 * @throws IOException
+	 */
+	public List<Entity> query(String chrom, long start, long end) throws IOException
+	{
+		TabixVcfRepository reader = borrowReader();
+		try
+		{
+			return reader.query(chrom, start, end);
+		}
+		finally
+		{
+			idleReaders.add(reader);
+		}
+	}
+
+	private TabixVcfRepository borrowReader() throws IOException
+	{
+		if(closed)
+		{
+			throw new IOException("region query service for " + vcfFile + " is closed");
+		}
+
+		TabixVcfRepository reader = idleReaders.poll();
+		if(reader != null)
+		{
+			return reader;
+		}
+
+		//all readers busy: open another one if the pool allows it, else wait for one to come back
+		if(openedReaders.incrementAndGet() <= poolSize)
+		{
+			try
+			{
+				return openReader();
+			}
+			catch (IOException e)
+			{
+				openedReaders.decrementAndGet();
+				throw e;
+			}
+		}
+		openedReaders.decrementAndGet();
+
+		try
+		{
+			return idleReaders.take();
+		}
+		catch (InterruptedException e)
+		{
+			Thread.currentThread().interrupt();
+			throw new IOException("interrupted while waiting for a reader on " + vcfFile, e);
+		}
+	}
+
+	private TabixVcfRepository openReader() throws IOException
+	{
+		TabixVcfRepository reader = new TabixVcfRepository(vcfFile, entityName);
+		synchronized (allReaders)
+		{
+			allReaders.add(reader);
+		}
+		return reader;
+	}
+
+	public int getNrOfOpenedReaders()
+	{
+		return openedReaders.get();
+	}
+
+	@Override
+	public void close() throws IOException
+	{
+		closed = true;
+		synchronized (allReaders)
+		{
+			for(TabixVcfRepository reader : allReaders)
+			{
+				reader.close();
+			}
+			allReaders.clear();
+		}
+		idleReaders.clear();
+	}
+}
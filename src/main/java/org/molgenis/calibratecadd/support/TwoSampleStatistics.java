@@ -0,0 +1,221 @@
+package org.molgenis.calibratecadd.support;
+
+import java.util.Arrays;
+
+import org.apache.commons.math3.distribution.NormalDistribution;
+import org.apache.commons.math3.stat.descriptive.rank.Percentile;
+import org.apache.commons.math3.stat.descriptive.rank.Percentile.EstimationType;
+import org.apache.commons.math3.stat.inference.MannWhitneyUTest;
+import org.apache.commons.math3.util.FastMath;
+
+/**
+ * Means, R-7 percentiles and the Mann-Whitney U test of two samples, e.g. the CADD scores of the pathogenic and
+ * population variants of a gene, from one sorted copy of each sample. MannWhitneyUTest ranks a concatenation of both
+ * samples, and each Percentile call copies and partially sorts a sample again; here each sample is sorted once,
+ * the percentiles are read from it, and the ranks (averaged over ties) follow from merging the two sorted samples.
+ *
+ * Gives exactly the same numbers as Mean, Percentile with EstimationType.R_7 and MannWhitneyUTest of commons-math 3.5,
+ * including their normal approximation of the p-value without a variance correction for ties. Means are summed in
+ * the original order, as Mean does. Samples with NaN values are handed to commons-math as they are, and so are the
+ * percentiles of samples with -0.0, which Percentile does not tell apart from 0.0 when it selects a value.
+ *
+ * The sorted copies are kept in buffers that are reused by the next set(), so use one instance per thread.
+ */
+public class TwoSampleStatistics
+{
+	private static final NormalDistribution STANDARD_NORMAL = new NormalDistribution(null, 0, 1);
+
+	private double[] x;
+	private double[] y;
+	private double[] sortedX = new double[16];
+	private double[] sortedY = new double[16];
+	private int nX;
+	private int nY;
+	private double meanX;
+	private double meanY;
+	private boolean hasNaN;
+	private boolean hasNegativeZeroX;
+	private boolean hasNegativeZeroY;
+
+	/**
+	 * Take two new samples, which are not modified, and must not be modified while this instance uses them
+	 * @param x e.g. pathogenic
+	 * @param y e.g. population
+	 */
+	public void set(double[] x, double[] y)
+	{
+		this.x = x;
+		this.y = y;
+		this.nX = x.length;
+		this.nY = y.length;
+		if(sortedX.length < nX)
+		{
+			sortedX = new double[Math.max(nX, sortedX.length * 2)];
+		}
+		if(sortedY.length < nY)
+		{
+			sortedY = new double[Math.max(nY, sortedY.length * 2)];
+		}
+		System.arraycopy(x, 0, sortedX, 0, nX);
+		System.arraycopy(y, 0, sortedY, 0, nY);
+		Arrays.sort(sortedX, 0, nX);
+		Arrays.sort(sortedY, 0, nY);
+		//NaN sorts last
+		hasNaN = (nX > 0 && Double.isNaN(sortedX[nX - 1])) || (nY > 0 && Double.isNaN(sortedY[nY - 1]));
+		hasNegativeZeroX = hasNegativeZero(sortedX, nX);
+		hasNegativeZeroY = hasNegativeZero(sortedY, nY);
+		meanX = mean(x);
+		meanY = mean(y);
+	}
+
+	/**
+	 * Sorting and binary search both order -0.0 before 0.0, so this finds -0.0 only
+	 */
+	private static boolean hasNegativeZero(double[] sorted, int length)
+	{
+		return Arrays.binarySearch(sorted, 0, length, -0.0) >= 0;
+	}
+
+	/**
+	 * Same as Mean.evaluate: the sum divided by n, corrected by the mean deviation from it
+	 */
+	private static double mean(double[] values)
+	{
+		if(values.length == 0)
+		{
+			return Double.NaN;
+		}
+		double sum = 0;
+		for (double value : values)
+		{
+			sum += value;
+		}
+		double n = values.length;
+		double xbar = sum / n;
+		double correction = 0;
+		for (double value : values)
+		{
+			correction += value - xbar;
+		}
+		return xbar + (correction / n);
+	}
+
+	public double getMeanX()
+	{
+		return meanX;
+	}
+
+	public double getMeanY()
+	{
+		return meanY;
+	}
+
+	/**
+	 * @param p percentile, in (0, 100]
+	 * @return R-7 estimate, same as new Percentile().withEstimationType(EstimationType.R_7).evaluate(x, p)
+	 */
+	public double getPercentileX(double p)
+	{
+		return hasNaN || hasNegativeZeroX ? new Percentile().withEstimationType(EstimationType.R_7).evaluate(x, p) : percentile(sortedX, nX, p);
+	}
+
+	public double getPercentileY(double p)
+	{
+		return hasNaN || hasNegativeZeroY ? new Percentile().withEstimationType(EstimationType.R_7).evaluate(y, p) : percentile(sortedY, nY, p);
+	}
+
+	/**
+	 * R-7 estimate from the first length values of a sorted array
+	 */
+	static double percentile(double[] sorted, int length, double p)
+	{
+		if(p > 100 || p <= 0)
+		{
+			throw new IllegalArgumentException("percentile out of range: " + p);
+		}
+		if(length == 0)
+		{
+			return Double.NaN;
+		}
+		if(length == 1)
+		{
+			return sorted[0];
+		}
+		double quantile = p / 100d;
+		double pos = Double.compare(quantile, 1d) == 0 ? length : 1 + (length - 1) * quantile;
+		double fpos = FastMath.floor(pos);
+		int intPos = (int) fpos;
+		double dif = pos - fpos;
+		if(pos < 1)
+		{
+			return sorted[0];
+		}
+		if(pos >= length)
+		{
+			return sorted[length - 1];
+		}
+		double lower = sorted[intPos - 1];
+		double upper = sorted[intPos];
+		return lower + dif * (upper - lower);
+	}
+
+	/**
+	 * @return the larger of U(x) and U(y), same as MannWhitneyUTest.mannWhitneyU(x, y)
+	 */
+	public double getMannWhitneyU()
+	{
+		if(hasNaN || nX == 0 || nY == 0)
+		{
+			return new MannWhitneyUTest().mannWhitneyU(x, y);
+		}
+
+		//walk both sorted samples as one, every group of equal values gets the average of the ranks it spans
+		double sumRankX = 0;
+		int i = 0;
+		int j = 0;
+		int rank = 1;
+		while (i < nX || j < nY)
+		{
+			double value = j == nY || (i < nX && Double.compare(sortedX[i], sortedY[j]) <= 0) ? sortedX[i] : sortedY[j];
+			int tiesX = 0;
+			int tiesY = 0;
+			while (i < nX && Double.compare(sortedX[i], value) == 0)
+			{
+				tiesX++;
+				i++;
+			}
+			while (j < nY && Double.compare(sortedY[j], value) == 0)
+			{
+				tiesY++;
+				j++;
+			}
+			//ranks are whole or halves, so this sum is exact, like the sum of single ranks in MannWhitneyUTest
+			double averageRank = (2d * rank + (tiesX + tiesY) - 1) / 2d;
+			sumRankX += tiesX * averageRank;
+			rank += tiesX + tiesY;
+		}
+
+		double u1 = sumRankX - ((long) nX * (nX + 1)) / 2;
+		double u2 = (long) nX * nY - u1;
+		return FastMath.max(u1, u2);
+	}
+
+	/**
+	 * @return two-sided p-value of the normal approximation, same as MannWhitneyUTest.mannWhitneyUTest(x, y)
+	 */
+	public double getMannWhitneyUTestPValue()
+	{
+		if(hasNaN || nX == 0 || nY == 0)
+		{
+			return new MannWhitneyUTest().mannWhitneyUTest(x, y);
+		}
+		double uMax = getMannWhitneyU();
+		double uMin = (long) nX * nY - uMax;
+
+		long n1n2prod = (long) nX * nY;
+		double eu = n1n2prod / 2.0;
+		double varU = n1n2prod * (nX + nY + 1) / 12.0;
+		double z = (uMin - eu) / FastMath.sqrt(varU);
+		return 2 * STANDARD_NORMAL.cumulativeProbability(z);
+	}
+}
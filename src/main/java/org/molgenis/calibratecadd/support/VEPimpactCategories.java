@@ -1,5 +1,6 @@
 package org.molgenis.calibratecadd.support;
 
+import java.util.HashMap;
 
 public class VEPimpactCategories
 {
@@ -70,6 +71,74 @@ public class VEPimpactCategories
                  
 	}
 	
+	/**
+	 * All consequences known to getImpact, in a fixed order, so a set of consequences can be stored as a bitmask (bit i = CONSEQUENCES[i])
+	 */
+	public static final String[] CONSEQUENCES = new String[] { "transcript_ablation", "splice_acceptor_variant", "splice_donor_variant",
+			"stop_gained", "frameshift_variant", "stop_lost", "start_lost", "transcript_amplification", "inframe_insertion",
+			"inframe_deletion", "missense_variant", "protein_altering_variant", "splice_region_variant",
+			"incomplete_terminal_codon_variant", "stop_retained_variant", "synonymous_variant", "coding_sequence_variant",
+			"mature_miRNA_variant", "5_prime_UTR_variant", "non_coding_transcript_exon_variant", "intron_variant",
+			"NMD_transcript_variant", "non_coding_transcript_variant", "upstream_gene_variant", "downstream_gene_variant",
+			"TFBS_ablation", "TFBS_amplification", "TF_binding_site_variant", "regulatory_region_ablation",
+			"regulatory_region_amplification", "feature_elongation", "regulatory_region_variant", "feature_truncation",
+			"intergenic_variant", "3_prime_UTR_variant", "initiator_codon_variant" };
 	
+	private static final HashMap<String, Integer> consequenceToBit = new HashMap<String, Integer>();
+	private static final byte[] bitToImpactRank = new byte[CONSEQUENCES.length];
 	
+	static
+	{
+		try
+		{
+			for(int i = 0; i < CONSEQUENCES.length; i++)
+			{
+				consequenceToBit.put(CONSEQUENCES[i], i);
+				bitToImpactRank[i] = (byte) getImpactRank(getImpact(CONSEQUENCES[i]));
+			}
+		}
+		catch (Exception e)
+		{
+			throw new RuntimeException(e);
+		}
+	}
+	
+	/**
+	 * Bit of this consequence in a consequence bitmask, or -1 if the consequence is unknown
+	 * @param consequence
+	 * @return
+	 */
+	public static int getConsequenceBit(String consequence)
+	{
+		Integer bit = consequenceToBit.get(consequence);
+		return bit == null ? -1 : bit;
+	}
+	
+	/**
+	 * Highest impact rank (see getImpactRank) of the consequences in a bitmask, or -1 if the bitmask is empty
+	 * @param consequences
+	 * @return
+	 */
+	public static int getHighestImpactRank(long consequences)
+	{
+		int highestImpactRank = -1;
+		for(int i = 0; i < CONSEQUENCES.length; i++)
+		{
+			if((consequences & (1L << i)) != 0 && bitToImpactRank[i] > highestImpactRank)
+			{
+				highestImpactRank = bitToImpactRank[i];
+			}
+		}
+		return highestImpactRank;
+	}
+	
+	/**
+	 * Inverse of getImpactRank
+	 * @param impactRank
+	 * @return
+	 */
+	public static String getImpactName(int impactRank)
+	{
+		return impactRank == 3 ? "HIGH" : impactRank == 2 ? "MODERATE" : impactRank == 1 ? "LOW" : "MODIFIER";
+	}
 }
@@ -4,14 +4,14 @@ import java.util.List;
 
 public class VariantIntersectResult
 {
-	public List<EntityPlus> inBoth_exac;
-	public List<EntityPlus> inBoth_clinvar;
-	public List<EntityPlus> inClinVarOnly;
-	public List<EntityPlus> inExACOnly;
+	public List<AlleleRecord> inBoth_exac;
+	public List<AlleleRecord> inBoth_clinvar;
+	public List<AlleleRecord> inClinVarOnly;
+	public List<AlleleRecord> inExACOnly;
 	
 	
-	public VariantIntersectResult(List<EntityPlus> inBoth_exac, List<EntityPlus> inBoth_clinvar,
-			List<EntityPlus> inClinVarOnly, List<EntityPlus> inExACOnly)
+	public VariantIntersectResult(List<AlleleRecord> inBoth_exac, List<AlleleRecord> inBoth_clinvar,
+			List<AlleleRecord> inClinVarOnly, List<AlleleRecord> inExACOnly)
 	{
 		super();
 		this.inBoth_exac = inBoth_exac;
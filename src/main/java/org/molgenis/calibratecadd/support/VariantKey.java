@@ -0,0 +1,277 @@
+package org.molgenis.calibratecadd.support;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Key for a single chrom/pos/ref/alt variant, packed into two longs so it can be hashed and compared without strings,
+ * and used as the key of a VariantKeyMap, VariantKeyDoubleMap or VariantKeySet without allocating anything per entry.
+ *
+ * The first long holds the chromosome code (see Chromosomes) and the position. The second long holds the alleles:
+ * when both alleles consist of A, C, G and T only, with up to 26 bases together, their lengths and 2-bit bases are
+ * stored in it directly. Any other pair of alleles (longer indels, N, '-', '.', symbolic alleles) is stored once in a
+ * shared allele table, and the key holds its number in that table.
+ *
+ * Because chromosomes are stored as codes, '1' and 'chr1' give the same key.
+ */
+public final class VariantKey
+{
+	private static final int MAX_INLINE_BASES = 26;
+	private static final int LENGTH_BITS = 5;
+	private static final long TABLE_FLAG = 1L << 63;
+	private static final char[] BASES = { 'A', 'C', 'G', 'T' };
+
+	//alleles that do not fit in a long, shared by all keys: "ref\talt" to number, and number to {ref, alt}
+	private static final ConcurrentHashMap<String, Integer> allelesToNumber = new ConcurrentHashMap<String, Integer>();
+	private static final List<String[]> numberToAlleles = new ArrayList<String[]>();
+
+	private final long chromPos;
+	private final long alleles;
+
+	private VariantKey(long chromPos, long alleles)
+	{
+		this.chromPos = chromPos;
+		this.alleles = alleles;
+	}
+
+	public static VariantKey of(String chrom, long pos, String ref, String alt)
+	{
+		return new VariantKey(packChromPos(Chromosomes.code(chrom), pos), packAlleles(ref, alt));
+	}
+
+	public static VariantKey of(int chromCode, long pos, String ref, String alt)
+	{
+		return new VariantKey(packChromPos(chromCode, pos), packAlleles(ref, alt));
+	}
+
+	/**
+	 * From the packed values, e.g. as stored in a VariantKeyMap
+	 * @param chromPos
+	 * @param alleles
+	 * @return
+	 */
+	public static VariantKey of(long chromPos, long alleles)
+	{
+		return new VariantKey(chromPos, alleles);
+	}
+
+	/**
+	 * Parse a position from a file, e.g. of a key column that may be malformed
+	 * @param pos
+	 * @return the position, or -1 if it is not a number that packChromPos accepts
+	 */
+	public static long parsePos(String pos)
+	{
+		try
+		{
+			long value = Long.parseLong(pos);
+			return value < 0 || value > 0xFFFFFFFFL ? -1 : value;
+		}
+		catch (NumberFormatException e)
+		{
+			return -1;
+		}
+	}
+
+	public static long packChromPos(int chromCode, long pos)
+	{
+		if(pos < 0 || pos > 0xFFFFFFFFL)
+		{
+			throw new IllegalArgumentException("position out of range: " + pos);
+		}
+		return ((long) chromCode << 32) | pos;
+	}
+
+	public static long packAlleles(String ref, String alt)
+	{
+		long packed = packInlineAlleles(ref, alt);
+		return packed != -1 ? packed : TABLE_FLAG | tableNumber(ref, alt);
+	}
+
+	/**
+	 * Packed alleles to look up a key with: same as packAlleles, but alleles that are not in the allele table are not
+	 * added to it, since no key can have them. So lookups of unseen alleles do not grow the table, and do not lock it.
+	 * @param ref
+	 * @param alt
+	 * @return the packed alleles, same as packAlleles, or -1 if they are not inline and not in the allele table
+	 */
+	public static long findAlleles(String ref, String alt)
+	{
+		long packed = packInlineAlleles(ref, alt);
+		if(packed != -1)
+		{
+			return packed;
+		}
+		Integer number = allelesToNumber.get(ref + "\t" + alt);
+		return number == null ? -1 : TABLE_FLAG | number;
+	}
+
+	/**
+	 * Number of allele pairs in the shared allele table
+	 * @return
+	 */
+	static int getNrOfTableAlleles()
+	{
+		return allelesToNumber.size();
+	}
+
+	/**
+	 * Pack alleles that fit in a long, without touching the allele table, so the value is the same in every run
+	 * @param ref
+	 * @param alt
+	 * @return the packed alleles, same as packAlleles, or -1 if they do not fit
+	 */
+	public static long packInlineAlleles(String ref, String alt)
+	{
+		int length = ref.length() + alt.length();
+		if(length > MAX_INLINE_BASES)
+		{
+			return -1;
+		}
+		long packed = ((long) ref.length() << LENGTH_BITS) | alt.length();
+		for (int i = 0; i < length; i++)
+		{
+			int base = baseCode(i < ref.length() ? ref.charAt(i) : alt.charAt(i - ref.length()));
+			if(base == -1)
+			{
+				return -1;
+			}
+			packed = (packed << 2) | base;
+		}
+		//left-align the bases, so the lengths are always in the same place
+		return packed << (2 * (MAX_INLINE_BASES - length));
+	}
+
+	private static int baseCode(char base)
+	{
+		switch (base)
+		{
+			case 'A':
+				return 0;
+			case 'C':
+				return 1;
+			case 'G':
+				return 2;
+			case 'T':
+				return 3;
+			default:
+				return -1;
+		}
+	}
+
+	private static int tableNumber(String ref, String alt)
+	{
+		String alleles = ref + "\t" + alt;
+		Integer number = allelesToNumber.get(alleles);
+		if(number != null)
+		{
+			return number;
+		}
+		synchronized (numberToAlleles)
+		{
+			number = allelesToNumber.get(alleles);
+			if(number == null)
+			{
+				number = numberToAlleles.size();
+				numberToAlleles.add(new String[] { ref, alt });
+				allelesToNumber.put(alleles, number);
+			}
+			return number;
+		}
+	}
+
+	private static String[] unpackAlleles(long alleles)
+	{
+		if((alleles & TABLE_FLAG) != 0)
+		{
+			synchronized (numberToAlleles)
+			{
+				return numberToAlleles.get((int) alleles);
+			}
+		}
+		int refLength = (int) (alleles >>> (2 * MAX_INLINE_BASES + LENGTH_BITS)) & ((1 << LENGTH_BITS) - 1);
+		int altLength = (int) (alleles >>> (2 * MAX_INLINE_BASES)) & ((1 << LENGTH_BITS) - 1);
+		char[] bases = new char[refLength + altLength];
+		for (int i = 0; i < bases.length; i++)
+		{
+			bases[i] = BASES[(int) (alleles >>> (2 * (MAX_INLINE_BASES - 1 - i))) & 3];
+		}
+		return new String[] { new String(bases, 0, refLength), new String(bases, refLength, altLength) };
+	}
+
+	public long getChromPos()
+	{
+		return chromPos;
+	}
+
+	public long getAlleles()
+	{
+		return alleles;
+	}
+
+	public int getChromCode()
+	{
+		return (int) (chromPos >>> 32);
+	}
+
+	public String getChromName()
+	{
+		return Chromosomes.name(getChromCode());
+	}
+
+	public long getPos()
+	{
+		return chromPos & 0xFFFFFFFFL;
+	}
+
+	public String getRef()
+	{
+		return unpackAlleles(alleles)[0];
+	}
+
+	public String getAlt()
+	{
+		return unpackAlleles(alleles)[1];
+	}
+
+	static int hash(long chromPos, long alleles)
+	{
+		//murmur3 finalizer, so nearby positions spread over the whole table
+		long h = chromPos * 0x9E3779B97F4A7C15L ^ alleles;
+		h ^= h >>> 33;
+		h *= 0xFF51AFD7ED558CCDL;
+		h ^= h >>> 33;
+		h *= 0xC4CEB9FE1A85EC53L;
+		h ^= h >>> 33;
+		return (int) h;
+	}
+
+	@Override
+	public int hashCode()
+	{
+		return hash(chromPos, alleles);
+	}
+
+	@Override
+	public boolean equals(Object obj)
+	{
+		if(this == obj)
+		{
+			return true;
+		}
+		if(!(obj instanceof VariantKey))
+		{
+			return false;
+		}
+		VariantKey other = (VariantKey) obj;
+		return chromPos == other.chromPos && alleles == other.alleles;
+	}
+
+	@Override
+	public String toString()
+	{
+		String[] refAlt = unpackAlleles(alleles);
+		return getChromName() + "_" + getPos() + "_" + refAlt[0] + "_" + refAlt[1];
+	}
+}
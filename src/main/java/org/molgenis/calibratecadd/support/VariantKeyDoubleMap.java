@@ -0,0 +1,65 @@
+package org.molgenis.calibratecadd.support;
+
+import java.util.Arrays;
+
+/**
+ * Map from variant to a primitive double, e.g. a CADD score, see VariantKeyIndex
+ */
+public class VariantKeyDoubleMap extends VariantKeyIndex
+{
+	private double[] values;
+
+	public VariantKeyDoubleMap()
+	{
+		this(16);
+	}
+
+	public VariantKeyDoubleMap(int expectedSize)
+	{
+		super(expectedSize);
+		values = new double[Math.max(4, expectedSize)];
+	}
+
+	@Override
+	protected void growValues(int capacity)
+	{
+		values = Arrays.copyOf(values, capacity);
+	}
+
+	/**
+	 * @param key
+	 * @return the value, or NaN if the key is not present
+	 */
+	public double get(VariantKey key)
+	{
+		int entry = indexOf(key.getChromPos(), key.getAlleles());
+		return entry == -1 ? Double.NaN : values[entry];
+	}
+
+	public double get(String chrom, long pos, String ref, String alt)
+	{
+		int entry = indexOf(chrom, pos, ref, alt);
+		return entry == -1 ? Double.NaN : values[entry];
+	}
+
+	public void put(VariantKey key, double value)
+	{
+		put(key.getChromPos(), key.getAlleles(), value);
+	}
+
+	public void put(String chrom, long pos, String ref, String alt, double value)
+	{
+		put(VariantKey.packChromPos(Chromosomes.code(chrom), pos), VariantKey.packAlleles(ref, alt), value);
+	}
+
+	private void put(long chromPos, long alleles, double value)
+	{
+		int entry = addKey(chromPos, alleles);
+		values[entry < 0 ? ~entry : entry] = value;
+	}
+
+	public boolean remove(VariantKey key)
+	{
+		return removeKey(key.getChromPos(), key.getAlleles()) != -1;
+	}
+}
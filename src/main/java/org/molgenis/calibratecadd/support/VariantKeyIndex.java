@@ -0,0 +1,235 @@
+package org.molgenis.calibratecadd.support;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Open-addressing hash table on packed VariantKeys, base of VariantKeySet, VariantKeyMap and VariantKeyDoubleMap.
+ *
+ * Keys are stored in insertion order in plain long arrays ('entries'), and a separate int table with linear probing
+ * points into them, so a lookup touches no objects and iteration is in insertion order. Subclasses keep their values
+ * in arrays with the same entry numbers. Removed entries keep their number but are skipped when iterating.
+ *
+ * Not thread-safe.
+ */
+public abstract class VariantKeyIndex
+{
+	private static final long REMOVED = -1L;
+
+	private long[] chromPos;
+	private long[] alleles;
+	private int[] hashes;
+	private int nrOfEntries = 0;
+	private int nrOfRemoved = 0;
+
+	//entry number + 1, 0 for an empty slot
+	private int[] slots;
+	private int mask;
+
+	protected VariantKeyIndex(int expectedSize)
+	{
+		int capacity = Math.max(4, expectedSize);
+		chromPos = new long[capacity];
+		alleles = new long[capacity];
+		hashes = new int[capacity];
+		int nrOfSlots = Integer.highestOneBit(capacity * 2 - 1) * 2;
+		slots = new int[nrOfSlots];
+		mask = nrOfSlots - 1;
+	}
+
+	/**
+	 * Grow the value arrays of a subclass to the new entry capacity
+	 * @param capacity
+	 */
+	protected abstract void growValues(int capacity);
+
+	/**
+	 * @param chromPos
+	 * @param alleles
+	 * @return entry number, or -1 if the key is not present
+	 */
+	protected int indexOf(long chromPos, long alleles)
+	{
+		int hash = VariantKey.hash(chromPos, alleles);
+		for (int slot = hash & mask;; slot = (slot + 1) & mask)
+		{
+			int entry = slots[slot] - 1;
+			if(entry == -1)
+			{
+				return -1;
+			}
+			if(hashes[entry] == hash && this.chromPos[entry] == chromPos && this.alleles[entry] == alleles)
+			{
+				return entry;
+			}
+		}
+	}
+
+	/**
+	 * Look up a variant without adding its chromosome or alleles to the shared tables of Chromosomes and VariantKey:
+	 * when either is not there, no key in here can have it
+	 * @param chrom
+	 * @param pos
+	 * @param ref
+	 * @param alt
+	 * @return entry number, or -1 if the key is not present
+	 */
+	protected int indexOf(String chrom, long pos, String ref, String alt)
+	{
+		int chromCode = Chromosomes.findCode(chrom);
+		long alleles = VariantKey.findAlleles(ref, alt);
+		if(chromCode == -1 || alleles == -1)
+		{
+			return -1;
+		}
+		return indexOf(VariantKey.packChromPos(chromCode, pos), alleles);
+	}
+
+	/**
+	 * @param chromPos
+	 * @param alleles
+	 * @return entry number of the key, ~entry number (negative) if it was added
+	 */
+	protected int addKey(long chromPos, long alleles)
+	{
+		int hash = VariantKey.hash(chromPos, alleles);
+		int slot = hash & mask;
+		for (;; slot = (slot + 1) & mask)
+		{
+			int entry = slots[slot] - 1;
+			if(entry == -1)
+			{
+				break;
+			}
+			if(hashes[entry] == hash && this.chromPos[entry] == chromPos && this.alleles[entry] == alleles)
+			{
+				return entry;
+			}
+		}
+
+		if(nrOfEntries == this.chromPos.length)
+		{
+			int capacity = this.chromPos.length * 2;
+			this.chromPos = Arrays.copyOf(this.chromPos, capacity);
+			this.alleles = Arrays.copyOf(this.alleles, capacity);
+			this.hashes = Arrays.copyOf(this.hashes, capacity);
+			growValues(capacity);
+		}
+		int entry = nrOfEntries++;
+		this.chromPos[entry] = chromPos;
+		this.alleles[entry] = alleles;
+		this.hashes[entry] = hash;
+		slots[slot] = entry + 1;
+
+		//keep at most half of the slots in use, so probe sequences stay short
+		if(nrOfEntries * 2 > slots.length)
+		{
+			rehash(slots.length * 2);
+		}
+		return ~entry;
+	}
+
+	private void rehash(int nrOfSlots)
+	{
+		slots = new int[nrOfSlots];
+		mask = nrOfSlots - 1;
+		for (int entry = 0; entry < nrOfEntries; entry++)
+		{
+			if(chromPos[entry] == REMOVED)
+			{
+				continue;
+			}
+			int slot = hashes[entry] & mask;
+			while (slots[slot] != 0)
+			{
+				slot = (slot + 1) & mask;
+			}
+			slots[slot] = entry + 1;
+		}
+	}
+
+	/**
+	 * @param chromPos
+	 * @param alleles
+	 * @return entry number of the removed key, or -1 if it was not present
+	 */
+	protected int removeKey(long chromPos, long alleles)
+	{
+		int entry = indexOf(chromPos, alleles);
+		if(entry == -1)
+		{
+			return -1;
+		}
+		int slot = hashes[entry] & mask;
+		while (slots[slot] != entry + 1)
+		{
+			slot = (slot + 1) & mask;
+		}
+
+		//shift later entries of the same probe sequence back, so lookups do not stop at the gap
+		int gap = slot;
+		for (int next = (gap + 1) & mask; slots[next] != 0; next = (next + 1) & mask)
+		{
+			int home = hashes[slots[next] - 1] & mask;
+			boolean movable = gap <= next ? (home <= gap || home > next) : (home <= gap && home > next);
+			if(movable)
+			{
+				slots[gap] = slots[next];
+				gap = next;
+			}
+		}
+		slots[gap] = 0;
+
+		this.chromPos[entry] = REMOVED;
+		this.alleles[entry] = REMOVED;
+		nrOfRemoved++;
+		return entry;
+	}
+
+	protected int getNrOfEntries()
+	{
+		return nrOfEntries;
+	}
+
+	protected boolean isRemoved(int entry)
+	{
+		return chromPos[entry] == REMOVED;
+	}
+
+	public boolean containsKey(VariantKey key)
+	{
+		return indexOf(key.getChromPos(), key.getAlleles()) != -1;
+	}
+
+	public boolean containsKey(String chrom, long pos, String ref, String alt)
+	{
+		return indexOf(chrom, pos, ref, alt) != -1;
+	}
+
+	public int size()
+	{
+		return nrOfEntries - nrOfRemoved;
+	}
+
+	public boolean isEmpty()
+	{
+		return size() == 0;
+	}
+
+	/**
+	 * @return the keys in insertion order
+	 */
+	public List<VariantKey> keys()
+	{
+		List<VariantKey> keys = new ArrayList<VariantKey>(size());
+		for (int entry = 0; entry < nrOfEntries; entry++)
+		{
+			if(!isRemoved(entry))
+			{
+				keys.add(VariantKey.of(chromPos[entry], alleles[entry]));
+			}
+		}
+		return keys;
+	}
+}
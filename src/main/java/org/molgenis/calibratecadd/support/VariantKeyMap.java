@@ -0,0 +1,116 @@
+package org.molgenis.calibratecadd.support;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Map from variant to any value, see VariantKeyIndex. Null values are allowed.
+ * @param <V>
+ */
+public class VariantKeyMap<V> extends VariantKeyIndex
+{
+	private Object[] values;
+
+	public VariantKeyMap()
+	{
+		this(16);
+	}
+
+	public VariantKeyMap(int expectedSize)
+	{
+		super(expectedSize);
+		values = new Object[Math.max(4, expectedSize)];
+	}
+
+	@Override
+	protected void growValues(int capacity)
+	{
+		values = Arrays.copyOf(values, capacity);
+	}
+
+	/**
+	 * @param key
+	 * @return the value, or null if the key is not present
+	 */
+	public V get(VariantKey key)
+	{
+		return valueAt(indexOf(key.getChromPos(), key.getAlleles()));
+	}
+
+	public V get(String chrom, long pos, String ref, String alt)
+	{
+		return valueAt(indexOf(chrom, pos, ref, alt));
+	}
+
+	@SuppressWarnings("unchecked")
+	private V valueAt(int entry)
+	{
+		return entry == -1 ? null : (V) values[entry];
+	}
+
+	/**
+	 * @param key
+	 * @param value
+	 * @return the previous value, or null if there was none
+	 */
+	public V put(VariantKey key, V value)
+	{
+		int entry = addKey(key.getChromPos(), key.getAlleles());
+		if(entry < 0)
+		{
+			values[~entry] = value;
+			return null;
+		}
+		V previous = valueAt(entry);
+		values[entry] = value;
+		return previous;
+	}
+
+	/**
+	 * @param key
+	 * @param value
+	 * @return true if the key was not yet present and the value was added
+	 */
+	public boolean putIfAbsent(VariantKey key, V value)
+	{
+		int entry = addKey(key.getChromPos(), key.getAlleles());
+		if(entry < 0)
+		{
+			values[~entry] = value;
+			return true;
+		}
+		return false;
+	}
+
+	/**
+	 * @param key
+	 * @return the removed value, or null if the key was not present
+	 */
+	public V remove(VariantKey key)
+	{
+		int entry = removeKey(key.getChromPos(), key.getAlleles());
+		V previous = valueAt(entry);
+		if(entry != -1)
+		{
+			values[entry] = null;
+		}
+		return previous;
+	}
+
+	/**
+	 * @return the values in insertion order of their keys
+	 */
+	public List<V> values()
+	{
+		List<V> result = new ArrayList<V>(size());
+		for (int entry = 0; entry < getNrOfEntries(); entry++)
+		{
+			if(!isRemoved(entry))
+			{
+				result.add(valueAt(entry));
+			}
+		}
+		return result;
+	}
+}
@@ -0,0 +1,47 @@
+package org.molgenis.calibratecadd.support;
+
+/**
+ * Set of variants, see VariantKeyIndex
+ */
+public class VariantKeySet extends VariantKeyIndex
+{
+	public VariantKeySet()
+	{
+		this(16);
+	}
+
+	public VariantKeySet(int expectedSize)
+	{
+		super(expectedSize);
+	}
+
+	@Override
+	protected void growValues(int capacity)
+	{
+		//no values
+	}
+
+	/**
+	 * @param key
+	 * @return true if the key was not yet present
+	 */
+	public boolean add(VariantKey key)
+	{
+		return addKey(key.getChromPos(), key.getAlleles()) < 0;
+	}
+
+	public boolean add(String chrom, long pos, String ref, String alt)
+	{
+		return addKey(VariantKey.packChromPos(Chromosomes.code(chrom), pos), VariantKey.packAlleles(ref, alt)) < 0;
+	}
+
+	public boolean contains(VariantKey key)
+	{
+		return containsKey(key);
+	}
+
+	public boolean remove(VariantKey key)
+	{
+		return removeKey(key.getChromPos(), key.getAlleles()) != -1;
+	}
+}
@@ -0,0 +1,118 @@
+package org.molgenis.calibratecadd.support;
+
+/**
+ * Normalises variants against a reference genome, so that the same variant always gets the same chrom/pos/ref/alt,
+ * however it was written (Tan et al. 2015, 'Unified representation of genetic variants'):
+ * <ul>
+ * <li>bases shared at the end of REF and ALT are trimmed</li>
+ * <li>indels are shifted left as far as the reference allows, and get the preceding reference base as anchor</li>
+ * <li>bases shared at the start of REF and ALT are trimmed, keeping at least one base in each</li>
+ * </ul>
+ * e.g. '47705505 T -' (ClinVar tab-delimited notation) becomes '47705504 AT A', and ExAC's multi-allelic
+ * 'TTCCTCCTCC TTCCTCC' and ClinVar's 'TTCCTCC TTCC' at the same position become the same deletion.
+ *
+ * SNVs, and alleles that are not plain bases (such as '.', '*' or symbolic alleles), are returned as they are without
+ * looking at the reference. '-' is read as an empty allele. Safe to use from multiple threads.
+ */
+public class VariantNormaliser
+{
+	private IndexedFasta reference;
+
+	public VariantNormaliser(IndexedFasta reference)
+	{
+		this.reference = reference;
+	}
+
+	/**
+	 * Get the normalised variant as a key, which has the normalised position and alleles
+	 * @param chrom
+	 * @param pos
+	 * @param ref
+	 * @param alt
+	 * @return
+	 */
+	public VariantKey normalise(String chrom, long pos, String ref, String alt)
+	{
+		return normalise(Chromosomes.code(chrom), pos, ref, alt);
+	}
+
+	/**
+	 * @param chromCode see Chromosomes
+	 * @param pos
+	 * @param ref
+	 * @param alt
+	 * @return
+	 */
+	public VariantKey normalise(int chromCode, long pos, String ref, String alt)
+	{
+		if(ref.length() == 1 && alt.length() == 1 && ref.charAt(0) != '-' && alt.charAt(0) != '-')
+		{
+			return VariantKey.of(chromCode, pos, ref, alt);
+		}
+		String normRef = ref.equals("-") ? "" : ref;
+		String normAlt = alt.equals("-") ? "" : alt;
+		if(normRef.equals(normAlt) || !isBases(normRef) || !isBases(normAlt))
+		{
+			return VariantKey.of(chromCode, pos, ref, alt);
+		}
+
+		//trim the common end
+		int refEnd = normRef.length();
+		int altEnd = normAlt.length();
+		while (refEnd > 0 && altEnd > 0 && normRef.charAt(refEnd - 1) == normAlt.charAt(altEnd - 1))
+		{
+			refEnd--;
+			altEnd--;
+		}
+
+		if(refEnd > 0 && altEnd > 0)
+		{
+			//substitution (e.g. 'AT AG'), nothing to shift, only trim the common start
+			int start = 0;
+			while (refEnd - start > 1 && altEnd - start > 1 && normRef.charAt(start) == normAlt.charAt(start))
+			{
+				start++;
+			}
+			return VariantKey.of(chromCode, pos + start, normRef.substring(start, refEnd), normAlt.substring(start, altEnd));
+		}
+
+		//insertion or deletion of these bases, just before pos
+		boolean deletion = refEnd > 0;
+		String chrom = Chromosomes.name(chromCode);
+		if(!reference.hasSequence(chrom))
+		{
+			return VariantKey.of(chromCode, pos, ref, alt);
+		}
+		char[] indel = (deletion ? normRef.substring(0, refEnd) : normAlt.substring(0, altEnd)).toCharArray();
+		long indelPos = pos;
+		char before;
+		while (indelPos > 1 && (before = reference.getBase(chrom, indelPos - 1)) == indel[indel.length - 1])
+		{
+			System.arraycopy(indel, 0, indel, 1, indel.length - 1);
+			indel[0] = before;
+			indelPos--;
+		}
+		if(indelPos == 1)
+		{
+			//no base before it to anchor on
+			return VariantKey.of(chromCode, pos, ref, alt);
+		}
+
+		String anchor = String.valueOf(reference.getBase(chrom, indelPos - 1));
+		String indelBases = new String(indel);
+		return VariantKey.of(chromCode, indelPos - 1, deletion ? anchor + indelBases : anchor, deletion ? anchor : anchor + indelBases);
+	}
+
+	private static boolean isBases(String allele)
+	{
+		for (int i = 0; i < allele.length(); i++)
+		{
+			char c = allele.charAt(i);
+			if(c != 'A' && c != 'C' && c != 'G' && c != 'T' && c != 'N')
+			{
+				return false;
+			}
+		}
+		return true;
+	}
+}
@@ -0,0 +1,376 @@
+package org.molgenis.calibratecadd.support;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Streaming reader for ClinVar's variant_summary.txt(.gz) that keeps the GRCh37 'pathogenic' variants per gene.
+ *
+ * The file is read in large byte chunks that end on a line break. Chunks are parsed on a thread pool and merged back
+ * in file order, so the variants per gene are in the same order as in the file. Per line, only the tabs up to the last
+ * needed column are located, the build and clinical significance are checked on the raw bytes, and only lines that
+ * pass are turned into strings.
+ *
+ * Columns are found by name in the header. When a name is missing, the column index of the 2016 release is used.
+ */
+public class VariantSummaryReader
+{
+	private static final int CHUNK_SIZE = 8 * 1024 * 1024;
+	private static final byte[] GRCH37 = "GRCh37".getBytes(StandardCharsets.US_ASCII);
+	private static final byte[] PATHOGENIC = "pathogenic".getBytes(StandardCharsets.US_ASCII);
+
+	private int threads;
+	private int chunkSize;
+
+	private int nameCol = 2;
+	private int geneCol = 4;
+	private int clinsigCol = 5;
+	private int idCol = 6;
+	private int buildCol = 12;
+	private int chromCol = 13;
+	private int posCol = 14;
+	private int refCol = 25;
+	private int altCol = 26;
+	private int lastCol;
+
+	private static class ChunkResult
+	{
+		List<ClinVarVariant> variants = new ArrayList<ClinVarVariant>();
+		List<String> messages = new ArrayList<String>();
+		int lost = 0;
+	}
+
+	public VariantSummaryReader(int threads)
+	{
+		this(threads, CHUNK_SIZE);
+	}
+
+	/**
+	 * @param chunkSize nr of bytes parsed as one task, grown when a line does not fit
+	 */
+	VariantSummaryReader(int threads, int chunkSize)
+	{
+		if(threads < 1)
+		{
+			throw new IllegalArgumentException("threads must be at least 1, but was " + threads);
+		}
+		this.threads = threads;
+		this.chunkSize = chunkSize;
+	}
+
+	/**
+	 * Read the file, gzipped if the name ends with .gz
+	 * @param clinvarFile
+	 * @return gene symbol to the 'pathogenic' GRCh37 variants in that gene, in file order
+	 * @throws Exception
+	 */
+	public HashMap<String, List<ClinVarVariant>> read(File clinvarFile) throws Exception
+	{
+		HashMap<String, List<ClinVarVariant>> res = new HashMap<String, List<ClinVarVariant>>();
+		int lost = 0;
+		int totalvariants = 0;
+
+		InputStream in = new BufferedInputStream(new FileInputStream(clinvarFile), 1 << 16);
+		if(clinvarFile.getName().endsWith(".gz"))
+		{
+			in = new GZIPInputStream(in, 1 << 16);
+		}
+
+		ExecutorService pool = Executors.newFixedThreadPool(threads);
+		//bounded, so reading does not run far ahead of parsing
+		ArrayDeque<Future<ChunkResult>> pending = new ArrayDeque<Future<ChunkResult>>();
+		try
+		{
+			byte[] buffer = new byte[chunkSize];
+			int filled = 0;
+			boolean firstChunk = true;
+			boolean eof = false;
+			while (!eof)
+			{
+				int read = in.read(buffer, filled, buffer.length - filled);
+				if(read == -1)
+				{
+					eof = true;
+				}
+				else
+				{
+					filled += read;
+					if(filled < buffer.length)
+					{
+						continue;
+					}
+				}
+
+				//parse up to the last line break, and carry the incomplete last line over to the next chunk
+				int end = filled;
+				if(!eof)
+				{
+					end = lastIndexOf(buffer, (byte) '\n', filled);
+					if(end == -1)
+					{
+						//a line longer than the buffer
+						buffer = Arrays.copyOf(buffer, buffer.length * 2);
+						continue;
+					}
+					end++;
+				}
+
+				int start = 0;
+				if(firstChunk)
+				{
+					start = readHeader(buffer, end);
+					firstChunk = false;
+				}
+
+				final byte[] chunk = buffer;
+				final int chunkStart = start;
+				final int chunkEnd = end;
+				pending.add(pool.submit(new Callable<ChunkResult>()
+				{
+					@Override
+					public ChunkResult call() throws Exception
+					{
+						return parseChunk(chunk, chunkStart, chunkEnd);
+					}
+				}));
+
+				buffer = new byte[Math.max(chunkSize, filled - end)];
+				System.arraycopy(chunk, end, buffer, 0, filled - end);
+				filled = filled - end;
+
+				while (pending.size() > threads * 2 || (eof && !pending.isEmpty()))
+				{
+					ChunkResult result = pending.poll().get();
+					for (String message : result.messages)
+					{
+						System.out.println(message);
+					}
+					lost += result.lost;
+					for (ClinVarVariant cvv : result.variants)
+					{
+						if(res.containsKey(cvv.gene))
+						{
+							res.get(cvv.gene).add(cvv);
+						}
+						else
+						{
+							List<ClinVarVariant> cvvList = new ArrayList<ClinVarVariant>();
+							cvvList.add(cvv);
+							res.put(cvv.gene, cvvList);
+						}
+						totalvariants++;
+					}
+				}
+			}
+		}
+		catch (ExecutionException e)
+		{
+			throw new Exception("failed to parse " + clinvarFile.getAbsolutePath(), e.getCause());
+		}
+		finally
+		{
+			pool.shutdownNow();
+			in.close();
+		}
+
+		System.out.println("..done, put " + totalvariants + " 'pathogenic' variants in " + res.size() + " genes, lost " + lost + " due to non-recoverable gene symbols");
+		return res;
+	}
+
+	private static int lastIndexOf(byte[] buffer, byte b, int end)
+	{
+		for (int i = end - 1; i >= 0; i--)
+		{
+			if(buffer[i] == b)
+			{
+				return i;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * If the chunk starts with a header line, resolve the columns from it
+	 * @return where the data starts
+	 */
+	private int readHeader(byte[] buffer, int end) throws IOException
+	{
+		if(end == 0 || buffer[0] != '#')
+		{
+			lastCol = Math.max(Math.max(Math.max(nameCol, geneCol), Math.max(clinsigCol, idCol)), Math.max(Math.max(buildCol, chromCol), Math.max(posCol, Math.max(refCol, altCol))));
+			return 0;
+		}
+		int lineEnd = 0;
+		while (lineEnd < end && buffer[lineEnd] != '\n')
+		{
+			lineEnd++;
+		}
+		String header = new String(buffer, 1, lineEnd - 1, StandardCharsets.UTF_8).trim();
+		List<String> columns = Arrays.asList(header.split("\t", -1));
+		nameCol = column(columns, "Name", nameCol);
+		geneCol = column(columns, "GeneSymbol", geneCol);
+		clinsigCol = column(columns, "ClinicalSignificance", clinsigCol);
+		idCol = column(columns, "RS# (dbSNP)", idCol);
+		buildCol = column(columns, "Assembly", buildCol);
+		chromCol = column(columns, "Chromosome", chromCol);
+		posCol = column(columns, "Start", posCol);
+		refCol = column(columns, "ReferenceAllele", refCol);
+		altCol = column(columns, "AlternateAllele", altCol);
+		lastCol = Math.max(Math.max(Math.max(nameCol, geneCol), Math.max(clinsigCol, idCol)), Math.max(Math.max(buildCol, chromCol), Math.max(posCol, Math.max(refCol, altCol))));
+		return Math.min(lineEnd + 1, end);
+	}
+
+	private static int column(List<String> columns, String name, int fallback)
+	{
+		int index = columns.indexOf(name);
+		return index == -1 ? fallback : index;
+	}
+
+	private ChunkResult parseChunk(byte[] buffer, int start, int end) throws Exception
+	{
+		ChunkResult result = new ChunkResult();
+		int[] fieldStart = new int[lastCol + 1];
+		int[] fieldEnd = new int[lastCol + 1];
+
+		int lineStart = start;
+		while (lineStart < end)
+		{
+			int lineEnd = lineStart;
+			while (lineEnd < end && buffer[lineEnd] != '\n')
+			{
+				lineEnd++;
+			}
+			int nextLine = lineEnd + 1;
+			if(lineEnd > lineStart && buffer[lineEnd - 1] == '\r')
+			{
+				lineEnd--;
+			}
+
+			//locate only the fields up to the last one we need
+			int nrOfFields = 0;
+			int fs = lineStart;
+			for (int i = lineStart; i <= lineEnd && nrOfFields <= lastCol; i++)
+			{
+				if(i == lineEnd || buffer[i] == '\t')
+				{
+					fieldStart[nrOfFields] = fs;
+					fieldEnd[nrOfFields] = i;
+					nrOfFields++;
+					fs = i + 1;
+				}
+			}
+			lineStart = nextLine;
+
+			// needs to be GRCh37
+			if(nrOfFields <= buildCol || !equals(buffer, fieldStart[buildCol], fieldEnd[buildCol], GRCH37))
+			{
+				continue;
+			}
+
+			// needs to contain 'pathogenic'
+			if(nrOfFields <= clinsigCol || !containsIgnoreCase(buffer, fieldStart[clinsigCol], fieldEnd[clinsigCol], PATHOGENIC))
+			{
+				continue;
+			}
+
+			if(nrOfFields <= lastCol)
+			{
+				throw new Exception("expected at least " + (lastCol + 1) + " columns, found " + nrOfFields + " in line: " + new String(buffer, fieldStart[0], lineEnd - fieldStart[0], StandardCharsets.UTF_8));
+			}
+
+			// eg. NM_005343.2(HRAS):c.37G>C (p.Gly13Arg)
+			String name = field(buffer, fieldStart, fieldEnd, nameCol);
+			// eg. HRAS
+			String gene = field(buffer, fieldStart, fieldEnd, geneCol);
+
+			String geneFromName = null;
+			if (name.contains("("))
+			{
+				geneFromName = name.substring(name.indexOf('(') + 1, name.indexOf(')'));
+			}
+
+			if (gene.equals("-") || gene.equals(""))
+			{
+				if(gene.equals("")) { result.messages.add("override: '"+gene+"' to '"+geneFromName+"'"); }
+				gene = geneFromName;
+			}
+
+			if (gene == null)
+			{
+				result.lost++;
+				continue;
+			}
+
+			String clinsig = field(buffer, fieldStart, fieldEnd, clinsigCol);
+			String chrom = field(buffer, fieldStart, fieldEnd, chromCol);
+			String pos = field(buffer, fieldStart, fieldEnd, posCol);
+			String id = field(buffer, fieldStart, fieldEnd, idCol);
+			String ref = field(buffer, fieldStart, fieldEnd, refCol);
+			String alt = field(buffer, fieldStart, fieldEnd, altCol);
+
+			result.variants.add(new ClinVarVariant(chrom, pos, id, ref, alt, name, gene, clinsig));
+		}
+		return result;
+	}
+
+	private static String field(byte[] buffer, int[] fieldStart, int[] fieldEnd, int col)
+	{
+		return new String(buffer, fieldStart[col], fieldEnd[col] - fieldStart[col], StandardCharsets.UTF_8);
+	}
+
+	private static boolean equals(byte[] buffer, int start, int end, byte[] value)
+	{
+		if(end - start != value.length)
+		{
+			return false;
+		}
+		for (int i = 0; i < value.length; i++)
+		{
+			if(buffer[start + i] != value[i])
+			{
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * @param lowerCaseValue must be lower case ASCII
+	 */
+	private static boolean containsIgnoreCase(byte[] buffer, int start, int end, byte[] lowerCaseValue)
+	{
+		search:
+		for (int i = start; i <= end - lowerCaseValue.length; i++)
+		{
+			for (int j = 0; j < lowerCaseValue.length; j++)
+			{
+				byte b = buffer[i + j];
+				if(b >= 'A' && b <= 'Z')
+				{
+					b += 'a' - 'A';
+				}
+				if(b != lowerCaseValue[j])
+				{
+					continue search;
+				}
+			}
+			return true;
+		}
+		return false;
+	}
+}
@@ -0,0 +1,25 @@
+package org.molgenis.calibratecadd.support;
+
+import java.io.Closeable;
+import java.io.File;
+
+/**
+ * An annotation stage that reads a VCF and streams the annotated VCF lines to the next stage, so the annotated file
+ * does not have to be written and read back. See SnpEffProcessAnnotator. For a test, any implementation that adds
+ * the expected INFO fields itself (e.g. a fixed ANN per variant) can take its place.
+ */
+public interface VcfAnnotator extends Closeable
+{
+	interface LineHandler
+	{
+		void handle(String line) throws Exception;
+	}
+
+	/**
+	 * Annotate a VCF and pass every line of the result to the handler, header lines included, in the order of the input
+	 * @param vcfFile plain or gzipped VCF
+	 * @param handler
+	 * @throws Exception
+	 */
+	void annotate(File vcfFile, LineHandler handler) throws Exception;
+}
@@ -0,0 +1,83 @@
+package org.molgenis.calibratecadd;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.util.List;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.molgenis.calibratecadd.support.SortedVcfWriter;
+import org.molgenis.calibratecadd.support.TestFolder;
+
+/**
+ * Runs the same variants through the tabix query per variant and through --batch, which must give the same output
+ */
+public class Step2_FixIndelNotationTest
+{
+	private static final String HEADER = "#CHROM\tPOS\tID\tREF\tALT\tQUAL\tFILTER\tINFO";
+
+	@Rule
+	public TestFolder folder = new TestFolder();
+
+	@Test
+	public void batchGivesSameOutputAsQueryPerVariant() throws Exception
+	{
+		File clinvar = folder.newFile("clinvar.vcf.gz");
+		SortedVcfWriter clinvarVcf = new SortedVcfWriter(clinvar);
+		clinvarVcf.addHeader("##fileformat=VCFv4.1");
+		clinvarVcf.addHeader(HEADER);
+		//deletion written one base before
+		clinvarVcf.add("1\t2000\trs222\tAT\tA\t.\t.\t.");
+		//insertion
+		clinvarVcf.add("1\t3000\trs333\tC\tCG\t.\t.\t.");
+		//long deletion that starts before the window of 5000, but overlaps it: not returned by a tabix query on POS
+		clinvarVcf.add("1\t4960\trs444\t" + repeat("A", 50) + "\tA\t.\t.\t.");
+		//same RS id, other chromosome
+		clinvarVcf.add("2\t6000\trs666\tCA\tC\t.\t.\t.");
+		//at the edge of the window
+		clinvarVcf.add("1\t7025\trs777\tGT\tG\t.\t.\t.");
+		clinvarVcf.close();
+
+		File input = folder.write("clinvar.patho.vcf",
+				"##fileformat=VCFv4.1",
+				HEADER,
+				"1\t1000\t111\tA\tG\t.\t.\tCLINVAR=a",
+				"1\t2001\t222\tT\t-\t.\t.\tCLINVAR=b",
+				"1\t3000\t333\t-\tG\t.\t.\tCLINVAR=c",
+				"1\t5000\t444\tA\t-\t.\t.\tCLINVAR=d",
+				"1\t5500\t-1\tA\t-\t.\t.\tCLINVAR=e",
+				"1\t6000\t666\tna\tT\t.\t.\tCLINVAR=f",
+				"1\t7000\t777\tT\t-\t.\t.\tCLINVAR=g");
+
+		File perVariant = new File(folder.getRoot(), "perVariant.vcf");
+		File batch = new File(folder.getRoot(), "batch.vcf");
+		Step2_FixIndelNotation.main(new String[] { input.getPath(), clinvar.getPath(), perVariant.getPath() });
+		Step2_FixIndelNotation.main(new String[] { input.getPath(), clinvar.getPath(), batch.getPath(), "--batch" });
+
+		List<String> perVariantLines = TestFolder.read(perVariant);
+		List<String> batchLines = TestFolder.read(batch);
+		assertEquals(perVariantLines, batchLines);
+
+		assertTrue(batchLines.contains("1\t1000\t111\tA\tG\t.\t.\tCLINVAR=a"));
+		assertTrue(batchLines.contains("1\t2000\t222\tAT\tA\t.\t.\tCLINVAR=b"));
+		assertTrue(batchLines.contains("1\t3000\t333\tC\tCG\t.\t.\tCLINVAR=c"));
+		assertTrue(batchLines.contains("1\t7025\t777\tGT\tG\t.\t.\tCLINVAR=g"));
+		for(String line : batchLines)
+		{
+			assertFalse(line, line.contains("CLINVAR=d") || line.contains("CLINVAR=e") || line.contains("CLINVAR=f"));
+		}
+	}
+
+	private static String repeat(String s, int times)
+	{
+		StringBuilder sb = new StringBuilder();
+		for(int i = 0; i < times; i++)
+		{
+			sb.append(s);
+		}
+		return sb.toString();
+	}
+}
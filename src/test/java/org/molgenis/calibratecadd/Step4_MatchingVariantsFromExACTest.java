@@ -0,0 +1,166 @@
+package org.molgenis.calibratecadd;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.File;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.molgenis.calibratecadd.support.AlleleRecord;
+import org.molgenis.calibratecadd.support.StubVcfAnnotator;
+import org.molgenis.calibratecadd.support.TestFolder;
+import org.molgenis.calibratecadd.support.VariantKey;
+
+/**
+ * Loads the output of step 2 through a stub annotation stage, and checks it against loading the same annotated records
+ * from a file as written by step 3
+ */
+public class Step4_MatchingVariantsFromExACTest
+{
+	@Rule
+	public TestFolder folder = new TestFolder();
+
+	@Test
+	public void annotatedWhileLoadingSameAsFromAnnotatedFile() throws Exception
+	{
+		File step2 = folder.write("clinvar.patho.fix.vcf",
+				"##fileformat=VCFv4.1",
+				"##INFO=<ID=CLINVAR,Number=1,Type=String,Description=\"ClinVar\">",
+				"#CHROM\tPOS\tID\tREF\tALT\tQUAL\tFILTER\tINFO",
+				"13\t32900000\t1\tA\tG\t.\t.\tCLINVAR=NM_000059|BRCA2|Pathogenic",
+				"2\t179400000\t2\tC\tT\t.\t.\tCLINVAR=NM_133378|TTN|Pathogenic",
+				"MT\t14000\t3\tG\tA\t.\t.\tCLINVAR=NC_012920|MT-ND6|Pathogenic",
+				"1\t1000\t4\tT\tTA\t.\t.\tCLINVAR=NM_1|GENEA|Pathogenic");
+
+		StubVcfAnnotator annotator = new StubVcfAnnotator();
+		annotator.add("13", 32900000, "A", "G", "G|missense_variant|MODERATE|BRCA2|ENSG00000139618|transcript");
+		//ClinVar gene is the second snpEff gene, so its impact is used
+		annotator.add("2", 179400000, "C", "T", "T|intron_variant|MODIFIER|OSBPL6|ENSG1|transcript,T|stop_gained|HIGH|TTN|ENSG2|transcript");
+		annotator.add("MT", 14000, "G", "A", "A|intergenic_region|MODIFIER||||intergenic_region");
+		annotator.add("1", 1000, "T", "TA", "TA|frameshift_variant|HIGH|GENEB|ENSG3|transcript");
+
+		Step4_MatchingVariantsFromExAC streamed = new Step4_MatchingVariantsFromExAC();
+		streamed.loadClinvarPatho(step2.getPath(), annotator);
+
+		File step3 = folder.newFile("clinvar.patho.fix.snpeff.vcf");
+		final PrintWriter annotated = new PrintWriter(step3, "UTF-8");
+		annotator.annotate(step2, line -> annotated.println(line));
+		annotated.close();
+		annotator.close();
+		Step4_MatchingVariantsFromExAC fromFile = new Step4_MatchingVariantsFromExAC();
+		fromFile.loadClinvarPatho(step3.getPath(), null);
+
+		Map<String, List<String>> genes = toStrings(streamed.clinvarPatho);
+		assertEquals(toStrings(fromFile.clinvarPatho), genes);
+		assertEquals(fromFile.variantToNonZeroSnpEffGeneIndex.keys(), streamed.variantToNonZeroSnpEffGeneIndex.keys());
+
+		Map<String, List<String>> expected = new TreeMap<String, List<String>>();
+		expected.put("BRCA2", single("13_32900000_A_G MODERATE"));
+		expected.put("TTN", single("2_179400000_C_T HIGH"));
+		expected.put("MT-ND6", single("MT_14000_G_A MODIFIER"));
+		expected.put("GENEA_GENEB", single("1_1000_T_TA HIGH"));
+		assertEquals(expected, genes);
+		assertEquals(Integer.valueOf(1), streamed.variantToNonZeroSnpEffGeneIndex.get(VariantKey.of("2", 179400000, "C", "T")));
+	}
+
+	@Test
+	public void variantsWrittenInPositionOrder() throws Exception
+	{
+		Step4_MatchingVariantsFromExAC step4 = new Step4_MatchingVariantsFromExAC();
+		step4.clinvarPatho.put("AGENE", records(allele("X", 500), allele("2", 300)));
+		step4.matchedExACvariants.put("AGENE", records(allele("2", 100), allele("10", 5)));
+		step4.clinvarPatho.put("BGENE", records(allele("2", 100)));
+		step4.matchedExACvariants.put("BGENE", records(allele("1", 7000)));
+		//not matched to ExAC, so only in the gene info
+		step4.clinvarPatho.put("CGENE", records(allele("1", 1)));
+		step4.geneInfo.put("AGENE", "C1");
+		step4.geneInfo.put("BGENE", "C1");
+		step4.geneInfo.put("CGENE", "N1");
+
+		String prefix = "clinvar.patho.fix.snpeff.exac";
+		step4.printVariantsToFile(new File(folder.getRoot(), prefix).getPath());
+
+		assertEquals(Arrays.asList("gene\tchr\tpos\tref\talt\tgroup",
+				"BGENE\t1\t7000\tA\tG\tPOPULATION",
+				"AGENE\t2\t100\tA\tG\tPOPULATION",
+				"BGENE\t2\t100\tA\tG\tPATHOGENIC",
+				"AGENE\t2\t300\tA\tG\tPATHOGENIC",
+				"AGENE\t10\t5\tA\tG\tPOPULATION",
+				"AGENE\tX\t500\tA\tG\tPATHOGENIC"), folder.read(prefix + ".variants.tsv"));
+		assertEquals(Arrays.asList("1\t7000\t.\tA\tG", "2\t100\t.\tA\tG", "2\t100\t.\tA\tG", "2\t300\t.\tA\tG", "10\t5\t.\tA\tG", "X\t500\t.\tA\tG"),
+				folder.read(prefix + ".cadd.tsv"));
+		assertEquals(Arrays.asList("AGENE\tC1", "BGENE\tC1", "CGENE\tN1"), folder.read(prefix + ".genes.tsv").subList(1, 4));
+
+		//so step 6 can merge it with CADD scores in the same order, without falling back to a hash join
+		List<String> cadd = new ArrayList<String>();
+		cadd.add("#CHROM\tPOS\tREF\tALT\tRawScore\tPHRED");
+		for(String line : folder.read(prefix + ".cadd.tsv"))
+		{
+			String[] split = line.split("\t");
+			cadd.add(split[0] + "\t" + split[1] + "\t" + split[3] + "\t" + split[4] + "\t0.5\t" + split[1]);
+		}
+		File caddFile = TestFolder.write(new File(folder.getRoot(), prefix + ".cadd.scored.tsv"), cadd);
+		String withCadd = prefix + ".withcadd.tsv";
+		Step6_PrepForAnalysis.main(new String[] { caddFile.getPath(), new File(folder.getRoot(), prefix + ".variants.tsv").getPath(),
+				new File(folder.getRoot(), withCadd).getPath(), "--join", "merge" });
+		assertEquals(7, folder.read(withCadd).size());
+		assertEquals("AGENE\tX\t500\tA\tG\tPATHOGENIC\t500.0", folder.read(withCadd).get(6));
+	}
+
+	@Test
+	public void chromosomesWrittenAsInTheInput() throws Exception
+	{
+		//step 5 and 6 join on this text, so it must stay the same as in the ExAC and ClinVar VCFs
+		Step4_MatchingVariantsFromExAC step4 = new Step4_MatchingVariantsFromExAC();
+		step4.clinvarPatho.put("AGENE", records(allele("chr2", 300), allele("M", 10)));
+		step4.matchedExACvariants.put("AGENE", records(allele("chr2", 100)));
+		step4.geneInfo.put("AGENE", "C1");
+
+		String prefix = "clinvar.patho.fix.snpeff.exac";
+		step4.printVariantsToFile(new File(folder.getRoot(), prefix).getPath());
+
+		assertEquals(Arrays.asList("gene\tchr\tpos\tref\talt\tgroup",
+				"AGENE\tchr2\t100\tA\tG\tPOPULATION",
+				"AGENE\tchr2\t300\tA\tG\tPATHOGENIC",
+				"AGENE\tM\t10\tA\tG\tPATHOGENIC"), folder.read(prefix + ".variants.tsv"));
+		assertEquals(Arrays.asList("chr2\t100\t.\tA\tG", "chr2\t300\t.\tA\tG", "M\t10\t.\tA\tG"), folder.read(prefix + ".cadd.tsv"));
+	}
+
+	private static AlleleRecord allele(String chrom, int pos)
+	{
+		return new AlleleRecord(chrom, pos, "A", "G", 0, 0, null);
+	}
+
+	private static List<AlleleRecord> records(AlleleRecord... alleles)
+	{
+		return new ArrayList<AlleleRecord>(Arrays.asList(alleles));
+	}
+
+	private static Map<String, List<String>> toStrings(Map<String, List<AlleleRecord>> clinvarPatho)
+	{
+		Map<String, List<String>> result = new TreeMap<String, List<String>>();
+		for(Map.Entry<String, List<AlleleRecord>> gene : clinvarPatho.entrySet())
+		{
+			List<String> variants = new ArrayList<String>();
+			for(AlleleRecord variant : gene.getValue())
+			{
+				variants.add(variant + " " + variant.getImpactName());
+			}
+			result.put(gene.getKey(), variants);
+		}
+		return result;
+	}
+
+	private static List<String> single(String variant)
+	{
+		List<String> list = new ArrayList<String>();
+		list.add(variant);
+		return list;
+	}
+}
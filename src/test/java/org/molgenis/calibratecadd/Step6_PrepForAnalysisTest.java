@@ -0,0 +1,151 @@
+package org.molgenis.calibratecadd;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.molgenis.calibratecadd.support.TestFolder;
+
+/**
+ * Joins the same variants and CADD scores by merge, by hash, and by merge falling back to hash
+ */
+public class Step6_PrepForAnalysisTest
+{
+	private static final String INFO_HEADER = "gene\tchr\tpos\tref\talt\tgroup";
+
+	@Rule
+	public TestFolder folder = new TestFolder();
+
+	private File cadd;
+
+	@Before
+	public void writeCadd() throws IOException
+	{
+		cadd = folder.write("cadd.tsv",
+				"## CADD v1.3",
+				"#CHROM\tPOS\tREF\tALT\tRawScore\tPHRED",
+				"1\t100\tA\tG\t1.0\t10.0",
+				"1\t100\tA\tT\t1.5\t15.0",
+				"1\t2000\tC\tT\t2.0\t20.0",
+				"2\t50\tG\tGA\t3.0\t30.0",
+				"10\t70\tT\tC\t4.0\t40.0",
+				"X\t900\tA\tC\t5.0\t5.5",
+				"MT\t10\tG\tA\t6.0\t6.5");
+	}
+
+	private File join(File info, String join) throws Exception
+	{
+		File output = new File(folder.getRoot(), info.getName() + "." + join + ".withcadd.tsv");
+		Step6_PrepForAnalysis.main(new String[] { cadd.getPath(), info.getPath(), output.getPath(), "--join", join });
+		return output;
+	}
+
+	@Test
+	public void mergeSameAsHash() throws Exception
+	{
+		File info = folder.write("sorted.variants.tsv", INFO_HEADER,
+				"GENEA\t1\t100\tA\tG\tPATHOGENIC",
+				"GENEB\t1\t100\tA\tG\tPATHOGENIC",
+				"GENEA\t1\t100\tA\tT\tPOPULATION",
+				"GENEA\t1\t150\tA\tT\tPOPULATION",
+				"GENE/C\t1\t2000\tC\tT\tPATHOGENIC",
+				"GENED\t2\t50\tG\tGA\tPOPULATION",
+				"GENEE\t10\t70\tT\tC\tPATHOGENIC",
+				"GENEF\tX\t900\tA\tC\tPOPULATION",
+				"GENEF\tX\t900\tA\tG\tPOPULATION",
+				"MT-ND1\tMT\t10\tG\tA\tPATHOGENIC");
+
+		File merged = join(info, "merge");
+		File hashed = join(info, "hash");
+		assertEquals(TestFolder.read(hashed), TestFolder.read(merged));
+		assertEquals(TestFolder.read(new File(hashed.getPath() + ".unmatched")), TestFolder.read(new File(merged.getPath() + ".unmatched")));
+
+		List<String> lines = TestFolder.read(merged);
+		assertEquals(9, lines.size());
+		assertEquals("GENEB\t1\t100\tA\tG\tPATHOGENIC\t10.0", lines.get(2));
+		assertEquals("GENE_C\t1\t2000\tC\tT\tPATHOGENIC\t20.0", lines.get(4));
+		assertEquals(Arrays.asList(INFO_HEADER, "GENEA\t1\t150\tA\tT\tPOPULATION", "GENEF\tX\t900\tA\tG\tPOPULATION"),
+				TestFolder.read(new File(merged.getPath() + ".unmatched")));
+	}
+
+	@Test
+	public void mergeSameAsHashWithChrPrefix() throws Exception
+	{
+		//chromosomes match on their code, with or without 'chr', and M is MT
+		File info = folder.write("chr.variants.tsv", INFO_HEADER,
+				"GENEA\tchr1\t100\tA\tG\tPATHOGENIC",
+				"GENEB\t1\t2000\tC\tT\tPATHOGENIC",
+				"GENED\tchr2\t50\tG\tGA\tPOPULATION",
+				"GENEE\tchr10\t70\tT\tC\tPATHOGENIC",
+				"GENEF\tchrX\t900\tA\tC\tPOPULATION",
+				"MT-ND1\tchrM\t10\tG\tA\tPATHOGENIC");
+
+		File merged = join(info, "merge");
+		File hashed = join(info, "hash");
+		assertEquals(TestFolder.read(hashed), TestFolder.read(merged));
+		assertEquals(TestFolder.read(new File(hashed.getPath() + ".unmatched")), TestFolder.read(new File(merged.getPath() + ".unmatched")));
+
+		List<String> lines = TestFolder.read(merged);
+		assertEquals(7, lines.size());
+		assertEquals("GENEA\tchr1\t100\tA\tG\tPATHOGENIC\t10.0", lines.get(1));
+		assertEquals("MT-ND1\tchrM\t10\tG\tA\tPATHOGENIC\t6.5", lines.get(6));
+	}
+
+	@Test
+	public void autoFallsBackToHashForUnsortedInfo() throws Exception
+	{
+		//gene order, as step 4 used to write it
+		File info = folder.write("genes.variants.tsv", INFO_HEADER,
+				"GENEA\t10\t70\tT\tC\tPATHOGENIC",
+				"GENEB\t1\t100\tA\tG\tPATHOGENIC",
+				"GENEC\tMT\t10\tG\tA\tPOPULATION",
+				"GENED\t2\t50\tG\tGA\tPOPULATION",
+				"GENED\t2\t60\tG\tC\tPOPULATION");
+
+		try
+		{
+			join(info, "merge");
+			fail("expected merge to refuse an unsorted info file");
+		}
+		catch(Exception e)
+		{
+			assertTrue(e.getMessage(), e.getMessage().contains("is not sorted"));
+		}
+
+		File auto = join(info, "auto");
+		File hashed = join(info, "hash");
+		assertEquals(TestFolder.read(hashed), TestFolder.read(auto));
+		assertEquals(TestFolder.read(new File(hashed.getPath() + ".unmatched")), TestFolder.read(new File(auto.getPath() + ".unmatched")));
+		assertEquals(5, TestFolder.read(auto).size());
+		assertEquals("GENEA\t10\t70\tT\tC\tPATHOGENIC\t40.0", TestFolder.read(auto).get(1));
+	}
+
+	@Test
+	public void autoFallsBackToHashForUnsortedCadd() throws Exception
+	{
+		cadd = folder.write("unsorted.cadd.tsv",
+				"#CHROM\tPOS\tREF\tALT\tRawScore\tPHRED",
+				"2\t50\tG\tGA\t3.0\t30.0",
+				"1\t100\tA\tG\t1.0\t10.0");
+		File info = folder.write("sorted.variants.tsv", INFO_HEADER,
+				"GENEB\t1\t100\tA\tG\tPATHOGENIC",
+				"GENED\t2\t50\tG\tGA\tPOPULATION");
+
+		List<String> lines = TestFolder.read(join(info, "auto"));
+		assertEquals(Arrays.asList("gene\tchr\tpos\tref\talt\tgroup\tcadd", "GENEB\t1\t100\tA\tG\tPATHOGENIC\t10.0", "GENED\t2\t50\tG\tGA\tPOPULATION\t30.0"), lines);
+	}
+
+	@Test(expected = Exception.class)
+	public void unknownJoin() throws Exception
+	{
+		join(folder.write("info.tsv", INFO_HEADER), "sort");
+	}
+}
@@ -0,0 +1,160 @@
+package org.molgenis.calibratecadd;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.apache.commons.lang3.StringUtils;
+import org.junit.Rule;
+import org.junit.Test;
+import org.molgenis.calibratecadd.support.TestFolder;
+
+public class Step7_BasicResultsTest
+{
+	private static final String GENES_HEADER = "gene\tcategory\tinfo";
+	private static final String VARIANTS_HEADER = "gene\tchr\tpos\tref\talt\tgroup\tcadd";
+
+	@Rule
+	public TestFolder folder = new TestFolder();
+
+	/**
+	 * Gene info line as written by step 4, with the category, region, counts, MAF threshold and impact percentages
+	 */
+	static String geneInfo(String gene, String category, String maf)
+	{
+		return gene + "\t" + category + "\t1\t100\t200\t5\t5\t0\t0\t" + maf + StringUtils.repeat("\t25.0", 12);
+	}
+
+	@Test
+	public void loadsScoresPerGeneAndGroup() throws Exception
+	{
+		File genes = folder.write("genes.tsv", GENES_HEADER,
+				geneInfo("GENEA", "Cx", "1.0E-4"),
+				geneInfo("GENEB", "Cx", ""),
+				geneInfo("GENEC", "N1", ""));
+		File variants = folder.write("withcadd.tsv", VARIANTS_HEADER,
+				"GENEA\t1\t100\tA\tT\tPATHOGENIC\t28.0",
+				"GENEA\t1\t110\tA\tT\tPOPULATION\t1.5",
+				"GENEA\t1\t120\tAC\tA\tPATHOGENIC\t35\textra",
+				"GENEB\t2\t300\tG\tC\tPOPULATION\t-0.25");
+		Step7_BasicResults step7 = new Step7_BasicResults(genes.getPath(), variants.getPath(), new File(folder.getRoot(), "genesumm.tsv").getPath(), 1);
+
+		assertArrayEquals(new double[] { 28.0, 35.0 }, step7.geneToCADD.get("GENEA").patho.toArray(), 0);
+		assertArrayEquals(new double[] { 1.5 }, step7.geneToCADD.get("GENEA").popul.toArray(), 0);
+		assertTrue(step7.geneToCADD.get("GENEB").patho.isEmpty());
+		assertArrayEquals(new double[] { -0.25 }, step7.geneToCADD.get("GENEB").popul.toArray(), 0);
+		assertNull(step7.geneToCADD.get("GENEC"));
+
+		List<String> lines = folder.read("genesumm.tsv");
+		assertEquals(4, lines.size());
+		assertTrue(lines.get(1), lines.get(1).startsWith("GENEA\tC3\t"));
+		assertTrue(lines.get(2), lines.get(2).startsWith("GENEB\tN3\t"));
+		assertTrue(lines.get(3), lines.get(3).startsWith("GENEC\tN1\t"));
+	}
+
+	@Test
+	public void unknownGroup() throws Exception
+	{
+		File genes = folder.write("genes.tsv", GENES_HEADER, geneInfo("GENEA", "Cx", ""));
+		File variants = folder.write("withcadd.tsv", VARIANTS_HEADER, "GENEA\t1\t100\tA\tT\tBENIGN\t28.0");
+		try
+		{
+			new Step7_BasicResults(genes.getPath(), variants.getPath(), new File(folder.getRoot(), "genesumm.tsv").getPath(), 1);
+			fail("expected an exception");
+		}
+		catch(Exception e)
+		{
+			assertEquals("unknown group BENIGN", e.getMessage());
+		}
+	}
+
+	@Test
+	public void skipsGenesWithoutGeneInfo() throws Exception
+	{
+		//as before, lines of genes that are not reported are not checked
+		File genes = folder.write("genes.tsv", GENES_HEADER, geneInfo("GENEA", "Cx", ""));
+		File variants = folder.write("withcadd.tsv", VARIANTS_HEADER,
+				"GENEX	1	100	A	T	BENIGN	28.0",
+				"GENEY	1	100",
+				"GENEA	1	100	A	T	PATHOGENIC	28.0");
+		Step7_BasicResults step7 = new Step7_BasicResults(genes.getPath(), variants.getPath(), new File(folder.getRoot(), "genesumm.tsv").getPath(), 1);
+
+		assertArrayEquals(new double[] { 28.0 }, step7.geneToCADD.get("GENEA").patho.toArray(), 0);
+		assertNull(step7.geneToCADD.get("GENEX"));
+		assertNull(step7.geneToCADD.get("GENEY"));
+		assertEquals(2, folder.read("genesumm.tsv").size());
+	}
+
+	@Test
+	public void missingCaddColumn() throws Exception
+	{
+		File genes = folder.write("genes.tsv", GENES_HEADER, geneInfo("GENEA", "Cx", ""));
+		File variants = folder.write("withcadd.tsv", VARIANTS_HEADER, "GENEA\t1\t100\tA\tT\tPATHOGENIC");
+		try
+		{
+			new Step7_BasicResults(genes.getPath(), variants.getPath(), new File(folder.getRoot(), "genesumm.tsv").getPath(), 1);
+			fail("expected an exception");
+		}
+		catch(Exception e)
+		{
+			assertTrue(e.getMessage(), e.getMessage().startsWith("expected gene, chr, pos, ref, alt, group and cadd columns"));
+		}
+	}
+
+	@Test
+	public void sameOutputOnAnyNumberOfThreads() throws Exception
+	{
+		//genes without scores, with one group empty, with small groups that get permuted, and with large groups
+		Random random = new Random(7);
+		List<String> genes = new ArrayList<String>();
+		List<String> variants = new ArrayList<String>();
+		genes.add(GENES_HEADER);
+		variants.add(VARIANTS_HEADER);
+		for(int i = 0; i < 200; i++)
+		{
+			String gene = "GENE" + i;
+			int kind = i % 4;
+			genes.add(geneInfo(gene, kind == 0 ? "N1" : "Cx", random.nextBoolean() ? "" : Double.toString(random.nextInt(100) / 1e5)));
+			if(kind == 0)
+			{
+				continue;
+			}
+			int nrOfPatho = kind == 1 ? 0 : kind == 2 ? 1 + random.nextInt(4) : 5 + random.nextInt(40);
+			int nrOfPopul = kind == 1 ? 1 + random.nextInt(5) : kind == 2 ? 1 + random.nextInt(6) : 5 + random.nextInt(40);
+			double shift = random.nextDouble() * 15;
+			for(int j = 0; j < nrOfPatho; j++)
+			{
+				variants.add(gene + "\t1\t" + (100 + j) + "\tA\tT\tPATHOGENIC\t" + Math.round((10 + shift + random.nextGaussian() * 5) * 100) / 100.0);
+			}
+			for(int j = 0; j < nrOfPopul; j++)
+			{
+				variants.add(gene + "\t1\t" + (1000 + j) + "\tA\tT\tPOPULATION\t" + Math.round((10 + random.nextGaussian() * 5) * 100) / 100.0);
+			}
+		}
+		File genesFile = TestFolder.write(new File(folder.getRoot(), "genes.tsv"), genes);
+		File variantsFile = TestFolder.write(new File(folder.getRoot(), "withcadd.tsv"), variants);
+
+		File oneThreadFile = new File(folder.getRoot(), "genesumm.1.tsv");
+		File fourThreadsFile = new File(folder.getRoot(), "genesumm.4.tsv");
+		Step7_BasicResults oneThread = new Step7_BasicResults(genesFile.getPath(), variantsFile.getPath(), oneThreadFile.getPath(), 1, 1000, 200);
+		Step7_BasicResults fourThreads = new Step7_BasicResults(genesFile.getPath(), variantsFile.getPath(), fourThreadsFile.getPath(), 4, 1000, 200);
+
+		assertArrayEquals(Files.readAllBytes(oneThreadFile.toPath()), Files.readAllBytes(fourThreadsFile.toPath()));
+		assertEquals(oneThread.nrOfGenesPathGtPopPval_5perc, fourThreads.nrOfGenesPathGtPopPval_5perc);
+		assertEquals(oneThread.nrOfGenesPathGtPopPval_1perc, fourThreads.nrOfGenesPathGtPopPval_1perc);
+		assertEquals(oneThread.geneToInfo, fourThreads.geneToInfo);
+		assertEquals(201, TestFolder.read(oneThreadFile).size());
+
+		//the counters did count something, so equal counters mean something
+		assertTrue(oneThread.nrOfGenesPathGtPopPval_5perc > 0);
+		assertTrue(oneThread.nrOfGenesPathGtPopPval_1perc > 0);
+	}
+}
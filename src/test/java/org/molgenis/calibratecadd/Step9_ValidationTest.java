@@ -0,0 +1,163 @@
+package org.molgenis.calibratecadd;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.molgenis.calibratecadd.Step9_Validation.PredictionSources;
+import org.molgenis.calibratecadd.Step9_Validation.ToolNames;
+import org.molgenis.calibratecadd.Step9_Validation.ToolResults;
+import org.molgenis.calibratecadd.support.JudgedVariant;
+import org.molgenis.calibratecadd.support.TestFolder;
+import org.molgenis.data.Entity;
+
+/**
+ * Validates several tools on one gold standard file in one pass, and checks it against validating them one by one
+ */
+public class Step9_ValidationTest
+{
+	private static final List<ToolNames> TOOLS = Arrays.asList(ToolNames.PONP2, ToolNames.PROVEAN, ToolNames.SIFT, ToolNames.CADD);
+
+	@Rule
+	public TestFolder folder = new TestFolder();
+
+	private File predictionTools;
+	private File mvl;
+
+	@Before
+	public void writeFiles() throws IOException
+	{
+		predictionTools = folder.newFolder("predictiontools");
+		//no calibrated genes, only the header
+		TestFolder.write(new File(predictionTools, "GAVIN_calibrations_r0.1.tsv"), "Gene\tCategory\tChr\tStart\tEnd");
+		TestFolder.write(new File(predictionTools, "PON-P2.tsv"),
+				"#Query\tMappedGene\tMappedVariation\tProbabilityOfPathogenicity\tStandardError\tPrediction\tAnnotations",
+				"12:32949167,T,C\tENSG1\tI789V\t0.152\t0.051\tNeutral\t",
+				"2:220285283,C,G\tENSG2\tP268A\t0.897\t0.105\tPathogenic\t",
+				"3:1000,G,A\tENSG3\tA1T\t0.9\t0.1\tPathogenic\t",
+				"18:28660261,C,T\tENSG4\tA441T\t0.325\t0.130\tUnknown\t");
+		TestFolder.write(new File(predictionTools, "PROVEAN_SIFT.tsv"),
+				"INPUT\tPROVEAN PREDICTION (cutoff=-2.5)\tSIFT PREDICTION (cutoff=0.05)",
+				"12,32949167,T,C\tNeutral\tDamaging",
+				"2,220285283,C,G\tDeleterious\tDamaging",
+				"1,154574443,C,T\tDeleterious\tTolerated",
+				"3,1000,G,A\tNeutral\tTolerated");
+
+		mvl = TestFolder.write(folder.newFile("GoldStandard.vcf"),
+				"##fileformat=VCFv4.1",
+				"#CHROM\tPOS\tID\tREF\tALT\tQUAL\tFILTER\tINFO",
+				"12\t32949167\tGENEA:c.1T>C\tT\tC\t.\t.\tMVL=Cardio;CLSF=B;CADD_SCALED=5.2;EXAC_AF=0.01;ANN=C|missense_variant|MODERATE|GENEA|ENSG1|transcript",
+				//two genes, each gets a judgment, of which one is kept
+				"2\t220285283\t.\tC\tG\t.\t.\tMVL=Cardio;CLSF=P;CADD_SCALED=25.0;ANN=G|missense_variant|MODERATE|GENEB|ENSG2|transcript,G|upstream_gene_variant|MODIFIER|GENEC|ENSG5|transcript",
+				//no CADD score
+				"18\t28660261\t.\tC\tT\t.\t.\tMVL=Dystonia;CLSF=LP;ANN=T|stop_gained|HIGH|GENED|ENSG4|transcript",
+				"1\t154574443\t.\tC\tT\t.\t.\tMVL=Dystonia;CLSF=LB;CADD_SCALED=12.0;EXAC_AF=0.2;ANN=T|synonymous_variant|LOW|GENEE|ENSG6|transcript",
+				//gene in the ID that is not annotated
+				"3\t1000\tGENEX:c.1G>A\tG\tA\t.\t.\tMVL=Cardio;CLSF=LP;CADD_SCALED=30.0;ANN=A|missense_variant|MODERATE|GENEF|ENSG3|transcript",
+				"3\t1000\t.\tG\tA\t.\t.\tMVL=Dystonia;CLSF=P;CADD_SCALED=30.0;ANN=A|missense_variant|MODERATE|GENEF|ENSG3|transcript",
+				"5\t500\t.\tA\tG\t.\t.\tMVL=Cardio;CLSF=V;CADD_SCALED=15.0;ANN=G|missense_variant|MODERATE|GENEG|ENSG7|transcript");
+	}
+
+	@Test
+	public void onePassSameAsOneToolAtATime() throws Exception
+	{
+		File onePassOut = new File(folder.getRoot(), "onepass.R");
+		onePassOut.createNewFile();
+		Step9_Validation.validate(new PredictionSources(predictionTools.getPath()), mvl.getPath(), TOOLS, onePassOut.getPath(), null);
+
+		File perToolOut = new File(folder.getRoot(), "pertool.R");
+		perToolOut.createNewFile();
+		for(ToolNames tool : TOOLS)
+		{
+			new Step9_Validation(predictionTools.getPath(), mvl.getPath(), tool.toString(), perToolOut.getPath());
+		}
+
+		List<String> onePass = TestFolder.read(onePassOut);
+		assertEquals(TOOLS.size(), onePass.size());
+		assertEquals(TestFolder.read(perToolOut), onePass);
+		for(int i = 0; i < TOOLS.size(); i++)
+		{
+			assertTrue(onePass.get(i), onePass.get(i).startsWith("row <- data.frame(Tool = \"" + TOOLS.get(i) + "\", Data = \"GoldStandard.vcf\""));
+		}
+	}
+
+	@Test
+	public void sameJudgmentsAsOneToolAtATime() throws Exception
+	{
+		List<ToolResults> results = Step9_Validation.judge(new PredictionSources(predictionTools.getPath()), mvl, TOOLS, null);
+		assertEquals(TOOLS.size(), results.size());
+
+		File out = folder.newFile("pertool.R");
+		for(int t = 0; t < TOOLS.size(); t++)
+		{
+			ToolResults onePass = results.get(t);
+			assertEquals(TOOLS.get(t), onePass.mode);
+			Step9_Validation perTool = new Step9_Validation(predictionTools.getPath(), mvl.getPath(), TOOLS.get(t).toString(), out.getPath());
+			assertEquals(perTool.judgmentsInCalibratedGenes, onePass.judgmentsInCalibratedGenes);
+			assertEquals(perTool.judgedMVLVariants.keySet(), onePass.judgedMVLVariants.keySet());
+			for(Map.Entry<String, List<JudgedVariant>> mvlVariants : perTool.judgedMVLVariants.entrySet())
+			{
+				List<JudgedVariant> expected = mvlVariants.getValue();
+				List<JudgedVariant> actual = onePass.judgedMVLVariants.get(mvlVariants.getKey());
+				assertEquals(expected.size(), actual.size());
+				for(int i = 0; i < expected.size(); i++)
+				{
+					assertSameJudgedVariant(expected.get(i), actual.get(i));
+				}
+			}
+		}
+
+		//the tools share the record of each variant, but each keeps its own judgment of it
+		assertEquals(4, results.get(0).judgedMVLVariants.get("Cardio").size());
+		assertEquals(3, results.get(0).judgedMVLVariants.get("Dystonia").size());
+		for(String mvlName : Arrays.asList("Cardio", "Dystonia"))
+		{
+			for(int i = 0; i < results.get(0).judgedMVLVariants.get(mvlName).size(); i++)
+			{
+				Entity record = results.get(0).judgedMVLVariants.get(mvlName).get(i).getE();
+				for(int t = 1; t < TOOLS.size(); t++)
+				{
+					JudgedVariant other = results.get(t).judgedMVLVariants.get(mvlName).get(i);
+					assertSame(record, other.getE());
+					assertNotSame(results.get(0).judgedMVLVariants.get(mvlName).get(i).getJudgment(), other.getJudgment());
+				}
+			}
+		}
+		assertEquals(Arrays.asList("PONP2 result 'Neutral'", "PROVEAN result 'Neutral'", "SIFT result 'Damaging'", "CADD score <= 15"), reasons(results, "Cardio", 0));
+		assertEquals(Arrays.asList("PONP2 result 'Pathogenic'", "PROVEAN result 'Deleterious'", "SIFT result 'Damaging'", "CADD score > 15"), reasons(results, "Cardio", 1));
+		assertEquals(Arrays.asList("Bad data!", "Bad data!", "Bad data!", "Bad data!"), reasons(results, "Cardio", 2));
+		assertEquals(Arrays.asList("PON-P2 'unknown'", "No PROVEAN result", "No SIFT result", "CADD score not available"), reasons(results, "Dystonia", 0));
+		assertEquals(Arrays.asList("No PON-P2 result", "PROVEAN result 'Deleterious'", "SIFT result 'Tolerated'", "CADD score <= 15"), reasons(results, "Dystonia", 1));
+	}
+
+	private static List<String> reasons(List<ToolResults> results, String mvlName, int variant)
+	{
+		String[] reasons = new String[results.size()];
+		for(int t = 0; t < results.size(); t++)
+		{
+			reasons[t] = results.get(t).judgedMVLVariants.get(mvlName).get(variant).getJudgment().getReason();
+		}
+		return Arrays.asList(reasons);
+	}
+
+	private static void assertSameJudgedVariant(JudgedVariant expected, JudgedVariant actual)
+	{
+		assertEquals(expected.printVariant(), actual.printVariant());
+		assertEquals(expected.getExpertClassification(), actual.getExpertClassification());
+		assertEquals(expected.getJudgment().getClassification(), actual.getJudgment().getClassification());
+		assertEquals(expected.getJudgment().getConfidence(), actual.getJudgment().getConfidence());
+		assertEquals(expected.getJudgment().getReason(), actual.getJudgment().getReason());
+		assertEquals(expected.getE().getString("CLSF"), actual.getE().getString("CLSF"));
+		assertEquals(expected.getE().getString("CADD_SCALED"), actual.getE().getString("CADD_SCALED"));
+	}
+}
@@ -0,0 +1,232 @@
+package org.molgenis.calibratecadd.support;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+
+/**
+ * Runs CADDServiceClient against a CADDStandInServer on a free local port
+ */
+public class CADDServiceClientTest
+{
+	private static final int NR_OF_VARIANTS = 100;
+	private static final int CHUNK_VARIANTS = 7;
+	private static final int NR_OF_CHUNKS = (NR_OF_VARIANTS + CHUNK_VARIANTS - 1) / CHUNK_VARIANTS;
+
+	@Rule
+	public TestFolder folder = new TestFolder();
+
+	private List<CADDStandInServer> servers = new ArrayList<CADDStandInServer>();
+	private File variants;
+	private List<String> variantLines = new ArrayList<String>();
+
+	@Before
+	public void writeVariants() throws IOException
+	{
+		//not sorted, so input order can be told apart from position order
+		for(int i = 0; i < NR_OF_VARIANTS; i++)
+		{
+			variantLines.add((1 + (i * 7) % 22) + "\t" + (1000000 - i * 137) + "\t.\t" + (i % 10 == 0 ? "ACGT" : "A") + "\t" + (i % 2 == 0 ? "G" : "T"));
+		}
+		List<String> lines = new ArrayList<String>();
+		lines.add("#CHROM\tPOS\tID\tREF\tALT");
+		lines.addAll(variantLines);
+		variants = TestFolder.write(folder.newFile("variants.tsv"), lines);
+	}
+
+	@After
+	public void stopServers()
+	{
+		for(CADDStandInServer server : servers)
+		{
+			server.close();
+		}
+	}
+
+	private CADDStandInServer startServer(int failEvery, int failStatus) throws IOException
+	{
+		CADDStandInServer server = new CADDStandInServer(0, failEvery, failStatus);
+		servers.add(server);
+		return server;
+	}
+
+	private static CADDServiceClient client(CADDStandInServer server, int concurrency, int maxRetries)
+	{
+		return new CADDServiceClient(server.getUrl(), concurrency, CHUNK_VARIANTS, 1 << 20, maxRetries, 1);
+	}
+
+	private static int nrOfChunkFiles(File checkpointDir)
+	{
+		return checkpointDir.listFiles((dir, name) -> name.startsWith("chunk-") && name.endsWith(".tsv")).length;
+	}
+
+	/**
+	 * Output lines without the header, which names the service URL
+	 */
+	private static List<String> results(File output) throws IOException
+	{
+		List<String> lines = TestFolder.read(output);
+		return lines.subList(2, lines.size());
+	}
+
+	@Test
+	public void chunksAndMergesInInputOrder() throws Exception
+	{
+		CADDStandInServer server = startServer(0, 503);
+		File output = new File(folder.getRoot(), "scores.tsv");
+		File checkpoint = new File(folder.getRoot(), "chunks");
+
+		assertEquals(NR_OF_VARIANTS, client(server, 4, 0).score(variants, output, checkpoint));
+		assertEquals(NR_OF_CHUNKS, server.getNrOfRequests());
+		assertEquals(NR_OF_CHUNKS, nrOfChunkFiles(checkpoint));
+
+		List<String> results = results(output);
+		assertEquals(NR_OF_VARIANTS, results.size());
+		for(int i = 0; i < NR_OF_VARIANTS; i++)
+		{
+			String[] variant = variantLines.get(i).split("\t");
+			String[] result = results.get(i).split("\t");
+			assertEquals(variant[0] + "_" + variant[1] + "_" + variant[3] + "_" + variant[4], result[0] + "_" + result[1] + "_" + result[2] + "_" + result[3]);
+		}
+
+		//one chunk per request gives the same scores
+		File singleOutput = new File(folder.getRoot(), "single.tsv");
+		new CADDServiceClient(server.getUrl(), 1, NR_OF_VARIANTS, 1 << 20, 0, 1).score(variants, singleOutput, new File(folder.getRoot(), "single"));
+		assertEquals(results, results(singleOutput));
+	}
+
+	@Test
+	public void chunksAreBoundedInBytes() throws Exception
+	{
+		CADDStandInServer server = startServer(0, 503);
+		File checkpoint = new File(folder.getRoot(), "chunks");
+		//every line is 15 or 18 bytes, so at most 3 fit in 60
+		new CADDServiceClient(server.getUrl(), 2, NR_OF_VARIANTS, 60, 0, 1).score(variants, new File(folder.getRoot(), "scores.tsv"), checkpoint);
+		int nrOfChunks = nrOfChunkFiles(checkpoint);
+		assertEquals(nrOfChunks, server.getNrOfRequests());
+		assertTrue(nrOfChunks >= NR_OF_VARIANTS / 3);
+		int nrOfVariants = 0;
+		for(File chunk : checkpoint.listFiles())
+		{
+			//header: ## chunk <number> <lines> <crc>
+			int lines = Integer.parseInt(TestFolder.read(chunk).get(0).split(" ")[3]);
+			assertTrue(lines >= 1 && lines <= 3);
+			nrOfVariants += lines;
+		}
+		assertEquals(NR_OF_VARIANTS, nrOfVariants);
+	}
+
+	@Test
+	public void retriesServerErrors() throws Exception
+	{
+		retries(503);
+	}
+
+	@Test
+	public void retriesTooManyRequests() throws Exception
+	{
+		retries(429);
+	}
+
+	private void retries(int status) throws Exception
+	{
+		CADDStandInServer reference = startServer(0, 503);
+		File expected = new File(folder.getRoot(), "expected.tsv");
+		client(reference, 1, 0).score(variants, expected, new File(folder.getRoot(), "expected"));
+
+		//every second request fails, so every chunk after the first fails once
+		CADDStandInServer server = startServer(2, status);
+		File output = new File(folder.getRoot(), "scores.tsv");
+		assertEquals(NR_OF_VARIANTS, client(server, 1, 3).score(variants, output, new File(folder.getRoot(), "chunks")));
+		assertEquals(2 * NR_OF_CHUNKS - 1, server.getNrOfRequests());
+		assertEquals(results(expected), results(output));
+	}
+
+	@Test
+	public void doesNotRetryBadRequests() throws Exception
+	{
+		CADDStandInServer server = startServer(1, 400);
+		try
+		{
+			client(server, 1, 3).score(variants, new File(folder.getRoot(), "scores.tsv"), new File(folder.getRoot(), "chunks"));
+			fail("expected the 400 to fail the run");
+		}
+		catch (Exception e)
+		{
+			assertTrue(e.getCause().getMessage(), e.getCause().getMessage().contains("400"));
+		}
+		assertEquals(1, server.getNrOfRequests());
+	}
+
+	@Test
+	public void resumesFromCheckpoint() throws Exception
+	{
+		File output = new File(folder.getRoot(), "scores.tsv");
+		File checkpoint = new File(folder.getRoot(), "chunks");
+
+		//interrupted run: the second request fails and there are no retries, so the run stops with some chunks done
+		CADDStandInServer failing = startServer(2, 503);
+		try
+		{
+			client(failing, 1, 0).score(variants, output, checkpoint);
+			fail("expected the run to fail");
+		}
+		catch (Exception e)
+		{
+			//expected
+		}
+		assertTrue(!output.exists());
+		int nrDone = nrOfChunkFiles(checkpoint);
+		assertTrue(nrDone >= 1 && nrDone < NR_OF_CHUNKS);
+		//no chunk is still running once score has thrown
+		int nrOfRequests = failing.getNrOfRequests();
+		Thread.sleep(500);
+		assertEquals(nrOfRequests, failing.getNrOfRequests());
+		assertEquals(nrDone, nrOfChunkFiles(checkpoint));
+		assertEquals(0, checkpoint.listFiles((dir, name) -> name.endsWith(".tmp")).length);
+
+		CADDStandInServer server = startServer(0, 503);
+		assertEquals(NR_OF_VARIANTS, client(server, 2, 0).score(variants, output, checkpoint));
+		assertEquals(NR_OF_CHUNKS - nrDone, server.getNrOfRequests());
+
+		File expected = new File(folder.getRoot(), "expected.tsv");
+		client(server, 2, 0).score(variants, expected, new File(folder.getRoot(), "expected"));
+		assertEquals(results(expected), results(output));
+	}
+
+	@Test
+	public void restartsChunksWithOtherInput() throws Exception
+	{
+		CADDStandInServer server = startServer(0, 503);
+		File output = new File(folder.getRoot(), "scores.tsv");
+		File checkpoint = new File(folder.getRoot(), "chunks");
+		client(server, 2, 0).score(variants, output, checkpoint);
+		assertEquals(NR_OF_CHUNKS, server.getNrOfRequests());
+
+		//same number of lines in the first chunk, but another variant, so its checksum no longer matches
+		List<String> changed = TestFolder.read(variants);
+		changed.set(1, "X\t12345\t.\tC\tA");
+		TestFolder.write(variants, changed);
+		//and a checkpoint file of another chunk that does not belong to this input at all
+		File otherChunk = new File(checkpoint, "chunk-000003.tsv");
+		List<String> other = TestFolder.read(otherChunk);
+		other.set(0, "## chunk 3 7 12345");
+		TestFolder.write(otherChunk, other);
+
+		client(server, 2, 0).score(variants, output, checkpoint);
+		assertEquals(NR_OF_CHUNKS + 2, server.getNrOfRequests());
+		List<String> results = results(output);
+		assertEquals(NR_OF_VARIANTS, results.size());
+		assertTrue(results.get(0), results.get(0).startsWith("X\t12345\tC\tA\t"));
+	}
+}
@@ -0,0 +1,115 @@
+package org.molgenis.calibratecadd.support;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.Rule;
+import org.junit.Test;
+
+public class CADDStoreTest
+{
+	@Rule
+	public TestFolder folder = new TestFolder();
+
+	@Test
+	public void everyHalfSurvivesRoundTrip()
+	{
+		for (int half = 0; half <= 0x7BFF; half++)
+		{
+			assertEquals(Integer.toHexString(half), half, CADDStore.toHalf(CADDStore.fromHalf(half)));
+		}
+	}
+
+	@Test
+	public void halfIsNearestValue()
+	{
+		Random random = new Random(13);
+		for (int i = 0; i < 100000; i++)
+		{
+			float score = i % 2 == 0 ? random.nextFloat() * 99 : random.nextFloat() * 0.001f;
+			float stored = CADDStore.fromHalf(CADDStore.toHalf(score));
+			//11 significant bits, so at most half a unit in the last place off; below 2^-14 the unit is fixed
+			assertTrue(score + " stored as " + stored, Math.abs(stored - score) <= Math.max(Math.ulp(score) * 0x1p12f, 0x1p-25f));
+		}
+		assertEquals(23.453125f, CADDStore.fromHalf(CADDStore.toHalf(23.456f)), 0);
+		assertEquals(0f, CADDStore.fromHalf(CADDStore.toHalf(0f)), 0);
+		assertEquals(65504f, CADDStore.fromHalf(CADDStore.toHalf(1e6f)), 0);
+		assertEquals(CADDStore.MISSING, CADDStore.toHalf(Float.NaN));
+		assertTrue(Float.isNaN(CADDStore.fromHalf(CADDStore.MISSING)));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void negativeScore()
+	{
+		CADDStore.toHalf(-1f);
+	}
+
+	@Test
+	public void lookupsAfterBuild() throws Exception
+	{
+		File cadd = new File(folder.getRoot(), "whole_genome_SNVs.tsv.gz");
+		SortedVcfWriter writer = new SortedVcfWriter(cadd);
+		writer.addHeader("## CADD v1.3");
+		writer.addHeader("#Chrom\tPos\tRef\tAlt\tRawScore\tPHRED");
+		for (String line : new String[] { "1\t100\tA\tC\t1.0\t10.5", "1\t100\tA\tG\t1.1\t11.5", "1\t100\tA\tT\t1.2\t12.5",
+				"1\t150\tG\tA\t2.0\t23.456", "1\t150\tG\tC\t2.1\t0.0", "1\t150\tG\tT\t2.2\t35.0",
+				"1\t5000\tC\tT\t3.0\t3.0", "2\t70000\tT\tA\t4.0\t4.0", "X\t100\tC\tG\t5.0\t5.0" })
+		{
+			writer.add(line);
+		}
+		writer.close();
+
+		File storeFile = new File(folder.getRoot(), "whole_genome_SNVs.gavin.bin");
+		new CADDStoreBuilder().build(cadd, Arrays.asList(new GeneWindow("GENEA", "1", 50, 160), new GeneWindow("GENEB", "1", 120, 200),
+				new GeneWindow("GENEC", "2", 69990, 70010), new GeneWindow("GENED", "3", 100, 200)), storeFile);
+
+		CADDStore store = new CADDStore(storeFile);
+		try
+		{
+			assertEquals(151 + 21 + 101, store.getNrOfPositions());
+			assertEquals(10.5f, store.getPhred("1", 100, "A", "C"), 0);
+			assertEquals(11.5f, store.getPhred("chr1", 100, "A", "G"), 0);
+			assertEquals(12.5f, store.getPhred("1", 100, "A", "T"), 0);
+			assertEquals(23.453125f, store.getPhred("1", 150, "G", "A"), 0);
+			assertEquals(0f, store.getPhred("1", 150, "G", "C"), 0);
+			assertEquals(35f, store.getPhred("1", 150, "G", "T"), 0);
+			assertEquals(4f, store.getPhred("2", 70000, "T", "A"), 0);
+
+			//reference base mismatch, same base, or not an SNV
+			assertTrue(Float.isNaN(store.getPhred("1", 100, "C", "T")));
+			assertTrue(Float.isNaN(store.getPhred("1", 100, "A", "A")));
+			assertTrue(Float.isNaN(store.getPhred("1", 100, "A", "AT")));
+			assertTrue(Float.isNaN(store.getPhred("1", 100, "N", "T")));
+
+			//in a window but not in CADD
+			assertTrue(store.contains("1", 199));
+			assertTrue(Float.isNaN(store.getPhred("1", 199, "A", "T")));
+			assertTrue(store.contains("3", 150));
+			assertTrue(Float.isNaN(store.getPhred("3", 150, "A", "T")));
+
+			//outside any window, in CADD or not
+			assertFalse(store.contains("1", 5000));
+			assertTrue(Float.isNaN(store.getPhred("1", 5000, "C", "T")));
+			assertFalse(store.contains("1", 49));
+			assertFalse(store.contains("1", 201));
+			assertFalse(store.contains("1", 0));
+			assertFalse(store.contains("2", 69989));
+			assertFalse(store.contains("X", 100));
+			assertTrue(Float.isNaN(store.getPhred("X", 100, "C", "G")));
+
+			//an unknown contig is not registered by looking it up
+			assertTrue(Float.isNaN(store.getPhred("GL000229.1", 100, "A", "C")));
+			assertFalse(store.contains("GL000229.1", 100));
+			assertEquals(-1, Chromosomes.findCode("GL000229.1"));
+		}
+		finally
+		{
+			store.close();
+		}
+	}
+}
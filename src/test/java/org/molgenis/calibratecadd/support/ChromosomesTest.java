@@ -0,0 +1,68 @@
+package org.molgenis.calibratecadd.support;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class ChromosomesTest
+{
+	@Test
+	public void compareCodesSameAsOrderOfNames()
+	{
+		String[] chroms = { "1", "2", "10", "22", "X", "Y", "MT", "GL000211.1", "GL000199.1", "hs37d5", "NC_007605" };
+		for (String chrom1 : chroms)
+		{
+			for (String chrom2 : chroms)
+			{
+				int code1 = Chromosomes.code(chrom1);
+				int code2 = Chromosomes.code(chrom2);
+				assertEquals(chrom1 + " " + chrom2, Integer.signum(Chromosomes.ORDER.compare(chrom1, chrom2)), Integer.signum(Chromosomes.compare(code1, code2)));
+				assertEquals(chrom1, Chromosomes.name(code1));
+			}
+		}
+	}
+
+	@Test
+	public void orderDoesNotRegisterContigs()
+	{
+		assertTrue(Chromosomes.ORDER.compare("MT", "order_contig_a") < 0);
+		assertTrue(Chromosomes.ORDER.compare("order_contig_b", "chrY") > 0);
+		assertTrue(Chromosomes.ORDER.compare("order_contig_a", "chrorder_contig_b") < 0);
+		assertEquals(0, Chromosomes.ORDER.compare("chr2", "2"));
+		assertEquals(-1, Chromosomes.findCode("order_contig_a"));
+		assertEquals(-1, Chromosomes.findCode("order_contig_b"));
+	}
+
+	@Test
+	public void namesOfContigsRegisteredWhileReading() throws Exception
+	{
+		Thread registering = new Thread()
+		{
+			@Override
+			public void run()
+			{
+				for (int i = 0; i < 2000; i++)
+				{
+					Chromosomes.code("contig_" + i);
+				}
+			}
+		};
+		registering.start();
+		while (registering.isAlive())
+		{
+			int code = Chromosomes.findCode("contig_0");
+			if(code != -1)
+			{
+				assertEquals("contig_0", Chromosomes.name(code));
+			}
+		}
+		registering.join();
+		for (int i = 0; i < 2000; i++)
+		{
+			assertEquals("contig_" + i, Chromosomes.name(Chromosomes.findCode("contig_" + i)));
+		}
+		assertEquals(Chromosomes.MT, Chromosomes.findCode("chrM"));
+		assertEquals("MT", Chromosomes.name(Chromosomes.MT));
+	}
+}
@@ -0,0 +1,69 @@
+package org.molgenis.calibratecadd.support;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+
+import org.junit.Test;
+
+public class DoubleListTest
+{
+	@Test
+	public void growsFromAnyCapacity()
+	{
+		for(int capacity : new int[] { 0, 1, 2, 8, 1000 })
+		{
+			DoubleList list = new DoubleList(capacity);
+			assertTrue(list.isEmpty());
+			double[] expected = new double[2500];
+			for(int i = 0; i < expected.length; i++)
+			{
+				expected[i] = i * 0.5 - 100;
+				list.add(expected[i]);
+				assertEquals(i + 1, list.size());
+			}
+			assertFalse(list.isEmpty());
+			for(int i = 0; i < expected.length; i++)
+			{
+				assertEquals(expected[i], list.get(i), 0);
+			}
+			assertArrayEquals(expected, list.toArray(), 0);
+		}
+	}
+
+	@Test
+	public void sortingTheArrayLeavesTheListAlone()
+	{
+		DoubleList list = new DoubleList();
+		double[] values = { 25.1, 3.0, Double.NaN, -1.5, 3.0, 0.0, -0.0, 12.75, 33.0 };
+		for(double value : values)
+		{
+			list.add(value);
+		}
+
+		double[] sorted = list.toArray();
+		Arrays.sort(sorted);
+		assertArrayEquals(new double[] { -1.5, -0.0, 0.0, 3.0, 3.0, 12.75, 25.1, 33.0, Double.NaN }, sorted, 0);
+		assertArrayEquals(values, list.toArray(), 0);
+		assertEquals(9, list.toArray().length);
+	}
+
+	@Test(expected = IndexOutOfBoundsException.class)
+	public void getPastSize()
+	{
+		DoubleList list = new DoubleList(16);
+		list.add(1);
+		list.get(1);
+	}
+
+	@Test(expected = IndexOutOfBoundsException.class)
+	public void getNegative()
+	{
+		DoubleList list = new DoubleList();
+		list.add(1);
+		list.get(-1);
+	}
+}
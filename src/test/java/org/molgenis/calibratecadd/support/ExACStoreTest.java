@@ -0,0 +1,93 @@
+package org.molgenis.calibratecadd.support;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.util.List;
+import java.util.Random;
+
+import org.apache.commons.lang3.StringUtils;
+import org.junit.Rule;
+import org.junit.Test;
+
+/**
+ * Builds a store and a bgzipped, tabix indexed copy of the same VCF, which must answer every query the same
+ */
+public class ExACStoreTest
+{
+	@Rule
+	public TestFolder folder = new TestFolder();
+
+	@Test
+	public void queryReturnsSameSitesAsTabix() throws Exception
+	{
+		Random random = new Random(3);
+		File vcf = new File(folder.getRoot(), "exac.vcf.gz");
+		SortedVcfWriter writer = new SortedVcfWriter(vcf);
+		writer.addHeader("##fileformat=VCFv4.1");
+		writer.addHeader("##INFO=<ID=AF,Number=1,Type=String,Description=\"Allele Frequency\">");
+		writer.addHeader("##INFO=<ID=AC_Adj,Number=1,Type=String,Description=\"Adjusted Allele Counts\">");
+		writer.addHeader("#CHROM\tPOS\tID\tREF\tALT\tQUAL\tFILTER\tINFO");
+		for (String chrom : new String[] { "1", "2", "X" })
+		{
+			//more records than one sampling interval, with the occasional long deletion
+			int pos = 1;
+			for (int i = 0; i < 3 * ExACStore.SAMPLE_INTERVAL + 17; i++)
+			{
+				pos += 1 + random.nextInt(6);
+				String ref = random.nextInt(20) == 0 ? StringUtils.repeat('C', 2 + random.nextInt(80)) : "C";
+				String af = Double.toString(random.nextInt(1000) / 1e4);
+				String acAdj = random.nextBoolean() ? ";AC_Adj=" + i + ",1" : "";
+				writer.add(chrom + "\t" + pos + "\t.\t" + ref + "\tT,G\t100\tPASS\tAF=" + af + ",0.5" + acAdj);
+			}
+		}
+		writer.close();
+		File storeFile = new File(folder.getRoot(), "exac.bin");
+		new ExACStoreBuilder().build(vcf, storeFile);
+
+		ExACStore store = new ExACStore(storeFile);
+		TabixExACSiteSource tabix = new TabixExACSiteSource(vcf, 1);
+		try
+		{
+			assertTrue(ExACStore.isStore(storeFile));
+			assertEquals(3 * ExACStore.SAMPLE_INTERVAL + 17, store.getNrOfRecords("1"));
+			assertEquals(0, store.query("Y", 1, 10000).size());
+
+			int nrOfSites = 0;
+			for (int query = 0; query < 500; query++)
+			{
+				String chrom = query % 3 == 0 ? "1" : query % 3 == 1 ? "2" : "X";
+				long start = 1 + random.nextInt(3500);
+				long end = start + random.nextInt(query % 2 == 0 ? 5 : 300);
+				List<ExACSite> expected = tabix.query(chrom, start, end);
+				List<ExACSite> found = store.query(chrom, start, end);
+				assertEquals(chrom + ":" + start + "-" + end, expected.size(), found.size());
+				for (int i = 0; i < expected.size(); i++)
+				{
+					assertSameSite(expected.get(i), found.get(i));
+				}
+				nrOfSites += found.size();
+			}
+			assertTrue(nrOfSites > 0);
+		}
+		finally
+		{
+			store.close();
+			tabix.close();
+		}
+	}
+
+	private static void assertSameSite(ExACSite expected, ExACSite found)
+	{
+		assertEquals(expected.chrom, found.chrom);
+		assertEquals(expected.pos, found.pos);
+		assertEquals(expected.ref, found.ref);
+		assertArrayEquals(expected.alts, found.alts);
+		assertArrayEquals(expected.afs, found.afs);
+		assertArrayEquals(expected.acAdjs, found.acAdjs);
+		assertNull(found.csq);
+	}
+}
@@ -0,0 +1,107 @@
+package org.molgenis.calibratecadd.support;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Random;
+
+import org.apache.commons.lang3.StringUtils;
+import org.junit.Rule;
+import org.junit.Test;
+import org.molgenis.data.Entity;
+import org.molgenis.data.vcf.VcfRepository;
+
+/**
+ * Sweeps a bgzipped, tabix indexed ExAC fixture, and checks that every window gets the same records as a query on it
+ */
+public class GenomeSweepTest
+{
+	@Rule
+	public TestFolder folder = new TestFolder();
+
+	@Test
+	public void sameRecordsAsTabixQueryPerWindow() throws Exception
+	{
+		Random random = new Random(11);
+		List<GeneWindow> windows = new ArrayList<GeneWindow>();
+		for (String chrom : new String[] { "1", "2", "X", "Y" })
+		{
+			for (int i = 0; i < 60; i++)
+			{
+				long start = 1 + random.nextInt(5000);
+				windows.add(new GeneWindow(chrom + "_" + i, chrom, start, start + random.nextInt(400)));
+			}
+		}
+		//no records on Y, so its windows complete without any
+		File exac = new File(folder.getRoot(), "exac.vcf.gz");
+		SortedVcfWriter writer = new SortedVcfWriter(exac);
+		writer.addHeader("##fileformat=VCFv4.1");
+		writer.addHeader("##INFO=<ID=AF,Number=1,Type=String,Description=\"Allele Frequency\">");
+		writer.addHeader("#CHROM\tPOS\tID\tREF\tALT\tQUAL\tFILTER\tINFO");
+		for (String chrom : new String[] { "1", "2", "MT", "X" })
+		{
+			//with the occasional long deletion, which can start before a window and overlap it
+			long pos = 1;
+			for (int i = 0; i < 1000; i++)
+			{
+				pos += 1 + random.nextInt(8);
+				String ref = random.nextInt(10) == 0 ? StringUtils.repeat('A', 2 + random.nextInt(60)) : "A";
+				writer.add(chrom + "\t" + pos + "\t.\t" + ref + "\tT\t100\tPASS\tAF=0.01");
+			}
+		}
+		writer.close();
+
+		final IdentityHashMap<GeneWindow, List<Entity>> swept = new IdentityHashMap<GeneWindow, List<Entity>>();
+		VcfRepository vcf = new VcfRepository(exac, "exac");
+		try
+		{
+			new GenomeSweep(windows).sweep(vcf.iterator(), new GenomeSweep.WindowListener()
+			{
+				@Override
+				public void windowComplete(GeneWindow window, List<Entity> windowRecords) throws Exception
+				{
+					if(swept.put(window, windowRecords) != null)
+					{
+						fail("completed twice: " + window);
+					}
+				}
+			});
+		}
+		finally
+		{
+			vcf.close();
+		}
+
+		assertEquals(windows.size(), swept.size());
+		int nrOfRecords = 0;
+		TabixExACSiteSource tabix = new TabixExACSiteSource(exac, 1);
+		try
+		{
+			for (GeneWindow window : windows)
+			{
+				List<String> expected = new ArrayList<String>();
+				for (ExACSite site : tabix.query(window.chrom, window.start, window.end))
+				{
+					expected.add(site.toString());
+				}
+				List<String> found = new ArrayList<String>();
+				for (ExACSite site : TabixExACSiteSource.toSites(swept.get(window)))
+				{
+					found.add(site.toString());
+				}
+				assertEquals(window.toString(), expected, found);
+				nrOfRecords += found.size();
+			}
+		}
+		finally
+		{
+			tabix.close();
+		}
+		assertTrue(nrOfRecords > 0);
+	}
+}
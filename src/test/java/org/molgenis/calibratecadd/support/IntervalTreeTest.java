@@ -0,0 +1,139 @@
+package org.molgenis.calibratecadd.support;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Rule;
+import org.junit.Test;
+
+public class IntervalTreeTest
+{
+	@Rule
+	public TestFolder folder = new TestFolder();
+
+	/**
+	 * Ids of the intervals that overlap [start, end], ordered on start and then id, by looking at every interval
+	 */
+	private static int[] bruteForce(final long[][] intervals, long start, long end)
+	{
+		List<Integer> hits = new ArrayList<Integer>();
+		for (int id = 0; id < intervals.length; id++)
+		{
+			if(intervals[id][0] <= end && intervals[id][1] >= start)
+			{
+				hits.add(id);
+			}
+		}
+		Collections.sort(hits, new Comparator<Integer>()
+		{
+			@Override
+			public int compare(Integer a, Integer b)
+			{
+				return intervals[a][0] != intervals[b][0] ? Long.compare(intervals[a][0], intervals[b][0]) : Integer.compare(a, b);
+			}
+		});
+		int[] result = new int[hits.size()];
+		for (int i = 0; i < result.length; i++)
+		{
+			result[i] = hits.get(i);
+		}
+		return result;
+	}
+
+	@Test
+	public void sameAsBruteForceOnRandomIntervals()
+	{
+		Random random = new Random(5);
+		//sizes around powers of two, where the implicit tree is incomplete
+		for (int size : new int[] { 0, 1, 2, 3, 7, 8, 9, 15, 16, 17, 31, 33, 100, 255, 256, 257, 1000, 3000 })
+		{
+			for (int maxLength : new int[] { 1, 50, 5000 })
+			{
+				long[][] intervals = new long[size][];
+				IntervalTree.Builder builder = new IntervalTree.Builder();
+				//shuffled ids, so the tree cannot rely on insertion order
+				List<Integer> ids = new ArrayList<Integer>();
+				for (int id = 0; id < size; id++)
+				{
+					long start = random.nextInt(10000);
+					intervals[id] = new long[] { start, start + random.nextInt(maxLength) };
+					ids.add(id);
+				}
+				Collections.shuffle(ids, random);
+				for (int id : ids)
+				{
+					builder.add(intervals[id][0], intervals[id][1], id);
+				}
+				IntervalTree tree = builder.build();
+				assertEquals(size, tree.size());
+
+				for (int query = 0; query < 300; query++)
+				{
+					long start = random.nextInt(11000) - 500;
+					long end = start + (query % 3 == 0 ? 0 : random.nextInt(query % 3 == 1 ? 20 : 3000));
+					String message = size + " intervals up to " + maxLength + " long, query " + start + "-" + end;
+					assertArrayEquals(message, bruteForce(intervals, start, end), tree.overlap(start, end));
+					if(start == end)
+					{
+						assertArrayEquals(message, bruteForce(intervals, start, end), tree.stab(start));
+					}
+				}
+			}
+		}
+	}
+
+	@Test
+	public void sameIntervalManyTimes()
+	{
+		IntervalTree.Builder builder = new IntervalTree.Builder();
+		for (int id = 99; id >= 0; id--)
+		{
+			builder.add(10, 20, id);
+		}
+		IntervalTree tree = builder.build();
+		int[] all = new int[100];
+		for (int id = 0; id < all.length; id++)
+		{
+			all[id] = id;
+		}
+		assertArrayEquals(all, tree.stab(10));
+		assertArrayEquals(all, tree.overlap(0, 10));
+		assertArrayEquals(all, tree.overlap(20, 30));
+		assertArrayEquals(new int[0], tree.stab(9));
+		assertArrayEquals(new int[0], tree.stab(21));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void endBeforeStart()
+	{
+		new IntervalTree.Builder().add(10, 9, 0);
+	}
+
+	@Test
+	public void genesFromCalibrationFile() throws Exception
+	{
+		File genes = folder.write("GAVIN_calibrations_r0.1.tsv",
+				"Gene\tCategory\tChr\tStart\tEnd",
+				"GENEA\tC1\t1\t100\t200",
+				"GENEB\tC2\t1\t150\t300",
+				"GENEC\tN1\t1\tn/a\tn/a",
+				"",
+				"GENED\tC1\tX\t100\t200");
+		GeneIntervalIndex index = GeneIntervalIndex.load(genes);
+		assertEquals(3, index.size());
+		assertEquals(Arrays.asList("GENEA"), index.genesAt("1", 100));
+		assertEquals(Arrays.asList("GENEA", "GENEB"), index.genesAt("1", 200));
+		assertEquals(Arrays.asList("GENEB"), index.genesOverlapping("1", 201, 1000));
+		assertEquals(Arrays.asList("GENED"), index.genesAt("X", 150));
+		assertEquals(Collections.emptyList(), index.genesAt("2", 150));
+		assertEquals(Collections.emptyList(), index.genesAt("1", 99));
+	}
+}
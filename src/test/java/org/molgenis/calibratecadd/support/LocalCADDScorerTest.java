@@ -0,0 +1,91 @@
+package org.molgenis.calibratecadd.support;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.File;
+import java.util.Arrays;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+
+public class LocalCADDScorerTest
+{
+	private static final String CADD_HEADER = "#Chrom\tPos\tRef\tAlt\tRawScore\tPHRED";
+
+	@Rule
+	public TestFolder folder = new TestFolder();
+
+	private File snvs;
+	private File indels;
+
+	/**
+	 * Bgzipped and tabix indexed, as the CADD downloads are
+	 */
+	private File cadd(String name, String... lines) throws Exception
+	{
+		File file = new File(folder.getRoot(), name);
+		SortedVcfWriter writer = new SortedVcfWriter(file);
+		writer.addHeader("## CADD v1.3");
+		writer.addHeader(CADD_HEADER);
+		for (String line : lines)
+		{
+			writer.add(line);
+		}
+		writer.close();
+		return file;
+	}
+
+	@Before
+	public void writeCadd() throws Exception
+	{
+		snvs = cadd("whole_genome_SNVs.tsv.gz",
+				"1\t100\tA\tC\t0.1\t1.0",
+				"1\t100\tA\tT\t0.2\t2.0",
+				"1\t5000\tG\tA\t0.3\t3.0",
+				"2\t70\tC\tT\t0.4\t4.0",
+				"X\t900\tT\tG\t0.5\t5.0");
+		indels = cadd("InDels.tsv.gz",
+				"1\t100\tA\tT\t9.9\t99.0",
+				"1\t250\tTTCC\tT\t0.6\t6.0",
+				"2\t80\tC\tCAG\t0.7\t7.0");
+	}
+
+	@Test
+	public void scoresFromFirstFileThatHasIt() throws Exception
+	{
+		File variants = folder.write("clinvar.patho.fix.snpeff.exac.cadd.tsv",
+				"X\t900\t.\tT\tG",
+				"1\t5000\t.\tG\tA",
+				"1\t100\t.\tA\tT",
+				"1\t250\t.\tTTCCTCCTCC\tTTCCTCC",
+				"1\t100\t.\tA\tT",
+				"2\t80\t.\tC\tCAG",
+				"1\t5000\t.\tG\tC",
+				"2\t70\t.\tC\tG",
+				"Y\t10\t.\tA\tG");
+
+		for (int threads : new int[] { 1, 3 })
+		{
+			File output = new File(folder.getRoot(), "scored." + threads + ".tsv");
+			File missing = new File(folder.getRoot(), "missing." + threads + ".tsv");
+			int nrMissing = new LocalCADDScorer(Arrays.asList(snvs, indels), threads).score(variants, output, missing);
+
+			assertEquals(3, nrMissing);
+			assertEquals(Arrays.asList("## CADD scores from local files: " + Arrays.asList(snvs, indels),
+					"#CHROM\tPOS\tREF\tALT\tRawScore\tPHRED",
+					"1\t100\tA\tT\t0.2\t2.0",
+					"1\t250\tTTCCTCCTCC\tTTCCTCC\t0.6\t6.0",
+					"1\t5000\tG\tA\t0.3\t3.0",
+					"2\t80\tC\tCAG\t0.7\t7.0",
+					"X\t900\tT\tG\t0.5\t5.0"), TestFolder.read(output));
+			assertEquals(Arrays.asList("1\t5000\t.\tG\tC", "2\t70\t.\tC\tG", "Y\t10\t.\tA\tG"), TestFolder.read(missing));
+		}
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void noIndex() throws Exception
+	{
+		new LocalCADDScorer(Arrays.asList(folder.write("unindexed.tsv", CADD_HEADER)), 1);
+	}
+}
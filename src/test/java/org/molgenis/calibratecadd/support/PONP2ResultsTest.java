@@ -0,0 +1,44 @@
+package org.molgenis.calibratecadd.support;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.File;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.molgenis.data.annotation.entity.impl.gavin.Judgment;
+import org.molgenis.data.annotation.entity.impl.gavin.Judgment.Classification;
+
+public class PONP2ResultsTest
+{
+	@Rule
+	public TestFolder folder = new TestFolder();
+
+	@Test
+	public void skipsBadQueriesAndMatchesChrPrefix() throws Exception
+	{
+		File file = folder.write("PON-P2.tsv",
+				"#Query\tMappedGene\tMappedVariation\tProbabilityOfPathogenicity\tStandardError\tPrediction\tAnnotations",
+				"12:32949167,T,C\tENSG00000057294\tI789V\t0.152\t0.051\tNeutral\t",
+				"chr2:220285283,C,G\tENSG00000175084\tP268A\t0.497\t0.105\tPathogenic\t",
+				"#Query\tMappedGene\tMappedVariation\tProbabilityOfPathogenicity\tStandardError\tPrediction\tAnnotations",
+				"18:notapos,C,T\tENSG00000134755\tA441T\t0.325\t0.130\tUnknown\t",
+				"18:28660261,C\tENSG00000134755\tA441T\t0.325\t0.130\tUnknown\t",
+				"",
+				"18:28660261,C,T\tENSG00000134755\tA441T\t0.325\t0.130\tUnknown\t");
+
+		PONP2Results results = new PONP2Results(file);
+		assertClassification(Classification.Benign, "PONP2 result 'Neutral'", results.classifyVariantUsingPONP2Results("12", "32949167", "T", "C"));
+		assertClassification(Classification.Benign, "PONP2 result 'Neutral'", results.classifyVariantUsingPONP2Results("chr12", "32949167", "T", "C"));
+		//'chr2' in the file and '2' in the query are the same chromosome
+		assertClassification(Classification.Pathogenic, "PONP2 result 'Pathogenic'", results.classifyVariantUsingPONP2Results("2", "220285283", "C", "G"));
+		assertClassification(Classification.VOUS, "PON-P2 'unknown'", results.classifyVariantUsingPONP2Results("18", "28660261", "C", "T"));
+		assertClassification(Classification.VOUS, "No PON-P2 result", results.classifyVariantUsingPONP2Results("18", "28660261", "C", "G"));
+	}
+
+	private static void assertClassification(Classification classification, String reason, Judgment judgment)
+	{
+		assertEquals(classification, judgment.getClassification());
+		assertEquals(reason, judgment.getReason());
+	}
+}
@@ -0,0 +1,92 @@
+package org.molgenis.calibratecadd.support;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+import org.apache.commons.math3.stat.descriptive.rank.Percentile;
+import org.apache.commons.math3.stat.descriptive.rank.Percentile.EstimationType;
+import org.junit.Test;
+
+public class PercentileBootstrapTest
+{
+	@Test
+	public void sameIntervalOnAnyNumberOfThreads() throws Exception
+	{
+		Random random = new Random(4);
+		final PercentileBootstrap bootstrap = new PercentileBootstrap(2100, 0.95);
+		ForkJoinPool onePool = new ForkJoinPool(1);
+		ForkJoinPool fourPool = new ForkJoinPool(4);
+		try
+		{
+			for(int run = 0; run < 20; run++)
+			{
+				final double[] values = new double[1 + random.nextInt(60)];
+				for(int i = 0; i < values.length; i++)
+				{
+					values[i] = random.nextInt(4) == 0 ? random.nextInt(5) : random.nextDouble() * 40;
+				}
+				final double p = run % 2 == 0 ? 5 : 95;
+				final long seed = run * 31L;
+				double[] onCallingThread = bootstrap.interval(values, p, seed);
+				assertArrayEquals(onCallingThread, onePool.submit(() -> bootstrap.interval(values, p, seed)).get(), 0);
+				assertArrayEquals(onCallingThread, fourPool.submit(() -> bootstrap.interval(values, p, seed)).get(), 0);
+			}
+		}
+		finally
+		{
+			onePool.shutdown();
+			fourPool.shutdown();
+		}
+	}
+
+	@Test
+	public void intervalAroundPercentile()
+	{
+		double[] values = new double[100];
+		for(int i = 0; i < values.length; i++)
+		{
+			values[i] = (i * 37) % 100 + 1;
+		}
+		PercentileBootstrap bootstrap = new PercentileBootstrap(2000, 0.95);
+		for(double p : new double[] { 5, 25, 50, 75, 95 })
+		{
+			double point = new Percentile().withEstimationType(EstimationType.R_7).evaluate(values, p);
+			double[] interval = bootstrap.interval(values, p, 1);
+			String message = p + "th percentile " + point + " in " + Arrays.toString(interval);
+			assertTrue(message, interval[0] <= point && point <= interval[1]);
+			assertTrue(message, interval[0] < interval[1]);
+			assertTrue(message, interval[0] >= 1 && interval[1] <= 100);
+		}
+	}
+
+	@Test
+	public void constantSample()
+	{
+		//resamples not a multiple of a block, so a missed estimate in the last block would show up as 0
+		PercentileBootstrap bootstrap = new PercentileBootstrap(1001, 0.99);
+		for(double p : new double[] { 0.1, 5, 50, 95, 100 })
+		{
+			assertArrayEquals(new double[] { 7.5, 7.5 }, bootstrap.interval(new double[] { 7.5, 7.5, 7.5, 7.5, 7.5 }, p, 2), 0);
+			assertArrayEquals(new double[] { 7.5, 7.5 }, bootstrap.interval(new double[] { 7.5 }, p, 2), 0);
+		}
+	}
+
+	@Test
+	public void emptySample()
+	{
+		double[] interval = new PercentileBootstrap(1000, 0.95).interval(new double[0], 5, 0);
+		assertTrue(Double.isNaN(interval[0]) && Double.isNaN(interval[1]));
+	}
+
+	@Test
+	public void sampleNotModified()
+	{
+		double[] values = { 3, 1, 2 };
+		new PercentileBootstrap(500, 0.95).interval(values, 50, 0);
+		assertArrayEquals(new double[] { 3, 1, 2 }, values, 0);
+	}
+}
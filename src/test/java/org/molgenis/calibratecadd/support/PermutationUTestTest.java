@@ -0,0 +1,168 @@
+package org.molgenis.calibratecadd.support;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+import org.junit.Test;
+
+public class PermutationUTestTest
+{
+	/**
+	 * Few distinct values, so many ties, as with CADD scores
+	 */
+	private static double[] sample(Random random, int n)
+	{
+		double[] sample = new double[n];
+		for(int i = 0; i < n; i++)
+		{
+			sample[i] = random.nextBoolean() ? random.nextInt(8) : random.nextDouble() * 40;
+		}
+		return sample;
+	}
+
+	/**
+	 * Rank of a value is 1 + the nr of values before it + half the nr of other values equal to it
+	 */
+	private static double[] naiveRanks(double[] pooled)
+	{
+		double[] ranks = new double[pooled.length];
+		for(int i = 0; i < pooled.length; i++)
+		{
+			int before = 0;
+			int equal = 0;
+			for(double other : pooled)
+			{
+				int compared = Double.compare(other, pooled[i]);
+				if(compared < 0)
+				{
+					before++;
+				}
+				else if(compared == 0)
+				{
+					equal++;
+				}
+			}
+			ranks[i] = before + (equal + 1) / 2.0;
+		}
+		return ranks;
+	}
+
+	/**
+	 * Fraction of all ways to pick x.length of the pooled values as the first group with a rank sum at least as far
+	 * from its expected value as the observed one, by going through every subset of the pooled values
+	 */
+	private static double bruteForce(double[] x, double[] y)
+	{
+		int n = x.length + y.length;
+		double[] pooled = new double[n];
+		System.arraycopy(x, 0, pooled, 0, x.length);
+		System.arraycopy(y, 0, pooled, x.length, y.length);
+		double[] ranks = naiveRanks(pooled);
+		double expected = x.length * (n + 1) / 2.0;
+		double observed = 0;
+		for(int i = 0; i < x.length; i++)
+		{
+			observed += ranks[i];
+		}
+		long extreme = 0;
+		long total = 0;
+		for(int subset = 0; subset < 1 << n; subset++)
+		{
+			if(Integer.bitCount(subset) != x.length)
+			{
+				continue;
+			}
+			double sum = 0;
+			for(int i = 0; i < n; i++)
+			{
+				if((subset & 1 << i) != 0)
+				{
+					sum += ranks[i];
+				}
+			}
+			if(Math.abs(sum - expected) >= Math.abs(observed - expected) - 1e-9)
+			{
+				extreme++;
+			}
+			total++;
+		}
+		return extreme / (double) total;
+	}
+
+	@Test
+	public void ranksSameAsNaive()
+	{
+		Random random = new Random(1);
+		for(int run = 0; run < 200; run++)
+		{
+			double[] x = sample(random, 1 + random.nextInt(20));
+			double[] y = sample(random, 1 + random.nextInt(20));
+			double[] pooled = new double[x.length + y.length];
+			System.arraycopy(x, 0, pooled, 0, x.length);
+			System.arraycopy(y, 0, pooled, x.length, y.length);
+			assertArrayEquals(naiveRanks(pooled), PermutationUTest.ranks(x, y), 0);
+		}
+		assertArrayEquals(new double[] { 1, 2.5, 4, 2.5 }, PermutationUTest.ranks(new double[] { -0.0, 0.0 }, new double[] { 5, 0.0 }), 0);
+	}
+
+	@Test
+	public void exactSameAsBruteForce()
+	{
+		Random random = new Random(2);
+		PermutationUTest test = new PermutationUTest(10000);
+		for(int run = 0; run < 300; run++)
+		{
+			double[] x = sample(random, 1 + random.nextInt(8));
+			double[] y = sample(random, 1 + random.nextInt(8));
+			//shift one group now and then, so small p-values are covered too
+			if(run % 3 == 0)
+			{
+				for(int i = 0; i < x.length; i++)
+				{
+					x[i] += 20;
+				}
+			}
+			assertEquals(bruteForce(x, y), test.pValue(x, y, run), 1e-12);
+		}
+	}
+
+	@Test
+	public void permutedSameOnAnyNumberOfThreads() throws Exception
+	{
+		Random random = new Random(3);
+		final PermutationUTest test = new PermutationUTest(50000);
+		ForkJoinPool onePool = new ForkJoinPool(1);
+		ForkJoinPool fourPool = new ForkJoinPool(4);
+		try
+		{
+			for(int run = 0; run < 20; run++)
+			{
+				//too many splits to count, so drawn at random
+				final double[] x = sample(random, 2 + random.nextInt(3));
+				final double[] y = sample(random, 150 + random.nextInt(100));
+				final long seed = run;
+				double onCallingThread = test.pValue(x, y, seed);
+				double onOne = onePool.submit(() -> test.pValue(x, y, seed)).get();
+				double onFour = fourPool.submit(() -> test.pValue(x, y, seed)).get();
+				assertEquals(onCallingThread, onOne, 0);
+				assertEquals(onCallingThread, onFour, 0);
+				assertTrue(onCallingThread > 0 && onCallingThread <= 1);
+			}
+		}
+		finally
+		{
+			onePool.shutdown();
+			fourPool.shutdown();
+		}
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void emptySample()
+	{
+		new PermutationUTest(10000).pValue(new double[0], new double[] { 1 }, 0);
+	}
+}
@@ -0,0 +1,219 @@
+package org.molgenis.calibratecadd.support;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+
+/**
+ * Builds a prediction index from a small tool output file, opens it again, and looks variants up in it
+ */
+public class PredictionIndexTest
+{
+	private static final List<String> TOOLS = Arrays.asList("toolA", "toolB");
+	//too long to pack in a long, so these are hashed
+	private static final String LONG_REF = "ACGTACGTACGTACGTACGTACGTACGTACGTACGT";
+	private static final String LONG_ALT = "A";
+
+	@Rule
+	public TestFolder folder = new TestFolder();
+
+	private File source;
+	private AtomicInteger nrOfParses = new AtomicInteger();
+
+	/**
+	 * Lines of chrom, pos, ref, alt, prediction of toolA, prediction of toolB, with '.' for none
+	 */
+	private final PredictionIndex.Parser parser = (file, builder) -> {
+		nrOfParses.incrementAndGet();
+		for(String line : TestFolder.read(file))
+		{
+			String[] split = line.split("\t", -1);
+			for(int tool = 0; tool < TOOLS.size(); tool++)
+			{
+				if(!split[4 + tool].equals("."))
+				{
+					builder.put(split[0], Long.parseLong(split[1]), split[2], split[3], tool, split[4 + tool]);
+				}
+			}
+		}
+	};
+
+	@Before
+	public void writeSource() throws IOException
+	{
+		source = folder.write("predictions.tsv",
+				"1\t100\tA\tG\tdamaging\ttolerated",
+				"chr1\t100\tA\tT\ttolerated\t.",
+				"2\t5000\t" + LONG_REF + "\t" + LONG_ALT + "\tdamaging\tdamaging",
+				//same position, other long alleles
+				"2\t5000\t" + LONG_REF + "\tAC\t.\ttolerated",
+				"2\t5000\t" + LONG_ALT + "\t" + LONG_REF + "\ttolerated\t.",
+				"X\t77\tC\tCAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAA\tunknown\t.",
+				"GL000192.1\t9\tT\tC\t.\tdamaging");
+	}
+
+	private static String lookup(PredictionSource index, String tool, String chrom, long pos, String ref, String alt)
+	{
+		int toolNumber = index.getTool(tool);
+		int code = index.getCode(toolNumber, chrom, pos, ref, alt);
+		return code == PredictionSource.NO_PREDICTION ? null : index.getLabel(toolNumber, code);
+	}
+
+	private void assertPredictions(PredictionIndex index)
+	{
+		assertEquals(TOOLS, index.getToolNames());
+		assertEquals(7, index.getNrOfVariants());
+		assertEquals("damaging", lookup(index, "toolA", "1", 100, "A", "G"));
+		assertEquals("tolerated", lookup(index, "toolB", "chr1", 100, "A", "G"));
+		assertEquals("tolerated", lookup(index, "toolA", "1", 100, "A", "T"));
+		assertNull(lookup(index, "toolB", "1", 100, "A", "T"));
+		assertEquals("damaging", lookup(index, "toolA", "2", 5000, LONG_REF, LONG_ALT));
+		assertEquals("damaging", lookup(index, "toolB", "2", 5000, LONG_REF, LONG_ALT));
+		assertNull(lookup(index, "toolA", "2", 5000, LONG_REF, "AC"));
+		assertEquals("tolerated", lookup(index, "toolB", "2", 5000, LONG_REF, "AC"));
+		assertEquals("tolerated", lookup(index, "toolA", "2", 5000, LONG_ALT, LONG_REF));
+		assertEquals("unknown", lookup(index, "toolA", "X", 77, "C", "CAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAA"));
+		assertEquals("damaging", lookup(index, "toolB", "GL000192.1", 9, "T", "C"));
+
+		//not in the file
+		assertNull(lookup(index, "toolA", "2", 5000, LONG_REF, "G"));
+		assertNull(lookup(index, "toolA", "2", 5001, LONG_REF, LONG_ALT));
+		assertNull(lookup(index, "toolA", "3", 100, "A", "G"));
+		assertNull(lookup(index, "toolA", "GL000999.1", 9, "T", "C"));
+		assertEquals(-1, index.getTool("toolC"));
+	}
+
+	private List<String> tmpFiles()
+	{
+		List<String> tmp = new ArrayList<String>();
+		for(String name : folder.getRoot().list())
+		{
+			if(name.endsWith(".tmp"))
+			{
+				tmp.add(name);
+			}
+		}
+		return tmp;
+	}
+
+	@Test
+	public void roundTrip() throws Exception
+	{
+		int nrOfTableAlleles = VariantKey.getNrOfTableAlleles();
+		assertPredictions(PredictionIndex.open(source, TOOLS, parser));
+		assertEquals(1, nrOfParses.get());
+		assertTrue(new File(source.getPath() + PredictionIndex.INDEX_EXTENSION).exists());
+		assertEquals(Collections.emptyList(), tmpFiles());
+
+		//opened from the stored index, without parsing
+		assertPredictions(PredictionIndex.open(source, TOOLS, parser));
+		assertPredictions(new PredictionIndex(new File(source.getPath() + PredictionIndex.INDEX_EXTENSION)));
+		assertEquals(1, nrOfParses.get());
+		//building and looking up did not add the long alleles to the shared table
+		assertEquals(nrOfTableAlleles, VariantKey.getNrOfTableAlleles());
+	}
+
+	@Test
+	public void rebuiltWhenSourceOrParserChanges() throws Exception
+	{
+		PredictionIndex.open(source, TOOLS, parser);
+		assertEquals(1, nrOfParses.get());
+
+		//same modification time, other size
+		long lastModified = source.lastModified();
+		List<String> lines = new ArrayList<String>(TestFolder.read(source));
+		lines.add("3\t300\tG\tA\tdamaging\t.");
+		TestFolder.write(source, lines);
+		source.setLastModified(lastModified);
+		PredictionIndex index = PredictionIndex.open(source, TOOLS, parser);
+		assertEquals(2, nrOfParses.get());
+		assertEquals("damaging", lookup(index, "toolA", "3", 300, "G", "A"));
+
+		//same size, other modification time, even when older than the index
+		source.setLastModified(lastModified - 60000);
+		PredictionIndex.open(source, TOOLS, parser);
+		assertEquals(3, nrOfParses.get());
+
+		//other parser version
+		PredictionIndex.open(source, TOOLS, 2, parser);
+		assertEquals(4, nrOfParses.get());
+		PredictionIndex.open(source, TOOLS, 2, parser);
+		assertEquals(4, nrOfParses.get());
+		PredictionIndex.open(source, TOOLS, parser);
+		assertEquals(5, nrOfParses.get());
+
+		//other tools
+		PredictionIndex.open(source, Arrays.asList("toolA", "toolC"), parser);
+		assertEquals(6, nrOfParses.get());
+		assertEquals(Collections.emptyList(), tmpFiles());
+	}
+
+	@Test
+	public void rebuiltWhenIndexIsBroken() throws Exception
+	{
+		File indexFile = new File(source.getPath() + PredictionIndex.INDEX_EXTENSION);
+		Files.write(indexFile.toPath(), "GAVINPRD".getBytes(StandardCharsets.US_ASCII));
+		assertPredictions(PredictionIndex.open(source, TOOLS, parser));
+		assertEquals(1, nrOfParses.get());
+	}
+
+	@Test
+	public void concurrentBuilds() throws Exception
+	{
+		final int threads = 4;
+		final CountDownLatch allParsing = new CountDownLatch(threads);
+		final PredictionIndex.Parser slowParser = (file, builder) -> {
+			parser.parse(file, builder);
+			//every thread builds its own index, and writes it at about the same time
+			allParsing.countDown();
+			allParsing.await();
+		};
+		ExecutorService executor = Executors.newFixedThreadPool(threads);
+		try
+		{
+			List<Future<PredictionIndex>> indexes = new ArrayList<Future<PredictionIndex>>();
+			for(int i = 0; i < threads; i++)
+			{
+				indexes.add(executor.submit(new Callable<PredictionIndex>()
+				{
+					@Override
+					public PredictionIndex call() throws Exception
+					{
+						return PredictionIndex.open(source, TOOLS, slowParser);
+					}
+				}));
+			}
+			for(Future<PredictionIndex> index : indexes)
+			{
+				assertPredictions(index.get());
+			}
+		}
+		finally
+		{
+			executor.shutdown();
+		}
+		assertEquals(threads, nrOfParses.get());
+		assertEquals(Collections.emptyList(), tmpFiles());
+		assertPredictions(PredictionIndex.open(source, TOOLS, parser));
+		assertEquals(threads, nrOfParses.get());
+	}
+}
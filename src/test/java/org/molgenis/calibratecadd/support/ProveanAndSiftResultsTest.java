@@ -0,0 +1,43 @@
+package org.molgenis.calibratecadd.support;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.File;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.molgenis.data.annotation.entity.impl.gavin.Judgment;
+import org.molgenis.data.annotation.entity.impl.gavin.Judgment.Classification;
+
+public class ProveanAndSiftResultsTest
+{
+	@Rule
+	public TestFolder folder = new TestFolder();
+
+	@Test
+	public void skipsBadInputsAndMatchesChrPrefix() throws Exception
+	{
+		File file = folder.write("PROVEAN.tsv",
+				"INPUT\tPROVEAN PREDICTION (cutoff=-2.5)\tSIFT PREDICTION (cutoff=0.05)",
+				"1,154574443,C,T\tNeutral\tTolerated",
+				"chr2,220285283,C,G\tDeleterious\t",
+				"INPUT\tPROVEAN PREDICTION (cutoff=-2.5)\tSIFT PREDICTION (cutoff=0.05)",
+				"18,28660261,C\tDeleterious\tDamaging",
+				"18,-5,C,T\tDeleterious\tDamaging",
+				"18,28660261,C,T\t\tDamaging");
+
+		ProveanAndSiftResults results = new ProveanAndSiftResults(file);
+		assertClassification(Classification.Benign, results.classifyVariantUsingProveanResults("1", "154574443", "C", "T"));
+		assertClassification(Classification.Benign, results.classifyVariantUsingSiftResults("chr1", "154574443", "C", "T"));
+		//'chr2' in the file and '2' in the query are the same chromosome
+		assertClassification(Classification.Pathogenic, results.classifyVariantUsingProveanResults("2", "220285283", "C", "G"));
+		assertClassification(Classification.VOUS, results.classifyVariantUsingSiftResults("2", "220285283", "C", "G"));
+		assertClassification(Classification.VOUS, results.classifyVariantUsingProveanResults("18", "28660261", "C", "T"));
+		assertClassification(Classification.Pathogenic, results.classifyVariantUsingSiftResults("18", "28660261", "C", "T"));
+	}
+
+	private static void assertClassification(Classification classification, Judgment judgment)
+	{
+		assertEquals(judgment.getReason(), classification, judgment.getClassification());
+	}
+}
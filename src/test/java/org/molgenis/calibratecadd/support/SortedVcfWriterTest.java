@@ -0,0 +1,151 @@
+package org.molgenis.calibratecadd.support;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.zip.GZIPInputStream;
+
+import org.apache.commons.lang3.StringUtils;
+import org.broad.tribble.readers.TabixReader;
+import org.junit.Rule;
+import org.junit.Test;
+
+/**
+ * Writes records in random order through sorted runs on disk, and reads them back with the tabix reader of picard
+ */
+public class SortedVcfWriterTest
+{
+	private static final String[] CHROMS = { "1", "2", "10", "X", "MT", "GL000211.1" };
+
+	@Rule
+	public TestFolder folder = new TestFolder();
+
+	private static String chrom(String line)
+	{
+		return line.substring(0, line.indexOf('\t'));
+	}
+
+	private static long pos(String line)
+	{
+		return Long.parseLong(line.split("\t", -1)[1]);
+	}
+
+	private static long refEnd(String line)
+	{
+		return pos(line) + line.split("\t", -1)[3].length() - 1;
+	}
+
+	@Test
+	public void regionQueriesSameAsBruteForce() throws Exception
+	{
+		Random random = new Random(17);
+		List<String> lines = new ArrayList<String>();
+		for (int i = 0; i < 6000; i++)
+		{
+			String chrom = CHROMS[random.nextInt(CHROMS.length)];
+			long pos = 1 + random.nextInt(chrom.equals("1") ? 3000000 : 200000);
+			//mostly SNVs, some short deletions, and a few that span many 16 kb windows and bins
+			int refLength = random.nextInt(50) == 0 ? 2 + random.nextInt(40) : random.nextInt(500) == 0 ? 20000 + random.nextInt(100000) : 1;
+			lines.add(chrom + "\t" + pos + "\trs" + i + "\t" + StringUtils.repeat('A', refLength) + "\tG\t.\tPASS\t.");
+		}
+
+		File vcf = new File(folder.getRoot(), "sorted.vcf.gz");
+		SortedVcfWriter writer = new SortedVcfWriter(vcf, 700);
+		writer.addHeader("##fileformat=VCFv4.1");
+		writer.addHeader("#CHROM\tPOS\tID\tREF\tALT\tQUAL\tFILTER\tINFO");
+		for (String line : lines)
+		{
+			writer.add(line);
+		}
+		assertEquals(lines.size(), writer.getNrOfRecords());
+		writer.close();
+		assertTrue(new File(vcf.getPath() + ".tbi").isFile());
+
+		//the whole file is the header followed by every line, in chromosome and then position order
+		Collections.sort(lines, new Comparator<String>()
+		{
+			@Override
+			public int compare(String line1, String line2)
+			{
+				int chromCompare = Chromosomes.ORDER.compare(chrom(line1), chrom(line2));
+				if(chromCompare != 0)
+				{
+					return chromCompare;
+				}
+				return pos(line1) != pos(line2) ? Long.compare(pos(line1), pos(line2)) : line1.compareTo(line2);
+			}
+		});
+		List<String> written = new ArrayList<String>();
+		BufferedReader reader = new BufferedReader(new InputStreamReader(new GZIPInputStream(new FileInputStream(vcf)), StandardCharsets.UTF_8));
+		for (String line = reader.readLine(); line != null; line = reader.readLine())
+		{
+			written.add(line);
+		}
+		reader.close();
+		assertEquals("##fileformat=VCFv4.1", written.get(0));
+		assertEquals(lines, written.subList(2, written.size()));
+
+		TabixReader tabix = new TabixReader(vcf.getPath());
+		try
+		{
+			int nrOfHits = 0;
+			for (int query = 0; query < 400; query++)
+			{
+				String chrom = query % 20 == 0 ? "Y" : CHROMS[random.nextInt(CHROMS.length)];
+				long start = 1 + random.nextInt(chrom.equals("1") ? 3100000 : 210000);
+				long end = start + random.nextInt(query % 2 == 0 ? 100 : 50000);
+
+				List<String> expected = new ArrayList<String>();
+				for (String line : lines)
+				{
+					if(chrom(line).equals(chrom) && pos(line) <= end && refEnd(line) >= start)
+					{
+						expected.add(line);
+					}
+				}
+
+				List<String> found = new ArrayList<String>();
+				Integer tid = tabix.mChr2tid.get(chrom);
+				TabixReader.Iterator it = tid == null ? null : tabix.query(tid, (int) start - 1, (int) end);
+				for (String line = it == null ? null : it.next(); line != null; line = it.next())
+				{
+					found.add(line);
+				}
+				assertEquals(chrom + ":" + start + "-" + end, expected, found);
+				nrOfHits += found.size();
+			}
+			assertTrue(nrOfHits > 1000);
+		}
+		finally
+		{
+			tabix.close();
+		}
+	}
+
+	@Test
+	public void plainOutputWithoutIndex() throws Exception
+	{
+		File vcf = new File(folder.getRoot(), "sorted.vcf");
+		SortedVcfWriter writer = new SortedVcfWriter(vcf, 2);
+		writer.addHeader("#CHROM\tPOS\tID\tREF\tALT");
+		for (String line : new String[] { "X\t5\t.\tA\tG", "2\t10\t.\tC\tT", "10\t1\t.\tA\tG", "2\t10\t.\tC\tA", "MT\t3\t.\tG\tA" })
+		{
+			writer.add(line);
+		}
+		writer.close();
+		assertFalse(new File(vcf.getPath() + ".tbi").exists());
+		assertEquals(Arrays.asList("#CHROM\tPOS\tID\tREF\tALT", "2\t10\t.\tC\tA", "2\t10\t.\tC\tT", "10\t1\t.\tA\tG", "X\t5\t.\tA\tG", "MT\t3\t.\tG\tA"), TestFolder.read(vcf));
+	}
+}
@@ -0,0 +1,79 @@
+package org.molgenis.calibratecadd.support;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Annotation stage for tests: adds a fixed snpEff ANN field per variant instead of running snpEff
+ */
+public class StubVcfAnnotator implements VcfAnnotator
+{
+	//chrom_pos_ref_alt to ANN value
+	private Map<String, String> annotations = new HashMap<String, String>();
+	private boolean closed = false;
+
+	public StubVcfAnnotator add(String chrom, long pos, String ref, String alt, String ann)
+	{
+		annotations.put(chrom + "_" + pos + "_" + ref + "_" + alt, ann);
+		return this;
+	}
+
+	@Override
+	public void annotate(File vcfFile, LineHandler handler) throws Exception
+	{
+		if(closed)
+		{
+			throw new IllegalStateException("annotator is closed");
+		}
+		InputStream in = new FileInputStream(vcfFile);
+		if(vcfFile.getName().endsWith(".gz"))
+		{
+			in = new GZIPInputStream(in);
+		}
+		BufferedReader br = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8));
+		try
+		{
+			String line;
+			while((line = br.readLine()) != null)
+			{
+				if(line.startsWith("#CHROM"))
+				{
+					handler.handle("##INFO=<ID=ANN,Number=.,Type=String,Description=\"Functional annotations\">");
+					handler.handle(line);
+				}
+				else if(line.startsWith("#"))
+				{
+					handler.handle(line);
+				}
+				else
+				{
+					String[] split = line.split("\t", -1);
+					String ann = annotations.get(split[0] + "_" + split[1] + "_" + split[3] + "_" + split[4]);
+					if(ann == null)
+					{
+						throw new Exception("no stub annotation for " + line);
+					}
+					split[7] = split[7] + ";ANN=" + ann;
+					handler.handle(String.join("\t", split));
+				}
+			}
+		}
+		finally
+		{
+			br.close();
+		}
+	}
+
+	@Override
+	public void close()
+	{
+		closed = true;
+	}
+}
@@ -0,0 +1,113 @@
+package org.molgenis.calibratecadd.support;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.molgenis.data.Entity;
+
+public class TabixRegionQueryServiceTest
+{
+	@Rule
+	public TestFolder folder = new TestFolder();
+
+	private File vcf;
+
+	@Before
+	public void writeVcf() throws Exception
+	{
+		vcf = new File(folder.getRoot(), "clinvar.vcf.gz");
+		SortedVcfWriter writer = new SortedVcfWriter(vcf);
+		writer.addHeader("##fileformat=VCFv4.1");
+		writer.addHeader("#CHROM\tPOS\tID\tREF\tALT\tQUAL\tFILTER\tINFO");
+		for (String chrom : new String[] { "1", "2" })
+		{
+			for (int pos = 10; pos <= 5000; pos += 10)
+			{
+				writer.add(chrom + "\t" + pos + "\trs" + pos + "\tA\tG\t.\t.\t.");
+			}
+		}
+		writer.close();
+	}
+
+	private static List<String> positions(List<Entity> records)
+	{
+		List<String> positions = new ArrayList<String>();
+		for (Entity record : records)
+		{
+			positions.add(record.getString("#CHROM") + ":" + record.getLong("POS"));
+		}
+		return positions;
+	}
+
+	@Test
+	public void sequentialQueriesReuseOneReader() throws Exception
+	{
+		TabixRegionQueryService tabix = new TabixRegionQueryService(vcf, "clinvar", 4);
+		try
+		{
+			for (int i = 0; i < 100; i++)
+			{
+				assertEquals(11, tabix.query("1", 1 + 40 * i, 101 + 40 * i).size());
+			}
+			assertEquals(1, tabix.getNrOfOpenedReaders());
+		}
+		finally
+		{
+			tabix.close();
+		}
+	}
+
+	@Test
+	public void concurrentQueriesStayWithinPoolSize() throws Exception
+	{
+		final int poolSize = 3;
+		final TabixRegionQueryService tabix = new TabixRegionQueryService(vcf, "clinvar", poolSize);
+		ExecutorService threads = Executors.newFixedThreadPool(8);
+		try
+		{
+			List<Future<List<String>>> results = new ArrayList<Future<List<String>>>();
+			for (int i = 0; i < 400; i++)
+			{
+				final String chrom = i % 2 == 0 ? "1" : "2";
+				final long start = 1 + (i * 37) % 4800;
+				results.add(threads.submit(new Callable<List<String>>()
+				{
+					@Override
+					public List<String> call() throws Exception
+					{
+						return positions(tabix.query(chrom, start, start + 150));
+					}
+				}));
+			}
+			for (int i = 0; i < results.size(); i++)
+			{
+				String chrom = i % 2 == 0 ? "1" : "2";
+				long start = 1 + (i * 37) % 4800;
+				List<String> expected = new ArrayList<String>();
+				for (long pos = (start + 9) / 10 * 10; pos <= start + 150; pos += 10)
+				{
+					expected.add(chrom + ":" + pos);
+				}
+				assertEquals(expected, results.get(i).get());
+			}
+			assertTrue(tabix.getNrOfOpenedReaders() >= 1);
+			assertTrue(tabix.getNrOfOpenedReaders() <= poolSize);
+		}
+		finally
+		{
+			threads.shutdownNow();
+			tabix.close();
+		}
+	}
+}
@@ -0,0 +1,52 @@
+package org.molgenis.calibratecadd.support;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Temporary folder of a test, with the reading and writing of small text files that tests keep doing
+ */
+public class TestFolder extends TemporaryFolder
+{
+	/**
+	 * Write lines to a file in this folder, replacing it if it is there
+	 * @param name file name, relative to this folder
+	 */
+	public File write(String name, String... lines) throws IOException
+	{
+		return write(new File(getRoot(), name), lines);
+	}
+
+	/**
+	 * Write lines to a file, in UTF-8 with a line break after each line
+	 */
+	public static File write(File file, String... lines) throws IOException
+	{
+		return write(file, Arrays.asList(lines));
+	}
+
+	public static File write(File file, List<String> lines) throws IOException
+	{
+		Files.write(file.toPath(), lines, StandardCharsets.UTF_8);
+		return file;
+	}
+
+	/**
+	 * @return the lines of a file in this folder
+	 */
+	public List<String> read(String name) throws IOException
+	{
+		return read(new File(getRoot(), name));
+	}
+
+	public static List<String> read(File file) throws IOException
+	{
+		return Files.readAllLines(file.toPath(), StandardCharsets.UTF_8);
+	}
+}
@@ -0,0 +1,103 @@
+package org.molgenis.calibratecadd.support;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.math3.stat.descriptive.moment.Mean;
+import org.apache.commons.math3.stat.descriptive.rank.Percentile;
+import org.apache.commons.math3.stat.descriptive.rank.Percentile.EstimationType;
+import org.apache.commons.math3.stat.inference.MannWhitneyUTest;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Compares the per-gene statistics of Step7_BasicResults done with commons-math (Mean, MannWhitneyUTest and two
+ * Percentile calls) against TwoSampleStatistics, for gene sizes from a handful to thousands of variants.
+ * The CADD scores are rounded to one decimal, like the PHRED scores, so there are many ties to rank.
+ *
+ * Run with the test classpath, e.g. from the IDE, or via main().
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TwoSampleStatisticsBenchmark
+{
+	@Param({ "10", "100", "1000", "10000" })
+	public int nrOfVariants;
+
+	private double[] patho;
+	private double[] popul;
+	private TwoSampleStatistics stats = new TwoSampleStatistics();
+
+	@Setup
+	public void setup() throws Exception
+	{
+		Random random = new Random(nrOfVariants);
+		patho = new double[nrOfVariants];
+		popul = new double[nrOfVariants * 2];
+		for (int i = 0; i < patho.length; i++)
+		{
+			patho[i] = Math.round((25 + random.nextGaussian() * 8) * 10) / 10.0;
+		}
+		for (int i = 0; i < popul.length; i++)
+		{
+			popul[i] = Math.round((15 + random.nextGaussian() * 8) * 10) / 10.0;
+		}
+
+		//both sides of the benchmark must give the same numbers, or there is nothing to compare
+		double[] expected = commonsMath(patho, popul);
+		stats.set(patho, popul);
+		double[] actual = new double[] { stats.getMeanX(), stats.getMeanY(), stats.getMannWhitneyUTestPValue(), stats.getPercentileX(5), stats.getPercentileY(95) };
+		for (int i = 0; i < expected.length; i++)
+		{
+			if(Double.doubleToLongBits(expected[i]) != Double.doubleToLongBits(actual[i]))
+			{
+				throw new Exception("statistic " + i + " differs, commons-math " + expected[i] + " vs " + actual[i]);
+			}
+		}
+	}
+
+	private static double[] commonsMath(double[] patho, double[] popul)
+	{
+		Mean mean = new Mean();
+		Percentile perc = new Percentile().withEstimationType(EstimationType.R_7);
+		return new double[] { mean.evaluate(patho), mean.evaluate(popul), new MannWhitneyUTest().mannWhitneyUTest(patho, popul), perc.evaluate(patho, 5), perc.evaluate(popul, 95) };
+	}
+
+	@Benchmark
+	public double[] commonsMath()
+	{
+		return commonsMath(patho, popul);
+	}
+
+	@Benchmark
+	public void twoSampleStatistics(Blackhole bh)
+	{
+		stats.set(patho, popul);
+		bh.consume(stats.getMeanX());
+		bh.consume(stats.getMeanY());
+		bh.consume(stats.getMannWhitneyUTestPValue());
+		bh.consume(stats.getPercentileX(5));
+		bh.consume(stats.getPercentileY(95));
+	}
+
+	public static void main(String[] args) throws Exception
+	{
+		new Runner(new OptionsBuilder().include(TwoSampleStatisticsBenchmark.class.getSimpleName()).build()).run();
+	}
+}
@@ -0,0 +1,110 @@
+package org.molgenis.calibratecadd.support;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import org.apache.commons.math3.stat.descriptive.moment.Mean;
+import org.apache.commons.math3.stat.descriptive.rank.Percentile;
+import org.apache.commons.math3.stat.descriptive.rank.Percentile.EstimationType;
+import org.apache.commons.math3.stat.inference.MannWhitneyUTest;
+import org.junit.Test;
+
+/**
+ * Compares TwoSampleStatistics with the commons-math classes it replaces, which must give exactly the same numbers
+ */
+public class TwoSampleStatisticsTest
+{
+	private static final double[] PERCENTILES = { 0.1, 1, 5, 10, 25, 33.3, 50, 66.7, 75, 90, 95, 99, 99.9, 100 };
+
+	/**
+	 * Like CADD PHRED scores: few distinct values, so many ties within and between the samples, whole numbers, and
+	 * 0.0 next to -0.0
+	 */
+	private static double[] sample(Random random, int n)
+	{
+		double[] sample = new double[n];
+		for(int i = 0; i < n; i++)
+		{
+			switch(random.nextInt(5))
+			{
+				case 0:
+					sample[i] = random.nextInt(10);
+					break;
+				case 1:
+					sample[i] = random.nextBoolean() ? 0.0 : -0.0;
+					break;
+				case 2:
+					sample[i] = random.nextInt(40) / 4d;
+					break;
+				case 3:
+					sample[i] = -random.nextInt(3);
+					break;
+				default:
+					sample[i] = random.nextDouble() * 40;
+			}
+		}
+		return sample;
+	}
+
+	private static void assertSame(TwoSampleStatistics stats, double[] x, double[] y)
+	{
+		double[] xCopy = x.clone();
+		double[] yCopy = y.clone();
+		stats.set(x, y);
+		String samples = Arrays.toString(x) + " " + Arrays.toString(y);
+
+		MannWhitneyUTest mwu = new MannWhitneyUTest();
+		assertEquals(samples, mwu.mannWhitneyU(x, y), stats.getMannWhitneyU(), 0);
+		assertEquals(samples, mwu.mannWhitneyUTest(x, y), stats.getMannWhitneyUTestPValue(), 0);
+
+		Mean mean = new Mean();
+		assertEquals(samples, mean.evaluate(x), stats.getMeanX(), 0);
+		assertEquals(samples, mean.evaluate(y), stats.getMeanY(), 0);
+
+		Percentile percentile = new Percentile().withEstimationType(EstimationType.R_7);
+		for(double p : PERCENTILES)
+		{
+			assertEquals(samples + " " + p, percentile.evaluate(x, p), stats.getPercentileX(p), 0);
+			assertEquals(samples + " " + p, percentile.evaluate(y, p), stats.getPercentileY(p), 0);
+		}
+
+		//samples are only read
+		assertEquals(Arrays.toString(xCopy), Arrays.toString(x));
+		assertEquals(Arrays.toString(yCopy), Arrays.toString(y));
+	}
+
+	@Test
+	public void sameAsCommonsMathForRandomSamples()
+	{
+		Random random = new Random(20161018);
+		//one instance, so buffers of earlier, larger samples are reused
+		TwoSampleStatistics stats = new TwoSampleStatistics();
+		for(int i = 0; i < 2000; i++)
+		{
+			assertSame(stats, sample(random, 1 + random.nextInt(i < 1000 ? 12 : 300)), sample(random, 1 + random.nextInt(i < 1000 ? 12 : 300)));
+		}
+	}
+
+	@Test
+	public void sameAsCommonsMathForEdgeCases()
+	{
+		TwoSampleStatistics stats = new TwoSampleStatistics();
+		assertSame(stats, new double[] { 1 }, new double[] { 2 });
+		assertSame(stats, new double[] { 3, 3, 3 }, new double[] { 3, 3 });
+		assertSame(stats, new double[] { 0.0, -0.0, 0.0 }, new double[] { -0.0, -0.0 });
+		assertSame(stats, new double[] { -0.0, 1, 2 }, new double[] { 0.0, 1, 2 });
+		assertSame(stats, new double[] { 1, Double.NaN, 3 }, new double[] { 2, 4 });
+		assertSame(stats, new double[] { 5, 1, 4, 1, 5, 9, 2, 6 }, new double[] { 0, 1, 2 });
+		assertSame(stats, new double[] { 1e300, -1e300, 1 }, new double[] { 0.1, 0.2, 0.3 });
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void percentileOutOfRange()
+	{
+		TwoSampleStatistics stats = new TwoSampleStatistics();
+		stats.set(new double[] { 1, 2 }, new double[] { 3 });
+		stats.getPercentileX(0);
+	}
+}
@@ -0,0 +1,65 @@
+package org.molgenis.calibratecadd.support;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+
+import org.junit.Test;
+
+public class VariantKeyMapTest
+{
+	private static final String LONG_REF = "ACGTACGTACGTACGTACGTACGTACGTACGT";
+
+	@Test
+	public void getFindsInlineAndTableAlleles()
+	{
+		VariantKeyMap<String> map = new VariantKeyMap<String>();
+		map.put(VariantKey.of("1", 100, "A", "T"), "snv");
+		map.put(VariantKey.of("1", 200, LONG_REF, "A"), "deletion");
+		map.put(VariantKey.of("2", 300, "-", "G"), "dash");
+
+		assertEquals("snv", map.get("1", 100, "A", "T"));
+		assertEquals("snv", map.get("chr1", 100, "A", "T"));
+		assertEquals("deletion", map.get("1", 200, LONG_REF, "A"));
+		assertEquals("dash", map.get("2", 300, "-", "G"));
+		assertTrue(map.containsKey("1", 200, LONG_REF, "A"));
+		assertNull(map.get("1", 100, "A", "C"));
+		assertNull(map.get("1", 201, LONG_REF, "A"));
+	}
+
+	@Test
+	public void lookupsDoNotGrowSharedTables()
+	{
+		VariantKeyMap<String> map = new VariantKeyMap<String>();
+		VariantKeyDoubleMap scores = new VariantKeyDoubleMap();
+		map.put(VariantKey.of("1", 100, "A", "T"), "snv");
+		scores.put("1", 100, "A", "T", 1.5);
+
+		int nrOfTableAlleles = VariantKey.getNrOfTableAlleles();
+		for(int i = 0; i < 100; i++)
+		{
+			String unseenRef = LONG_REF + "TTTTTTTTTTTTTT" + i;
+			assertNull(map.get("1", 100, unseenRef, "A"));
+			assertFalse(map.containsKey("1", 100, unseenRef, "A"));
+			assertTrue(Double.isNaN(scores.get("1", 100, unseenRef, "A")));
+		}
+		assertEquals(nrOfTableAlleles, VariantKey.getNrOfTableAlleles());
+
+		assertNull(map.get("unseenContig_lookup", 100, "A", "T"));
+		assertEquals(-1, Chromosomes.findCode("unseenContig_lookup"));
+	}
+
+	@Test
+	public void predictionIndexBuilderDoesNotGrowSharedTable()
+	{
+		int nrOfTableAlleles = VariantKey.getNrOfTableAlleles();
+		PredictionIndex.Builder builder = new PredictionIndex.Builder(Arrays.asList("tool"));
+		builder.put("1", 100, LONG_REF + "GGGGGGGGGGGG", "A", 0, "damaging");
+		assertEquals("damaging", builder.get("1", 100, LONG_REF + "GGGGGGGGGGGG", "A", 0));
+		assertNull(builder.get("1", 100, LONG_REF + "CCCCCCCCCCCC", "A", 0));
+		assertEquals(nrOfTableAlleles, VariantKey.getNrOfTableAlleles());
+	}
+}
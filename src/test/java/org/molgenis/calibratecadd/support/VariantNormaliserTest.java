@@ -0,0 +1,173 @@
+package org.molgenis.calibratecadd.support;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Random;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+
+public class VariantNormaliserTest
+{
+	private static final String[] UNITS = { "A", "C", "G", "T", "CT", "TCC", "GATA", "AC" };
+
+	@Rule
+	public TestFolder folder = new TestFolder();
+
+	private String chrom1;
+	private String chrom2;
+	private IndexedFasta reference;
+	private VariantNormaliser normaliser;
+
+	/**
+	 * Random sequence made of repeats, so there is something to shift
+	 */
+	private static String sequence(Random random, int length)
+	{
+		StringBuilder sequence = new StringBuilder();
+		while (sequence.length() < length)
+		{
+			String unit = UNITS[random.nextInt(UNITS.length)];
+			for (int i = random.nextInt(5); i >= 0; i--)
+			{
+				sequence.append(unit);
+			}
+		}
+		return sequence.substring(0, length);
+	}
+
+	/**
+	 * FASTA with 10 bases per line, and its faidx index
+	 */
+	@Before
+	public void writeReference() throws Exception
+	{
+		Random random = new Random(8);
+		chrom1 = sequence(random, 503);
+		chrom2 = sequence(random, 120);
+		StringBuilder fasta = new StringBuilder();
+		StringBuilder fai = new StringBuilder();
+		for (String[] sequence : new String[][] { { "1", chrom1 }, { "2", chrom2 } })
+		{
+			fasta.append(">" + sequence[0] + " test sequence\n");
+			fai.append(sequence[0] + "\t" + sequence[1].length() + "\t" + fasta.length() + "\t10\t11\n");
+			for (int i = 0; i < sequence[1].length(); i += 10)
+			{
+				fasta.append(sequence[1], i, Math.min(i + 10, sequence[1].length())).append('\n');
+			}
+		}
+		File fastaFile = new File(folder.getRoot(), "reference.fasta");
+		Files.write(fastaFile.toPath(), fasta.toString().getBytes(StandardCharsets.US_ASCII));
+		Files.write(new File(fastaFile.getPath() + ".fai").toPath(), fai.toString().getBytes(StandardCharsets.US_ASCII));
+		reference = new IndexedFasta(fastaFile);
+		normaliser = new VariantNormaliser(reference);
+	}
+
+	@After
+	public void closeReference() throws Exception
+	{
+		reference.close();
+	}
+
+	/**
+	 * The sequence with REF at pos replaced by ALT, '-' being empty
+	 */
+	private static String apply(String sequence, long pos, String ref, String alt)
+	{
+		String normRef = ref.equals("-") ? "" : ref;
+		String normAlt = alt.equals("-") ? "" : alt;
+		assertEquals(sequence.substring((int) pos - 1, (int) pos - 1 + normRef.length()), normRef);
+		return sequence.substring(0, (int) pos - 1) + normAlt + sequence.substring((int) pos - 1 + normRef.length());
+	}
+
+	@Test
+	public void sameSequenceLeftAlignedAndTrimmed()
+	{
+		Random random = new Random(9);
+		String bases = "ACGT";
+		for (int i = 0; i < 20000; i++)
+		{
+			boolean onChrom1 = random.nextBoolean();
+			String sequence = onChrom1 ? chrom1 : chrom2;
+			int pos = 20 + random.nextInt(sequence.length() - 40);
+			String ref = sequence.substring(pos - 1, pos - 1 + random.nextInt(7));
+			StringBuilder alt = new StringBuilder();
+			//an inserted or changed piece, often a copy of the sequence nearby, with or without the REF around it
+			String piece = random.nextBoolean() ? sequence.substring(pos - 1 + random.nextInt(5), pos + 4 + random.nextInt(5)) : String.valueOf(bases.charAt(random.nextInt(4)));
+			alt.append(random.nextBoolean() ? ref : "").append(random.nextInt(3) == 0 ? "" : piece);
+			if(ref.length() == 1 && alt.length() == 1 || ref.equals(alt.toString()))
+			{
+				continue;
+			}
+			String refAllele = ref.isEmpty() ? "-" : ref;
+			String altAllele = alt.length() == 0 ? "-" : alt.toString();
+
+			VariantKey key = normaliser.normalise(onChrom1 ? "1" : "2", pos, refAllele, altAllele);
+			String message = pos + " " + refAllele + " " + altAllele + " became " + key;
+			String normRef = key.getRef();
+			String normAlt = key.getAlt();
+			assertEquals(message, apply(sequence, pos, refAllele, altAllele), apply(sequence, key.getPos(), normRef, normAlt));
+
+			//nothing left to trim at the end, and only one anchor base at the start
+			assertNotEquals(message, normRef.charAt(normRef.length() - 1), normAlt.charAt(normAlt.length() - 1));
+			if(normRef.length() > 1 && normAlt.length() > 1)
+			{
+				assertNotEquals(message, normRef.charAt(0), normAlt.charAt(0));
+			}
+			if(Math.min(normRef.length(), normAlt.length()) == 1 && normRef.charAt(0) == normAlt.charAt(0))
+			{
+				//an indel that cannot move further left: the anchor base before it differs from its last base
+				String longer = normRef.length() > normAlt.length() ? normRef : normAlt;
+				assertNotEquals(message, longer.charAt(0), longer.charAt(longer.length() - 1));
+			}
+		}
+	}
+
+	@Test
+	public void sameDeletionWrittenDifferently() throws Exception
+	{
+		//a repeat of TCC right after position 100
+		String sequence = chrom1.substring(0, 99) + "A" + "TCCTCCTCC" + "G" + chrom1.substring(110);
+		File fastaFile = new File(folder.getRoot(), "repeat.fasta");
+		StringBuilder fasta = new StringBuilder(">1\n");
+		for (int i = 0; i < sequence.length(); i += 10)
+		{
+			fasta.append(sequence, i, Math.min(i + 10, sequence.length())).append('\n');
+		}
+		Files.write(fastaFile.toPath(), fasta.toString().getBytes(StandardCharsets.US_ASCII));
+		TestFolder.write(new File(fastaFile.getPath() + ".fai"), "1\t" + sequence.length() + "\t3\t10\t11");
+		IndexedFasta repeat = new IndexedFasta(fastaFile);
+		try
+		{
+			VariantNormaliser normaliser = new VariantNormaliser(repeat);
+			//ExAC multi-allelic notation, ClinVar tab-delimited notation, and the same deletion at the end of the repeat
+			VariantKey deletion = VariantKey.of("1", 100, "ATCC", "A");
+			assertEquals(deletion, normaliser.normalise("1", 101, "TCCTCCTCC", "TCCTCC"));
+			assertEquals(deletion, normaliser.normalise("1", 104, "TCC", "-"));
+			assertEquals(deletion, normaliser.normalise("1", 107, "TCCG", "G"));
+			assertEquals(VariantKey.of("1", 100, "A", "ATCC"), normaliser.normalise("1", 110, "-", "TCC"));
+		}
+		finally
+		{
+			repeat.close();
+		}
+	}
+
+	@Test
+	public void leftAsTheyAre()
+	{
+		//SNVs, symbolic alleles and contigs without reference are not looked up
+		assertEquals(VariantKey.of("1", 100, "A", "G"), normaliser.normalise("1", 100, "A", "G"));
+		assertEquals(VariantKey.of("1", 100, "A", "<DEL>"), normaliser.normalise("1", 100, "A", "<DEL>"));
+		assertEquals(VariantKey.of("1", 100, "A", "*"), normaliser.normalise("1", 100, "A", "*"));
+		assertEquals(VariantKey.of("3", 100, "AT", "A"), normaliser.normalise("3", 100, "AT", "A"));
+		//substitutions are only trimmed
+		assertEquals(VariantKey.of("2", 11, "C", "T"), normaliser.normalise("2", 10, chrom2.charAt(9) + "C" + "GG", chrom2.charAt(9) + "T" + "GG"));
+	}
+}
@@ -0,0 +1,163 @@
+package org.molgenis.calibratecadd.support;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.zip.GZIPOutputStream;
+
+import org.junit.Rule;
+import org.junit.Test;
+
+public class VariantSummaryReaderTest
+{
+	//not in the order of the 2016 release, so columns have to be found by name
+	private static final List<String> COLUMNS = Arrays.asList("AlleleID", "Type", "GeneSymbol", "Name", "Assembly", "ClinicalSignificance",
+			"RS# (dbSNP)", "Chromosome", "Start", "Stop", "ReferenceAllele", "AlternateAllele", "OtherIDs");
+	private static final String[] GENES = { "HRAS", "BRCA1", "TTN", "MYH7", "-", "" };
+	private static final String[] CLINSIGS = { "Pathogenic", "Likely pathogenic", "Benign", "Uncertain significance", "Pathogenic/Likely pathogenic", "not provided" };
+
+	@Rule
+	public TestFolder folder = new TestFolder();
+
+	private static String variantSummary(Random random, int nrOfLines)
+	{
+		StringBuilder file = new StringBuilder("#" + String.join("\t", COLUMNS) + "\n");
+		for (int i = 0; i < nrOfLines; i++)
+		{
+			String gene = GENES[random.nextInt(GENES.length)];
+			String nameGene = random.nextInt(4) == 0 ? "" : "(" + GENES[random.nextInt(4)] + ")";
+			String[] values = new String[COLUMNS.size()];
+			values[COLUMNS.indexOf("AlleleID")] = String.valueOf(i);
+			values[COLUMNS.indexOf("Type")] = "single nucleotide variant";
+			values[COLUMNS.indexOf("GeneSymbol")] = gene;
+			values[COLUMNS.indexOf("Name")] = "NM_" + i + nameGene + ":c." + random.nextInt(5000) + "G>C";
+			values[COLUMNS.indexOf("Assembly")] = random.nextInt(3) == 0 ? "GRCh38" : "GRCh37";
+			values[COLUMNS.indexOf("ClinicalSignificance")] = CLINSIGS[random.nextInt(CLINSIGS.length)];
+			values[COLUMNS.indexOf("RS# (dbSNP)")] = String.valueOf(random.nextInt(100000));
+			values[COLUMNS.indexOf("Chromosome")] = String.valueOf(1 + random.nextInt(22));
+			values[COLUMNS.indexOf("Start")] = String.valueOf(1 + random.nextInt(1000000));
+			values[COLUMNS.indexOf("Stop")] = values[COLUMNS.indexOf("Start")];
+			values[COLUMNS.indexOf("ReferenceAllele")] = "G";
+			values[COLUMNS.indexOf("AlternateAllele")] = "C";
+			//now and then a line much longer than the others
+			values[COLUMNS.indexOf("OtherIDs")] = random.nextInt(50) == 0 ? new String(new char[2000]).replace('\0', 'x') : "OMIM:" + i;
+			file.append(String.join("\t", values)).append(random.nextInt(10) == 0 ? "\r\n" : "\n");
+		}
+		return file.toString();
+	}
+
+	/**
+	 * Line by line with String.split, the way the reader is meant to select and fill in variants
+	 */
+	private static Map<String, List<String>> sequential(String file)
+	{
+		Map<String, List<String>> genes = new HashMap<String, List<String>>();
+		for (String line : file.split("\n"))
+		{
+			if(line.startsWith("#"))
+			{
+				continue;
+			}
+			String[] split = line.replace("\r", "").split("\t", -1);
+			String clinsig = split[COLUMNS.indexOf("ClinicalSignificance")];
+			if(!split[COLUMNS.indexOf("Assembly")].equals("GRCh37") || !clinsig.toLowerCase().contains("pathogenic"))
+			{
+				continue;
+			}
+			String name = split[COLUMNS.indexOf("Name")];
+			String gene = split[COLUMNS.indexOf("GeneSymbol")];
+			if(gene.equals("-") || gene.isEmpty())
+			{
+				gene = name.contains("(") ? name.substring(name.indexOf('(') + 1, name.indexOf(')')) : null;
+			}
+			if(gene == null)
+			{
+				continue;
+			}
+			if(!genes.containsKey(gene))
+			{
+				genes.put(gene, new ArrayList<String>());
+			}
+			genes.get(gene).add(split[COLUMNS.indexOf("Chromosome")] + ":" + split[COLUMNS.indexOf("Start")] + " " + split[COLUMNS.indexOf("RS# (dbSNP)")] + " "
+					+ split[COLUMNS.indexOf("ReferenceAllele")] + ">" + split[COLUMNS.indexOf("AlternateAllele")] + " " + name + " " + gene + " " + clinsig);
+		}
+		return genes;
+	}
+
+	private static Map<String, List<String>> toStrings(HashMap<String, List<ClinVarVariant>> variantsPerGene)
+	{
+		Map<String, List<String>> genes = new LinkedHashMap<String, List<String>>();
+		for (String gene : variantsPerGene.keySet())
+		{
+			List<String> variants = new ArrayList<String>();
+			for (ClinVarVariant v : variantsPerGene.get(gene))
+			{
+				variants.add(v.chrom + ":" + v.pos + " " + v.id + " " + v.ref + ">" + v.alt + " " + v.name + " " + v.gene + " " + v.clinsig);
+			}
+			genes.put(gene, variants);
+		}
+		return genes;
+	}
+
+	@Test
+	public void sameAsSequentialForAnyThreadsAndChunks() throws Exception
+	{
+		String content = variantSummary(new Random(12), 4000);
+		Map<String, List<String>> expected = sequential(content);
+		assertEquals(4, expected.size());
+
+		File plain = new File(folder.getRoot(), "variant_summary.txt");
+		File gzipped = new File(folder.getRoot(), "variant_summary.txt.gz");
+		OutputStream out = new FileOutputStream(plain);
+		out.write(content.getBytes(StandardCharsets.UTF_8));
+		out.close();
+		out = new GZIPOutputStream(new FileOutputStream(gzipped));
+		out.write(content.getBytes(StandardCharsets.UTF_8));
+		out.close();
+
+		assertEquals(expected, toStrings(new VariantSummaryReader(1).read(plain)));
+		for (int threads : new int[] { 1, 2, 5 })
+		{
+			//chunks smaller than one line, of a few lines, and of many lines
+			for (int chunkSize : new int[] { 100, 1000, 64 * 1024 })
+			{
+				assertEquals(threads + " threads, chunks of " + chunkSize, expected, toStrings(new VariantSummaryReader(threads, chunkSize).read(plain)));
+				assertEquals(threads + " threads, chunks of " + chunkSize, expected, toStrings(new VariantSummaryReader(threads, chunkSize).read(gzipped)));
+			}
+		}
+	}
+
+	@Test
+	public void withoutHeaderUsesColumnsOf2016() throws Exception
+	{
+		String[] line = new String[27];
+		Arrays.fill(line, "");
+		line[2] = "NM_005343.2(HRAS):c.37G>C (p.Gly13Arg)";
+		line[4] = "-";
+		line[5] = "Pathogenic";
+		line[6] = "104894229";
+		line[12] = "GRCh37";
+		line[13] = "11";
+		line[14] = "534286";
+		line[25] = "C";
+		line[26] = "G";
+		HashMap<String, List<ClinVarVariant>> variants = new VariantSummaryReader(2).read(folder.write("variant_summary.txt", String.join("\t", line)));
+		assertEquals(Arrays.asList("HRAS"), new ArrayList<String>(variants.keySet()));
+		ClinVarVariant variant = variants.get("HRAS").get(0);
+		assertEquals("11", variant.chrom);
+		assertEquals(534286, variant.pos);
+		assertEquals("104894229", variant.id);
+		assertEquals("C", variant.ref);
+		assertEquals("G", variant.alt);
+	}
+}